@@ -15,8 +15,16 @@ repositories {
     mavenCentral()
 }
 
+// the versions Spring Boot 3.2 manages guard the connection pool and connections with synchronized,
+// which pins the virtual thread of every Gotenberg call while it waits; from HttpClient 5.3 on they use locks
+extra["httpclient5.version"] = "5.4.1"
+extra["httpcore5.version"] = "5.3.1"
+
 dependencies {
     implementation("com.okta.spring:okta-spring-boot-starter:3.0.7")
+    implementation("org.apache.httpcomponents.client5:httpclient5")
+    implementation("org.apache.pdfbox:pdfbox:3.0.2")
+    implementation("org.springframework.boot:spring-boot-starter-actuator")
     implementation("org.springframework.boot:spring-boot-starter-data-mongodb")
     implementation("org.springframework.boot:spring-boot-starter-web")
 
@@ -33,3 +41,19 @@ tasks.withType<Test> {
     jvmArgs("-XX:+EnableDynamicAgentLoading")
     environment("spring.profiles.active", "dev")
 }
+
+tasks.test {
+    useJUnitPlatform {
+        excludeTags("benchmark")
+    }
+}
+
+tasks.register<Test>("benchmark") {
+    description = "Compares the request throughput on platform threads with the one on virtual threads."
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("benchmark")
+    }
+}
@@ -0,0 +1,68 @@
+package com.ondra.knowledgebasebe.blob;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Deletes blobs whose last reference was released more than {@code blob.collector.grace-period} ago. The
+ * grace period lets downloads that started before the release finish. A blob is only deleted after its
+ * reference entry was removed with a conditional delete, so a blob that is acquired or stored again in the
+ * meantime is never lost.
+ */
+@Component
+public class BlobCollector {
+
+    Logger logger = LoggerFactory.getLogger(BlobCollector.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final BlobStore blobStore;
+    private final Clock clock;
+    private final Duration gracePeriod;
+
+    @Autowired
+    public BlobCollector(
+        MongoTemplate mongoTemplate,
+        BlobStore blobStore,
+        @Value("${blob.collector.grace-period}") Duration gracePeriod
+    ) {
+        this(mongoTemplate, blobStore, Clock.systemUTC(), gracePeriod);
+    }
+
+    BlobCollector(MongoTemplate mongoTemplate, BlobStore blobStore, Clock clock, Duration gracePeriod) {
+        this.mongoTemplate = mongoTemplate;
+        this.blobStore = blobStore;
+        this.clock = clock;
+        this.gracePeriod = gracePeriod;
+    }
+
+    @Scheduled(fixedDelayString = "${blob.collector.interval}")
+    public void collect() {
+        Instant releasedBefore = clock.instant().minus(gracePeriod);
+        int collectedBlobs = 0;
+        for (BlobRef blobRef : mongoTemplate.find(unreferenced(releasedBefore), BlobRef.class)) {
+            Query stillUnreferenced = unreferenced(releasedBefore).addCriteria(where("_id").is(blobRef.getSha256()));
+            if (mongoTemplate.remove(stillUnreferenced, BlobRef.class).getDeletedCount() == 0) continue;
+            blobStore.delete(blobRef.getBlobId());
+            collectedBlobs++;
+        }
+        if (collectedBlobs > 0) logger.info("Collected " + collectedBlobs + " unreferenced blobs");
+    }
+
+    private static Query unreferenced(Instant releasedBefore) {
+        return query(where("refCount").lte(0).and("releasedAt").lt(releasedBefore));
+    }
+
+}
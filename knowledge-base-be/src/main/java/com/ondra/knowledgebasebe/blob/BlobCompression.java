@@ -0,0 +1,71 @@
+package com.ondra.knowledgebasebe.blob;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides how blobs are encoded when they are stored and records how well that works. Blobs are gzipped
+ * unless the first {@link #SAMPLE_SIZE} bytes of their content do not shrink to at most
+ * {@code blob.compression.max-ratio} of their size, as is the case for DOCX files, which are zip archives
+ * already. Gzipped blobs are cut into frames of {@link #FRAME_SIZE} bytes of content that can each be
+ * inflated on their own, so a range of a PDF can still be served without inflating the PDF from its start.
+ * The ratio and the time spent compressing are published as {@code blob.compression.ratio} and
+ * {@code blob.compression.time}.
+ */
+@Component
+public class BlobCompression {
+
+    static final String GZIP = "gzip";
+    static final int SAMPLE_SIZE = 64 * 1024;
+    static final int FRAME_SIZE = 256 * 1024;
+
+    private final boolean enabled;
+    private final double maxRatio;
+    private final DistributionSummary ratio;
+    private final Timer compressionTime;
+    private final Counter compressedBlobs;
+    private final Counter rawBlobs;
+    private final Counter rawBytes;
+    private final Counter storedBytes;
+
+    public BlobCompression(
+        MeterRegistry meterRegistry,
+        @Value("${blob.compression.enabled}") boolean enabled,
+        @Value("${blob.compression.max-ratio}") double maxRatio
+    ) {
+        this.enabled = enabled;
+        this.maxRatio = maxRatio;
+        this.ratio = DistributionSummary.builder("blob.compression.ratio")
+            .description("Stored size of compressed blobs relative to their content size")
+            .register(meterRegistry);
+        this.compressionTime = meterRegistry.timer("blob.compression.time");
+        this.compressedBlobs = meterRegistry.counter("blob.compression.blobs", "encoding", GZIP);
+        this.rawBlobs = meterRegistry.counter("blob.compression.blobs", "encoding", "identity");
+        this.rawBytes = meterRegistry.counter("blob.compression.bytes", "size", "content");
+        this.storedBytes = meterRegistry.counter("blob.compression.bytes", "size", "stored");
+    }
+
+    CompressingOutputStream compress(OutputStream target) {
+        return new CompressingOutputStream(target, enabled ? maxRatio : 0);
+    }
+
+    void record(CompressingOutputStream compressingStream) {
+        rawBytes.increment(compressingStream.rawLength());
+        storedBytes.increment(compressingStream.storedLength());
+        compressionTime.record(compressingStream.compressionNanos(), TimeUnit.NANOSECONDS);
+        if (!compressingStream.isCompressed()) {
+            rawBlobs.increment();
+            return;
+        }
+        compressedBlobs.increment();
+        ratio.record((double) compressingStream.storedLength() / compressingStream.rawLength());
+    }
+
+}
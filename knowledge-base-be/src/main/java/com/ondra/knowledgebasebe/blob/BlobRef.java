@@ -0,0 +1,44 @@
+package com.ondra.knowledgebasebe.blob;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Document(collection = "blobRefs")
+public class BlobRef {
+
+    @Id
+    private final String sha256;
+    @Indexed(unique = true)
+    private final ObjectId blobId;
+    private final long refCount;
+    @Indexed
+    private final Instant releasedAt;
+
+    public BlobRef(String sha256, ObjectId blobId, long refCount, Instant releasedAt) {
+        this.sha256 = sha256;
+        this.blobId = blobId;
+        this.refCount = refCount;
+        this.releasedAt = releasedAt;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public ObjectId getBlobId() {
+        return blobId;
+    }
+
+    public long getRefCount() {
+        return refCount;
+    }
+
+    public Instant getReleasedAt() {
+        return releasedAt;
+    }
+
+}
@@ -0,0 +1,191 @@
+package com.ondra.knowledgebasebe.blob;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSDownloadStream;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.springframework.core.io.AbstractResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static com.mongodb.client.model.Filters.and;
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Filters.gte;
+import static com.mongodb.client.model.Filters.lt;
+import static com.mongodb.client.model.Projections.include;
+import static com.mongodb.client.model.Sorts.ascending;
+
+/**
+ * A GridFS file exposed as a Spring {@link org.springframework.core.io.Resource}. Every call to
+ * {@link #getInputStream()} opens a new download stream that fetches the file chunk by chunk, so the
+ * resource can be read repeatedly without ever holding the whole file in memory. Compressed files are
+ * gzipped in frames and decompressed on the way, and skipping ahead in one only inflates from the frame
+ * the new position falls into.
+ */
+public class BlobResource extends AbstractResource {
+
+    /**
+     * Chunks fetched per round trip when reading a range. A range served to a viewer, or a frame of
+     * compressed content, is at most {@link BlobCompression#FRAME_SIZE} bytes and thus spans at most two
+     * of the default 255 KiB chunks, whereas the driver's default batch would fetch up to 16 MiB of chunks
+     * the range does not need.
+     */
+    static final int RANGE_READ_BATCH_SIZE = 2;
+
+    private final GridFSBucket gridFSBucket;
+    private final MongoCollection<Document> chunks;
+    private final GridFSFile file;
+    private final boolean rangeReads;
+
+    public BlobResource(GridFSBucket gridFSBucket, MongoCollection<Document> chunks, GridFSFile file) {
+        this(gridFSBucket, chunks, file, false);
+    }
+
+    private BlobResource(GridFSBucket gridFSBucket, MongoCollection<Document> chunks, GridFSFile file, boolean rangeReads) {
+        this.gridFSBucket = gridFSBucket;
+        this.chunks = chunks;
+        this.file = file;
+        this.rangeReads = rangeReads;
+    }
+
+    /**
+     * Returns the same blob for reading ranges of it. Its download streams fetch only
+     * {@link #RANGE_READ_BATCH_SIZE} chunks at a time, so skipping to a range and reading it transfers
+     * little more than the range itself.
+     */
+    public BlobResource forRangeReads() {
+        return new BlobResource(gridFSBucket, chunks, file, true);
+    }
+
+    public ObjectId getId() {
+        return file.getObjectId();
+    }
+
+    public String getContentType() {
+        Document metadata = file.getMetadata();
+        return metadata == null ? null : metadata.getString(BlobStore.CONTENT_TYPE_KEY);
+    }
+
+    /**
+     * Returns the encoding the file is stored in, or null if it is stored as it is.
+     */
+    public String getContentEncoding() {
+        Document metadata = file.getMetadata();
+        return metadata == null ? null : metadata.getString(BlobStore.CONTENT_ENCODING_KEY);
+    }
+
+    public long storedLength() {
+        return file.getLength();
+    }
+
+    InputStream getStoredInputStream() {
+        GridFSDownloadStream downloadStream = gridFSBucket.openDownloadStream(file.getObjectId());
+        return rangeReads ? downloadStream.batchSize(RANGE_READ_BATCH_SIZE) : downloadStream;
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public String getFilename() {
+        return file.getFilename();
+    }
+
+    @Override
+    public long contentLength() {
+        if (getContentEncoding() == null) return file.getLength();
+        return file.getMetadata().get(BlobStore.CONTENT_LENGTH_KEY, Number.class).longValue();
+    }
+
+    @Override
+    public long lastModified() {
+        return file.getUploadDate().getTime();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        InputStream storedStream = getStoredInputStream();
+        if (getContentEncoding() == null) return storedStream;
+        return new SeekableGzipInputStream(storedStream, frameSize(), frameOffsets(), contentLength());
+    }
+
+    /**
+     * Reads {@code length} bytes of the content from {@code position} on. Unlike a download stream, this
+     * neither looks the file up again nor fetches any chunk the bytes do not lie in, which suits readers
+     * that jump back and forth through a file. Compressed content is read frame-wise: the frames the bytes
+     * lie in are fetched and inflated up to them.
+     */
+    public byte[] read(long position, int length) throws IOException {
+        if (length == 0) return new byte[0];
+        if (getContentEncoding() == null) return readStored(position, position + length);
+        long frameSize = frameSize();
+        List<Long> frameOffsets = frameOffsets();
+        int firstFrame = (int) Math.min(position / frameSize, frameOffsets.size() - 1);
+        int lastFrame = (int) Math.min((position + length - 1) / frameSize, frameOffsets.size() - 1);
+        long storedEnd = lastFrame + 1 < frameOffsets.size() ? frameOffsets.get(lastFrame + 1) : storedLength();
+        byte[] frames = readStored(frameOffsets.get(firstFrame), storedEnd);
+        Inflater inflater = new Inflater(true);
+        try (InputStream inflating = new InflaterInputStream(new ByteArrayInputStream(frames), inflater)) {
+            inflating.skipNBytes(position - firstFrame * frameSize);
+            byte[] content = inflating.readNBytes(length);
+            if (content.length < length) throw new EOFException("Blob '" + getId() + "' ended before its content length");
+            return content;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    @Override
+    public String getDescription() {
+        return "GridFS blob [" + file.getObjectId() + "]";
+    }
+
+    private long frameSize() {
+        return file.getMetadata().get(BlobStore.FRAME_SIZE_KEY, Number.class).longValue();
+    }
+
+    private List<Long> frameOffsets() {
+        return file.getMetadata().getList(BlobStore.FRAME_OFFSETS_KEY, Number.class).stream().map(Number::longValue).toList();
+    }
+
+    /**
+     * Fetches the stored bytes from {@code from} to {@code to} with one query for just the chunks they lie
+     * in, all of them in a single batch.
+     */
+    private byte[] readStored(long from, long to) throws IOException {
+        int chunkSize = file.getChunkSize();
+        int firstChunk = (int) (from / chunkSize);
+        int chunkCount = (int) ((to - 1) / chunkSize) - firstChunk + 1;
+        byte[] stored = new byte[(int) (to - from)];
+        int copied = 0;
+        FindIterable<Document> found = chunks
+            .find(and(eq("files_id", file.getObjectId()), gte("n", firstChunk), lt("n", firstChunk + chunkCount)))
+            .projection(include("n", "data"))
+            .sort(ascending("n"))
+            .batchSize(chunkCount)
+            .limit(chunkCount);
+        for (Document chunk : found) {
+            long chunkStart = chunk.get("n", Number.class).longValue() * chunkSize;
+            byte[] data = chunk.get("data", Binary.class).getData();
+            int start = (int) Math.max(0, from - chunkStart);
+            int end = (int) Math.min(data.length, to - chunkStart);
+            System.arraycopy(data, start, stored, (int) (chunkStart + start - from), end - start);
+            copied += end - start;
+        }
+        if (copied < stored.length) throw new EOFException("Blob '" + getId() + "' is missing chunks");
+        return stored;
+    }
+
+}
@@ -0,0 +1,198 @@
+package com.ondra.knowledgebasebe.blob;
+
+import com.mongodb.MongoGridFSException;
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSUploadStream;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.BlobStorageException;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+import static com.mongodb.client.model.Filters.eq;
+import static com.mongodb.client.model.Updates.combine;
+import static com.mongodb.client.model.Updates.set;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Stores blobs content-addressed: identical content is kept only once and shared by everyone who stores
+ * it. Every {@link #store} and {@link #acquire} takes a reference that has to be given back with
+ * {@link #release}; blobs without references are deleted by the {@link BlobCollector}. Content is stored
+ * gzipped where the {@link BlobCompression} finds it worthwhile, and a {@link BlobResource} reads it back
+ * decompressed, from any position.
+ */
+@Service
+public class BlobStore {
+
+    static final String CONTENT_TYPE_KEY = "contentType";
+    static final String CONTENT_ENCODING_KEY = "contentEncoding";
+    static final String CONTENT_LENGTH_KEY = "contentLength";
+    static final String FRAME_SIZE_KEY = "frameSize";
+    static final String FRAME_OFFSETS_KEY = "frameOffsets";
+
+    Logger logger = LoggerFactory.getLogger(BlobStore.class);
+
+    private final GridFSBucket gridFSBucket;
+    private final MongoTemplate mongoTemplate;
+    private final BlobCompression blobCompression;
+    private final Clock clock;
+
+    @Autowired
+    public BlobStore(GridFSBucket gridFSBucket, MongoTemplate mongoTemplate, BlobCompression blobCompression) {
+        this(gridFSBucket, mongoTemplate, blobCompression, Clock.systemUTC());
+    }
+
+    BlobStore(GridFSBucket gridFSBucket, MongoTemplate mongoTemplate, BlobCompression blobCompression, Clock clock) {
+        this.gridFSBucket = gridFSBucket;
+        this.mongoTemplate = mongoTemplate;
+        this.blobCompression = blobCompression;
+        this.clock = clock;
+    }
+
+    public StoredBlob store(String filename, String contentType, InputStream content) {
+        return store(filename, contentType, content::transferTo);
+    }
+
+    /**
+     * Stores the bytes produced by the given writer and takes a reference on them. The hash is only known
+     * once the content has been written, so the content is uploaded first; if a blob with the same hash
+     * already exists, the upload is dropped again and the existing blob is returned instead.
+     */
+    public StoredBlob store(String filename, String contentType, BlobWriter writer) {
+        StoredBlob uploadedBlob = upload(filename, contentType, writer);
+        BlobRef blobRef;
+        try {
+            blobRef = mongoTemplate.findAndModify(
+                query(where("_id").is(uploadedBlob.sha256())),
+                new Update().setOnInsert("blobId", uploadedBlob.id()).inc("refCount", 1).unset("releasedAt"),
+                FindAndModifyOptions.options().upsert(true).returnNew(true),
+                BlobRef.class
+            );
+        } catch (RuntimeException ex) {
+            delete(uploadedBlob.id());
+            throw ex;
+        }
+        if (blobRef.getBlobId().equals(uploadedBlob.id())) return uploadedBlob;
+        delete(uploadedBlob.id());
+        return new StoredBlob(blobRef.getBlobId(), uploadedBlob.sha256());
+    }
+
+    /**
+     * Takes another reference on an existing blob. Returns false if the blob is not reference counted or
+     * has already been collected.
+     */
+    public boolean acquire(ObjectId id) {
+        if (id == null) return false;
+        Update update = new Update().inc("refCount", 1).unset("releasedAt");
+        return mongoTemplate.updateFirst(query(where("blobId").is(id)), update, BlobRef.class).getModifiedCount() > 0;
+    }
+
+    /**
+     * Gives back a reference. Blobs stored before reference counting was introduced have a single owner
+     * and are deleted right away.
+     */
+    public void release(ObjectId id) {
+        if (id == null) return;
+        Update update = new Update().inc("refCount", -1).set("releasedAt", clock.instant());
+        if (mongoTemplate.updateFirst(query(where("blobId").is(id)), update, BlobRef.class).getMatchedCount() == 0) delete(id);
+    }
+
+    /**
+     * Streams the bytes produced by the given writer into a new GridFS file. The content is split into
+     * chunks while it is written, so it is never buffered as a whole, and its SHA-256 hash is computed on
+     * the way. The hash is taken from the content before it is compressed, so identical content is found
+     * again whatever encoding it ended up in. If the writer fails, all chunks that were already written are
+     * removed again.
+     */
+    private StoredBlob upload(String filename, String contentType, BlobWriter writer) {
+        GridFSUploadOptions options = new GridFSUploadOptions().metadata(new Document(CONTENT_TYPE_KEY, contentType));
+        GridFSUploadStream uploadStream = gridFSBucket.openUploadStream(filename, options);
+        CompressingOutputStream compressingStream = blobCompression.compress(uploadStream);
+        MessageDigest digest = sha256();
+        try {
+            writer.writeTo(new DigestOutputStream(compressingStream, digest));
+            compressingStream.finish();
+        } catch (IOException ex) {
+            compressingStream.discard();
+            uploadStream.abort();
+            throw new BlobStorageException("Writing blob '" + filename + "' not possible", ex);
+        } catch (RuntimeException ex) {
+            compressingStream.discard();
+            uploadStream.abort();
+            throw ex;
+        }
+        uploadStream.close();
+        ObjectId id = uploadStream.getObjectId();
+        if (compressingStream.isCompressed()) markCompressed(id, compressingStream.rawLength(), compressingStream.frameOffsets());
+        blobCompression.record(compressingStream);
+        return new StoredBlob(id, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    /**
+     * The encoding, the length of the content and where its frames start are only known once the content
+     * has been written, after GridFS has created the file, so they are added to its metadata afterwards.
+     */
+    private void markCompressed(ObjectId id, long contentLength, List<Long> frameOffsets) {
+        try {
+            mongoTemplate.getCollection(gridFSBucket.getBucketName() + ".files").updateOne(
+                eq("_id", id),
+                combine(
+                    set("metadata." + CONTENT_ENCODING_KEY, BlobCompression.GZIP),
+                    set("metadata." + CONTENT_LENGTH_KEY, contentLength),
+                    set("metadata." + FRAME_SIZE_KEY, BlobCompression.FRAME_SIZE),
+                    set("metadata." + FRAME_OFFSETS_KEY, frameOffsets)
+                )
+            );
+        } catch (RuntimeException ex) {
+            delete(id);
+            throw ex;
+        }
+    }
+
+    public Optional<String> findSha256(ObjectId id) {
+        if (id == null) return Optional.empty();
+        return Optional.ofNullable(mongoTemplate.findOne(query(where("blobId").is(id)), BlobRef.class)).map(BlobRef::getSha256);
+    }
+
+    public Optional<BlobResource> find(ObjectId id) {
+        if (id == null) return Optional.empty();
+        GridFSFile file = gridFSBucket.find(eq("_id", id)).first();
+        return Optional.ofNullable(file).map(f -> new BlobResource(gridFSBucket, mongoTemplate.getCollection(gridFSBucket.getBucketName() + ".chunks"), f));
+    }
+
+    void delete(ObjectId id) {
+        if (id == null) return;
+        try {
+            gridFSBucket.delete(id);
+        } catch (MongoGridFSException ex) {
+            logger.warn("Blob '" + id + "' could not be deleted: " + ex.getMessage());
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+}
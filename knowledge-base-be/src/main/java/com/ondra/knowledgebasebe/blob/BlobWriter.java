@@ -0,0 +1,11 @@
+package com.ondra.knowledgebasebe.blob;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+@FunctionalInterface
+public interface BlobWriter {
+
+    void writeTo(OutputStream outputStream) throws IOException;
+
+}
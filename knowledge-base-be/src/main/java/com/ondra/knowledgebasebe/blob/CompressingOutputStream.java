@@ -0,0 +1,192 @@
+package com.ondra.knowledgebasebe.blob;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static com.ondra.knowledgebasebe.blob.BlobCompression.FRAME_SIZE;
+import static com.ondra.knowledgebasebe.blob.BlobCompression.SAMPLE_SIZE;
+
+/**
+ * Holds back the first {@link BlobCompression#SAMPLE_SIZE} bytes, compresses them on trial and then writes
+ * the whole content to the target either gzipped or as it is. The compressed bytes are collected in a
+ * buffer and passed on after every write, so the time spent compressing can be told apart from the time
+ * spent uploading. Closing the stream only finishes the content, the target stays open.
+ * <p>
+ * Gzipped content is written as a single gzip member, but the deflate stream is fully flushed after every
+ * {@link BlobCompression#FRAME_SIZE} bytes of content. A full flush ends on a byte boundary and nothing
+ * after it refers back to what came before, so inflating can start at any of these
+ * {@linkplain #frameOffsets() frame offsets}; see {@link SeekableGzipInputStream}.
+ */
+final class CompressingOutputStream extends OutputStream {
+
+    // magic number, deflate, no flags, no modification time, no extra flags, unknown operating system
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final OutputStream target;
+    private final double maxRatio;
+    private final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    private final CRC32 crc = new CRC32();
+    private final byte[] deflated = new byte[8192];
+    private final List<Long> frameOffsets = new ArrayList<>();
+
+    private ByteArrayOutputStream sample = new ByteArrayOutputStream();
+    private Deflater deflater;
+    private long frameLength;
+    private boolean finished;
+    private long rawLength;
+    private long storedLength;
+    private long compressionNanos;
+
+    CompressingOutputStream(OutputStream target, double maxRatio) {
+        this.target = target;
+        this.maxRatio = maxRatio;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) throw new IOException("Stream is already finished");
+        rawLength += len;
+        if (sample != null) {
+            int sampled = Math.min(len, SAMPLE_SIZE - sample.size());
+            sample.write(b, off, sampled);
+            off += sampled;
+            len -= sampled;
+            if (sample.size() < SAMPLE_SIZE) return;
+            decide();
+        }
+        if (len > 0) writeEncoded(b, off, len);
+    }
+
+    /**
+     * Writes what is left of the content. Calling it again has no effect.
+     */
+    void finish() throws IOException {
+        if (finished) return;
+        if (sample != null) decide();
+        finished = true;
+        if (deflater == null) return;
+        long start = System.nanoTime();
+        deflater.finish();
+        while (!deflater.finished()) compressed.write(deflated, 0, deflater.deflate(deflated));
+        deflater.end();
+        writeIntLittleEndian(crc.getValue());
+        writeIntLittleEndian(rawLength);
+        compressionNanos += System.nanoTime() - start;
+        passOn();
+    }
+
+    /**
+     * Releases the compressor of content that is not going to be stored.
+     */
+    void discard() {
+        finished = true;
+        sample = null;
+        if (deflater != null) deflater.end();
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+    }
+
+    boolean isCompressed() {
+        return deflater != null;
+    }
+
+    /**
+     * Returns the offsets in the stored content at which the frames of gzipped content start.
+     */
+    List<Long> frameOffsets() {
+        return frameOffsets;
+    }
+
+    long rawLength() {
+        return rawLength;
+    }
+
+    long storedLength() {
+        return storedLength;
+    }
+
+    long compressionNanos() {
+        return compressionNanos;
+    }
+
+    private void decide() throws IOException {
+        byte[] sampled = sample.toByteArray();
+        sample = null;
+        if (compressesWell(sampled)) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            compressed.write(GZIP_HEADER);
+        }
+        writeEncoded(sampled, 0, sampled.length);
+    }
+
+    private boolean compressesWell(byte[] sampled) {
+        if (sampled.length == 0) return false;
+        long start = System.nanoTime();
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(sampled);
+            deflater.finish();
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) deflater.deflate(buffer);
+            return deflater.getBytesWritten() <= sampled.length * maxRatio;
+        } finally {
+            deflater.end();
+            compressionNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void writeEncoded(byte[] b, int off, int len) throws IOException {
+        if (deflater == null) {
+            target.write(b, off, len);
+            storedLength += len;
+            return;
+        }
+        long start = System.nanoTime();
+        while (len > 0) {
+            if (frameLength == 0) frameOffsets.add(storedLength + compressed.size());
+            int framed = (int) Math.min(len, FRAME_SIZE - frameLength);
+            crc.update(b, off, framed);
+            deflater.setInput(b, off, framed);
+            while (!deflater.needsInput()) compressed.write(deflated, 0, deflater.deflate(deflated));
+            off += framed;
+            len -= framed;
+            frameLength += framed;
+            if (frameLength == FRAME_SIZE) endFrame();
+        }
+        compressionNanos += System.nanoTime() - start;
+        passOn();
+    }
+
+    private void endFrame() {
+        int written;
+        do {
+            written = deflater.deflate(deflated, 0, deflated.length, Deflater.FULL_FLUSH);
+            compressed.write(deflated, 0, written);
+        } while (written == deflated.length);
+        frameLength = 0;
+    }
+
+    private void writeIntLittleEndian(long value) {
+        for (int i = 0; i < 4; i++) compressed.write((int) (value >>> (8 * i)));
+    }
+
+    private void passOn() throws IOException {
+        storedLength += compressed.size();
+        compressed.writeTo(target);
+        compressed.reset();
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.ondra.knowledgebasebe.blob;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Reads gzipped content written by a {@link CompressingOutputStream}, from wherever the reader skips to.
+ * Skipping past the frame that is being inflated only moves the stored stream to the start of the frame
+ * the new position falls into, which GridFS does without fetching the chunks in between, and inflates that
+ * frame up to the position. Serving a range therefore costs at most one frame of inflating, however far
+ * into the content the range starts.
+ */
+final class SeekableGzipInputStream extends InputStream {
+
+    private final StoredStream storedStream;
+    private final long frameSize;
+    private final List<Long> frameOffsets;
+    private final long contentLength;
+
+    private long position;
+    private Inflater inflater;
+    private InputStream inflating;
+
+    SeekableGzipInputStream(InputStream storedStream, long frameSize, List<Long> frameOffsets, long contentLength) {
+        this.storedStream = new StoredStream(storedStream);
+        this.frameSize = frameSize;
+        this.frameOffsets = frameOffsets;
+        this.contentLength = contentLength;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        Objects.checkFromIndexSize(off, len, b.length);
+        if (len == 0) return 0;
+        if (position >= contentLength) return -1;
+        if (inflating == null) inflateFrom(position);
+        int read = inflating.read(b, off, (int) Math.min(len, contentLength - position));
+        if (read < 0) throw new EOFException("Compressed blob ended before its content length");
+        position += read;
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) return 0;
+        long skipped = Math.min(n, contentLength - position);
+        if (inflating != null && frameOffsets.get(frameOf(position + skipped)) < storedStream.position) {
+            // the frame of the new position has been read into already, so inflating on is the only way there
+            inflating.skipNBytes(skipped);
+        } else {
+            endInflating();
+        }
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public void close() throws IOException {
+        endInflating();
+        storedStream.close();
+    }
+
+    private void inflateFrom(long position) throws IOException {
+        int frame = frameOf(position);
+        storedStream.skipNBytes(frameOffsets.get(frame) - storedStream.position);
+        inflater = new Inflater(true);
+        inflating = new InflaterInputStream(storedStream, inflater, 8192);
+        inflating.skipNBytes(position - frame * frameSize);
+    }
+
+    private int frameOf(long position) {
+        return (int) Math.min(position / frameSize, frameOffsets.size() - 1);
+    }
+
+    private void endInflating() {
+        if (inflater != null) inflater.end();
+        inflater = null;
+        inflating = null;
+    }
+
+    /**
+     * Keeps track of how far the stored content has been read, including what the inflater read ahead.
+     */
+    private static final class StoredStream extends FilterInputStream {
+
+        private long position;
+
+        StoredStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) position++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = in.read(b, off, len);
+            if (read > 0) position += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(n);
+            position += skipped;
+            return skipped;
+        }
+
+    }
+
+}
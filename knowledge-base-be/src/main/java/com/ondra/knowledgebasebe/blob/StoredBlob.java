@@ -0,0 +1,6 @@
+package com.ondra.knowledgebasebe.blob;
+
+import org.bson.types.ObjectId;
+
+public record StoredBlob(ObjectId id, String sha256) {
+}
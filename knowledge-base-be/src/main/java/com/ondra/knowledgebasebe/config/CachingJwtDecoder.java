@@ -0,0 +1,95 @@
+package com.ondra.knowledgebasebe.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Remembers tokens that the delegate has already verified, so a client that sends the same token with
+ * every request does not pay for the signature check each time. Entries are keyed by the SHA-256 hash of
+ * the token, are dropped once the token expires, and at most {@code maxEntries} of them are kept; the least
+ * recently used ones are evicted first. Tokens without an expiry are never cached.
+ */
+public class CachingJwtDecoder implements JwtDecoder {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Jwt> verifiedTokens = new LinkedHashMap<>(16, 0.75f, true);
+    private final JwtDecoder delegate;
+    private final Clock clock;
+    private final int maxEntries;
+    private final Counter hits;
+    private final Counter misses;
+
+    public CachingJwtDecoder(JwtDecoder delegate, MeterRegistry meterRegistry, int maxEntries) {
+        this(delegate, meterRegistry, Clock.systemUTC(), maxEntries);
+    }
+
+    CachingJwtDecoder(JwtDecoder delegate, MeterRegistry meterRegistry, Clock clock, int maxEntries) {
+        this.delegate = delegate;
+        this.clock = clock;
+        this.maxEntries = maxEntries;
+        this.hits = meterRegistry.counter("security.jwt.cache.requests", "result", "hit");
+        this.misses = meterRegistry.counter("security.jwt.cache.requests", "result", "miss");
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        String tokenHash = sha256(token);
+        Jwt cachedJwt = findUnexpired(tokenHash);
+        if (cachedJwt != null) {
+            hits.increment();
+            return cachedJwt;
+        }
+        misses.increment();
+        Jwt jwt = delegate.decode(token);
+        if (jwt.getExpiresAt() != null) remember(tokenHash, jwt);
+        return jwt;
+    }
+
+    private Jwt findUnexpired(String tokenHash) {
+        lock.lock();
+        try {
+            Jwt jwt = verifiedTokens.get(tokenHash);
+            if (jwt == null) return null;
+            if (clock.instant().isBefore(jwt.getExpiresAt())) return jwt;
+            verifiedTokens.remove(tokenHash);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remember(String tokenHash, Jwt jwt) {
+        lock.lock();
+        try {
+            verifiedTokens.put(tokenHash, jwt);
+            Iterator<String> leastRecentlyUsed = verifiedTokens.keySet().iterator();
+            while (verifiedTokens.size() > maxEntries) {
+                leastRecentlyUsed.next();
+                leastRecentlyUsed.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static String sha256(String token) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported", ex);
+        }
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.ondra.knowledgebasebe.config;
+
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSBuckets;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+
+@Configuration
+public class GridFsConfig {
+
+    @Bean
+    GridFSBucket gridFSBucket(MongoDatabaseFactory mongoDatabaseFactory) {
+        return GridFSBuckets.create(mongoDatabaseFactory.getMongoDatabase(), "blobs");
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.ondra.knowledgebasebe.config;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+import java.text.ParseException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the signing keys of the issuer in memory and refreshes them every
+ * {@code security.jwt.jwks.refresh-interval} in the background. Requests are always served from the keys
+ * at hand, even if they are stale, and a refresh that fails keeps the old keys. The key set is only fetched
+ * on the request path when there is none yet, or when a token names a key that is not known yet because
+ * the issuer rotated its keys; the latter happens at most once every
+ * {@code security.jwt.jwks.min-refresh-interval}, so tokens with made-up key IDs cannot flood the issuer.
+ */
+@Component
+public class JwksKeySource implements JWKSource<SecurityContext> {
+
+    Logger logger = LoggerFactory.getLogger(JwksKeySource.class);
+
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final RestClient restClient;
+    private final String jwkSetUri;
+    private final Duration minRefreshInterval;
+    private final Clock clock;
+
+    private volatile JWKSet jwkSet;
+    private volatile Instant lastRefreshAttempt = Instant.MIN;
+
+    @Autowired
+    public JwksKeySource(
+        @Value("${security.jwt.jwk-set-uri}") String jwkSetUri,
+        @Value("${security.jwt.jwks.min-refresh-interval}") Duration minRefreshInterval,
+        @Value("${security.jwt.jwks.timeout}") Duration timeout
+    ) {
+        this(jwkSetUri, minRefreshInterval, timeout, Clock.systemUTC());
+    }
+
+    JwksKeySource(String jwkSetUri, Duration minRefreshInterval, Duration timeout, Clock clock) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeout);
+        requestFactory.setReadTimeout(timeout);
+        this.restClient = RestClient.builder().requestFactory(requestFactory).build();
+        this.jwkSetUri = jwkSetUri;
+        this.minRefreshInterval = minRefreshInterval;
+        this.clock = clock;
+    }
+
+    @Override
+    public List<JWK> get(JWKSelector jwkSelector, SecurityContext context) throws KeySourceException {
+        JWKSet currentJwkSet = jwkSet;
+        if (currentJwkSet == null) currentJwkSet = refreshOnRequestPath(null);
+        List<JWK> keys = jwkSelector.select(currentJwkSet);
+        if (!keys.isEmpty()) return keys;
+        return jwkSelector.select(refreshOnRequestPath(currentJwkSet));
+    }
+
+    @Scheduled(fixedDelayString = "${security.jwt.jwks.refresh-interval}")
+    public void refreshInBackground() {
+        refreshLock.lock();
+        try {
+            refresh();
+        } catch (KeySourceException ex) {
+            logger.warn("Refreshing the JWK set failed, the cached keys are kept: " + ex.getMessage());
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private JWKSet refreshOnRequestPath(JWKSet seenJwkSet) throws KeySourceException {
+        refreshLock.lock();
+        try {
+            // another request may have refreshed the keys while this one was waiting for the lock
+            if (jwkSet != seenJwkSet) return jwkSet;
+            if (jwkSet != null && clock.instant().isBefore(lastRefreshAttempt.plus(minRefreshInterval))) return jwkSet;
+            return refresh();
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private JWKSet refresh() throws KeySourceException {
+        lastRefreshAttempt = clock.instant();
+        try {
+            JWKSet fetchedJwkSet = JWKSet.parse(restClient.get().uri(jwkSetUri).retrieve().body(String.class));
+            jwkSet = fetchedJwkSet;
+            return fetchedJwkSet;
+        } catch (ParseException | RuntimeException ex) {
+            throw new KeySourceException("Fetching the JWK set from " + jwkSetUri + " not possible", ex);
+        }
+    }
+
+}
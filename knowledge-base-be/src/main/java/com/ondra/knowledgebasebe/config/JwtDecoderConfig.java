@@ -0,0 +1,50 @@
+package com.ondra.knowledgebasebe.config;
+
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.oauth2.core.DelegatingOAuth2TokenValidator;
+import org.springframework.security.oauth2.jwt.JwtClaimNames;
+import org.springframework.security.oauth2.jwt.JwtClaimValidator;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+
+import java.util.List;
+
+/**
+ * Replaces the decoder of the Okta starter with one that verifies tokens against the keys held by the
+ * {@link JwksKeySource} and caches the verified tokens. Tokens are validated the same way: they have to be
+ * signed with RS256, be issued by {@code okta.oauth2.issuer} for {@code okta.oauth2.audience} and must not
+ * be expired.
+ */
+@Configuration
+public class JwtDecoderConfig {
+
+    @Bean
+    JwtDecoder jwtDecoder(
+        JwksKeySource jwksKeySource,
+        MeterRegistry meterRegistry,
+        @Value("${okta.oauth2.issuer}") String issuer,
+        @Value("${okta.oauth2.audience}") String audience,
+        @Value("${security.jwt.cache.max-entries}") int maxCachedTokens
+    ) {
+        DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+        jwtProcessor.setJWSKeySelector(new JWSVerificationKeySelector<>(JWSAlgorithm.RS256, jwksKeySource));
+        // the claims are checked by the validators below, like in every decoder built by Spring Security
+        jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {});
+
+        NimbusJwtDecoder verifyingJwtDecoder = new NimbusJwtDecoder(jwtProcessor);
+        verifyingJwtDecoder.setJwtValidator(new DelegatingOAuth2TokenValidator<>(
+            JwtValidators.createDefaultWithIssuer(issuer),
+            new JwtClaimValidator<List<String>>(JwtClaimNames.AUD, audiences -> audiences != null && audiences.contains(audience))
+        ));
+        return new CachingJwtDecoder(verifyingJwtDecoder, meterRegistry, maxCachedTokens);
+    }
+
+}
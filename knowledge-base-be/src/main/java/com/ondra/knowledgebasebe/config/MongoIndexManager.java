@@ -0,0 +1,208 @@
+package com.ondra.knowledgebasebe.config;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+
+/**
+ * Owns the indexes declared with {@code @Indexed} and {@code @CompoundIndex} on the documents. Before the
+ * application serves its first request, every declared index that does not exist yet is created and the
+ * indexes are verified; an index that cannot be created, such as a unique index over existing duplicates,
+ * is logged as an error instead of keeping the application from starting. Every
+ * {@code mongo.index-report.interval} the indexes are reported again: declared indexes that are missing,
+ * indexes that exist but are not declared, and indexes that have not been used since the server started.
+ */
+@Component
+public class MongoIndexManager implements SmartInitializingSingleton {
+
+    private static final String ID_INDEX = "_id_";
+    private static final String TEXT_KEY = "_fts";
+    private static final String TEXT_INDEX_VERSION_KEY = "_ftsx";
+
+    Logger logger = LoggerFactory.getLogger(MongoIndexManager.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final MongoMappingContext mappingContext;
+
+    public MongoIndexManager(MongoTemplate mongoTemplate, MongoMappingContext mappingContext) {
+        this.mongoTemplate = mongoTemplate;
+        this.mappingContext = mappingContext;
+    }
+
+    record DeclaredIndex(String collection, IndexDefinition definition) {
+
+        String keys() {
+            return keysOf(definition.getIndexKeys());
+        }
+
+        boolean unique() {
+            return Boolean.TRUE.equals(definition.getIndexOptions().get("unique"));
+        }
+
+        @Override
+        public String toString() {
+            return collection + " " + keys() + (unique() ? " (unique)" : "");
+        }
+
+    }
+
+    record ExistingIndex(String collection, String name, String keys, boolean unique) {
+
+        @Override
+        public String toString() {
+            return collection + "." + name + " " + keys + (unique ? " (unique)" : "");
+        }
+
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        ensureIndexes();
+    }
+
+    /**
+     * Creates the declared indexes that are missing and returns those that still could not be created.
+     */
+    List<DeclaredIndex> ensureIndexes() {
+        for (DeclaredIndex declaredIndex : findMissingIndexes()) {
+            try {
+                mongoTemplate.indexOps(declaredIndex.collection()).ensureIndex(declaredIndex.definition());
+                logger.info("Created index " + declaredIndex);
+            } catch (DataAccessException ex) {
+                logger.error("Creating index " + declaredIndex + " not possible: " + ex.getMessage());
+            }
+        }
+        List<DeclaredIndex> missingIndexes = findMissingIndexes();
+        if (missingIndexes.isEmpty()) logger.info("All declared indexes are present");
+        return missingIndexes;
+    }
+
+    @Scheduled(initialDelayString = "${mongo.index-report.interval}", fixedDelayString = "${mongo.index-report.interval}")
+    public void reportIndexes() {
+        findMissingIndexes().forEach(index -> logger.error("Declared index " + index + " is missing"));
+        findUndeclaredIndexes().forEach(index -> logger.warn("Index " + index + " is not declared on any document"));
+        findUnusedIndexes().forEach(index -> logger.warn("Index " + index + " has not been used since the server started"));
+    }
+
+    List<DeclaredIndex> findMissingIndexes() {
+        List<DeclaredIndex> missingIndexes = new ArrayList<>();
+        for (DeclaredIndex declaredIndex : findDeclaredIndexes()) {
+            boolean present = findExistingIndexes(declaredIndex.collection()).stream()
+                .anyMatch(index -> index.keys().equals(declaredIndex.keys()) && index.unique() == declaredIndex.unique());
+            if (!present) missingIndexes.add(declaredIndex);
+        }
+        return missingIndexes;
+    }
+
+    List<ExistingIndex> findUndeclaredIndexes() {
+        List<DeclaredIndex> declaredIndexes = findDeclaredIndexes();
+        List<ExistingIndex> undeclaredIndexes = new ArrayList<>();
+        for (String collection : findCollections()) {
+            for (ExistingIndex index : findExistingIndexes(collection)) {
+                boolean declared = declaredIndexes.stream()
+                    .anyMatch(declaredIndex -> declaredIndex.collection().equals(collection) && declaredIndex.keys().equals(index.keys()));
+                if (!declared && !index.name().equals(ID_INDEX)) undeclaredIndexes.add(index);
+            }
+        }
+        return undeclaredIndexes;
+    }
+
+    /**
+     * The usage counters of {@code $indexStats} start at zero whenever the server restarts or the index is
+     * rebuilt, so an index is only reported as unused after its counter had time to grow.
+     */
+    List<ExistingIndex> findUnusedIndexes() {
+        List<ExistingIndex> unusedIndexes = new ArrayList<>();
+        for (String collection : findCollections()) {
+            Set<String> unusedNames = mongoTemplate.aggregate(newAggregation(context -> new Document("$indexStats", new Document())), collection, Document.class)
+                .getMappedResults().stream()
+                .filter(stats -> ((Number) stats.get("accesses", Document.class).get("ops")).longValue() == 0)
+                .map(stats -> stats.getString("name"))
+                .collect(Collectors.toSet());
+            findExistingIndexes(collection).stream()
+                .filter(index -> unusedNames.contains(index.name()) && !index.name().equals(ID_INDEX))
+                .forEach(unusedIndexes::add);
+        }
+        return unusedIndexes;
+    }
+
+    private List<DeclaredIndex> findDeclaredIndexes() {
+        IndexResolver indexResolver = IndexResolver.create(mappingContext);
+        List<DeclaredIndex> declaredIndexes = new ArrayList<>();
+        for (MongoPersistentEntity<?> entity : findDocumentEntities()) {
+            indexResolver.resolveIndexFor(entity.getType())
+                .forEach(definition -> declaredIndexes.add(new DeclaredIndex(entity.getCollection(), definition)));
+        }
+        return declaredIndexes;
+    }
+
+    private Set<String> findCollections() {
+        return findDocumentEntities().stream()
+            .map(MongoPersistentEntity::getCollection)
+            .filter(mongoTemplate::collectionExists)
+            .collect(Collectors.toSet());
+    }
+
+    /**
+     * Only the entities that are stored in a collection of their own, not the ones embedded in them.
+     */
+    private List<MongoPersistentEntity<?>> findDocumentEntities() {
+        return mappingContext.getPersistentEntities().stream()
+            .filter(entity -> entity.isAnnotationPresent(org.springframework.data.mongodb.core.mapping.Document.class))
+            .toList();
+    }
+
+    private List<ExistingIndex> findExistingIndexes(String collection) {
+        List<ExistingIndex> existingIndexes = new ArrayList<>();
+        for (Document index : mongoTemplate.getCollection(collection).listIndexes()) {
+            existingIndexes.add(new ExistingIndex(
+                collection,
+                index.getString("name"),
+                keysOf(declaredKeysOf(index)),
+                Boolean.TRUE.equals(index.getBoolean("unique"))
+            ));
+        }
+        return existingIndexes;
+    }
+
+    /**
+     * The server lists a text index with the internal keys {@code _fts} and {@code _ftsx} in place of its
+     * text fields, which are named in its weights instead; they are put back as they are declared.
+     */
+    private static Document declaredKeysOf(Document index) {
+        Document keys = index.get("key", Document.class);
+        if (!keys.containsKey(TEXT_KEY)) return keys;
+        Document declaredKeys = new Document();
+        keys.forEach((field, direction) -> {
+            if (field.equals(TEXT_KEY)) index.get("weights", Document.class).keySet().forEach(textField -> declaredKeys.put(textField, "text"));
+            else if (!field.equals(TEXT_INDEX_VERSION_KEY)) declaredKeys.put(field, direction);
+        });
+        return declaredKeys;
+    }
+
+    /**
+     * The server may return the direction of a key as a double even if it was declared as an integer.
+     */
+    private static String keysOf(Document keys) {
+        return keys.entrySet().stream()
+            .map(key -> key.getKey() + ":" + (key.getValue() instanceof Number direction ? direction.intValue() : key.getValue()))
+            .collect(Collectors.joining(", ", "{", "}"));
+    }
+
+}
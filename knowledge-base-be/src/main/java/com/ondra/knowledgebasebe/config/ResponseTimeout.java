@@ -0,0 +1,29 @@
+package com.ondra.knowledgebasebe.config;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Hands the response timeout of the Gotenberg request that is about to be sent on the current thread to the
+ * HTTP client, which only gets to see the request once the {@code RestClient} executes it.
+ */
+public final class ResponseTimeout {
+
+    private static final ThreadLocal<Duration> CURRENT = new ThreadLocal<>();
+
+    private ResponseTimeout() {
+    }
+
+    public static void set(Duration responseTimeout) {
+        CURRENT.set(responseTimeout);
+    }
+
+    public static void clear() {
+        CURRENT.remove();
+    }
+
+    static Optional<Duration> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+}
@@ -1,22 +1,86 @@
 package com.ondra.knowledgebasebe.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
 
+import java.time.Duration;
+import java.util.List;
+
 @Configuration
 public class RestClientConfig {
 
-    @Value("${gotenberg.host}")
-    private String gotenbergHost;
+    @Value("${gotenberg.endpoints}")
+    private List<String> gotenbergEndpoints;
+
+    @Value("${gotenberg.client.max-connections}")
+    private int maxConnections;
+
+    @Value("${gotenberg.client.connect-timeout}")
+    private Duration connectTimeout;
+
+    @Value("${gotenberg.client.pool-wait-timeout}")
+    private Duration poolWaitTimeout;
+
+    @Value("${gotenberg.client.response-timeout}")
+    private Duration responseTimeout;
+
+    @Value("${gotenberg.client.keep-alive}")
+    private Duration keepAlive;
 
-    @Value("${gotenberg.port}")
-    private String gotenbergPort;
+    @Bean
+    PoolingHttpClientConnectionManager gotenbergConnectionManager(MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManager connectionManager = new TimedPoolingConnectionManager(meterRegistry.timer("gotenberg.client.pool.wait"));
+        connectionManager.setMaxTotal(maxConnections * gotenbergEndpoints.size());
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+        connectionManager.setDefaultConnectionConfig(ConnectionConfig.custom()
+            .setConnectTimeout(timeout(connectTimeout))
+            .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+            .build());
+        new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "gotenberg").bindTo(meterRegistry);
+        return connectionManager;
+    }
 
     @Bean
-    RestClient restClient(RestClient.Builder builder) {
-        return builder.baseUrl("http://" + gotenbergHost + ":" + gotenbergPort).build();
+    RestClient restClient(RestClient.Builder builder, PoolingHttpClientConnectionManager gotenbergConnectionManager) {
+        CloseableHttpClient httpClient = HttpClients.custom()
+            .setConnectionManager(gotenbergConnectionManager)
+            .evictExpiredConnections()
+            .evictIdleConnections(TimeValue.ofMilliseconds(keepAlive.toMillis()))
+            .build();
+        HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        requestFactory.setHttpContextFactory((httpMethod, uri) -> requestContext());
+        return builder.requestFactory(requestFactory).build();
+    }
+
+    /**
+     * Conversions of large files legitimately take longer, so the response timeout is chosen per request
+     * (see {@link ResponseTimeout}); requests that do not set one get {@code gotenberg.client.response-timeout}.
+     */
+    private HttpClientContext requestContext() {
+        HttpClientContext context = HttpClientContext.create();
+        context.setRequestConfig(RequestConfig.custom()
+            .setConnectionRequestTimeout(timeout(poolWaitTimeout))
+            .setResponseTimeout(timeout(ResponseTimeout.current().orElse(responseTimeout)))
+            .setConnectionKeepAlive(TimeValue.ofMilliseconds(keepAlive.toMillis()))
+            .build());
+        return context;
+    }
+
+    private static Timeout timeout(Duration duration) {
+        return Timeout.ofMilliseconds(duration.toMillis());
     }
 
 }
@@ -0,0 +1,17 @@
+package com.ondra.knowledgebasebe.config;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a handler method parameter to the ID of the authenticated user, which is the subject of the JWT
+ * that Spring Security has already verified for the request.
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface UserId {
+}
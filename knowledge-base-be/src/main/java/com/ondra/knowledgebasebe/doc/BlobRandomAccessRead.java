@@ -0,0 +1,132 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.BlobResource;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.io.RandomAccessReadView;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Gives PDFBox random access to a stored blob without transferring the whole blob. The blob is read in
+ * blocks of {@link #BLOCK_SIZE} bytes, each fetched with {@link BlobResource#read}, which queries just the
+ * GridFS chunks the block lies in and, for a compressed blob, inflates only the frame it lies in. The
+ * {@link #CACHED_BLOCKS} most recently used blocks are kept, as PDFBox reads objects that lie close
+ * together one after the other.
+ */
+final class BlobRandomAccessRead implements RandomAccessRead {
+
+    static final int BLOCK_SIZE = 64 * 1024;
+    static final int CACHED_BLOCKS = 16;
+
+    private final BlobResource blob;
+    private final long length;
+    private final Map<Long, byte[]> blocks = new LinkedHashMap<>(CACHED_BLOCKS, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+            return size() > CACHED_BLOCKS;
+        }
+    };
+
+    private long position;
+    private boolean closed;
+
+    BlobRandomAccessRead(BlobResource blob) {
+        this.blob = blob;
+        this.length = blob.contentLength();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (isEOF()) return -1;
+        byte[] block = block(position / BLOCK_SIZE);
+        return block[(int) (position++ % BLOCK_SIZE)] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int offset, int length) throws IOException {
+        if (length == 0) return 0;
+        if (isEOF()) return -1;
+        byte[] block = block(position / BLOCK_SIZE);
+        int offsetInBlock = (int) (position % BLOCK_SIZE);
+        int read = Math.min(length, block.length - offsetInBlock);
+        System.arraycopy(block, offsetInBlock, b, offset, read);
+        position += read;
+        return read;
+    }
+
+    @Override
+    public int peek() throws IOException {
+        int b = read();
+        if (b >= 0) position--;
+        return b;
+    }
+
+    @Override
+    public void rewind(int bytes) throws IOException {
+        seek(position - bytes);
+    }
+
+    @Override
+    public int available() throws IOException {
+        checkOpen();
+        return (int) Math.min(length - position, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public long getPosition() throws IOException {
+        checkOpen();
+        return position;
+    }
+
+    @Override
+    public void seek(long position) throws IOException {
+        checkOpen();
+        if (position < 0) throw new IOException("Invalid position " + position);
+        this.position = Math.min(position, length);
+    }
+
+    @Override
+    public long length() throws IOException {
+        checkOpen();
+        return length;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public boolean isEOF() throws IOException {
+        checkOpen();
+        return position >= length;
+    }
+
+    @Override
+    public RandomAccessReadView createView(long startPosition, long streamLength) throws IOException {
+        checkOpen();
+        return new RandomAccessReadView(this, startPosition, streamLength);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        blocks.clear();
+    }
+
+    private byte[] block(long index) throws IOException {
+        byte[] block = blocks.get(index);
+        if (block != null) return block;
+        long start = index * BLOCK_SIZE;
+        block = blob.read(start, (int) Math.min(BLOCK_SIZE, length - start));
+        blocks.put(index, block);
+        return block;
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) throw new IOException("Blob '" + blob.getId() + "' is already closed");
+    }
+
+}
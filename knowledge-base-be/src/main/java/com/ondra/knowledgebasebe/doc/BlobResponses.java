@@ -0,0 +1,123 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.BlobResource;
+import org.bson.types.ObjectId;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.ResponseEntity;
+
+import java.net.URI;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.springframework.http.HttpHeaders.ACCEPT_RANGES;
+import static org.springframework.http.HttpHeaders.CONTENT_LOCATION;
+import static org.springframework.http.HttpHeaders.CONTENT_RANGE;
+import static org.springframework.http.HttpHeaders.IF_RANGE;
+import static org.springframework.http.HttpStatus.NOT_MODIFIED;
+import static org.springframework.http.HttpStatus.PARTIAL_CONTENT;
+import static org.springframework.http.HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE;
+
+/**
+ * Builds download responses for blobs. The blob is streamed into the response instead of being loaded
+ * up front, and {@code Range} requests are answered with {@code 206 Partial Content} so that viewers
+ * can fetch a file incrementally. An {@code If-Range} validator that no longer matches the blob turns
+ * the request back into a request for the whole file.
+ * <p>
+ * Blobs never change once stored, so the blob ID serves as a strong {@code ETag}. A request whose
+ * {@code If-None-Match} names the blob is answered with {@code 304 Not Modified} before the blob is
+ * even looked up.
+ * <p>
+ * Blobs gzipped in frames are sent decompressed and answer ranges like any other blob, as only the frame a
+ * range starts in has to be inflated up to it. They are never sent gzipped: PDF.js stops fetching a PDF by
+ * range as soon as its response carries a {@code Content-Encoding}.
+ */
+final class BlobResponses {
+
+    private BlobResponses() {
+    }
+
+    static ResponseEntity<?> of(ObjectId blobId, Supplier<BlobResource> blobSupplier, HttpHeaders requestHeaders, CacheControl cacheControl, URI contentLocation) {
+        String eTag = "\"" + blobId.toHexString() + "\"";
+        if (ifNoneMatchMatches(requestHeaders, eTag)) {
+            return withValidators(ResponseEntity.status(NOT_MODIFIED), eTag, cacheControl, contentLocation).build();
+        }
+
+        BlobResource blob = blobSupplier.get();
+        long lastModified = blob.lastModified();
+
+        List<HttpRange> ranges;
+        try {
+            ranges = requestHeaders.getRange();
+        } catch (IllegalArgumentException ex) {
+            // a malformed Range header is ignored, as if it had not been sent
+            ranges = List.of();
+        }
+
+        if (ranges.isEmpty()) {
+            return withValidators(ResponseEntity.ok(), eTag, cacheControl, contentLocation)
+                .header(ACCEPT_RANGES, "bytes")
+                .lastModified(lastModified)
+                .body(blob);
+        }
+
+        if (!ifRangeMatches(requestHeaders, eTag, lastModified)) {
+            // wrapped so that the range handling of Spring MVC does not kick in for the stale Range header
+            return withValidators(ResponseEntity.ok(), eTag, cacheControl, contentLocation)
+                .header(ACCEPT_RANGES, "bytes")
+                .lastModified(lastModified)
+                .contentLength(blob.contentLength())
+                .body(new InputStreamResource(blob.getInputStream()));
+        }
+
+        List<ResourceRegion> regions;
+        try {
+            regions = HttpRange.toResourceRegions(ranges, blob.forRangeReads());
+        } catch (IllegalArgumentException ex) {
+            return ResponseEntity.status(REQUESTED_RANGE_NOT_SATISFIABLE)
+                .header(ACCEPT_RANGES, "bytes")
+                .header(CONTENT_RANGE, "bytes */" + blob.contentLength())
+                .build();
+        }
+
+        ResponseEntity.BodyBuilder partialContent = withValidators(ResponseEntity.status(PARTIAL_CONTENT), eTag, cacheControl, contentLocation)
+            .header(ACCEPT_RANGES, "bytes")
+            .lastModified(lastModified);
+        return regions.size() == 1 ? partialContent.body(regions.getFirst()) : partialContent.body(regions);
+    }
+
+    private static ResponseEntity.BodyBuilder withValidators(ResponseEntity.BodyBuilder builder, String eTag, CacheControl cacheControl, URI contentLocation) {
+        builder.eTag(eTag).cacheControl(cacheControl);
+        if (contentLocation != null) builder.header(CONTENT_LOCATION, contentLocation.toString());
+        return builder;
+    }
+
+    /**
+     * {@code If-None-Match} is compared weakly, as the specification asks for.
+     */
+    static boolean ifNoneMatchMatches(HttpHeaders requestHeaders, String eTag) {
+        List<String> ifNoneMatch;
+        try {
+            ifNoneMatch = requestHeaders.getIfNoneMatch();
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+        return ifNoneMatch.stream().anyMatch(tag -> tag.equals("*") || tag.equals(eTag) || tag.equals("W/" + eTag));
+    }
+
+    private static boolean ifRangeMatches(HttpHeaders requestHeaders, String eTag, long lastModified) {
+        String ifRange = requestHeaders.getFirst(IF_RANGE);
+        if (ifRange == null) return true;
+        if (ifRange.startsWith("W/")) return false;
+        if (ifRange.startsWith("\"")) return ifRange.equals(eTag);
+        try {
+            return requestHeaders.getFirstDate(IF_RANGE) == lastModified / 1000 * 1000;
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.BlobStore;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.Optional;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Remembers the PDF that Gotenberg produced for a DOCX, keyed by the SHA-256 hash of the DOCX, so that
+ * uploading the same file again does not trigger another conversion. Every entry holds a reference on its
+ * PDF blob. Every {@code conversion.cache.eviction-interval} the cache is trimmed back to
+ * {@code conversion.cache.max-entries} entries, evicting the least recently used ones first, so inserting an
+ * entry never has to count the entries.
+ */
+@Component
+public class ConversionCache {
+
+    private final MongoTemplate mongoTemplate;
+    private final BlobStore blobStore;
+    private final Clock clock;
+    private final long maxEntries;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public ConversionCache(
+        MongoTemplate mongoTemplate,
+        BlobStore blobStore,
+        MeterRegistry meterRegistry,
+        @Value("${conversion.cache.max-entries}") long maxEntries
+    ) {
+        this(mongoTemplate, blobStore, meterRegistry, Clock.systemUTC(), maxEntries);
+    }
+
+    ConversionCache(MongoTemplate mongoTemplate, BlobStore blobStore, MeterRegistry meterRegistry, Clock clock, long maxEntries) {
+        this.mongoTemplate = mongoTemplate;
+        this.blobStore = blobStore;
+        this.clock = clock;
+        this.maxEntries = maxEntries;
+        this.hits = meterRegistry.counter("conversion.cache.requests", "result", "hit");
+        this.misses = meterRegistry.counter("conversion.cache.requests", "result", "miss");
+    }
+
+    /**
+     * Returns the cached PDF for the given DOCX hash, if there is one. The caller receives its own reference
+     * on the PDF blob and has to release it like any other stored blob.
+     */
+    public Optional<ObjectId> acquireCachedPdf(String docxHash) {
+        ConversionCacheEntry entry = mongoTemplate.findAndModify(
+            query(where("_id").is(docxHash)),
+            new Update().set("lastAccessedAt", clock.instant()),
+            FindAndModifyOptions.options().returnNew(true),
+            ConversionCacheEntry.class
+        );
+        if (entry == null || !blobStore.acquire(entry.getPdfFileId())) {
+            // entries cached before blobs were reference counted own a plain copy and are dropped
+            if (entry != null) remove(entry);
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(entry.getPdfFileId());
+    }
+
+    public void put(String docxHash, ObjectId pdfFileId) {
+        if (!blobStore.acquire(pdfFileId)) return;
+        try {
+            mongoTemplate.insert(new ConversionCacheEntry(docxHash, pdfFileId, clock.instant()));
+        } catch (DuplicateKeyException ex) {
+            // the same DOCX was converted concurrently and is already cached
+            blobStore.release(pdfFileId);
+        }
+    }
+
+    /**
+     * The number of entries is taken from the collection metadata instead of being counted, it may be off
+     * slightly after an unclean shutdown, which only shifts when the next entries are evicted.
+     */
+    @Scheduled(fixedDelayString = "${conversion.cache.eviction-interval}")
+    public void evictLeastRecentlyUsed() {
+        long excessEntries = mongoTemplate.estimatedCount(ConversionCacheEntry.class) - maxEntries;
+        if (excessEntries <= 0) return;
+        Query leastRecentlyUsed = new Query().with(Sort.by("lastAccessedAt")).limit((int) excessEntries);
+        mongoTemplate.find(leastRecentlyUsed, ConversionCacheEntry.class).forEach(this::remove);
+    }
+
+    private void remove(ConversionCacheEntry entry) {
+        Query sameEntry = query(where("_id").is(entry.getDocxHash()).and("pdfFileId").is(entry.getPdfFileId()));
+        if (mongoTemplate.remove(sameEntry, ConversionCacheEntry.class).getDeletedCount() > 0) {
+            blobStore.release(entry.getPdfFileId());
+        }
+    }
+
+}
@@ -0,0 +1,37 @@
+package com.ondra.knowledgebasebe.doc;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Document(collection = "conversionCache")
+public class ConversionCacheEntry {
+
+    @Id
+    private final String docxHash;
+    private final ObjectId pdfFileId;
+    @Indexed
+    private final Instant lastAccessedAt;
+
+    public ConversionCacheEntry(String docxHash, ObjectId pdfFileId, Instant lastAccessedAt) {
+        this.docxHash = docxHash;
+        this.pdfFileId = pdfFileId;
+        this.lastAccessedAt = lastAccessedAt;
+    }
+
+    public String getDocxHash() {
+        return docxHash;
+    }
+
+    public ObjectId getPdfFileId() {
+        return pdfFileId;
+    }
+
+    public Instant getLastAccessedAt() {
+        return lastAccessedAt;
+    }
+
+}
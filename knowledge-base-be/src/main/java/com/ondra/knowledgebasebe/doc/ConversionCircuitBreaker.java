@@ -0,0 +1,153 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.ConversionUnavailableException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Stops sending conversions to Gotenberg while it keeps failing. After
+ * {@code gotenberg.circuit-breaker.failure-threshold} failures in a row, where Gotenberg did not answer or
+ * answered 5xx, the circuit opens and every conversion is rejected at once with a
+ * {@link ConversionUnavailableException}. Once
+ * {@code gotenberg.circuit-breaker.open-duration} has passed, the circuit is half open and lets
+ * {@code gotenberg.circuit-breaker.half-open-trial-calls} conversions through; the first of them to succeed
+ * closes the circuit again, the first to fail opens it for another round.
+ */
+@Component
+public class ConversionCircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    Logger logger = LoggerFactory.getLogger(ConversionCircuitBreaker.class);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+    private final int failureThreshold;
+    private final Duration openDuration;
+    private final int halfOpenTrialCalls;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private int trialCallsInFlight;
+    private Instant openedAt;
+
+    @Autowired
+    public ConversionCircuitBreaker(
+        MeterRegistry meterRegistry,
+        @Value("${gotenberg.circuit-breaker.failure-threshold}") int failureThreshold,
+        @Value("${gotenberg.circuit-breaker.open-duration}") Duration openDuration,
+        @Value("${gotenberg.circuit-breaker.half-open-trial-calls}") int halfOpenTrialCalls
+    ) {
+        this(meterRegistry, Clock.systemUTC(), failureThreshold, openDuration, halfOpenTrialCalls);
+    }
+
+    ConversionCircuitBreaker(MeterRegistry meterRegistry, Clock clock, int failureThreshold, Duration openDuration, int halfOpenTrialCalls) {
+        this.meterRegistry = meterRegistry;
+        this.clock = clock;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.halfOpenTrialCalls = halfOpenTrialCalls;
+        for (State gaugedState : State.values()) {
+            Gauge.builder("gotenberg.circuit-breaker.state", this, breaker -> breaker.getState() == gaugedState ? 1 : 0)
+                .tag("state", gaugedState.name().toLowerCase())
+                .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Lets one conversion through or rejects it when the circuit is open. Every call that does not throw has
+     * to be followed by exactly one {@link #onSuccess}, {@link #onFailure} or {@link #onAbandoned}.
+     */
+    public void acquirePermission() {
+        lock.lock();
+        try {
+            if (state == State.OPEN) {
+                Duration remaining = Duration.between(clock.instant(), openedAt.plus(openDuration));
+                if (remaining.isPositive()) throw new ConversionUnavailableException(roundUpToSeconds(remaining));
+                transitionTo(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialCallsInFlight >= halfOpenTrialCalls) throw new ConversionUnavailableException(Duration.ofSeconds(1));
+                trialCallsInFlight++;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a conversion that Gotenberg answered properly, which includes rejecting an invalid DOCX.
+     */
+    public void onSuccess() {
+        lock.lock();
+        try {
+            consecutiveFailures = 0;
+            if (state == State.HALF_OPEN) transitionTo(State.CLOSED);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a conversion that failed because Gotenberg could not be reached or was not able to answer.
+     */
+    public void onFailure() {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN) {
+                transitionTo(State.OPEN);
+            } else if (state == State.CLOSED && ++consecutiveFailures >= failureThreshold) {
+                transitionTo(State.OPEN);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands the permission back for a conversion that never reached Gotenberg, so it tells nothing about it.
+     */
+    public void onAbandoned() {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN && trialCallsInFlight > 0) trialCallsInFlight--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    State getState() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void transitionTo(State newState) {
+        logger.warn("Gotenberg circuit breaker changed from " + state + " to " + newState);
+        meterRegistry.counter("gotenberg.circuit-breaker.transitions", "from", state.name().toLowerCase(), "to", newState.name().toLowerCase()).increment();
+        state = newState;
+        consecutiveFailures = 0;
+        trialCallsInFlight = 0;
+        if (newState == State.OPEN) openedAt = clock.instant();
+    }
+
+    private static Duration roundUpToSeconds(Duration duration) {
+        long seconds = duration.getSeconds() + (duration.getNano() > 0 ? 1 : 0);
+        return Duration.ofSeconds(Math.max(1, seconds));
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.config.ResponseTimeout;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Gotenberg instances that conversions are spread across. Every conversion goes to the instance with the
+ * fewest outstanding conversions. An instance is ejected after {@code gotenberg.health.failure-threshold}
+ * consecutive failed conversions or health probes, and is only re-admitted once a probe of its
+ * {@code /health} endpoint succeeds again. If every instance is ejected, all of them are used anyway, since
+ * refusing every conversion would not be any better.
+ */
+@Component
+public class ConversionEndpoints {
+
+    Logger logger = LoggerFactory.getLogger(ConversionEndpoints.class);
+
+    private final RestClient restClient;
+    private final List<Endpoint> endpoints;
+    private final int failureThreshold;
+    private final Duration probeTimeout;
+    private final AtomicInteger nextCandidate = new AtomicInteger();
+
+    public ConversionEndpoints(
+        RestClient restClient,
+        MeterRegistry meterRegistry,
+        @Value("${gotenberg.endpoints}") List<String> baseUrls,
+        @Value("${gotenberg.health.failure-threshold}") int failureThreshold,
+        @Value("${gotenberg.health.timeout}") Duration probeTimeout
+    ) {
+        this.restClient = restClient;
+        this.endpoints = baseUrls.stream().map(String::trim).map(Endpoint::new).toList();
+        this.failureThreshold = failureThreshold;
+        this.probeTimeout = probeTimeout;
+        for (Endpoint endpoint : endpoints) {
+            Gauge.builder("gotenberg.endpoint.outstanding", endpoint.outstanding, AtomicInteger::get)
+                .tag("endpoint", endpoint.baseUrl)
+                .register(meterRegistry);
+            Gauge.builder("gotenberg.endpoint.ejected", endpoint, e -> e.ejected ? 1 : 0)
+                .tag("endpoint", endpoint.baseUrl)
+                .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Picks the endpoint for the next conversion. Every call has to be followed by exactly one
+     * {@link #release}.
+     */
+    public Endpoint acquire() {
+        List<Endpoint> candidates = endpoints.stream().filter(endpoint -> !endpoint.ejected).toList();
+        if (candidates.isEmpty()) candidates = endpoints;
+        // start at a rotating position so that endpoints with equally many outstanding conversions take turns
+        int start = Math.floorMod(nextCandidate.getAndIncrement(), candidates.size());
+        Endpoint selected = null;
+        for (int i = 0; i < candidates.size(); i++) {
+            Endpoint candidate = candidates.get((start + i) % candidates.size());
+            if (selected == null || candidate.outstanding.get() < selected.outstanding.get()) selected = candidate;
+        }
+        selected.outstanding.incrementAndGet();
+        return selected;
+    }
+
+    /**
+     * Hands back an endpoint taken by {@link #acquire}. Only conversions the instance did not answer properly, by
+     * timing out, being unreachable, breaking off the response or answering 5xx, count towards its ejection. A
+     * DOCX it rejects with a 4xx does not, and neither does a PDF that could not be stored on this side.
+     */
+    public void release(Endpoint endpoint, boolean answered) {
+        endpoint.outstanding.decrementAndGet();
+        if (answered) {
+            endpoint.consecutiveFailures.set(0);
+        } else {
+            recordFailure(endpoint, "conversion failed");
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${gotenberg.health.interval}")
+    public void probe() {
+        for (Endpoint endpoint : endpoints) {
+            if (isHealthy(endpoint)) {
+                endpoint.consecutiveFailures.set(0);
+                if (endpoint.ejected) {
+                    endpoint.ejected = false;
+                    logger.info("Gotenberg endpoint '" + endpoint.baseUrl + "' is healthy again and was re-admitted");
+                }
+            } else {
+                recordFailure(endpoint, "health probe failed");
+            }
+        }
+    }
+
+    private boolean isHealthy(Endpoint endpoint) {
+        ResponseTimeout.set(probeTimeout);
+        try {
+            return restClient.get().uri(endpoint.baseUrl + "/health").retrieve().toBodilessEntity().getStatusCode().is2xxSuccessful();
+        } catch (RuntimeException ex) {
+            return false;
+        } finally {
+            ResponseTimeout.clear();
+        }
+    }
+
+    private void recordFailure(Endpoint endpoint, String reason) {
+        if (endpoint.consecutiveFailures.incrementAndGet() < failureThreshold || endpoint.ejected) return;
+        endpoint.ejected = true;
+        logger.warn("Gotenberg endpoint '" + endpoint.baseUrl + "' was ejected, " + reason + " " + failureThreshold + " times in a row");
+    }
+
+    public static final class Endpoint {
+
+        private final String baseUrl;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private volatile boolean ejected;
+
+        private Endpoint(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        public String getBaseUrl() {
+            return baseUrl;
+        }
+
+        public boolean isEjected() {
+            return ejected;
+        }
+
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.ondra.knowledgebasebe.doc;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+@Document(collection = "conversionJobs")
+public class ConversionJob {
+
+    @Id
+    private final String id;
+    private final String docId;
+    private final ObjectId docxFileId;
+    private final String docxHash;
+    private final int attempts;
+    @Indexed
+    private final Instant availableAt;
+    private final String leaseOwner;
+    private final Instant leaseExpiresAt;
+
+    public ConversionJob(
+        String id,
+        String docId,
+        ObjectId docxFileId,
+        String docxHash,
+        int attempts,
+        Instant availableAt,
+        String leaseOwner,
+        Instant leaseExpiresAt
+    ) {
+        this.id = id;
+        this.docId = docId;
+        this.docxFileId = docxFileId;
+        this.docxHash = docxHash;
+        this.attempts = attempts;
+        this.availableAt = availableAt;
+        this.leaseOwner = leaseOwner;
+        this.leaseExpiresAt = leaseExpiresAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getDocId() {
+        return docId;
+    }
+
+    public ObjectId getDocxFileId() {
+        return docxFileId;
+    }
+
+    public String getDocxHash() {
+        return docxHash;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public Instant getAvailableAt() {
+        return availableAt;
+    }
+
+    public String getLeaseOwner() {
+        return leaseOwner;
+    }
+
+    public Instant getLeaseExpiresAt() {
+        return leaseExpiresAt;
+    }
+
+}
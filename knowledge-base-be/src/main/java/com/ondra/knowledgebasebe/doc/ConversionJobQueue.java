@@ -0,0 +1,107 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.StoredBlob;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * A queue of pending DOCX to PDF conversions stored in the {@code conversionJobs} collection. A worker
+ * claims a job by atomically taking a lease on it. The job is only removed once the worker completes it,
+ * so a job whose worker crashed becomes claimable again as soon as its lease has expired.
+ */
+@Component
+public class ConversionJobQueue {
+
+    private final MongoTemplate mongoTemplate;
+    private final Clock clock;
+    private final Duration leaseDuration;
+
+    @Autowired
+    public ConversionJobQueue(
+        MongoTemplate mongoTemplate,
+        @Value("${conversion.queue.lease-duration}") Duration leaseDuration
+    ) {
+        this(mongoTemplate, Clock.systemUTC(), leaseDuration);
+    }
+
+    ConversionJobQueue(MongoTemplate mongoTemplate, Clock clock, Duration leaseDuration) {
+        this.mongoTemplate = mongoTemplate;
+        this.clock = clock;
+        this.leaseDuration = leaseDuration;
+    }
+
+    /**
+     * Returns the ID of the job, which the caller cancels if the doc it converts cannot be saved after all.
+     */
+    public String enqueue(String docId, StoredBlob docxFile) {
+        String id = new ObjectId().toHexString();
+        mongoTemplate.insert(new ConversionJob(id, docId, docxFile.id(), docxFile.sha256(), 0, clock.instant(), null, null));
+        return id;
+    }
+
+    /**
+     * Removes the job whether or not a worker holds a lease on it, as the doc it would convert does not exist.
+     */
+    public void cancel(String jobId) {
+        mongoTemplate.remove(query(where("_id").is(jobId)), ConversionJob.class);
+    }
+
+    public Optional<ConversionJob> claim(String workerId) {
+        Instant now = clock.instant();
+        Query claimable = query(new Criteria().andOperator(
+            where("availableAt").lte(now),
+            new Criteria().orOperator(where("leaseExpiresAt").is(null), where("leaseExpiresAt").lt(now))
+        )).with(Sort.by("availableAt"));
+        Update lease = new Update()
+            .set("leaseOwner", workerId)
+            .set("leaseExpiresAt", now.plus(leaseDuration))
+            .inc("attempts", 1);
+        return Optional.ofNullable(mongoTemplate.findAndModify(
+            claimable, lease, FindAndModifyOptions.options().returnNew(true), ConversionJob.class
+        ));
+    }
+
+    public void complete(ConversionJob job) {
+        mongoTemplate.remove(leasedBy(job), ConversionJob.class);
+    }
+
+    public void retryLater(ConversionJob job, Duration delay) {
+        mongoTemplate.updateFirst(leasedBy(job), release(delay), ConversionJob.class);
+    }
+
+    /**
+     * Puts the job back like {@link #retryLater}, but takes back the attempt its claim counted, as the
+     * conversion never got to run. Otherwise a busy or unavailable Gotenberg would use up the job's attempts.
+     */
+    public void postpone(ConversionJob job, Duration delay) {
+        mongoTemplate.updateFirst(leasedBy(job), release(delay).inc("attempts", -1), ConversionJob.class);
+    }
+
+    private Update release(Duration delay) {
+        return new Update()
+            .set("availableAt", clock.instant().plus(delay))
+            .unset("leaseOwner")
+            .unset("leaseExpiresAt");
+    }
+
+    private Query leasedBy(ConversionJob job) {
+        return query(where("_id").is(job.getId()).and("leaseOwner").is(job.getLeaseOwner()));
+    }
+
+}
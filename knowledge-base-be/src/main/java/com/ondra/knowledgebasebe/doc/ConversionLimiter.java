@@ -0,0 +1,168 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.ConversionCapacityExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits how many conversions run in Gotenberg at the same time and learns the limit from the observed
+ * latency (AIMD). While conversions are about as fast as the fastest ones seen recently, the limit grows by
+ * one for every limit's worth of conversions; once they take more than {@link #LATENCY_TOLERANCE} times as
+ * long, or Gotenberg is overloaded, it shrinks by {@link #BACKOFF_RATIO}. A DOCX Gotenberg rejects and a
+ * PDF that cannot be stored say nothing about its load and leave the limit as it is. Conversions beyond the limit wait for a free slot for
+ * at most {@code conversion.limiter.max-wait}, and only {@code conversion.limiter.max-queued} of them may
+ * wait at all; everything else is rejected with a {@link ConversionCapacityExceededException}.
+ */
+@Component
+public class ConversionLimiter {
+
+    static final double LATENCY_TOLERANCE = 2.0;
+    static final double BACKOFF_RATIO = 0.9;
+    private static final double BASELINE_DRIFT = 0.01;
+    private static final double SMOOTHING = 0.2;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotReleased = lock.newCondition();
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueued;
+    private final Duration maxWait;
+    private final Counter rejections;
+
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private double baselineLatencyNanos;
+    private double smoothedLatencyNanos;
+
+    @Autowired
+    public ConversionLimiter(
+        MeterRegistry meterRegistry,
+        @Value("${conversion.limiter.initial-limit}") int initialLimit,
+        @Value("${conversion.limiter.min-limit}") int minLimit,
+        @Value("${conversion.limiter.max-limit}") int maxLimit,
+        @Value("${conversion.limiter.max-queued}") int maxQueued,
+        @Value("${conversion.limiter.max-wait}") Duration maxWait
+    ) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueued = maxQueued;
+        this.maxWait = maxWait;
+        this.rejections = meterRegistry.counter("conversion.limiter.rejections");
+        Gauge.builder("conversion.limiter.limit", this, ConversionLimiter::getLimit).register(meterRegistry);
+        Gauge.builder("conversion.limiter.in-flight", this, ConversionLimiter::getInFlight).register(meterRegistry);
+    }
+
+    /**
+     * Takes a slot for one conversion, waiting for one to become free if necessary. Every successful call
+     * has to be followed by exactly one {@link #release}.
+     */
+    public void acquire() {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return;
+            }
+            if (queued >= maxQueued) throw reject();
+            queued++;
+            try {
+                long remainingNanos = maxWait.toNanos();
+                while (inFlight >= (int) limit) {
+                    if (remainingNanos <= 0) throw reject();
+                    remainingNanos = slotReleased.awaitNanos(remainingNanos);
+                }
+                inFlight++;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw reject();
+            } finally {
+                queued--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void release(Duration latency, Outcome outcome) {
+        lock.lock();
+        try {
+            inFlight--;
+            adjustLimit(latency.toNanos(), outcome);
+            slotReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    double getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adjustLimit(long latencyNanos, Outcome outcome) {
+        smoothedLatencyNanos = smoothedLatencyNanos == 0 ? latencyNanos : smoothedLatencyNanos + SMOOTHING * (latencyNanos - smoothedLatencyNanos);
+        if (outcome == Outcome.OVERLOADED) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            return;
+        }
+        // a rejection is usually quick and would drag the baseline below what real conversions take, and an
+        // aborted conversion ended on this side, at whatever point storing the PDF failed
+        if (outcome == Outcome.REJECTED || outcome == Outcome.ABORTED) return;
+        // the baseline follows new minimums at once and slowly drifts up otherwise, so it recovers from outliers
+        baselineLatencyNanos = baselineLatencyNanos == 0 || latencyNanos < baselineLatencyNanos
+            ? latencyNanos
+            : baselineLatencyNanos + BASELINE_DRIFT * (latencyNanos - baselineLatencyNanos);
+        if (latencyNanos > LATENCY_TOLERANCE * baselineLatencyNanos) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        } else if (inFlight + 1 >= limit / 2) {
+            // only grow while the limit is actually in use, otherwise it would grow without any evidence
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    private ConversionCapacityExceededException reject() {
+        rejections.increment();
+        long retryAfterSeconds = Math.max(1, (long) Math.ceil(smoothedLatencyNanos / 1_000_000_000));
+        return new ConversionCapacityExceededException(Duration.ofSeconds(retryAfterSeconds));
+    }
+
+    public enum Outcome {
+
+        /** Gotenberg returned the PDF. */
+        SUCCEEDED,
+
+        /** Gotenberg answered, but refused the DOCX with a 4xx. */
+        REJECTED,
+
+        /** Gotenberg answered, but the PDF could not be stored, which says nothing about Gotenberg. */
+        ABORTED,
+
+        /** Gotenberg timed out, could not be reached or answered 5xx. */
+        OVERLOADED
+
+    }
+
+}
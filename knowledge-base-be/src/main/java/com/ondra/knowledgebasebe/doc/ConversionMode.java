@@ -0,0 +1,12 @@
+package com.ondra.knowledgebasebe.doc;
+
+/**
+ * Controls when the PDF of a doc is generated. {@code SYNC} converts while the upload request is being
+ * handled, {@code ASYNC} only stores the DOCX and leaves the conversion to the {@link ConversionWorker}.
+ * {@code LAZY} does not convert at all until the PDF is requested for the first time.
+ */
+public enum ConversionMode {
+    SYNC,
+    ASYNC,
+    LAZY
+}
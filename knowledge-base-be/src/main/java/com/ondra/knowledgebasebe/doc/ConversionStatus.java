@@ -0,0 +1,8 @@
+package com.ondra.knowledgebasebe.doc;
+
+public enum ConversionStatus {
+    DEFERRED,
+    PENDING,
+    COMPLETED,
+    FAILED
+}
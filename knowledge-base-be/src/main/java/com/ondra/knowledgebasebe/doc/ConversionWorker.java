@@ -0,0 +1,136 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.BlobResource;
+import com.ondra.knowledgebasebe.blob.BlobStore;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.ConversionCapacityExceededException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.ConversionUnavailableException;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+
+import static com.ondra.knowledgebasebe.doc.ConversionMode.ASYNC;
+
+/**
+ * Drains the {@link ConversionJobQueue} when docs are converted asynchronously. Every instance of the
+ * backend runs a worker, and each worker converts at most {@code conversion.worker.concurrency} docs at a
+ * time. A failed conversion is retried with a growing delay until {@code conversion.worker.max-attempts}
+ * is reached, after which the doc is marked as {@link ConversionStatus#FAILED}.
+ */
+@Component
+public class ConversionWorker {
+
+    Logger logger = LoggerFactory.getLogger(ConversionWorker.class);
+
+    private final String workerId = UUID.randomUUID().toString();
+
+    private final ConversionJobQueue conversionJobQueue;
+    private final DocRepository docRepository;
+    private final BlobStore blobStore;
+    private final PdfGenerator pdfGenerator;
+    private final TaskExecutor taskExecutor;
+    private final ConversionMode conversionMode;
+    private final int maxAttempts;
+    private final Duration retryDelay;
+    private final Semaphore freeSlots;
+
+    public ConversionWorker(
+        ConversionJobQueue conversionJobQueue,
+        DocRepository docRepository,
+        BlobStore blobStore,
+        PdfGenerator pdfGenerator,
+        @Qualifier("applicationTaskExecutor") TaskExecutor taskExecutor,
+        @Value("${conversion.mode}") ConversionMode conversionMode,
+        @Value("${conversion.worker.concurrency}") int concurrency,
+        @Value("${conversion.worker.max-attempts}") int maxAttempts,
+        @Value("${conversion.worker.retry-delay}") Duration retryDelay
+    ) {
+        this.conversionJobQueue = conversionJobQueue;
+        this.docRepository = docRepository;
+        this.blobStore = blobStore;
+        this.pdfGenerator = pdfGenerator;
+        this.taskExecutor = taskExecutor;
+        this.conversionMode = conversionMode;
+        this.maxAttempts = maxAttempts;
+        this.retryDelay = retryDelay;
+        this.freeSlots = new Semaphore(concurrency);
+    }
+
+    @Scheduled(fixedDelayString = "${conversion.worker.poll-interval}")
+    public void drainQueue() {
+        if (conversionMode != ASYNC) return;
+        while (freeSlots.tryAcquire()) {
+            Optional<ConversionJob> job;
+            try {
+                job = conversionJobQueue.claim(workerId);
+            } catch (RuntimeException ex) {
+                freeSlots.release();
+                logger.warn("Claiming a conversion job failed: " + ex.getMessage());
+                return;
+            }
+            if (job.isEmpty()) {
+                freeSlots.release();
+                return;
+            }
+            try {
+                taskExecutor.execute(() -> {
+                    try {
+                        process(job.get());
+                    } finally {
+                        freeSlots.release();
+                    }
+                });
+            } catch (TaskRejectedException ex) {
+                freeSlots.release();
+                conversionJobQueue.postpone(job.get(), Duration.ZERO);
+                return;
+            }
+        }
+    }
+
+    void process(ConversionJob job) {
+        Optional<BlobResource> docxFile = blobStore.find(job.getDocxFileId());
+        if (docxFile.isEmpty()) {
+            // the DOCX was replaced or the doc was deleted since the job was enqueued
+            conversionJobQueue.complete(job);
+            return;
+        }
+        ObjectId pdfFileId;
+        try {
+            pdfFileId = pdfGenerator.generatePdf(docxFile.get(), job.getDocxHash());
+        } catch (RuntimeException ex) {
+            handleFailure(job, ex);
+            return;
+        }
+        if (!docRepository.completeConversion(job.getDocId(), job.getDocxFileId(), pdfFileId)) blobStore.release(pdfFileId);
+        conversionJobQueue.complete(job);
+    }
+
+    private void handleFailure(ConversionJob job, RuntimeException ex) {
+        if (ex instanceof ConversionCapacityExceededException capacityExceeded) {
+            // Gotenberg is busy, which says nothing about the DOCX, so it does not count as an attempt
+            conversionJobQueue.postpone(job, capacityExceeded.getRetryAfter());
+        } else if (ex instanceof ConversionUnavailableException unavailable) {
+            // the same goes for a Gotenberg that is down while its circuit breaker is open
+            conversionJobQueue.postpone(job, unavailable.getRetryAfter());
+        } else if (job.getAttempts() >= maxAttempts) {
+            logger.error("Converting doc '" + job.getDocId() + "' failed for good after " + job.getAttempts() + " attempts: " + ex.getMessage());
+            docRepository.failConversion(job.getDocId(), job.getDocxFileId());
+            conversionJobQueue.complete(job);
+        } else {
+            logger.warn("Converting doc '" + job.getDocId() + "' failed, attempt " + job.getAttempts() + " of " + maxAttempts + ": " + ex.getMessage());
+            conversionJobQueue.retryLater(job, retryDelay.multipliedBy(job.getAttempts()));
+        }
+    }
+
+}
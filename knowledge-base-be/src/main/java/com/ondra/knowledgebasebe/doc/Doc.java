@@ -1,25 +1,32 @@
 package com.ondra.knowledgebasebe.doc;
 
-import org.bson.types.Binary;
+import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.COMPLETED;
+
 @Document(collection = "docs")
+@CompoundIndex(name = "userId_name", def = "{ 'userId': 1, 'name': 1 }", unique = true)
+@CompoundIndex(name = "userId_id", def = "{ 'userId': 1, '_id': 1 }")
 public class Doc {
 
     @Id
     private final String id;
     private final String userId;
     private final String name;
-    private final Binary docxFile;
-    private final Binary pdfFile;
+    private final ObjectId docxFileId;
+    private final ObjectId pdfFileId;
+    private final ConversionStatus conversionStatus;
 
-    public Doc(String id, String userId, String name, Binary docxFile, Binary pdfFile) {
+    public Doc(String id, String userId, String name, ObjectId docxFileId, ObjectId pdfFileId, ConversionStatus conversionStatus) {
         this.id = id;
         this.userId = userId;
         this.name = name;
-        this.docxFile = docxFile;
-        this.pdfFile = pdfFile;
+        this.docxFileId = docxFileId;
+        this.pdfFileId = pdfFileId;
+        this.conversionStatus = conversionStatus;
     }
 
     public String getId() {
@@ -34,16 +41,21 @@ public class Doc {
         return name;
     }
 
-    public Binary getDocxFile() {
-        return docxFile;
+    public ObjectId getDocxFileId() {
+        return docxFileId;
+    }
+
+    public ObjectId getPdfFileId() {
+        return pdfFileId;
     }
 
-    public Binary getPdfFile() {
-        return pdfFile;
+    public ConversionStatus getConversionStatus() {
+        // docs stored before conversions could run asynchronously always have a PDF
+        return conversionStatus == null ? COMPLETED : conversionStatus;
     }
 
     public DocDto toDto() {
-        return new DocDto(id, userId, name);
+        return new DocDto(id, userId, name, getConversionStatus());
     }
 
 }
@@ -0,0 +1,13 @@
+package com.ondra.knowledgebasebe.doc;
+
+public record DocBatchItemDto(String name, DocDto doc, String error) {
+
+    static DocBatchItemDto added(DocDto doc) {
+        return new DocBatchItemDto(doc.name(), doc, null);
+    }
+
+    static DocBatchItemDto failed(String name, String error) {
+        return new DocBatchItemDto(name, null, error);
+    }
+
+}
@@ -0,0 +1,180 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.ConversionCapacityExceededException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.ConversionUnavailableException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.DocNameAlreadyTakenException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.FileConversionException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.InvalidArgumentException;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Adds many docs at once. Every doc is validated and its name checked before anything is stored, the
+ * DOCX-files are stored and converted concurrently, at most {@code conversion.batch.parallelism} at a time,
+ * and all docs are saved with a single bulk write. A task is only started once a slot is free, so a batch
+ * never occupies more than that many threads of the executor. A doc that fails does not fail the batch;
+ * its error is returned in place of the doc instead.
+ */
+@Service
+public class DocBatchService {
+
+    private static final String CONVERSION_FAILED = "Converting DOCX to PDF not possible";
+    private static final String SAVING_FAILED = "Adding the doc not possible";
+
+    Logger logger = LoggerFactory.getLogger(DocBatchService.class);
+
+    private final DocService docService;
+    private final DocValidator docValidator;
+    private final DocRepository docRepository;
+    private final DocListCache docListCache;
+    private final DocSearchIndex docSearchIndex;
+    private final TaskExecutor taskExecutor;
+    private final int parallelism;
+
+    public DocBatchService(
+        DocService docService,
+        DocValidator docValidator,
+        DocRepository docRepository,
+        DocListCache docListCache,
+        DocSearchIndex docSearchIndex,
+        @Qualifier("applicationTaskExecutor") TaskExecutor taskExecutor,
+        @Value("${conversion.batch.parallelism}") int parallelism
+    ) {
+        this.docService = docService;
+        this.docValidator = docValidator;
+        this.docRepository = docRepository;
+        this.docListCache = docListCache;
+        this.docSearchIndex = docSearchIndex;
+        this.taskExecutor = taskExecutor;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns one result per doc, in the order of the given names.
+     */
+    public List<DocBatchItemDto> addDocs(String userId, List<String> names, List<MultipartFile> docxFiles) {
+        DocBatchItemDto[] results = new DocBatchItemDto[names.size()];
+        List<Integer> acceptedPositions = validate(userId, names, docxFiles, results);
+
+        Semaphore freeSlots = new Semaphore(parallelism);
+        Map<Integer, CompletableFuture<PreparedDoc>> preparedDocs = new LinkedHashMap<>();
+        for (int position : acceptedPositions) {
+            String name = names.get(position);
+            MultipartFile docxFile = docxFiles.get(position);
+            freeSlots.acquireUninterruptibly();
+            CompletableFuture<PreparedDoc> preparedDoc;
+            try {
+                preparedDoc = CompletableFuture.supplyAsync(() -> docService.prepareDoc(new ObjectId().toHexString(), userId, name, docxFile), taskExecutor);
+            } catch (RuntimeException ex) {
+                // the executor rejected the task
+                preparedDoc = CompletableFuture.failedFuture(ex);
+            }
+            preparedDocs.put(position, preparedDoc.whenComplete((doc, failure) -> freeSlots.release()));
+        }
+
+        List<Integer> docPositions = new ArrayList<>();
+        List<PreparedDoc> prepared = new ArrayList<>();
+        preparedDocs.forEach((position, preparedDoc) -> {
+            try {
+                prepared.add(preparedDoc.join());
+                docPositions.add(position);
+            } catch (CompletionException ex) {
+                results[position] = DocBatchItemDto.failed(names.get(position), errorOf(names.get(position), ex.getCause()));
+            }
+        });
+
+        DocInsertResult insertResult;
+        try {
+            insertResult = docRepository.insertUnordered(prepared.stream().map(PreparedDoc::doc).toList());
+        } catch (DataAccessException ex) {
+            // not even the docs that were saved could be told apart, so all of them are discarded
+            logger.error("Saving the docs of a batch not possible: " + ex.getMessage());
+            insertResult = DocInsertResult.allFailed(prepared.size());
+        }
+        if (IntStream.range(0, prepared.size()).anyMatch(insertResult::inserted)) docListCache.invalidate(userId);
+        for (int i = 0; i < prepared.size(); i++) {
+            Doc doc = prepared.get(i).doc();
+            if (insertResult.inserted(i)) {
+                docSearchIndex.index(doc, prepared.get(i).text());
+                results[docPositions.get(i)] = DocBatchItemDto.added(doc.toDto());
+            } else if (insertResult.duplicates().contains(i)) {
+                discard(prepared.get(i));
+                // another request took the name after it was checked
+                results[docPositions.get(i)] = DocBatchItemDto.failed(doc.getName(), new DocNameAlreadyTakenException(doc.getName(), userId).getMessage());
+            } else {
+                discard(prepared.get(i));
+                logger.error("Saving the doc '" + doc.getName() + "' of a batch not possible");
+                results[docPositions.get(i)] = DocBatchItemDto.failed(doc.getName(), SAVING_FAILED);
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    private List<Integer> validate(String userId, List<String> names, List<MultipartFile> docxFiles, DocBatchItemDto[] results) {
+        Set<String> takenNames = docRepository.findAllByUserIdAndNameInAndExcludeBinaryData(userId, names).stream()
+            .map(Doc::getName)
+            .collect(Collectors.toCollection(HashSet::new));
+        List<Integer> acceptedPositions = new ArrayList<>();
+        for (int position = 0; position < names.size(); position++) {
+            String name = names.get(position);
+            try {
+                docValidator.validateName(name);
+                docValidator.validateDocxFile(docxFiles.get(position));
+                // a name used twice within the batch is taken by its first occurrence
+                if (!takenNames.add(name)) throw new DocNameAlreadyTakenException(name, userId);
+                acceptedPositions.add(position);
+            } catch (InvalidArgumentException | DocNameAlreadyTakenException ex) {
+                results[position] = DocBatchItemDto.failed(name, ex.getMessage());
+            }
+        }
+        return acceptedPositions;
+    }
+
+    /**
+     * Failing to discard a doc leaves a blob or a conversion job behind, which does not fail the batch; the
+     * blob collector and the worker cope with both.
+     */
+    private void discard(PreparedDoc preparedDoc) {
+        try {
+            docService.discardPreparedDoc(preparedDoc);
+        } catch (RuntimeException ex) {
+            logger.error("Discarding the doc '" + preparedDoc.doc().getName() + "' of a batch not possible: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Returns the message of the exceptions the client is told about anyway, the ones that are answered with
+     * a 4xx or 503 status by a single upload, and a generic message for anything else, which would only
+     * expose internals such as the errors of Gotenberg or Mongo.
+     */
+    private String errorOf(String name, Throwable ex) {
+        if (ex instanceof InvalidArgumentException
+            || ex instanceof DocNameAlreadyTakenException
+            || ex instanceof ConversionCapacityExceededException
+            || ex instanceof ConversionUnavailableException) return ex.getMessage();
+        if (ex instanceof FileConversionException) return CONVERSION_FAILED;
+        logger.error("Adding the doc '" + name + "' of a batch not possible: " + ex.getMessage());
+        return SAVING_FAILED;
+    }
+
+}
@@ -0,0 +1,135 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the {@code docs} collection with a change stream and invalidates the cached doc lists of the
+ * users whose docs were changed, by this instance or any other. The cache is only enabled while the change
+ * stream is open; if it breaks, for example because MongoDB does not run as a replica set, the cache is
+ * disabled and the change stream is opened again after {@code doc.list-cache.reconnect-delay}.
+ */
+@Component
+public class DocChangeListener {
+
+    private static final String COLLECTION = "docs";
+    private static final Duration MAX_AWAIT_TIME = Duration.ofSeconds(1);
+
+    Logger logger = LoggerFactory.getLogger(DocChangeListener.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final DocListCache docListCache;
+    private final Duration reconnectDelay;
+
+    private volatile boolean running = true;
+    private boolean watching = true;
+
+    public DocChangeListener(
+        MongoTemplate mongoTemplate,
+        DocListCache docListCache,
+        @Value("${doc.list-cache.reconnect-delay}") Duration reconnectDelay
+    ) {
+        this.mongoTemplate = mongoTemplate;
+        this.docListCache = docListCache;
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void listen() {
+        while (running) {
+            try {
+                watchChanges();
+            } catch (RuntimeException ex) {
+                if (!running) return;
+                // a MongoDB without change streams fails on every attempt, which is only worth one warning
+                if (watching) logger.warn("Watching doc changes failed, doc lists are not cached until it is resumed: " + ex.getMessage());
+                watching = false;
+                try {
+                    Thread.sleep(reconnectDelay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    @EventListener(ContextClosedEvent.class)
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Only the fields needed to find the affected user are read from the change events, so a doc that still
+     * embeds its files does not send them along.
+     */
+    private void watchChanges() {
+        List<Bson> pipeline = List.of(Aggregates.project(Projections.include("operationType", "documentKey", "fullDocument.userId")));
+        try (MongoChangeStreamCursor<ChangeStreamDocument<Document>> changes = mongoTemplate.getCollection(COLLECTION)
+            .watch(pipeline)
+            .maxAwaitTime(MAX_AWAIT_TIME.toMillis(), TimeUnit.MILLISECONDS)
+            .cursor()) {
+            // changes made before the stream was opened may have been missed, so caching starts from scratch
+            docListCache.setEnabled(true);
+            if (!watching) logger.info("Watching doc changes resumed");
+            watching = true;
+            while (running) {
+                ChangeStreamDocument<Document> change = changes.tryNext();
+                if (change != null && !apply(change)) return;
+            }
+        } finally {
+            docListCache.setEnabled(false);
+        }
+    }
+
+    /**
+     * Returns false once the change stream has been invalidated and has to be opened again.
+     */
+    private boolean apply(ChangeStreamDocument<Document> change) {
+        switch (change.getOperationType()) {
+            case INSERT, REPLACE -> {
+                String userId = change.getFullDocument() == null ? null : change.getFullDocument().getString("userId");
+                if (userId == null) docListCache.invalidateAll();
+                else docListCache.invalidate(userId);
+            }
+            case UPDATE, DELETE -> {
+                String docId = docIdOf(change);
+                if (docId == null) docListCache.invalidateAll();
+                else docListCache.invalidateDoc(docId);
+            }
+            case INVALIDATE -> {
+                return false;
+            }
+            default -> docListCache.invalidateAll();
+        }
+        return true;
+    }
+
+    private static String docIdOf(ChangeStreamDocument<Document> change) {
+        if (change.getDocumentKey() == null) return null;
+        BsonValue id = change.getDocumentKey().get("_id");
+        if (id == null) return null;
+        if (id.isObjectId()) return id.asObjectId().getValue().toHexString();
+        return id.isString() ? id.asString().getValue() : null;
+    }
+
+}
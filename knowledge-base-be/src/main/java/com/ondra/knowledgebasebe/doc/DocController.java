@@ -1,8 +1,14 @@
 package com.ondra.knowledgebasebe.doc;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ondra.knowledgebasebe.config.UserId;
+import jakarta.servlet.http.HttpServletResponse;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -14,122 +20,275 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
-import java.util.Base64;
+import java.net.URI;
+import java.time.Duration;
 import java.util.List;
 
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.PENDING;
+import static org.springframework.http.HttpHeaders.CONTENT_DISPOSITION;
 import static org.springframework.http.HttpStatus.ACCEPTED;
 import static org.springframework.http.HttpStatus.CREATED;
+import static org.springframework.http.HttpStatus.NOT_MODIFIED;
 import static org.springframework.http.HttpStatus.NO_CONTENT;
 import static org.springframework.http.HttpStatus.OK;
 import static org.springframework.http.MediaType.APPLICATION_PDF_VALUE;
+import static org.springframework.http.MediaType.IMAGE_JPEG_VALUE;
 
 @RestController
 @RequestMapping("/api/v1/docs")
 @CrossOrigin(origins = "http://localhost:5173/")
 public class DocController {
 
+    private static final String DOCX_VALUE = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+    // the files are only served to their owner, so shared caches must not keep them
+    private static final CacheControl REVALIDATED = CacheControl.noCache().cachePrivate();
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable();
+
     private final DocValidator docValidator;
     private final DocService docService;
+    private final DocBatchService docBatchService;
+    private final DocThumbnailService docThumbnailService;
+    private final DocPageService docPageService;
+    private final Duration archiveRequestTimeout;
 
-    public DocController(DocValidator docValidator, DocService docService) {
+    public DocController(
+        DocValidator docValidator,
+        DocService docService,
+        DocBatchService docBatchService,
+        DocThumbnailService docThumbnailService,
+        DocPageService docPageService,
+        @Value("${archive.request-timeout}") Duration archiveRequestTimeout
+    ) {
         this.docValidator = docValidator;
         this.docService = docService;
+        this.docBatchService = docBatchService;
+        this.docThumbnailService = docThumbnailService;
+        this.docPageService = docPageService;
+        this.archiveRequestTimeout = archiveRequestTimeout;
     }
 
     @PostMapping
-    @ResponseStatus(CREATED)
-    public DocDto addDoc(
-        @RequestHeader("Authorization") String bearerToken,
+    public ResponseEntity<DocDto> addDoc(
+        @UserId String userId,
         @RequestParam String name,
         @RequestParam MultipartFile docxFile
     ) {
         docValidator.validateName(name);
         docValidator.validateDocxFile(docxFile);
-        String userId = getUserIdFromBearerToken(bearerToken);
-        return docService.addDoc(userId, name, docxFile);
+        DocDto docDto = docService.addDoc(userId, name, docxFile);
+        return ResponseEntity.status(docDto.conversionStatus() == PENDING ? ACCEPTED : CREATED).body(docDto);
+    }
+
+    @PostMapping("/batch")
+    @ResponseStatus(OK)
+    public List<DocBatchItemDto> addDocs(
+        @UserId String userId,
+        @RequestParam List<String> names,
+        @RequestParam List<MultipartFile> docxFiles
+    ) {
+        docValidator.validateBatch(names, docxFiles);
+        return docBatchService.addDocs(userId, names, docxFiles);
     }
 
     @GetMapping
     @ResponseStatus(OK)
     public List<DocDto> getAllDocs(
-        @RequestHeader("Authorization") String bearerToken
+        @UserId String userId
     ) {
-        String userId = getUserIdFromBearerToken(bearerToken);
         return docService.getAllDocs(userId);
     }
 
-    @GetMapping(value = "/{id}/pdf", produces = APPLICATION_PDF_VALUE)
+    @GetMapping("/page")
+    @ResponseStatus(OK)
+    public DocPageDto getDocPage(
+        @UserId String userId,
+        @RequestParam(defaultValue = "name") String sort,
+        @RequestParam(defaultValue = "asc") String direction,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(defaultValue = "50") int limit
+    ) {
+        docValidator.validatePage(sort, direction, limit);
+        return docService.getDocPage(userId, DocSort.valueOf(sort.toUpperCase()), Sort.Direction.fromString(direction), cursor, limit);
+    }
+
+    @GetMapping("/search")
     @ResponseStatus(OK)
-    public byte[] getPdf(
-        @RequestHeader("Authorization") String bearerToken,
+    public List<DocSearchHitDto> searchDocs(
+        @UserId String userId,
+        @RequestParam String q,
+        @RequestParam(defaultValue = "20") int limit
+    ) {
+        docValidator.validateSearch(q, limit);
+        return docService.searchDocs(userId, q, limit);
+    }
+
+    /**
+     * Streams a ZIP archive of the docs straight into the response. Archiving all docs of a user can take far
+     * longer than any other request, so only this request gets {@code archive.request-timeout}; everything
+     * else keeps the default async timeout.
+     */
+    @GetMapping(value = "/archive", produces = "application/zip")
+    public WebAsyncTask<Void> getArchive(
+        @UserId String userId,
+        @RequestParam(defaultValue = "pdf") String fileType,
+        @RequestParam(required = false) List<String> ids,
+        HttpServletResponse response
+    ) {
+        docValidator.validateFileType(fileType);
+        DocFileType docFileType = DocFileType.valueOf(fileType.toUpperCase());
+        return new WebAsyncTask<>(archiveRequestTimeout.toMillis(), () -> {
+            response.setContentType("application/zip");
+            response.setHeader(CONTENT_DISPOSITION, ContentDisposition.attachment().filename("docs.zip").build().toString());
+            docService.writeArchive(userId, ids, docFileType, response.getOutputStream());
+            return null;
+        });
+    }
+
+    /**
+     * Serves the current PDF, which browsers have to revalidate on every view; the response names the
+     * versioned URL of the same PDF in its {@code Content-Location}.
+     */
+    @GetMapping(value = "/{id}/pdf", produces = APPLICATION_PDF_VALUE)
+    public ResponseEntity<?> getPdf(
+        @UserId String userId,
+        @RequestHeader HttpHeaders requestHeaders,
         @PathVariable String id
     ) {
         docValidator.validateId(id);
-        String userId = getUserIdFromBearerToken(bearerToken);
-        return docService.getPdf(id, userId);
+        ObjectId pdfFileId = docService.getPdfFileId(id, userId);
+        return BlobResponses.of(pdfFileId, () -> docService.getFile(id, userId, pdfFileId), requestHeaders, REVALIDATED, versionUri(pdfFileId));
     }
 
-    @GetMapping(value = "/{id}/docx", produces = "application/vnd.openxmlformats-officedocument.wordprocessingml.document")
-    @ResponseStatus(OK)
-    public byte[] getDocx(
-        @RequestHeader("Authorization") String bearerToken,
+    /**
+     * Serves one version of the PDF, which never changes and may be cached for good.
+     */
+    @GetMapping(value = "/{id}/pdf/{version}", produces = APPLICATION_PDF_VALUE)
+    public ResponseEntity<?> getPdfVersion(
+        @UserId String userId,
+        @RequestHeader HttpHeaders requestHeaders,
+        @PathVariable String id,
+        @PathVariable String version
+    ) {
+        docValidator.validateId(id);
+        docValidator.validateFileVersion(version);
+        ObjectId pdfFileId = new ObjectId(version);
+        docService.validateFileVersion(id, userId, DocFileType.PDF, pdfFileId);
+        return BlobResponses.of(pdfFileId, () -> docService.getFile(id, userId, pdfFileId), requestHeaders, IMMUTABLE, null);
+    }
+
+    @GetMapping(value = "/{id}/docx", produces = DOCX_VALUE)
+    public ResponseEntity<?> getDocx(
+        @UserId String userId,
+        @RequestHeader HttpHeaders requestHeaders,
         @PathVariable String id
     ) {
         docValidator.validateId(id);
-        String userId = getUserIdFromBearerToken(bearerToken);
-        return docService.getDocx(id, userId);
+        ObjectId docxFileId = docService.getDocxFileId(id, userId);
+        return BlobResponses.of(docxFileId, () -> docService.getFile(id, userId, docxFileId), requestHeaders, REVALIDATED, versionUri(docxFileId));
+    }
+
+    @GetMapping(value = "/{id}/docx/{version}", produces = DOCX_VALUE)
+    public ResponseEntity<?> getDocxVersion(
+        @UserId String userId,
+        @RequestHeader HttpHeaders requestHeaders,
+        @PathVariable String id,
+        @PathVariable String version
+    ) {
+        docValidator.validateId(id);
+        docValidator.validateFileVersion(version);
+        ObjectId docxFileId = new ObjectId(version);
+        docService.validateFileVersion(id, userId, DocFileType.DOCX, docxFileId);
+        return BlobResponses.of(docxFileId, () -> docService.getFile(id, userId, docxFileId), requestHeaders, IMMUTABLE, null);
+    }
+
+    /**
+     * Serves a JPEG thumbnail of a page of the PDF. Its ETag names the PDF it was rendered from, so a browser
+     * revalidating a thumbnail of an unchanged doc is answered without rendering or reading anything.
+     */
+    @GetMapping(value = "/{id}/thumbnail", produces = IMAGE_JPEG_VALUE)
+    public ResponseEntity<byte[]> getThumbnail(
+        @UserId String userId,
+        @RequestHeader HttpHeaders requestHeaders,
+        @PathVariable String id,
+        @RequestParam(defaultValue = "1") int page,
+        @RequestParam(defaultValue = "240") int width
+    ) {
+        docValidator.validateId(id);
+        docValidator.validateThumbnail(page, width);
+        ObjectId pdfFileId = docService.getPdfFileId(id, userId);
+        String eTag = "\"" + pdfFileId.toHexString() + "-" + page + "-" + width + "\"";
+        if (BlobResponses.ifNoneMatchMatches(requestHeaders, eTag)) {
+            return ResponseEntity.status(NOT_MODIFIED).eTag(eTag).cacheControl(REVALIDATED).build();
+        }
+        byte[] thumbnail = docThumbnailService.getThumbnail(id, userId, pdfFileId, page, width);
+        return ResponseEntity.ok().eTag(eTag).cacheControl(REVALIDATED).body(thumbnail);
+    }
+
+    /**
+     * Serves the pages from {@code from} to {@code to}, or only the page {@code from}, as a standalone PDF.
+     */
+    @GetMapping(value = "/{id}/pages", produces = APPLICATION_PDF_VALUE)
+    public ResponseEntity<StreamingResponseBody> getPages(
+        @UserId String userId,
+        @RequestHeader HttpHeaders requestHeaders,
+        @PathVariable String id,
+        @RequestParam(defaultValue = "1") int from,
+        @RequestParam(required = false) Integer to
+    ) {
+        int lastPage = to == null ? from : to;
+        docValidator.validateId(id);
+        docValidator.validatePageRange(from, lastPage);
+        ObjectId pdfFileId = docService.getPdfFileId(id, userId);
+        String eTag = "\"" + pdfFileId.toHexString() + "-pages-" + from + "-" + lastPage + "\"";
+        if (BlobResponses.ifNoneMatchMatches(requestHeaders, eTag)) {
+            return ResponseEntity.status(NOT_MODIFIED).eTag(eTag).cacheControl(REVALIDATED).build();
+        }
+        PdfPages pages = docPageService.getPages(id, userId, pdfFileId, from, lastPage);
+        StreamingResponseBody body = pages::writeTo;
+        return ResponseEntity.ok().eTag(eTag).cacheControl(REVALIDATED).body(body);
     }
 
     @PatchMapping("/{id}/rename")
     @ResponseStatus(ACCEPTED)
     public DocDto renameDoc(
-        @RequestHeader("Authorization") String bearerToken,
+        @UserId String userId,
         @PathVariable String id,
         @RequestParam String name
     ) {
         docValidator.validateId(id);
         docValidator.validateName(name);
-        String userId = getUserIdFromBearerToken(bearerToken);
         return docService.renameDoc(id, userId, name);
     }
 
     @PatchMapping("/{id}/replace-file")
     @ResponseStatus(ACCEPTED)
     public DocDto replaceFile(
-        @RequestHeader("Authorization") String bearerToken,
+        @UserId String userId,
         @PathVariable String id,
         @RequestParam MultipartFile docxFile
     ) {
         docValidator.validateId(id);
         docValidator.validateDocxFile(docxFile);
-        String userId = getUserIdFromBearerToken(bearerToken);
         return docService.replaceFile(id, userId, docxFile);
     }
 
     @DeleteMapping(value = "/{id}")
     @ResponseStatus(NO_CONTENT)
     public void deleteDoc(
-        @RequestHeader("Authorization") String bearerToken,
+        @UserId String userId,
         @PathVariable String id
     ) {
         docValidator.validateId(id);
-        String userId = getUserIdFromBearerToken(bearerToken);
         docService.deleteDoc(id, userId);
     }
 
-    private String getUserIdFromBearerToken(String bearerToken) {
-        String jwt = bearerToken.replace("Bearer ", "");
-        String jwtPayload = jwt.split("\\.")[1];
-        String decodedJwtPayload = new String(Base64.getDecoder().decode(jwtPayload));
-        JsonNode jsonNode;
-        try {
-            jsonNode = new ObjectMapper().readTree(decodedJwtPayload);
-        } catch (JsonProcessingException e) {
-            throw new RuntimeException(e);
-        }
-        return jsonNode.path("sub").asText();
+    private static URI versionUri(ObjectId fileId) {
+        return ServletUriComponentsBuilder.fromCurrentRequestUri().path("/{version}").buildAndExpand(fileId.toHexString()).toUri();
     }
 
 }
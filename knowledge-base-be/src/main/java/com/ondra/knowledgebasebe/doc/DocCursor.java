@@ -0,0 +1,34 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.InvalidArgumentException;
+import org.springframework.data.domain.Sort;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Marks the last doc of a page, so the next page starts right after it instead of skipping all previous
+ * docs again. Clients receive it as an opaque token that also pins the order of the listing.
+ */
+record DocCursor(DocSort sort, Sort.Direction direction, String id, String name) {
+
+    static DocCursor after(Doc doc, DocSort sort, Sort.Direction direction) {
+        return new DocCursor(sort, direction, doc.getId(), doc.getName());
+    }
+
+    static DocCursor decode(String token) {
+        try {
+            // the name goes last, so it may contain the separator itself
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split(":", 4);
+            return new DocCursor(DocSort.valueOf(parts[0]), Sort.Direction.valueOf(parts[1]), parts[2], parts[3]);
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException ex) {
+            throw new InvalidArgumentException("Cursor is invalid");
+        }
+    }
+
+    String encode() {
+        String token = sort + ":" + direction + ":" + id + ":" + name;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
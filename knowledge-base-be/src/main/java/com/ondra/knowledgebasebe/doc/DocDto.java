@@ -1,4 +1,4 @@
 package com.ondra.knowledgebasebe.doc;
 
-public record DocDto(String id, String userId, String name) {
+public record DocDto(String id, String userId, String name, ConversionStatus conversionStatus) {
 }
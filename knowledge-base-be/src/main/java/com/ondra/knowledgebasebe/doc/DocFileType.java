@@ -0,0 +1,25 @@
+package com.ondra.knowledgebasebe.doc;
+
+import org.bson.types.ObjectId;
+
+/**
+ * The files that are kept for every doc: the uploaded DOCX and the PDF converted from it.
+ */
+public enum DocFileType {
+    PDF(".pdf"),
+    DOCX(".docx");
+
+    private final String extension;
+
+    DocFileType(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    ObjectId fileIdOf(Doc doc) {
+        return this == PDF ? doc.getPdfFileId() : doc.getDocxFileId();
+    }
+}
@@ -0,0 +1,23 @@
+package com.ondra.knowledgebasebe.doc;
+
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * The outcome of inserting a list of docs, by the positions of the docs in the list. A doc whose position
+ * is in neither set was inserted.
+ */
+public record DocInsertResult(Set<Integer> duplicates, Set<Integer> failed) {
+
+    static final DocInsertResult ALL_INSERTED = new DocInsertResult(Set.of(), Set.of());
+
+    static DocInsertResult allFailed(int size) {
+        return new DocInsertResult(Set.of(), IntStream.range(0, size).boxed().collect(Collectors.toSet()));
+    }
+
+    boolean inserted(int position) {
+        return !duplicates.contains(position) && !failed.contains(position);
+    }
+
+}
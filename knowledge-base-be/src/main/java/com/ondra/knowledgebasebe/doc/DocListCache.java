@@ -0,0 +1,182 @@
+package com.ondra.knowledgebasebe.doc;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the doc list of up to {@code doc.list-cache.max-entries} users in memory for at most
+ * {@code doc.list-cache.ttl}; the least recently used lists are evicted first. The {@link DocService}
+ * invalidates the list of a user after changing one of their docs, and the {@link DocChangeListener}
+ * invalidates it when any instance changes a doc. Lists are only cached while the change listener is
+ * connected, since otherwise the changes of other instances would go unnoticed. Changes that only name
+ * the doc are traced back to the list containing it through an index of the cached docs, so handling them
+ * does not take longer the more lists are cached.
+ */
+@Component
+public class DocListCache {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, String> userIdsByDocId = new HashMap<>();
+    private final Set<String> loadingUserIds = new HashSet<>();
+    private final Clock clock;
+    private final int maxEntries;
+    private final Duration ttl;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter bypasses;
+
+    private boolean enabled;
+
+    /**
+     * An entry without docs stands for a list that is being loaded. Invalidating the user removes it, which
+     * keeps a list that was read before the change from being stored afterwards.
+     */
+    private record Entry(List<DocDto> docs, Instant expiresAt) {
+    }
+
+    @Autowired
+    public DocListCache(
+        MeterRegistry meterRegistry,
+        @Value("${doc.list-cache.max-entries}") int maxEntries,
+        @Value("${doc.list-cache.ttl}") Duration ttl
+    ) {
+        this(meterRegistry, Clock.systemUTC(), maxEntries, ttl);
+    }
+
+    DocListCache(MeterRegistry meterRegistry, Clock clock, int maxEntries, Duration ttl) {
+        this.clock = clock;
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.hits = meterRegistry.counter("doc.list-cache.requests", "result", "hit");
+        this.misses = meterRegistry.counter("doc.list-cache.requests", "result", "miss");
+        this.bypasses = meterRegistry.counter("doc.list-cache.requests", "result", "bypass");
+    }
+
+    public List<DocDto> get(String userId, Supplier<List<DocDto>> loader) {
+        Entry loading = new Entry(null, null);
+        lock.lock();
+        try {
+            if (!enabled) {
+                bypasses.increment();
+                loading = null;
+            } else {
+                Entry entry = entries.get(userId);
+                if (entry != null && entry.docs() != null && clock.instant().isBefore(entry.expiresAt())) {
+                    hits.increment();
+                    return entry.docs();
+                }
+                misses.increment();
+                forget(userId, entries.put(userId, loading));
+                loadingUserIds.add(userId);
+            }
+        } finally {
+            lock.unlock();
+        }
+        List<DocDto> docs = List.copyOf(loader.get());
+        if (loading != null) remember(userId, loading, docs);
+        return docs;
+    }
+
+    public void invalidate(String userId) {
+        lock.lock();
+        try {
+            remove(userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Invalidates the lists that contain the doc, for changes that do not tell whose doc it is. Lists that are
+     * being loaded may or may not contain it, so they are invalidated as well.
+     */
+    public void invalidateDoc(String docId) {
+        lock.lock();
+        try {
+            String userId = userIdsByDocId.get(docId);
+            if (userId != null) remove(userId);
+            for (String loadingUserId : List.copyOf(loadingUserIds)) remove(loadingUserId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Turns caching on or off. Either way all lists are dropped, as changes may have been missed in between.
+     */
+    public void setEnabled(boolean enabled) {
+        lock.lock();
+        try {
+            this.enabled = enabled;
+            clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remember(String userId, Entry loading, List<DocDto> docs) {
+        lock.lock();
+        try {
+            // the list was invalidated while it was being loaded, it may miss the change
+            if (entries.get(userId) != loading) return;
+            loadingUserIds.remove(userId);
+            entries.put(userId, new Entry(docs, clock.instant().plus(ttl)));
+            docs.forEach(doc -> userIdsByDocId.put(doc.id(), userId));
+            Iterator<Map.Entry<String, Entry>> leastRecentlyUsed = entries.entrySet().iterator();
+            while (entries.size() > maxEntries) {
+                Map.Entry<String, Entry> evicted = leastRecentlyUsed.next();
+                leastRecentlyUsed.remove();
+                loadingUserIds.remove(evicted.getKey());
+                forget(evicted.getKey(), evicted.getValue());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(String userId) {
+        loadingUserIds.remove(userId);
+        forget(userId, entries.remove(userId));
+    }
+
+    /**
+     * Drops the docs of a list that is no longer cached from the index.
+     */
+    private void forget(String userId, Entry entry) {
+        if (entry == null || entry.docs() == null) return;
+        entry.docs().forEach(doc -> userIdsByDocId.remove(doc.id(), userId));
+    }
+
+    private void clear() {
+        entries.clear();
+        userIdsByDocId.clear();
+        loadingUserIds.clear();
+    }
+
+}
@@ -0,0 +1,6 @@
+package com.ondra.knowledgebasebe.doc;
+
+import java.util.List;
+
+public record DocPageDto(List<DocDto> docs, String nextCursor) {
+}
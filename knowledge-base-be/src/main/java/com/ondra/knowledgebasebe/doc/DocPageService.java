@@ -0,0 +1,40 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.BlobResource;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.FileConversionException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.PageNotFoundException;
+import org.bson.types.ObjectId;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+
+/**
+ * Provides ranges of pages of a doc as standalone PDFs, so that a viewer can fetch the pages it shows
+ * instead of the whole PDF. Only the parts of the stored PDF that hold these pages are read from GridFS.
+ */
+@Service
+public class DocPageService {
+
+    private final DocService docService;
+    private final PdfPageExtractor pdfPageExtractor;
+
+    public DocPageService(DocService docService, PdfPageExtractor pdfPageExtractor) {
+        this.docService = docService;
+        this.pdfPageExtractor = pdfPageExtractor;
+    }
+
+    /**
+     * Finds the pages from {@code from} to {@code to} of the given PDF, which the caller has to have looked
+     * up as the current PDF of the doc. The pages are extracted while the returned {@link PdfPages} are
+     * written, so nothing has to be cleaned up if they never are.
+     */
+    public PdfPages getPages(String id, String userId, ObjectId pdfFileId, int from, int to) {
+        BlobResource pdfFile = docService.getFile(id, userId, pdfFileId);
+        try {
+            return pdfPageExtractor.extractPages(new BlobRandomAccessRead(pdfFile), from, to).orElseThrow(() -> new PageNotFoundException(id, to));
+        } catch (IOException ex) {
+            throw new FileConversionException("Extracting pages " + from + " to " + to + " of the doc with the id '" + id + "' not possible: " + ex.getMessage());
+        }
+    }
+
+}
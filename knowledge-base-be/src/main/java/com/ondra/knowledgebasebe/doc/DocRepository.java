@@ -1,28 +1,34 @@
 package com.ondra.knowledgebasebe.doc;
 
+import org.bson.types.ObjectId;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
-public interface DocRepository extends MongoRepository<Doc,String> {
+public interface DocRepository extends MongoRepository<Doc,String>, DocRepositoryCustom {
 
     boolean existsByUserIdAndName(String userId, String name);
 
-    boolean existsByIdAndUserId(String id, String userId);
-
     Optional<Doc> findByIdAndUserId(String id, String userId);
 
-    void deleteByIdAndUserId(String id, String userId);
+    boolean existsByIdAndUserIdAndPdfFileId(String id, String userId, ObjectId pdfFileId);
+
+    boolean existsByIdAndUserIdAndDocxFileId(String id, String userId, ObjectId docxFileId);
 
-    @Query(value = "{ 'userId': ?0 }", fields = "{ '_id': 1, 'userId': 1, 'name': 1 }")
+    @Query(value = "{ 'userId': ?0 }", fields = "{ '_id': 1, 'userId': 1, 'name': 1, 'conversionStatus': 1 }")
     List<Doc> findAllByUserIdAndExcludeBinaryData(String userId);
 
-    @Query(value = "{ '_id': ?0, 'userId': ?1 }", fields = "{ 'pdfFile': 1 }")
-    Optional<Doc> findPdfFileByDocIdAndUserId(String id, String userId);
+    @Query(value = "{ 'userId': ?0 }", fields = "{ '_id': 1, 'name': 1, 'docxFileId': 1, 'pdfFileId': 1, 'conversionStatus': 1 }")
+    Stream<Doc> streamAllByUserIdAndExcludeBinaryData(String userId);
+
+    @Query(value = "{ 'userId': ?0, '_id': { $in: ?1 } }", fields = "{ '_id': 1, 'name': 1, 'docxFileId': 1, 'pdfFileId': 1, 'conversionStatus': 1 }")
+    Stream<Doc> streamAllByUserIdAndIdInAndExcludeBinaryData(String userId, Collection<String> ids);
 
-    @Query(value = "{ '_id': ?0, 'userId': ?1 }", fields = "{ 'docxFile': 1 }")
-    Optional<Doc> findDocxFileByDocIdAndUserId(String id, String userId);
+    @Query(value = "{ 'userId': ?0, 'name': { $in: ?1 } }", fields = "{ '_id': 1, 'name': 1 }")
+    List<Doc> findAllByUserIdAndNameInAndExcludeBinaryData(String userId, Collection<String> names);
 
 }
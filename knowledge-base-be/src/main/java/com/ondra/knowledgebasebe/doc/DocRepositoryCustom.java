@@ -0,0 +1,25 @@
+package com.ondra.knowledgebasebe.doc;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface DocRepositoryCustom {
+
+    boolean completeConversion(String id, ObjectId docxFileId, ObjectId pdfFileId);
+
+    boolean failConversion(String id, ObjectId docxFileId);
+
+    DocInsertResult insertUnordered(List<Doc> docs);
+
+    Optional<Doc> renameByIdAndUserId(String id, String userId, String name);
+
+    Optional<Doc> replaceFilesByIdAndUserId(String id, String userId, ObjectId docxFileId, ObjectId pdfFileId, ConversionStatus conversionStatus);
+
+    Optional<Doc> findAndDeleteByIdAndUserId(String id, String userId);
+
+    List<Doc> findPageByUserIdAndExcludeBinaryData(String userId, DocSort sort, Sort.Direction direction, DocCursor after, int limit);
+
+}
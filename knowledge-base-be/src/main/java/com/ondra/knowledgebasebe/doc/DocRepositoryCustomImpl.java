@@ -0,0 +1,159 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.mongodb.bulk.BulkWriteError;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.COMPLETED;
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.DEFERRED;
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.FAILED;
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.PENDING;
+import static org.springframework.data.mongodb.core.FindAndModifyOptions.options;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+public class DocRepositoryCustomImpl implements DocRepositoryCustom {
+
+    private static final int DUPLICATE_KEY_CODE = 11000;
+    private static final String LEGACY_DOCX_FIELD = "docxFile";
+    private static final String LEGACY_PDF_FIELD = "pdfFile";
+
+    private final MongoTemplate mongoTemplate;
+
+    public DocRepositoryCustomImpl(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * Only a doc that is still waiting for the PDF of this exact DOCX is updated, so the result of a
+     * conversion that was overtaken by a newer upload is never attached to the doc.
+     */
+    @Override
+    public boolean completeConversion(String id, ObjectId docxFileId, ObjectId pdfFileId) {
+        Update update = new Update().set("pdfFileId", pdfFileId).set("conversionStatus", COMPLETED);
+        return mongoTemplate.updateFirst(unconverted(id, docxFileId, PENDING, DEFERRED), update, Doc.class).getModifiedCount() > 0;
+    }
+
+    @Override
+    public boolean failConversion(String id, ObjectId docxFileId) {
+        Update update = new Update().set("conversionStatus", FAILED);
+        return mongoTemplate.updateFirst(unconverted(id, docxFileId, PENDING), update, Doc.class).getModifiedCount() > 0;
+    }
+
+    /**
+     * Inserts all docs with a single unordered bulk write, so one doc that cannot be inserted does not keep
+     * the others from being inserted. An unordered bulk write attempts every insert and reports an error for
+     * each one that failed, so the docs without an error were inserted even if the write as a whole failed.
+     * Docs whose name or ID is taken already are told apart from docs that failed for any other reason. A
+     * write that fails as a whole, such as on a lost connection, may have inserted any number of the docs,
+     * so they are looked up by their IDs to tell which; if that fails too, the exception is thrown.
+     */
+    @Override
+    public DocInsertResult insertUnordered(List<Doc> docs) {
+        if (docs.isEmpty()) return DocInsertResult.ALL_INSERTED;
+        try {
+            mongoTemplate.bulkOps(BulkMode.UNORDERED, Doc.class).insert(docs).execute();
+            return DocInsertResult.ALL_INSERTED;
+        } catch (BulkOperationException ex) {
+            Set<Integer> duplicates = new HashSet<>();
+            Set<Integer> failed = new HashSet<>();
+            for (BulkWriteError error : ex.getErrors()) {
+                (error.getCode() == DUPLICATE_KEY_CODE ? duplicates : failed).add(error.getIndex());
+            }
+            return new DocInsertResult(duplicates, failed);
+        } catch (DataAccessException ex) {
+            return new DocInsertResult(Set.of(), notInserted(docs));
+        }
+    }
+
+    /**
+     * Sets the name of the doc in place and returns the renamed doc without its file IDs. A name that is taken
+     * already fails with a {@link org.springframework.dao.DuplicateKeyException}.
+     */
+    @Override
+    public Optional<Doc> renameByIdAndUserId(String id, String userId, String name) {
+        Query query = query(where("_id").is(id).and("userId").is(userId));
+        query.fields().include("_id", "userId", "name", "conversionStatus");
+        return Optional.ofNullable(mongoTemplate.findAndModify(query, new Update().set("name", name), options().returnNew(true), Doc.class));
+    }
+
+    /**
+     * Points the doc to new files and returns the doc as it was before, so the caller can release exactly the
+     * files that were replaced even if another replacement runs at the same time. Files that are still
+     * embedded in a doc that was not migrated yet are dropped with it instead of being migrated first.
+     */
+    @Override
+    public Optional<Doc> replaceFilesByIdAndUserId(String id, String userId, ObjectId docxFileId, ObjectId pdfFileId, ConversionStatus conversionStatus) {
+        Query query = query(where("_id").is(id).and("userId").is(userId));
+        query.fields().include("_id", "userId", "name", "docxFileId", "pdfFileId");
+        Update update = new Update()
+            .set("docxFileId", docxFileId)
+            .set("pdfFileId", pdfFileId)
+            .set("conversionStatus", conversionStatus)
+            .unset(LEGACY_DOCX_FIELD)
+            .unset(LEGACY_PDF_FIELD);
+        return Optional.ofNullable(mongoTemplate.findAndModify(query, update, options().returnNew(false), Doc.class));
+    }
+
+    /**
+     * Deletes the doc and returns its file IDs, which are null for files still embedded in the doc.
+     */
+    @Override
+    public Optional<Doc> findAndDeleteByIdAndUserId(String id, String userId) {
+        Query query = query(where("_id").is(id).and("userId").is(userId));
+        query.fields().include("_id", "docxFileId", "pdfFileId");
+        return Optional.ofNullable(mongoTemplate.findAndRemove(query, Doc.class));
+    }
+
+    /**
+     * Returns up to {@code limit} docs that come after the given cursor in the given order. The position is
+     * expressed as a range condition on the sort key, which is unique per user, so the query walks the
+     * matching compound index from the cursor on and never skips over earlier docs.
+     */
+    @Override
+    public List<Doc> findPageByUserIdAndExcludeBinaryData(String userId, DocSort sort, Sort.Direction direction, DocCursor after, int limit) {
+        Criteria criteria = where("userId").is(userId);
+        if (after != null) {
+            Object afterId = ObjectId.isValid(after.id()) ? new ObjectId(after.id()) : after.id();
+            criteria = sort == DocSort.NAME ? beyond(criteria.and("name"), after.name(), direction) : beyond(criteria.and("_id"), afterId, direction);
+        }
+        Query query = query(criteria)
+            .with(sort == DocSort.NAME ? Sort.by(direction, "name") : Sort.by(direction, "_id"))
+            .limit(limit);
+        query.fields().include("_id", "userId", "name", "conversionStatus");
+        return mongoTemplate.find(query, Doc.class);
+    }
+
+    private Set<Integer> notInserted(List<Doc> docs) {
+        Query query = query(where("_id").in(docs.stream().map(Doc::getId).toList()));
+        query.fields().include("_id");
+        Set<String> insertedIds = mongoTemplate.find(query, Doc.class).stream().map(Doc::getId).collect(Collectors.toSet());
+        return IntStream.range(0, docs.size())
+            .filter(position -> !insertedIds.contains(docs.get(position).getId()))
+            .boxed()
+            .collect(Collectors.toSet());
+    }
+
+    private static Criteria beyond(Criteria criteria, Object value, Sort.Direction direction) {
+        return direction.isAscending() ? criteria.gt(value) : criteria.lt(value);
+    }
+
+    private Query unconverted(String id, ObjectId docxFileId, ConversionStatus... conversionStatuses) {
+        return query(where("_id").is(id).and("docxFileId").is(docxFileId).and("conversionStatus").in((Object[]) conversionStatuses));
+    }
+
+}
@@ -0,0 +1,4 @@
+package com.ondra.knowledgebasebe.doc;
+
+public record DocSearchHitDto(DocDto doc, String snippet) {
+}
@@ -0,0 +1,220 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.BlobResource;
+import com.ondra.knowledgebasebe.blob.BlobStore;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.project;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Keeps the text of every doc in the {@code docTexts} collection and searches it with the MongoDB text
+ * index. The text is extracted when a DOCX-file is added or replaced and written once extracting is done,
+ * after the response has been sent. Docs added before the search existed are indexed by a migration that
+ * runs in the background after startup until it has completed once. A doc that cannot be indexed can still
+ * be used, it is just not found by the search.
+ */
+@Component
+public class DocSearchIndex {
+
+    private static final int SNIPPET_CONTEXT = 80;
+    private static final String MIGRATIONS_COLLECTION = "migrations";
+    private static final String MIGRATION_ID = "docTexts";
+
+    /**
+     * Docs with a DOCX-file but no text of it, found with a single anti-join against the texts rather than
+     * one query per doc.
+     */
+    private static final Aggregation UNINDEXED_DOCS = newAggregation(
+        match(where("docxFileId").exists(true)),
+        project("userId", "docxFileId"),
+        context -> new Document("$lookup", new Document("from", "docTexts")
+            .append("localField", "_id")
+            .append("foreignField", "_id")
+            .append("let", new Document("docxFileId", "$docxFileId"))
+            .append("pipeline", List.of(
+                new Document("$match", new Document("$expr", new Document("$eq", List.of("$docxFileId", "$$docxFileId")))),
+                new Document("$project", new Document("_id", 1))
+            ))
+            .append("as", "texts")),
+        context -> new Document("$match", new Document("texts", new Document("$size", 0)))
+    );
+
+    Logger logger = LoggerFactory.getLogger(DocSearchIndex.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final DocRepository docRepository;
+    private final BlobStore blobStore;
+    private final DocxTextExtractor docxTextExtractor;
+    private final Executor indexExecutor = runnable -> Thread.ofVirtual().name("doc-search-index").start(runnable);
+
+    public DocSearchIndex(MongoTemplate mongoTemplate, DocRepository docRepository, BlobStore blobStore, DocxTextExtractor docxTextExtractor) {
+        this.mongoTemplate = mongoTemplate;
+        this.docRepository = docRepository;
+        this.blobStore = blobStore;
+        this.docxTextExtractor = docxTextExtractor;
+    }
+
+    /**
+     * Indexes the text of a DOCX-file that was just added once the {@link DocxIngestion} has extracted it,
+     * on a thread of its own; a doc without text is not indexed. The text is not written if the doc has been
+     * deleted or given another DOCX-file in the meantime. Failing to index does not fail adding the doc.
+     */
+    public CompletableFuture<Void> index(Doc doc, CompletableFuture<String> text) {
+        return text.thenAcceptAsync(extractedText -> {
+            if (extractedText == null) return;
+            try {
+                if (hasDocx(doc)) save(doc, extractedText);
+            } catch (RuntimeException ex) {
+                logger.warn("Indexing doc '" + doc.getId() + "' not possible: " + ex.getMessage());
+            }
+        }, indexExecutor);
+    }
+
+    public void remove(String docId) {
+        mongoTemplate.remove(query(where("_id").is(docId)), DocText.class);
+    }
+
+    /**
+     * Returns the best matching docs of the user, best match first, each with a snippet of its text around
+     * the first occurrence of a search term.
+     */
+    public List<DocSearchHitDto> search(String userId, String searchQuery, int limit) {
+        Query textQuery = TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(searchQuery))
+            .sortByScore()
+            .addCriteria(where("userId").is(userId))
+            .limit(limit);
+        List<DocText> docTexts = mongoTemplate.find(textQuery, DocText.class);
+        if (docTexts.isEmpty()) return List.of();
+
+        // a doc deleted since its text was found is left out
+        Map<String, Doc> docs;
+        try (Stream<Doc> matchingDocs = docRepository.streamAllByUserIdAndIdInAndExcludeBinaryData(userId, docTexts.stream().map(DocText::getDocId).toList())) {
+            docs = matchingDocs.collect(Collectors.toMap(Doc::getId, Function.identity()));
+        }
+        Pattern terms = termsOf(searchQuery);
+        return docTexts.stream()
+            .filter(docText -> docs.containsKey(docText.getDocId()))
+            .map(docText -> {
+                Doc doc = docs.get(docText.getDocId());
+                return new DocSearchHitDto(new DocDto(doc.getId(), userId, doc.getName(), doc.getConversionStatus()), snippetOf(docText.getText(), terms));
+            })
+            .toList();
+    }
+
+    /**
+     * Indexes every doc that has no text of its DOCX-file, once; the migration is recorded as completed in
+     * the {@code migrations} collection and skipped after that. Instances starting at the same time may both
+     * run it, which only writes the same texts twice.
+     */
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void indexAllDocs() {
+        if (mongoTemplate.exists(query(where("_id").is(MIGRATION_ID)), MIGRATIONS_COLLECTION)) return;
+        int indexedDocs = 0;
+        try (Stream<Doc> unindexedDocs = mongoTemplate.aggregateStream(UNINDEXED_DOCS, "docs", Doc.class)) {
+            for (Doc doc : (Iterable<Doc>) unindexedDocs::iterator) {
+                if (indexStoredDocx(doc)) indexedDocs++;
+            }
+            mongoTemplate.save(new Document("_id", MIGRATION_ID).append("completedAt", new Date()), MIGRATIONS_COLLECTION);
+        } catch (RuntimeException ex) {
+            logger.error("Indexing the texts of all docs failed: " + ex.getMessage());
+            return;
+        }
+        if (indexedDocs > 0) logger.info("Indexed the texts of " + indexedDocs + " docs");
+    }
+
+    private boolean hasDocx(Doc doc) {
+        return mongoTemplate.exists(query(where("_id").is(doc.getId()).and("docxFileId").is(doc.getDocxFileId())), Doc.class);
+    }
+
+    private boolean indexStoredDocx(Doc doc) {
+        BlobResource docxFile = blobStore.find(doc.getDocxFileId()).orElse(null);
+        if (docxFile == null) return false;
+        try (InputStream inputStream = docxFile.getInputStream()) {
+            save(doc, docxTextExtractor.extractText(inputStream));
+            return true;
+        } catch (IOException ex) {
+            logger.warn("Indexing doc '" + doc.getId() + "' not possible: " + ex.getMessage());
+            return false;
+        }
+    }
+
+    private void save(Doc doc, String text) {
+        Update update = new Update()
+            .set("userId", doc.getUserId())
+            .set("docxFileId", doc.getDocxFileId())
+            .set("text", text);
+        mongoTemplate.upsert(query(where("_id").is(doc.getId())), update, DocText.class);
+    }
+
+    /**
+     * Matches the words of the search query, without the quotes of phrases and the words excluded with a
+     * minus sign.
+     */
+    private static Pattern termsOf(String searchQuery) {
+        String terms = Arrays.stream(searchQuery.split("\\s+"))
+            .filter(term -> !term.startsWith("-"))
+            .flatMap(term -> Arrays.stream(term.split("[^\\p{L}\\p{N}]+")))
+            .filter(term -> !term.isEmpty())
+            .map(Pattern::quote)
+            .collect(Collectors.joining("|"));
+        return terms.isEmpty() ? null : Pattern.compile(terms, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    }
+
+    /**
+     * The text index stems the words, so a doc can match without containing a search term as it was typed;
+     * the snippet then shows the beginning of the text.
+     */
+    private static String snippetOf(String text, Pattern terms) {
+        if (text == null || text.isEmpty()) return "";
+        int match = 0;
+        if (terms != null) {
+            Matcher matcher = terms.matcher(text);
+            if (matcher.find()) match = matcher.start();
+        }
+        int start = Math.max(0, match - SNIPPET_CONTEXT);
+        int end = Math.min(text.length(), match + 2 * SNIPPET_CONTEXT);
+        // the snippet starts and ends at whole words
+        if (start > 0) {
+            int wordStart = text.indexOf(' ', start);
+            if (wordStart >= 0 && wordStart < match) start = wordStart + 1;
+        }
+        if (end < text.length()) {
+            int wordEnd = text.lastIndexOf(' ', end);
+            if (wordEnd > match) end = wordEnd;
+        }
+        String snippet = text.substring(start, end).replaceAll("\\s+", " ").strip();
+        return (start > 0 ? "…" : "") + snippet + (end < text.length() ? "…" : "");
+    }
+
+}
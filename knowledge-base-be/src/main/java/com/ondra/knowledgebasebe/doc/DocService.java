@@ -1,62 +1,313 @@
 package com.ondra.knowledgebasebe.doc;
 
+import com.ondra.knowledgebasebe.blob.BlobResource;
+import com.ondra.knowledgebasebe.blob.BlobStore;
+import com.ondra.knowledgebasebe.blob.StoredBlob;
 import com.ondra.knowledgebasebe.exceptionhandling.exceptions.DocNameAlreadyTakenException;
 import com.ondra.knowledgebasebe.exceptionhandling.exceptions.DocNotFoundException;
-import org.bson.types.Binary;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.InvalidArgumentException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.PdfNotAvailableException;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static com.ondra.knowledgebasebe.doc.ConversionMode.ASYNC;
+import static com.ondra.knowledgebasebe.doc.ConversionMode.LAZY;
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.COMPLETED;
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.DEFERRED;
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.PENDING;
 
 @Service
 public class DocService {
+
+    static final String DOCX_CONTENT_TYPE = "application/vnd.openxmlformats-officedocument.wordprocessingml.document";
+    static final String PDF_CONTENT_TYPE = "application/pdf";
+
     private final DocRepository docRepository;
-    private final FileConversionService fileConversionService;
+    private final BlobStore blobStore;
+    private final DocxIngestion docxIngestion;
+    private final PdfGenerator pdfGenerator;
+    private final EmbeddedBinaryMigration embeddedBinaryMigration;
+    private final ConversionJobQueue conversionJobQueue;
+    private final LazyConversion lazyConversion;
+    private final DocListCache docListCache;
+    private final DocSearchIndex docSearchIndex;
+    private final ConversionMode conversionMode;
 
-    public DocService(DocRepository docRepository, FileConversionService fileConversionService) {
+    public DocService(
+        DocRepository docRepository,
+        BlobStore blobStore,
+        DocxIngestion docxIngestion,
+        PdfGenerator pdfGenerator,
+        EmbeddedBinaryMigration embeddedBinaryMigration,
+        ConversionJobQueue conversionJobQueue,
+        LazyConversion lazyConversion,
+        DocListCache docListCache,
+        DocSearchIndex docSearchIndex,
+        @Value("${conversion.mode}") ConversionMode conversionMode
+    ) {
         this.docRepository = docRepository;
-        this.fileConversionService = fileConversionService;
+        this.blobStore = blobStore;
+        this.docxIngestion = docxIngestion;
+        this.pdfGenerator = pdfGenerator;
+        this.embeddedBinaryMigration = embeddedBinaryMigration;
+        this.conversionJobQueue = conversionJobQueue;
+        this.lazyConversion = lazyConversion;
+        this.docListCache = docListCache;
+        this.docSearchIndex = docSearchIndex;
+        this.conversionMode = conversionMode;
     }
 
     public DocDto addDoc(String userId, String name, MultipartFile docxFile) {
+        // fails fast before the upload is stored, the unique index on the name decides races
         if (docRepository.existsByUserIdAndName(userId, name)) throw new DocNameAlreadyTakenException(name, userId);
-        Binary docxBinary = fileConversionService.convertDocxMultipartFileToDocxBinary(docxFile);
-        Binary pdfBinary = fileConversionService.convertDocxMultipartFileToPdfBinary(docxFile);
-        Doc doc = new Doc(null, userId, name, docxBinary, pdfBinary);
-        return docRepository.save(doc).toDto();
+        IngestedDocx ingestedDocx = docxIngestion.ingest(docxFile);
+        StoredBlob storedDocx = ingestedDocx.storedBlob();
+        ObjectId docxFileId = storedDocx.id();
+        ObjectId pdfFileId = null;
+        String conversionJobId = null;
+        Doc doc;
+        try {
+            if (conversionMode == ASYNC) {
+                String id = new ObjectId().toHexString();
+                conversionJobId = conversionJobQueue.enqueue(id, storedDocx);
+                doc = saveWithUniqueName(new Doc(id, userId, name, docxFileId, null, PENDING));
+            } else if (conversionMode == LAZY) {
+                doc = saveWithUniqueName(new Doc(null, userId, name, docxFileId, null, DEFERRED));
+            } else {
+                // Gotenberg is only sent the upload once its hash is known, as a cached PDF makes that unnecessary
+                pdfFileId = pdfGenerator.generatePdf(docxFile.getResource(), storedDocx.sha256());
+                doc = saveWithUniqueName(new Doc(null, userId, name, docxFileId, pdfFileId, COMPLETED));
+            }
+        } catch (RuntimeException ex) {
+            cancelConversion(conversionJobId);
+            blobStore.release(docxFileId);
+            blobStore.release(pdfFileId);
+            throw ex;
+        }
+        docListCache.invalidate(userId);
+        docSearchIndex.index(doc, ingestedDocx.text());
+        return doc.toDto();
+    }
+
+    public List<DocSearchHitDto> searchDocs(String userId, String query, int limit) {
+        return docSearchIndex.search(userId, query, limit);
     }
 
     public List<DocDto> getAllDocs(String userId) {
-        return docRepository.findAllByUserIdAndExcludeBinaryData(userId).stream().map(Doc::toDto).toList();
+        return docListCache.get(userId, () -> docRepository.findAllByUserIdAndExcludeBinaryData(userId).stream().map(Doc::toDto).toList());
+    }
+
+    /**
+     * Returns one page of the docs of the user and a cursor for the next page, which is null on the last page.
+     * One doc more than requested is read to find out whether there is a next page at all.
+     */
+    public DocPageDto getDocPage(String userId, DocSort sort, Sort.Direction direction, String cursor, int limit) {
+        DocCursor after = cursor == null ? null : DocCursor.decode(cursor);
+        if (after != null && (after.sort() != sort || after.direction() != direction))
+            throw new InvalidArgumentException("Cursor belongs to a listing in another order");
+        List<Doc> docs = docRepository.findPageByUserIdAndExcludeBinaryData(userId, sort, direction, after, limit + 1);
+        if (docs.size() <= limit) return new DocPageDto(docs.stream().map(Doc::toDto).toList(), null);
+        List<Doc> page = docs.subList(0, limit);
+        return new DocPageDto(page.stream().map(Doc::toDto).toList(), DocCursor.after(page.getLast(), sort, direction).encode());
+    }
+
+    /**
+     * Returns the ID of the PDF of the doc, after converting it if its conversion was deferred.
+     */
+    public ObjectId getPdfFileId(String id, String userId) {
+        Doc doc = findMigratedDoc(id, userId);
+        if (doc.getConversionStatus() == DEFERRED) {
+            lazyConversion.convert(doc);
+            doc = docRepository.findByIdAndUserId(id, userId).orElseThrow(() -> new DocNotFoundException(id, userId));
+        }
+        if (doc.getConversionStatus() != COMPLETED) throw new PdfNotAvailableException(id, doc.getConversionStatus().name());
+        return doc.getPdfFileId();
+    }
+
+    public ObjectId getDocxFileId(String id, String userId) {
+        return findMigratedDoc(id, userId).getDocxFileId();
+    }
+
+    /**
+     * Makes sure that the file is still the current file of its type, so a versioned URL of a file that has
+     * been replaced since stops working instead of serving content that may be collected any moment.
+     */
+    public void validateFileVersion(String id, String userId, DocFileType fileType, ObjectId fileId) {
+        boolean current = fileType == DocFileType.PDF
+            ? docRepository.existsByIdAndUserIdAndPdfFileId(id, userId, fileId)
+            : docRepository.existsByIdAndUserIdAndDocxFileId(id, userId, fileId);
+        if (!current) throw new DocNotFoundException(id, userId);
     }
 
-    public byte[] getPdf(String id, String userId) {
-        Doc doc = docRepository.findPdfFileByDocIdAndUserId(id, userId).orElseThrow(() -> new DocNotFoundException(id, userId));
-        return doc.getPdfFile().getData();
+    public BlobResource getFile(String id, String userId, ObjectId fileId) {
+        return blobStore.find(fileId).orElseThrow(() -> new DocNotFoundException(id, userId));
     }
 
-    public byte[] getDocx(String id, String userId) {
-        Doc doc = docRepository.findDocxFileByDocIdAndUserId(id, userId).orElseThrow(() -> new DocNotFoundException(id, userId));
-        return doc.getDocxFile().getData();
+    /**
+     * Writes the files of the given docs, or of all docs of the user if no IDs are given, into a ZIP archive.
+     * The docs are read from a cursor and every file is copied from the blob store into the archive while it
+     * is downloaded, so neither the archive nor any single file is held in memory. Docs without the requested
+     * file, such as docs whose PDF has not been converted yet, are left out.
+     */
+    public void writeArchive(String userId, List<String> ids, DocFileType fileType, OutputStream outputStream) throws IOException {
+        ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream);
+        // PDF and DOCX files are compressed already, deflating them again would only cost time
+        zipOutputStream.setLevel(Deflater.BEST_SPEED);
+        Set<String> entryNames = new HashSet<>();
+        try (Stream<Doc> docs = ids == null
+            ? docRepository.streamAllByUserIdAndExcludeBinaryData(userId)
+            : docRepository.streamAllByUserIdAndIdInAndExcludeBinaryData(userId, ids)) {
+            for (Doc doc : (Iterable<Doc>) docs::iterator) {
+                if (fileType == DocFileType.PDF && doc.getConversionStatus() != COMPLETED) continue;
+                Optional<BlobResource> file = blobStore.find(fileType.fileIdOf(doc));
+                if (file.isEmpty()) continue;
+                zipOutputStream.putNextEntry(new ZipEntry(entryName(doc.getName(), fileType, entryNames)));
+                try (InputStream inputStream = file.get().getInputStream()) {
+                    inputStream.transferTo(zipOutputStream);
+                }
+                zipOutputStream.closeEntry();
+            }
+        }
+        zipOutputStream.finish();
     }
 
     public DocDto renameDoc(String id, String userId, String name) {
-        Doc oldDoc = docRepository.findByIdAndUserId(id, userId).orElseThrow(() -> new DocNotFoundException(id, userId));
-        if (docRepository.existsByUserIdAndName(userId, name)) throw new DocNameAlreadyTakenException(name, userId);
-        return docRepository.save(new Doc(id, userId, name, oldDoc.getDocxFile(), oldDoc.getPdfFile())).toDto();
+        Doc doc;
+        try {
+            doc = docRepository.renameByIdAndUserId(id, userId, name).orElseThrow(() -> new DocNotFoundException(id, userId));
+        } catch (DuplicateKeyException ex) {
+            throw new DocNameAlreadyTakenException(name, userId);
+        }
+        docListCache.invalidate(userId);
+        return doc.toDto();
     }
 
+    /**
+     * The new DOCX is stored and converted before the doc is updated, so a doc that does not exist is only
+     * noticed afterwards; the new files are released again in that case.
+     */
     public DocDto replaceFile(String id, String userId, MultipartFile docxFile) {
-        Doc oldDoc = docRepository.findByIdAndUserId(id, userId).orElseThrow(() -> new DocNotFoundException(id, userId));
-        Binary docxBinary = fileConversionService.convertDocxMultipartFileToDocxBinary(docxFile);
-        Binary pdfBinary = fileConversionService.convertDocxMultipartFileToPdfBinary(docxFile);
-        Doc newDoc = new Doc(id, userId, oldDoc.getName(), docxBinary, pdfBinary);
-        return docRepository.save(newDoc).toDto();
+        IngestedDocx ingestedDocx = docxIngestion.ingest(docxFile);
+        StoredBlob storedDocx = ingestedDocx.storedBlob();
+        ObjectId docxFileId = storedDocx.id();
+        ObjectId pdfFileId = null;
+        String conversionJobId = null;
+        ConversionStatus conversionStatus;
+        Doc oldDoc;
+        try {
+            if (conversionMode == ASYNC) {
+                conversionJobId = conversionJobQueue.enqueue(id, storedDocx);
+                conversionStatus = PENDING;
+            } else if (conversionMode == LAZY) {
+                conversionStatus = DEFERRED;
+            } else {
+                pdfFileId = pdfGenerator.generatePdf(docxFile.getResource(), storedDocx.sha256());
+                conversionStatus = COMPLETED;
+            }
+            oldDoc = docRepository.replaceFilesByIdAndUserId(id, userId, docxFileId, pdfFileId, conversionStatus)
+                .orElseThrow(() -> new DocNotFoundException(id, userId));
+        } catch (RuntimeException ex) {
+            cancelConversion(conversionJobId);
+            blobStore.release(docxFileId);
+            blobStore.release(pdfFileId);
+            throw ex;
+        }
+        docListCache.invalidate(userId);
+        blobStore.release(oldDoc.getDocxFileId());
+        blobStore.release(oldDoc.getPdfFileId());
+        Doc doc = new Doc(id, userId, oldDoc.getName(), docxFileId, pdfFileId, conversionStatus);
+        docSearchIndex.index(doc, ingestedDocx.text());
+        return doc.toDto();
     }
 
     public void deleteDoc(String id, String userId) {
-        if (!docRepository.existsByIdAndUserId(id, userId)) throw new DocNotFoundException(id, userId);
-        docRepository.deleteByIdAndUserId(id, userId);
+        Doc doc = docRepository.findAndDeleteByIdAndUserId(id, userId).orElseThrow(() -> new DocNotFoundException(id, userId));
+        docListCache.invalidate(userId);
+        docSearchIndex.remove(id);
+        blobStore.release(doc.getDocxFileId());
+        blobStore.release(doc.getPdfFileId());
+    }
+
+    /**
+     * Stores the DOCX and converts it, or prepares its conversion, according to the conversion mode, but does
+     * not save the doc. The caller owns the blobs and the conversion job of the returned doc and has to
+     * discard it if saving fails.
+     */
+    PreparedDoc prepareDoc(String id, String userId, String name, MultipartFile docxFile) {
+        IngestedDocx ingestedDocx = docxIngestion.ingest(docxFile);
+        StoredBlob storedDocx = ingestedDocx.storedBlob();
+        try {
+            if (conversionMode == ASYNC) {
+                String conversionJobId = conversionJobQueue.enqueue(id, storedDocx);
+                return new PreparedDoc(new Doc(id, userId, name, storedDocx.id(), null, PENDING), ingestedDocx.text(), conversionJobId);
+            }
+            if (conversionMode == LAZY) return new PreparedDoc(new Doc(id, userId, name, storedDocx.id(), null, DEFERRED), ingestedDocx.text(), null);
+            ObjectId pdfFileId = pdfGenerator.generatePdf(docxFile.getResource(), storedDocx.sha256());
+            return new PreparedDoc(new Doc(id, userId, name, storedDocx.id(), pdfFileId, COMPLETED), ingestedDocx.text(), null);
+        } catch (RuntimeException ex) {
+            blobStore.release(storedDocx.id());
+            throw ex;
+        }
+    }
+
+    /**
+     * Undoes {@link #prepareDoc} for a doc that could not be saved.
+     */
+    void discardPreparedDoc(PreparedDoc preparedDoc) {
+        cancelConversion(preparedDoc.conversionJobId());
+        blobStore.release(preparedDoc.doc().getDocxFileId());
+        blobStore.release(preparedDoc.doc().getPdfFileId());
+    }
+
+    /**
+     * The job of a doc that could not be saved is enqueued already, and its DOCX is still found by the worker
+     * until it is collected, or for good if other docs share it, so the job is removed before it is converted
+     * for a doc that does not exist.
+     */
+    private void cancelConversion(String conversionJobId) {
+        if (conversionJobId != null) conversionJobQueue.cancel(conversionJobId);
+    }
+
+    private Doc saveWithUniqueName(Doc doc) {
+        try {
+            return docRepository.save(doc);
+        } catch (DuplicateKeyException ex) {
+            throw new DocNameAlreadyTakenException(doc.getName(), doc.getUserId());
+        }
+    }
+
+    /**
+     * Docs that were stored before the blob store existed still embed their files. Such a doc is migrated
+     * on first access instead of waiting for the background migration to reach it.
+     */
+    private Doc findMigratedDoc(String id, String userId) {
+        Doc doc = docRepository.findByIdAndUserId(id, userId).orElseThrow(() -> new DocNotFoundException(id, userId));
+        if (doc.getDocxFileId() != null) return doc;
+        embeddedBinaryMigration.migrateDoc(id);
+        return docRepository.findByIdAndUserId(id, userId).orElseThrow(() -> new DocNotFoundException(id, userId));
+    }
+
+    private static String entryName(String docName, DocFileType fileType, Set<String> entryNames) {
+        String baseName = docName.replaceAll("[\\\\/:*?\"<>|]", "_");
+        String entryName = baseName + fileType.getExtension();
+        for (int i = 2; !entryNames.add(entryName); i++) entryName = baseName + " (" + i + ")" + fileType.getExtension();
+        return entryName;
     }
 
 }
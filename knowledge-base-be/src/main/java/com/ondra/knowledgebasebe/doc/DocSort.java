@@ -0,0 +1,10 @@
+package com.ondra.knowledgebasebe.doc;
+
+/**
+ * The orders in which docs can be listed page by page. {@code CREATED} relies on the IDs of docs being
+ * object IDs, which start with their creation time.
+ */
+public enum DocSort {
+    NAME,
+    CREATED
+}
@@ -0,0 +1,45 @@
+package com.ondra.knowledgebasebe.doc;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+/**
+ * The text of the DOCX-file of a doc, kept apart from the doc so that reading docs never loads it. The
+ * text index is prefixed with the user, so every search only covers the docs of one user.
+ */
+@Document(collection = "docTexts")
+@CompoundIndex(name = "userId_text", def = "{ 'userId': 1, 'text': 'text' }")
+public class DocText {
+
+    @Id
+    private final String docId;
+    private final String userId;
+    private final ObjectId docxFileId;
+    private final String text;
+
+    public DocText(String docId, String userId, ObjectId docxFileId, String text) {
+        this.docId = docId;
+        this.userId = userId;
+        this.docxFileId = docxFileId;
+        this.text = text;
+    }
+
+    public String getDocId() {
+        return docId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public ObjectId getDocxFileId() {
+        return docxFileId;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+}
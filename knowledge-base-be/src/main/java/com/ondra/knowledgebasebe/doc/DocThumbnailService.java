@@ -0,0 +1,46 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.BlobResource;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.FileConversionException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.PageNotFoundException;
+import org.bson.types.ObjectId;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+
+/**
+ * Provides the thumbnails of the pages of a doc, rendered from its stored PDF the first time they are
+ * requested and then served from the {@link ThumbnailCache}. Only the parts of the stored PDF that the
+ * page needs are read from GridFS.
+ */
+@Service
+public class DocThumbnailService {
+
+    private final DocService docService;
+    private final PdfThumbnailRenderer pdfThumbnailRenderer;
+    private final ThumbnailCache thumbnailCache;
+
+    public DocThumbnailService(DocService docService, PdfThumbnailRenderer pdfThumbnailRenderer, ThumbnailCache thumbnailCache) {
+        this.docService = docService;
+        this.pdfThumbnailRenderer = pdfThumbnailRenderer;
+        this.thumbnailCache = thumbnailCache;
+    }
+
+    /**
+     * Returns the JPEG thumbnail of a page of the given PDF, which the caller has to have looked up as the
+     * current PDF of the doc.
+     */
+    public byte[] getThumbnail(String id, String userId, ObjectId pdfFileId, int page, int width) {
+        return thumbnailCache.get(pdfFileId, page, width, () -> render(id, userId, pdfFileId, page, width));
+    }
+
+    private byte[] render(String id, String userId, ObjectId pdfFileId, int page, int width) {
+        BlobResource pdfFile = docService.getFile(id, userId, pdfFileId);
+        try (BlobRandomAccessRead pdf = new BlobRandomAccessRead(pdfFile)) {
+            return pdfThumbnailRenderer.render(pdf, page, width).orElseThrow(() -> new PageNotFoundException(id, page));
+        } catch (IOException ex) {
+            throw new FileConversionException("Rendering page " + page + " of the doc with the id '" + id + "' not possible: " + ex.getMessage());
+        }
+    }
+
+}
@@ -1,16 +1,30 @@
 package com.ondra.knowledgebasebe.doc;
 
 import com.ondra.knowledgebasebe.exceptionhandling.exceptions.InvalidArgumentException;
+import org.bson.types.ObjectId;
 import org.springframework.stereotype.Component;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.List;
+
 @Component
 public class DocValidator {
 
+    static final int MAX_BATCH_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 200;
+    static final int MAX_SEARCH_RESULTS = 50;
+    static final int MIN_THUMBNAIL_WIDTH = 16;
+    static final int MAX_THUMBNAIL_WIDTH = 1024;
+    static final int MAX_PAGE_RANGE = 100;
+
     public void validateId(String id) {
         if (id == null) throw new InvalidArgumentException("ID cannot be null");
     }
 
+    public void validateFileVersion(String version) {
+        if (!ObjectId.isValid(version)) throw new InvalidArgumentException("File version has to be a file ID");
+    }
+
     public void validateName(String name) {
         if (name == null) throw new InvalidArgumentException("Doc name cannot be null");
         if (name.isEmpty()) throw new InvalidArgumentException("Doc name cannot be empty");
@@ -23,4 +37,46 @@ public class DocValidator {
             throw new InvalidArgumentException("File has to be a DOCX-file");
     }
 
+    public void validateFileType(String fileType) {
+        if (fileType == null) throw new InvalidArgumentException("File type cannot be null");
+        if (!fileType.equals("pdf") && !fileType.equals("docx")) throw new InvalidArgumentException("File type has to be 'pdf' or 'docx'");
+    }
+
+    public void validatePage(String sort, String direction, int limit) {
+        if (!"name".equals(sort) && !"created".equals(sort)) throw new InvalidArgumentException("Sort has to be 'name' or 'created'");
+        if (!"asc".equals(direction) && !"desc".equals(direction)) throw new InvalidArgumentException("Direction has to be 'asc' or 'desc'");
+        if (limit < 1) throw new InvalidArgumentException("Limit has to be at least 1");
+        if (limit > MAX_PAGE_SIZE) throw new InvalidArgumentException("Limit cannot be greater than " + MAX_PAGE_SIZE);
+    }
+
+    public void validateSearch(String query, int limit) {
+        if (query == null || query.isBlank()) throw new InvalidArgumentException("Search query cannot be empty");
+        if (query.length() > 200) throw new InvalidArgumentException("Search query cannot be longer than 200 characters");
+        if (limit < 1) throw new InvalidArgumentException("Limit has to be at least 1");
+        if (limit > MAX_SEARCH_RESULTS) throw new InvalidArgumentException("Limit cannot be greater than " + MAX_SEARCH_RESULTS);
+    }
+
+    public void validateThumbnail(int page, int width) {
+        if (page < 1) throw new InvalidArgumentException("Page has to be at least 1");
+        if (width < MIN_THUMBNAIL_WIDTH) throw new InvalidArgumentException("Width has to be at least " + MIN_THUMBNAIL_WIDTH);
+        if (width > MAX_THUMBNAIL_WIDTH) throw new InvalidArgumentException("Width cannot be greater than " + MAX_THUMBNAIL_WIDTH);
+    }
+
+    public void validatePageRange(int from, int to) {
+        if (from < 1) throw new InvalidArgumentException("First page has to be at least 1");
+        if (to < from) throw new InvalidArgumentException("Last page cannot be before the first page");
+        if (to - from >= MAX_PAGE_RANGE) throw new InvalidArgumentException("Page range cannot contain more than " + MAX_PAGE_RANGE + " pages");
+    }
+
+    /**
+     * The size is checked before anything else, so a batch that is too large is rejected for its size even
+     * if its names and files do not match up either.
+     */
+    public void validateBatch(List<String> names, List<MultipartFile> docxFiles) {
+        if (names.size() > MAX_BATCH_SIZE || docxFiles.size() > MAX_BATCH_SIZE)
+            throw new InvalidArgumentException("Batch cannot contain more than " + MAX_BATCH_SIZE + " docs");
+        if (names.isEmpty()) throw new InvalidArgumentException("Batch cannot be empty");
+        if (names.size() != docxFiles.size()) throw new InvalidArgumentException("Batch needs exactly one name for every DOCX-file");
+    }
+
 }
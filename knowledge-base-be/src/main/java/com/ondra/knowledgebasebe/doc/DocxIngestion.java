@@ -0,0 +1,85 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.BlobStore;
+import com.ondra.knowledgebasebe.blob.StoredBlob;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.FileConversionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import static com.ondra.knowledgebasebe.doc.DocService.DOCX_CONTENT_TYPE;
+
+/**
+ * Reads an uploaded DOCX-file exactly once, and while reading it streams it into the blob store and
+ * extracts its text for the {@link DocSearchIndex}. Both get the content through a {@link StreamTee} with
+ * buffers of {@code doc.ingestion.buffer-size} bytes, so the memory an upload takes does not grow with
+ * its size. Only storing the file is waited for; the text is handed on while it is still being extracted,
+ * so neither extracting nor indexing it holds the response back. The branches run on virtual threads of their own rather than on a shared pool, which could
+ * otherwise run out of threads while uploads wait for their own branches.
+ */
+@Component
+public class DocxIngestion {
+
+    Logger logger = LoggerFactory.getLogger(DocxIngestion.class);
+
+    private final BlobStore blobStore;
+    private final DocxTextExtractor docxTextExtractor;
+    private final Executor branchExecutor;
+    private final int bufferSize;
+
+    @Autowired
+    public DocxIngestion(BlobStore blobStore, DocxTextExtractor docxTextExtractor, @Value("${doc.ingestion.buffer-size}") int bufferSize) {
+        this(blobStore, docxTextExtractor, runnable -> Thread.ofVirtual().name("docx-ingestion").start(runnable), bufferSize);
+    }
+
+    DocxIngestion(BlobStore blobStore, DocxTextExtractor docxTextExtractor, Executor branchExecutor, int bufferSize) {
+        this.blobStore = blobStore;
+        this.docxTextExtractor = docxTextExtractor;
+        this.branchExecutor = branchExecutor;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Stores the DOCX-file and takes a reference on it, which the caller owns. The text completes with null
+     * if it could not be extracted, never exceptionally; the doc can be used anyway, it is just not found by
+     * the search.
+     */
+    public IngestedDocx ingest(MultipartFile docxFile) {
+        StreamTee streamTee = new StreamTee(bufferSize);
+        CompletableFuture<StoredBlob> storedDocx = streamTee.branch(inputStream -> blobStore.store("document.docx", DOCX_CONTENT_TYPE, inputStream), branchExecutor);
+        CompletableFuture<String> text = streamTee.branch(this::extractText, branchExecutor);
+        try (InputStream inputStream = docxFile.getInputStream()) {
+            streamTee.pump(inputStream);
+        } catch (IOException ex) {
+            // the blob store drops what it has uploaded so far once its branch fails, the text is not waited for
+            streamTee.fail(ex);
+            storedDocx.exceptionally(failure -> null).join();
+            throw new FileConversionException("Reading Bytes from DOCX-MultipartFile not possible");
+        }
+        try {
+            return new IngestedDocx(storedDocx.join(), text);
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) throw cause;
+            throw ex;
+        }
+    }
+
+    private String extractText(InputStream docxStream) {
+        try {
+            return docxTextExtractor.extractText(docxStream);
+        } catch (IOException | RuntimeException ex) {
+            logger.warn("Extracting the text of an uploaded DOCX-file not possible: " + ex.getMessage());
+            return null;
+        }
+    }
+
+}
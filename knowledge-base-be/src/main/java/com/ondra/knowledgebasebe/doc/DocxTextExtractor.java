@@ -0,0 +1,156 @@
+package com.ondra.knowledgebasebe.doc;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static javax.xml.stream.XMLStreamConstants.CDATA;
+import static javax.xml.stream.XMLStreamConstants.CHARACTERS;
+import static javax.xml.stream.XMLStreamConstants.END_ELEMENT;
+import static javax.xml.stream.XMLStreamConstants.START_ELEMENT;
+
+/**
+ * Extracts the plain text of a DOCX-file from its {@code word/document.xml}. The archive is read as a
+ * stream and the XML is pulled event by event, so neither is ever held in memory; reading stops once
+ * {@code doc.search.max-text-length} characters have been extracted. Paragraphs and line breaks become
+ * line breaks and tabs within runs become spaces, everything besides text runs is skipped.
+ * <p>
+ * An upload of a few megabytes can inflate into gigabytes of XML, so extracting fails once more than
+ * {@code doc.search.max-document-bytes} bytes of the document part have been inflated.
+ */
+@Component
+public class DocxTextExtractor {
+
+    private static final String DOCUMENT_ENTRY = "word/document.xml";
+
+    private final XMLInputFactory xmlInputFactory;
+    private final int maxTextLength;
+    private final long maxDocumentBytes;
+
+    public DocxTextExtractor(
+        @Value("${doc.search.max-text-length}") int maxTextLength,
+        @Value("${doc.search.max-document-bytes}") long maxDocumentBytes
+    ) {
+        this.maxTextLength = maxTextLength;
+        this.maxDocumentBytes = maxDocumentBytes;
+        this.xmlInputFactory = XMLInputFactory.newFactory();
+        // the XML comes from an upload, so it must not make the parser fetch or expand anything
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    /**
+     * Returns the text of the DOCX-file, which is empty if the archive has no document part.
+     */
+    public String extractText(InputStream docxStream) throws IOException {
+        ZipInputStream zipInputStream = new ZipInputStream(docxStream);
+        for (ZipEntry entry = zipInputStream.getNextEntry(); entry != null; entry = zipInputStream.getNextEntry()) {
+            if (entry.getName().equals(DOCUMENT_ENTRY)) return extractDocumentText(new BoundedInputStream(zipInputStream));
+        }
+        return "";
+    }
+
+    private String extractDocumentText(InputStream documentStream) throws IOException {
+        StringBuilder text = new StringBuilder();
+        XMLStreamReader reader = null;
+        try {
+            reader = xmlInputFactory.createXMLStreamReader(documentStream);
+            boolean inRun = false;
+            boolean inTextRun = false;
+            while (reader.hasNext() && text.length() < maxTextLength) {
+                switch (reader.next()) {
+                    case START_ELEMENT -> {
+                        switch (reader.getLocalName()) {
+                            case "r" -> inRun = true;
+                            case "t" -> inTextRun = true;
+                            // a tab outside a run is a tab stop of the paragraph properties
+                            case "tab" -> {
+                                if (inRun) text.append(' ');
+                            }
+                            case "br", "cr" -> text.append('\n');
+                            default -> {
+                            }
+                        }
+                    }
+                    case END_ELEMENT -> {
+                        switch (reader.getLocalName()) {
+                            case "r" -> inRun = false;
+                            case "t" -> inTextRun = false;
+                            case "p" -> text.append('\n');
+                            default -> {
+                            }
+                        }
+                    }
+                    case CHARACTERS, CDATA -> {
+                        if (inTextRun) text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                    default -> {
+                    }
+                }
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException("Reading " + DOCUMENT_ENTRY + " not possible: " + ex.getMessage(), ex);
+        } finally {
+            if (reader != null) closeQuietly(reader);
+        }
+        if (text.length() > maxTextLength) text.setLength(maxTextLength);
+        return text.toString().strip();
+    }
+
+    private static void closeQuietly(XMLStreamReader reader) {
+        try {
+            reader.close();
+        } catch (XMLStreamException ignored) {
+            // closing the reader does not close the stream, there is nothing left to release
+        }
+    }
+
+    /**
+     * Counts the bytes inflated from the document part and fails once there are more than allowed.
+     */
+    private final class BoundedInputStream extends FilterInputStream {
+
+        private long inflatedBytes;
+
+        private BoundedInputStream(InputStream documentStream) {
+            super(documentStream);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) count(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            // reads one byte more than allowed at most, which tells a part of exactly the limit from a larger one
+            int read = super.read(b, off, (int) Math.min(len, maxDocumentBytes - inflatedBytes + 1));
+            if (read > 0) count(read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, maxDocumentBytes - inflatedBytes + 1));
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long bytes) throws IOException {
+            inflatedBytes += bytes;
+            if (inflatedBytes > maxDocumentBytes) throw new IOException(DOCUMENT_ENTRY + " is larger than " + maxDocumentBytes + " bytes");
+        }
+
+    }
+
+}
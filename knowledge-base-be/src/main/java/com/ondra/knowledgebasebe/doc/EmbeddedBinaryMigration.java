@@ -0,0 +1,107 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.mongodb.client.result.UpdateResult;
+import com.ondra.knowledgebasebe.blob.BlobStore;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.util.stream.Stream;
+
+import static com.ondra.knowledgebasebe.doc.DocService.DOCX_CONTENT_TYPE;
+import static com.ondra.knowledgebasebe.doc.DocService.PDF_CONTENT_TYPE;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * Moves DOCX and PDF files that are still embedded as binaries in the {@code docs} collection into the
+ * blob store. The migration runs in the background after startup; every doc is migrated with a
+ * conditional update, so several instances can run it at the same time without losing files.
+ */
+@Component
+public class EmbeddedBinaryMigration {
+
+    private static final String COLLECTION = "docs";
+    private static final String LEGACY_DOCX_FIELD = "docxFile";
+    private static final String LEGACY_PDF_FIELD = "pdfFile";
+
+    Logger logger = LoggerFactory.getLogger(EmbeddedBinaryMigration.class);
+
+    private final MongoTemplate mongoTemplate;
+    private final BlobStore blobStore;
+
+    public EmbeddedBinaryMigration(MongoTemplate mongoTemplate, BlobStore blobStore) {
+        this.mongoTemplate = mongoTemplate;
+        this.blobStore = blobStore;
+    }
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateAllDocs() {
+        Query legacyDocs = query(new Criteria().orOperator(
+            where(LEGACY_DOCX_FIELD).exists(true),
+            where(LEGACY_PDF_FIELD).exists(true)
+        ));
+        legacyDocs.fields().include("_id");
+        int migratedDocs = 0;
+        try (Stream<Document> ids = mongoTemplate.stream(legacyDocs, Document.class, COLLECTION)) {
+            for (Document id : (Iterable<Document>) ids::iterator) {
+                if (migrate(id.get("_id"))) migratedDocs++;
+            }
+        } catch (RuntimeException ex) {
+            logger.error("Migrating embedded binaries to the blob store failed: " + ex.getMessage());
+            return;
+        }
+        if (migratedDocs > 0) logger.info("Migrated the embedded binaries of " + migratedDocs + " docs to the blob store");
+    }
+
+    public boolean migrateDoc(String id) {
+        return migrate(ObjectId.isValid(id) ? new ObjectId(id) : id);
+    }
+
+    private boolean migrate(Object rawId) {
+        Document legacyDoc = mongoTemplate.findOne(query(where("_id").is(rawId)), Document.class, COLLECTION);
+        if (legacyDoc == null || !legacyDoc.containsKey(LEGACY_DOCX_FIELD)) return false;
+
+        ObjectId docxFileId = storeLegacyBinary(legacyDoc.get(LEGACY_DOCX_FIELD), "document.docx", DOCX_CONTENT_TYPE);
+        ObjectId pdfFileId = storeLegacyBinary(legacyDoc.get(LEGACY_PDF_FIELD), "document.pdf", PDF_CONTENT_TYPE);
+
+        Update update = new Update()
+            .set("docxFileId", docxFileId)
+            .set("pdfFileId", pdfFileId)
+            .unset(LEGACY_DOCX_FIELD)
+            .unset(LEGACY_PDF_FIELD);
+        UpdateResult result = mongoTemplate.updateFirst(
+            query(where("_id").is(rawId).and(LEGACY_DOCX_FIELD).exists(true)), update, COLLECTION
+        );
+        if (result.getModifiedCount() == 0) {
+            // another instance migrated (or someone deleted) the doc in the meantime
+            blobStore.release(docxFileId);
+            blobStore.release(pdfFileId);
+            return false;
+        }
+        return true;
+    }
+
+    private ObjectId storeLegacyBinary(Object value, String filename, String contentType) {
+        byte[] bytes = switch (value) {
+            case Binary binary -> binary.getData();
+            case byte[] byteArray -> byteArray;
+            case null, default -> null;
+        };
+        if (bytes == null) return null;
+        return blobStore.store(filename, contentType, new ByteArrayInputStream(bytes)).id();
+    }
+
+}
@@ -1,49 +1,227 @@
 package com.ondra.knowledgebasebe.doc;
 
+import com.ondra.knowledgebasebe.config.ResponseTimeout;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.BlobStorageException;
 import com.ondra.knowledgebasebe.exceptionhandling.exceptions.FileConversionException;
-import org.bson.types.Binary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.MultipartBodyBuilder;
 import org.springframework.stereotype.Service;
-import org.springframework.util.LinkedMultiValueMap;
-import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClient;
-import org.springframework.web.multipart.MultipartFile;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import static org.springframework.http.HttpStatus.BAD_GATEWAY;
+import static org.springframework.http.HttpStatus.GATEWAY_TIMEOUT;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
 import static org.springframework.http.MediaType.MULTIPART_FORM_DATA;
 
 @Service
 public class FileConversionService {
 
+    Logger logger = LoggerFactory.getLogger(FileConversionService.class);
+
+    private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+
     private final RestClient restClient;
+    private final ConversionLimiter conversionLimiter;
+    private final ConversionEndpoints conversionEndpoints;
+    private final ConversionCircuitBreaker conversionCircuitBreaker;
+    private final Duration responseTimeout;
+    private final Duration responseTimeoutPerMegabyte;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
 
-    public FileConversionService(RestClient restClient) {
+    public FileConversionService(
+        RestClient restClient,
+        ConversionLimiter conversionLimiter,
+        ConversionEndpoints conversionEndpoints,
+        ConversionCircuitBreaker conversionCircuitBreaker,
+        @Value("${gotenberg.client.response-timeout}") Duration responseTimeout,
+        @Value("${gotenberg.client.response-timeout-per-megabyte}") Duration responseTimeoutPerMegabyte,
+        @Value("${gotenberg.retry.max-attempts}") int maxAttempts,
+        @Value("${gotenberg.retry.initial-backoff}") Duration initialBackoff,
+        @Value("${gotenberg.retry.max-backoff}") Duration maxBackoff
+    ) {
         this.restClient = restClient;
+        this.conversionLimiter = conversionLimiter;
+        this.conversionEndpoints = conversionEndpoints;
+        this.conversionCircuitBreaker = conversionCircuitBreaker;
+        this.responseTimeout = responseTimeout;
+        this.responseTimeoutPerMegabyte = responseTimeoutPerMegabyte;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
     }
 
-    public Binary convertDocxMultipartFileToDocxBinary(MultipartFile file) {
-        try {
-            return new Binary(file.getBytes());
-        } catch (IOException ex) {
-            throw new FileConversionException("Reading Bytes from DOCX-MultipartFile not possible");
+    /**
+     * Sends the DOCX to the least busy Gotenberg instance and copies the PDF from the response body into the
+     * given output stream while it is being received, so neither file has to be held in memory. The call only
+     * starts once the {@link ConversionLimiter} grants a slot, and its latency is reported back to the limiter.
+     * Gotenberg is given more time for larger files, but never unlimited time.
+     * <p>
+     * Transient failures, where Gotenberg could not be reached or answered 502, 503 or 504 before any part of
+     * the PDF was written, are retried up to {@code gotenberg.retry.max-attempts} times with an exponential,
+     * fully jittered backoff, so clients waiting for a restarting instance do not retry in lockstep. Every
+     * attempt passes the {@link ConversionCircuitBreaker}, which fails fast while Gotenberg keeps failing.
+     * A PDF that cannot be written to the output stream fails with a {@link BlobStorageException} and is not
+     * held against Gotenberg, which answered properly.
+     */
+    public void convertDocxToPdf(Resource docxFile, OutputStream pdfOutputStream) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                attemptConversion(docxFile, pdfOutputStream);
+                return;
+            } catch (TransientConversionFailure ex) {
+                if (attempt >= maxAttempts) throw new FileConversionException("Converting DOCX to PDF not possible");
+                logger.warn("Converting DOCX to PDF failed, attempt " + attempt + " of " + maxAttempts + ": " + ex.getMessage());
+                backOff(attempt);
+            }
         }
     }
 
-    public Binary convertDocxMultipartFileToPdfBinary(MultipartFile docxFile) {
-        MultiValueMap<String, Object> parts = new LinkedMultiValueMap<>();
-        parts.add("file", docxFile.getResource());
+    private void attemptConversion(Resource docxFile, OutputStream pdfOutputStream) {
+        conversionCircuitBreaker.acquirePermission();
+        try {
+            conversionLimiter.acquire();
+        } catch (RuntimeException ex) {
+            conversionCircuitBreaker.onAbandoned();
+            throw ex;
+        }
+        MultipartBodyBuilder multipartBodyBuilder = new MultipartBodyBuilder();
+        multipartBodyBuilder.part("file", docxFile).filename("document.docx");
+        ConversionEndpoints.Endpoint endpoint = conversionEndpoints.acquire();
+        AtomicBoolean pdfStarted = new AtomicBoolean();
+        AtomicBoolean gotenbergAnswered = new AtomicBoolean();
+        long start = System.nanoTime();
+        boolean succeeded = false;
+        boolean pdfWriteFailed = false;
+        ResponseTimeout.set(responseTimeoutFor(docxFile));
         try {
-            byte[] pdfBytes = restClient
+            HttpStatusCode status = restClient
                 .post()
-                .uri("/forms/libreoffice/convert")
+                .uri(endpoint.getBaseUrl() + "/forms/libreoffice/convert")
                 .contentType(MULTIPART_FORM_DATA)
-                .body(parts)
-                .retrieve()
-                .body(byte[].class);
-            return new Binary(pdfBytes);
+                .body(multipartBodyBuilder.build())
+                .exchange((request, response) -> {
+                    HttpStatusCode statusCode = response.getStatusCode();
+                    // a 4xx is about the DOCX, any other 5xx means Gotenberg itself is in trouble
+                    gotenbergAnswered.set(!statusCode.is5xxServerError());
+                    if (!statusCode.isError()) {
+                        pdfStarted.set(true);
+                        response.getBody().transferTo(new PdfOutputStream(pdfOutputStream));
+                    }
+                    return statusCode;
+                });
+            if (isTransient(status)) throw new TransientConversionFailure("Gotenberg answered " + status.value());
+            if (status.isError()) throw new FileConversionException("Converting DOCX to PDF not possible");
+            succeeded = true;
+        } catch (TransientConversionFailure | FileConversionException ex) {
+            throw ex;
+        } catch (ResourceAccessException ex) {
+            if (ex.getCause() instanceof PdfWriteFailure writeFailure) {
+                pdfWriteFailed = true;
+                throw new BlobStorageException("Storing PDF not possible", writeFailure.getCause());
+            }
+            // Gotenberg broke off the response or never sent one
+            gotenbergAnswered.set(false);
+            // a timeout means the DOCX is too much for Gotenberg, and a broken PDF cannot be taken back
+            if (pdfStarted.get() || ex.getCause() instanceof SocketTimeoutException) throw new FileConversionException("Converting DOCX to PDF not possible");
+            throw new TransientConversionFailure(ex.getMessage());
         } catch (Exception ex) {
             throw new FileConversionException("Converting DOCX to PDF not possible");
+        } finally {
+            ResponseTimeout.clear();
+            if (gotenbergAnswered.get()) conversionCircuitBreaker.onSuccess();
+            else conversionCircuitBreaker.onFailure();
+            conversionEndpoints.release(endpoint, gotenbergAnswered.get());
+            conversionLimiter.release(Duration.ofNanos(System.nanoTime() - start), limiterOutcome(gotenbergAnswered.get(), succeeded, pdfWriteFailed));
+        }
+    }
+
+    private static ConversionLimiter.Outcome limiterOutcome(boolean gotenbergAnswered, boolean succeeded, boolean pdfWriteFailed) {
+        if (succeeded) return ConversionLimiter.Outcome.SUCCEEDED;
+        if (pdfWriteFailed) return ConversionLimiter.Outcome.ABORTED;
+        return gotenbergAnswered ? ConversionLimiter.Outcome.REJECTED : ConversionLimiter.Outcome.OVERLOADED;
+    }
+
+    private static boolean isTransient(HttpStatusCode status) {
+        return status.isSameCodeAs(BAD_GATEWAY) || status.isSameCodeAs(SERVICE_UNAVAILABLE) || status.isSameCodeAs(GATEWAY_TIMEOUT);
+    }
+
+    private void backOff(int attempt) {
+        long ceilingNanos = Math.min(maxBackoff.toNanos(), initialBackoff.toNanos() << Math.min(attempt - 1, 30));
+        try {
+            Thread.sleep(Duration.ofNanos(ThreadLocalRandom.current().nextLong(ceilingNanos + 1)));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new FileConversionException("Converting DOCX to PDF not possible");
+        }
+    }
+
+    private Duration responseTimeoutFor(Resource docxFile) {
+        try {
+            long startedMegabytes = (docxFile.contentLength() + BYTES_PER_MEGABYTE - 1) / BYTES_PER_MEGABYTE;
+            return responseTimeout.plus(responseTimeoutPerMegabyte.multipliedBy(startedMegabytes));
+        } catch (IOException ex) {
+            return responseTimeout;
         }
     }
 
+    /**
+     * Tells a failure to store the PDF apart from a failure to receive it, as only the latter is Gotenberg's.
+     */
+    private static final class PdfOutputStream extends FilterOutputStream {
+
+        PdfOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws PdfWriteFailure {
+            try {
+                out.write(b);
+            } catch (IOException | RuntimeException ex) {
+                throw new PdfWriteFailure(ex);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws PdfWriteFailure {
+            try {
+                out.write(b, off, len);
+            } catch (IOException | RuntimeException ex) {
+                throw new PdfWriteFailure(ex);
+            }
+        }
+
+    }
+
+    private static class PdfWriteFailure extends IOException {
+
+        PdfWriteFailure(Exception cause) {
+            super(cause);
+        }
+
+    }
+
+    private static class TransientConversionFailure extends RuntimeException {
+
+        TransientConversionFailure(String message) {
+            super(message);
+        }
+
+    }
+
 }
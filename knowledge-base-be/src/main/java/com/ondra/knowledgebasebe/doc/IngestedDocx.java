@@ -0,0 +1,8 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.StoredBlob;
+
+import java.util.concurrent.CompletableFuture;
+
+public record IngestedDocx(StoredBlob storedBlob, CompletableFuture<String> text) {
+}
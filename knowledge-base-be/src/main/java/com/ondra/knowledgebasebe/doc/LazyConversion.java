@@ -0,0 +1,69 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.BlobResource;
+import com.ondra.knowledgebasebe.blob.BlobStore;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.DocNotFoundException;
+import org.bson.types.ObjectId;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Converts the DOCX of a doc whose conversion was deferred and stores the PDF with the doc. Concurrent
+ * requests for the same doc and DOCX wait for the conversion that is already running instead of starting
+ * another one. Instances do not coordinate with each other; if two of them convert the same doc, only the
+ * first result is kept.
+ */
+@Component
+public class LazyConversion {
+
+    private final DocRepository docRepository;
+    private final BlobStore blobStore;
+    private final PdfGenerator pdfGenerator;
+    private final ConcurrentMap<String, CompletableFuture<Void>> runningConversions = new ConcurrentHashMap<>();
+
+    public LazyConversion(DocRepository docRepository, BlobStore blobStore, PdfGenerator pdfGenerator) {
+        this.docRepository = docRepository;
+        this.blobStore = blobStore;
+        this.pdfGenerator = pdfGenerator;
+    }
+
+    public void convert(Doc doc) {
+        String key = doc.getId() + ":" + doc.getDocxFileId();
+        CompletableFuture<Void> conversion = new CompletableFuture<>();
+        CompletableFuture<Void> runningConversion = runningConversions.putIfAbsent(key, conversion);
+        if (runningConversion != null) {
+            await(runningConversion);
+            return;
+        }
+        try {
+            convertAndStore(doc);
+            conversion.complete(null);
+        } catch (RuntimeException ex) {
+            conversion.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            runningConversions.remove(key, conversion);
+        }
+    }
+
+    private void convertAndStore(Doc doc) {
+        BlobResource docxFile = blobStore.find(doc.getDocxFileId())
+            .orElseThrow(() -> new DocNotFoundException(doc.getId(), doc.getUserId()));
+        ObjectId pdfFileId = pdfGenerator.generatePdf(docxFile, blobStore.findSha256(doc.getDocxFileId()).orElse(null));
+        if (!docRepository.completeConversion(doc.getId(), doc.getDocxFileId(), pdfFileId)) blobStore.release(pdfFileId);
+    }
+
+    private static void await(CompletableFuture<Void> conversion) {
+        try {
+            conversion.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) throw cause;
+            throw ex;
+        }
+    }
+
+}
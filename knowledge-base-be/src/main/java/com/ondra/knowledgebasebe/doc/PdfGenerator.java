@@ -0,0 +1,42 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.BlobStore;
+import org.bson.types.ObjectId;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import static com.ondra.knowledgebasebe.doc.DocService.PDF_CONTENT_TYPE;
+
+@Component
+public class PdfGenerator {
+
+    private final BlobStore blobStore;
+    private final FileConversionService fileConversionService;
+    private final ConversionCache conversionCache;
+
+    public PdfGenerator(BlobStore blobStore, FileConversionService fileConversionService, ConversionCache conversionCache) {
+        this.blobStore = blobStore;
+        this.fileConversionService = fileConversionService;
+        this.conversionCache = conversionCache;
+    }
+
+    /**
+     * Reuses the PDF of an earlier conversion of the same DOCX if it is still cached. Jobs enqueued before
+     * the cache existed carry no hash and are always converted.
+     */
+    public ObjectId generatePdf(Resource docxFile, String docxHash) {
+        if (docxHash == null) return convert(docxFile);
+        return conversionCache.acquireCachedPdf(docxHash).orElseGet(() -> {
+            ObjectId pdfFileId = convert(docxFile);
+            conversionCache.put(docxHash, pdfFileId);
+            return pdfFileId;
+        });
+    }
+
+    private ObjectId convert(Resource docxFile) {
+        return blobStore.store("document.pdf", PDF_CONTENT_TYPE, outputStream ->
+            fileConversionService.convertDocxToPdf(docxFile, outputStream)
+        ).id();
+    }
+
+}
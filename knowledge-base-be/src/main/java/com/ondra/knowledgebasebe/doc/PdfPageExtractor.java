@@ -0,0 +1,53 @@
+package com.ondra.knowledgebasebe.doc;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.multipdf.PageExtractor;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Copies a range of pages of a PDF into a standalone PDF. PDFBox finds the objects of the PDF through its
+ * cross-reference table, the index of their byte offsets that every PDF ends with, and only reads the
+ * objects the extracted pages need, so the source is read at random instead of as a whole. The extracted
+ * PDF is written straight to the output stream it is requested for, so it is neither held in memory as a
+ * whole nor left behind in a temporary file.
+ */
+@Component
+public class PdfPageExtractor {
+
+    private final Timer extractionTime;
+
+    public PdfPageExtractor(MeterRegistry meterRegistry) {
+        this.extractionTime = meterRegistry.timer("pdf.page-extraction.time");
+    }
+
+    /**
+     * Opens the PDF and returns the pages from {@code from} to {@code to}, counted from one, or nothing if
+     * the PDF has fewer pages. Only what it takes to count the pages is read here; the pages themselves are
+     * read once the returned {@link PdfPages} are written, which also closes the PDF. Returned pages that
+     * are never written hold nothing but memory.
+     */
+    public Optional<PdfPages> extractPages(RandomAccessRead pdf, int from, int to) throws IOException {
+        PDDocument document = Loader.loadPDF(pdf);
+        if (to > document.getNumberOfPages()) {
+            document.close();
+            return Optional.empty();
+        }
+        return Optional.of(outputStream -> {
+            Timer.Sample sample = Timer.start();
+            try (document; PDDocument extracted = new PageExtractor(document, from, to).extract()) {
+                // the pages still refer to the objects of the source, so it is saved before the source is closed
+                extracted.save(StreamUtils.nonClosing(outputStream));
+            }
+            sample.stop(extractionTime);
+        });
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.ondra.knowledgebasebe.doc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A range of pages of a PDF that is known to exist but has not been extracted yet. The pages are extracted
+ * while they are written, and the source PDF is closed afterwards.
+ */
+@FunctionalInterface
+public interface PdfPages {
+
+    void writeTo(OutputStream outputStream) throws IOException;
+
+}
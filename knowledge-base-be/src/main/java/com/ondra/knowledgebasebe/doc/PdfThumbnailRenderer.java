@@ -0,0 +1,89 @@
+package com.ondra.knowledgebasebe.doc;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Renders a page of a PDF into a JPEG thumbnail of the given width. Rendering takes a lot of CPU time and
+ * memory, so at most {@code thumbnail.render.concurrency} pages are rendered at the same time and further
+ * requests wait for their turn. A page is never rendered more than {@link #MAX_ASPECT_RATIO} times as high
+ * as it is wide, so an unusually long page cannot blow up the image.
+ */
+@Component
+public class PdfThumbnailRenderer {
+
+    static final int MAX_ASPECT_RATIO = 2;
+    private static final float JPEG_QUALITY = 0.8f;
+
+    private final Semaphore freeSlots;
+    private final Timer renderTime;
+
+    public PdfThumbnailRenderer(MeterRegistry meterRegistry, @Value("${thumbnail.render.concurrency}") int concurrency) {
+        this.freeSlots = new Semaphore(concurrency);
+        this.renderTime = meterRegistry.timer("thumbnail.render.time");
+    }
+
+    /**
+     * Returns the thumbnail of the page, counted from one, or nothing if the PDF has fewer pages. Only the
+     * objects of the PDF that the page needs are read, through its cross-reference table.
+     */
+    public Optional<byte[]> render(RandomAccessRead pdf, int page, int width) throws IOException {
+        freeSlots.acquireUninterruptibly();
+        try (PDDocument document = Loader.loadPDF(pdf)) {
+            if (page > document.getNumberOfPages()) return Optional.empty();
+            Timer.Sample sample = Timer.start();
+            BufferedImage image = new PDFRenderer(document).renderImage(page - 1, scaleOf(document.getPage(page - 1), width), ImageType.RGB);
+            byte[] jpeg = toJpeg(image);
+            sample.stop(renderTime);
+            return Optional.of(jpeg);
+        } finally {
+            freeSlots.release();
+        }
+    }
+
+    private static float scaleOf(PDPage page, int width) {
+        PDRectangle cropBox = page.getCropBox();
+        boolean rotated = page.getRotation() % 180 != 0;
+        float pageWidth = rotated ? cropBox.getHeight() : cropBox.getWidth();
+        float pageHeight = rotated ? cropBox.getWidth() : cropBox.getHeight();
+        return Math.min(width / pageWidth, MAX_ASPECT_RATIO * width / pageHeight);
+    }
+
+    private static byte[] toJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        // an in-memory stream, as ImageIO would otherwise buffer small images in temporary files
+        try (ImageOutputStream outputStream = new MemoryCacheImageOutputStream(jpeg)) {
+            writer.setOutput(outputStream);
+            ImageWriteParam parameters = writer.getDefaultWriteParam();
+            parameters.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            parameters.setCompressionQuality(JPEG_QUALITY);
+            writer.write(null, new IIOImage(image, null, null), parameters);
+        } finally {
+            writer.dispose();
+        }
+        return jpeg.toByteArray();
+    }
+
+}
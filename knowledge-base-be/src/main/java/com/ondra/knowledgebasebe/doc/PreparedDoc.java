@@ -0,0 +1,10 @@
+package com.ondra.knowledgebasebe.doc;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A doc that is ready to be saved, together with the text of its DOCX-file, which is indexed once the doc
+ * has been saved, and the ID of its conversion job, which is null unless it is converted asynchronously.
+ */
+record PreparedDoc(Doc doc, CompletableFuture<String> text, String conversionJobId) {
+}
@@ -0,0 +1,200 @@
+package com.ondra.knowledgebasebe.doc;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Reads a stream once and hands its content to several branches, each of which reads its own copy on a
+ * thread of its own. Every branch reads through a pipe that holds at most {@code bufferSize} bytes, so the
+ * content is never buffered as a whole; a slow branch slows the reading down instead. A branch that stops
+ * reading early, or fails, no longer holds the others back, the rest of the content is simply not passed to
+ * it. If reading the source fails, every branch fails with it.
+ */
+final class StreamTee {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final int bufferSize;
+    private final List<Pipe> pipes = new ArrayList<>();
+
+    @FunctionalInterface
+    interface Branch<T> {
+
+        T read(InputStream inputStream) throws IOException;
+
+    }
+
+    StreamTee(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Starts a branch on the given executor. Branches have to be added before the source is pumped, and the
+     * executor has to run them concurrently with the pumping thread.
+     */
+    <T> CompletableFuture<T> branch(Branch<T> branch, Executor executor) {
+        Pipe pipe = new Pipe(bufferSize);
+        pipes.add(pipe);
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return branch.read(pipe);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            } finally {
+                pipe.close();
+            }
+        }, executor);
+    }
+
+    /**
+     * Copies the source into every branch until it is exhausted. Returns once the last chunk has been passed
+     * on, which may be before the branches have read it.
+     */
+    void pump(InputStream source) throws IOException {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        try {
+            for (int length = source.read(chunk); length != -1; length = source.read(chunk)) {
+                for (Pipe pipe : pipes) pipe.write(chunk, 0, length);
+            }
+        } catch (IOException | RuntimeException ex) {
+            fail(ex);
+            throw ex;
+        }
+        pipes.forEach(Pipe::finish);
+    }
+
+    /**
+     * Fails every branch that has not read the whole content yet, for a source that cannot be pumped at all.
+     */
+    void fail(Exception ex) {
+        pipes.forEach(pipe -> pipe.fail(ex));
+    }
+
+    /**
+     * A ring buffer between the pumping thread and one branch.
+     */
+    private static final class Pipe extends InputStream {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition readable = lock.newCondition();
+        private final Condition writable = lock.newCondition();
+        private final byte[] buffer;
+
+        private int readPosition;
+        private int length;
+        private boolean finished;
+        private boolean closed;
+        private Exception failure;
+
+        Pipe(int capacity) {
+            this.buffer = new byte[capacity];
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return 0;
+            lock.lock();
+            try {
+                while (length == 0 && !finished && failure == null) await(readable);
+                if (failure != null) throw new IOException("Reading the source failed: " + failure.getMessage(), failure);
+                if (length == 0) return -1;
+                int read = Math.min(len, Math.min(length, buffer.length - readPosition));
+                System.arraycopy(buffer, readPosition, b, off, read);
+                readPosition = (readPosition + read) % buffer.length;
+                length -= read;
+                writable.signal();
+                return read;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int available() {
+            lock.lock();
+            try {
+                return length;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Called by the branch once it is done reading, whether or not it read everything.
+         */
+        @Override
+        public void close() {
+            lock.lock();
+            try {
+                closed = true;
+                writable.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void write(byte[] b, int off, int len) throws IOException {
+            lock.lock();
+            try {
+                while (len > 0) {
+                    while (length == buffer.length && !closed) await(writable);
+                    if (closed) return;
+                    int writePosition = (readPosition + length) % buffer.length;
+                    int written = Math.min(len, Math.min(buffer.length - length, buffer.length - writePosition));
+                    System.arraycopy(b, off, buffer, writePosition, written);
+                    length += written;
+                    off += written;
+                    len -= written;
+                    readable.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void finish() {
+            lock.lock();
+            try {
+                finished = true;
+                readable.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void fail(Exception ex) {
+            lock.lock();
+            try {
+                failure = ex;
+                readable.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private static void await(Condition condition) throws InterruptedIOException {
+            try {
+                condition.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the pipe");
+            }
+        }
+
+    }
+
+}
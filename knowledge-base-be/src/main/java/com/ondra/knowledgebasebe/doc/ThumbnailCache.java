@@ -0,0 +1,88 @@
+package com.ondra.knowledgebasebe.doc;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Keeps rendered thumbnails in memory, up to {@code thumbnail.cache.max-bytes} in total; the least recently
+ * used ones are evicted first. Thumbnails are keyed by the ID of the PDF blob they were rendered from, which
+ * changes whenever the file of a doc is replaced, so they never have to be invalidated. Docs sharing the same
+ * PDF share its thumbnails as well.
+ */
+@Component
+public class ThumbnailCache {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Key, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final long maxBytes;
+    private final Counter hits;
+    private final Counter misses;
+
+    private long bytes;
+
+    private record Key(ObjectId pdfFileId, int page, int width) {
+    }
+
+    public ThumbnailCache(MeterRegistry meterRegistry, @Value("${thumbnail.cache.max-bytes}") long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.hits = meterRegistry.counter("thumbnail.cache.requests", "result", "hit");
+        this.misses = meterRegistry.counter("thumbnail.cache.requests", "result", "miss");
+        Gauge.builder("thumbnail.cache.size", this, ThumbnailCache::getBytes).baseUnit("bytes").register(meterRegistry);
+    }
+
+    public byte[] get(ObjectId pdfFileId, int page, int width, Supplier<byte[]> renderer) {
+        Key key = new Key(pdfFileId, page, width);
+        lock.lock();
+        try {
+            byte[] thumbnail = entries.get(key);
+            if (thumbnail != null) {
+                hits.increment();
+                return thumbnail;
+            }
+            misses.increment();
+        } finally {
+            lock.unlock();
+        }
+        byte[] thumbnail = renderer.get();
+        remember(key, thumbnail);
+        return thumbnail;
+    }
+
+    long getBytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remember(Key key, byte[] thumbnail) {
+        if (thumbnail.length > maxBytes) return;
+        lock.lock();
+        try {
+            byte[] previous = entries.put(key, thumbnail);
+            // the same thumbnail may have been rendered concurrently
+            if (previous != null) bytes -= previous.length;
+            bytes += thumbnail.length;
+            Iterator<Map.Entry<Key, byte[]>> leastRecentlyUsed = entries.entrySet().iterator();
+            while (bytes > maxBytes) {
+                bytes -= leastRecentlyUsed.next().getValue().length;
+                leastRecentlyUsed.remove();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -1,20 +1,31 @@
 package com.ondra.knowledgebasebe.exceptionhandling;
 
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.ConversionCapacityExceededException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.ConversionUnavailableException;
 import com.ondra.knowledgebasebe.exceptionhandling.exceptions.DocNameAlreadyTakenException;
 import com.ondra.knowledgebasebe.exceptionhandling.exceptions.DocNotFoundException;
 import com.ondra.knowledgebasebe.exceptionhandling.exceptions.FileConversionException;
 import com.ondra.knowledgebasebe.exceptionhandling.exceptions.InvalidArgumentException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.PageNotFoundException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.PdfNotAvailableException;
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.security.core.AuthenticationException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 
+import static org.springframework.http.HttpHeaders.RETRY_AFTER;
+import static org.springframework.http.HttpHeaders.WWW_AUTHENTICATE;
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.CONFLICT;
 import static org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR;
 import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.SERVICE_UNAVAILABLE;
+import static org.springframework.http.HttpStatus.TOO_MANY_REQUESTS;
+import static org.springframework.http.HttpStatus.UNAUTHORIZED;
 
 @RestControllerAdvice
 public class GlobalExceptionHandler {
@@ -27,18 +38,51 @@ public class GlobalExceptionHandler {
         logger.info(getLogMessage(request.getMethod(), request.getRequestURI(), ex.getMessage()));
     }
 
-    @ExceptionHandler(DocNotFoundException.class)
+    @ExceptionHandler(AuthenticationException.class)
+    @ResponseStatus(UNAUTHORIZED)
+    public void handleAuthenticationExceptions(
+        AuthenticationException ex,
+        HttpServletRequest request,
+        HttpServletResponse response
+    ) {
+        response.setHeader(WWW_AUTHENTICATE, "Bearer");
+        logger.warn(getLogMessage(request.getMethod(), request.getRequestURI(), ex.getMessage()));
+    }
+
+    @ExceptionHandler({DocNotFoundException.class, PageNotFoundException.class})
     @ResponseStatus(NOT_FOUND)
     public void handleNotFoundExceptions(RuntimeException ex, HttpServletRequest request) {
         logger.warn(getLogMessage(request.getMethod(), request.getRequestURI(), ex.getMessage()));
     }
 
-    @ExceptionHandler({DocNameAlreadyTakenException.class, FileConversionException.class})
+    @ExceptionHandler({DocNameAlreadyTakenException.class, FileConversionException.class, PdfNotAvailableException.class})
     @ResponseStatus(CONFLICT)
     public void handleConflictExceptions(RuntimeException ex, HttpServletRequest request) {
         logger.warn(getLogMessage(request.getMethod(), request.getRequestURI(), ex.getMessage()));
     }
 
+    @ExceptionHandler(ConversionCapacityExceededException.class)
+    @ResponseStatus(TOO_MANY_REQUESTS)
+    public void handleTooManyRequestsExceptions(
+        ConversionCapacityExceededException ex,
+        HttpServletRequest request,
+        HttpServletResponse response
+    ) {
+        response.setHeader(RETRY_AFTER, String.valueOf(ex.getRetryAfter().toSeconds()));
+        logger.warn(getLogMessage(request.getMethod(), request.getRequestURI(), ex.getMessage()));
+    }
+
+    @ExceptionHandler(ConversionUnavailableException.class)
+    @ResponseStatus(SERVICE_UNAVAILABLE)
+    public void handleServiceUnavailableExceptions(
+        ConversionUnavailableException ex,
+        HttpServletRequest request,
+        HttpServletResponse response
+    ) {
+        response.setHeader(RETRY_AFTER, String.valueOf(ex.getRetryAfter().toSeconds()));
+        logger.warn(getLogMessage(request.getMethod(), request.getRequestURI(), ex.getMessage()));
+    }
+
     @ExceptionHandler(Exception.class)
     @ResponseStatus(INTERNAL_SERVER_ERROR)
     public void handleOtherExceptions(Exception ex, HttpServletRequest request) {
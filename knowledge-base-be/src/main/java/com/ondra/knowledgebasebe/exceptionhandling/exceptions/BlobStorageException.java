@@ -0,0 +1,7 @@
+package com.ondra.knowledgebasebe.exceptionhandling.exceptions;
+
+public class BlobStorageException extends RuntimeException {
+    public BlobStorageException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
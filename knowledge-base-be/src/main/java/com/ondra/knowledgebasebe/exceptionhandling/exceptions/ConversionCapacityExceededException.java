@@ -0,0 +1,18 @@
+package com.ondra.knowledgebasebe.exceptionhandling.exceptions;
+
+import java.time.Duration;
+
+public class ConversionCapacityExceededException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public ConversionCapacityExceededException(Duration retryAfter) {
+        super("Converting DOCX to PDF not possible right now, too many conversions are running");
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.ondra.knowledgebasebe.exceptionhandling.exceptions;
+
+import java.time.Duration;
+
+public class ConversionUnavailableException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public ConversionUnavailableException(Duration retryAfter) {
+        super("Converting DOCX to PDF not possible right now, Gotenberg is unavailable");
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+}
@@ -0,0 +1,7 @@
+package com.ondra.knowledgebasebe.exceptionhandling.exceptions;
+
+public class PageNotFoundException extends RuntimeException {
+    public PageNotFoundException(String id, int page) {
+        super("The PDF of the doc with the id '" + id + "' does not have a page " + page);
+    }
+}
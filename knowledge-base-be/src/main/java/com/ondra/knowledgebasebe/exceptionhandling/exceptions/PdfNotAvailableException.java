@@ -0,0 +1,7 @@
+package com.ondra.knowledgebasebe.exceptionhandling.exceptions;
+
+public class PdfNotAvailableException extends RuntimeException {
+    public PdfNotAvailableException(String id, String conversionStatus) {
+        super("The PDF of the doc with the id '" + id + "' is not available, its conversion status is " + conversionStatus);
+    }
+}
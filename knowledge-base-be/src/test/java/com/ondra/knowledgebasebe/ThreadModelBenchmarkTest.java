@@ -0,0 +1,135 @@
+package com.ondra.knowledgebasebe;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.testcontainers.containers.GenericContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.ondra.knowledgebasebe.SecurityTestData.BEARER_TOKEN_USER_1;
+
+/**
+ * Starts the application once on Tomcat's platform thread pool and once on virtual threads, and drives both
+ * with the same mix of slow uploads, which wait for a Gotenberg stub, and cheap doc listings. Run it with
+ * {@code ./gradlew benchmark}; the results are printed, not asserted, because they depend on the machine.
+ */
+@Tag("benchmark")
+@Testcontainers
+@WireMockTest(httpPort = 3003)
+class ThreadModelBenchmarkTest {
+
+    @Container
+    static GenericContainer<?> mongoContainer = new GenericContainer<>("mongo:7.0")
+        .withEnv("MONGO_INITDB_ROOT_USERNAME", "username")
+        .withEnv("MONGO_INITDB_ROOT_PASSWORD", "password")
+        .withExposedPorts(27017);
+
+    private static final Duration CONVERSION_DELAY = Duration.ofMillis(500);
+    private static final Duration WARM_UP = Duration.ofSeconds(5);
+    private static final Duration MEASUREMENT = Duration.ofSeconds(20);
+    private static final int UPLOADING_CLIENTS = 300;
+    private static final int LISTING_CLIENTS = 50;
+
+    private record Result(double uploadsPerSecond, double listingsPerSecond, long listingP99Millis) {}
+
+    @Test
+    void compareThroughputOfPlatformAndVirtualThreads() throws Exception {
+        stubFor(post("/forms/libreoffice/convert").willReturn(
+            aResponse().withStatus(200).withBody(new byte[]{3, 4, 5}).withFixedDelay((int) CONVERSION_DELAY.toMillis())
+        ));
+
+        Result platformThreads = measure(false);
+        Result virtualThreads = measure(true);
+
+        System.out.printf("%-18s %14s %15s %18s%n", "threads", "uploads/s", "listings/s", "listing p99 (ms)");
+        System.out.printf("%-18s %14.1f %15.1f %18d%n", "platform", platformThreads.uploadsPerSecond(), platformThreads.listingsPerSecond(), platformThreads.listingP99Millis());
+        System.out.printf("%-18s %14.1f %15.1f %18d%n", "virtual", virtualThreads.uploadsPerSecond(), virtualThreads.listingsPerSecond(), virtualThreads.listingP99Millis());
+    }
+
+    private Result measure(boolean virtualThreadsEnabled) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(KnowledgeBaseBeApplication.class).properties(
+            "server.port=0",
+            "spring.threads.virtual.enabled=" + virtualThreadsEnabled,
+            "spring.data.mongodb.host=" + mongoContainer.getHost(),
+            "spring.data.mongodb.port=" + mongoContainer.getMappedPort(27017),
+            "spring.data.mongodb.database=benchmark-" + virtualThreadsEnabled,
+            "gotenberg.port=3003"
+        ).run()) {
+            URI docsUri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/api/v1/docs");
+            HttpClient httpClient = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+            long measurementStart = System.nanoTime() + WARM_UP.toNanos();
+            long measurementEnd = measurementStart + MEASUREMENT.toNanos();
+            AtomicLong uploads = new AtomicLong();
+            List<Long> listingLatencies = Collections.synchronizedList(new ArrayList<>());
+
+            try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < UPLOADING_CLIENTS; i++) {
+                    clients.submit(() -> {
+                        while (System.nanoTime() < measurementEnd) {
+                            int status = send(httpClient, uploadRequest(docsUri));
+                            if (status == 201 && System.nanoTime() > measurementStart) uploads.incrementAndGet();
+                        }
+                    });
+                }
+                for (int i = 0; i < LISTING_CLIENTS; i++) {
+                    clients.submit(() -> {
+                        while (System.nanoTime() < measurementEnd) {
+                            long start = System.nanoTime();
+                            int status = send(httpClient, HttpRequest.newBuilder(docsUri).header("Authorization", BEARER_TOKEN_USER_1).GET().build());
+                            if (status == 200 && start > measurementStart) listingLatencies.add(System.nanoTime() - start);
+                        }
+                    });
+                }
+            }
+
+            double seconds = MEASUREMENT.toSeconds();
+            List<Long> sortedLatencies = listingLatencies.stream().sorted().toList();
+            long p99 = sortedLatencies.isEmpty() ? -1 : Duration.ofNanos(sortedLatencies.get((int) (sortedLatencies.size() * 0.99))).toMillis();
+            return new Result(uploads.get() / seconds, sortedLatencies.size() / seconds, p99);
+        }
+    }
+
+    private static HttpRequest uploadRequest(URI docsUri) {
+        String boundary = UUID.randomUUID().toString();
+        String name = UUID.randomUUID().toString();
+        String body = "--" + boundary + "\r\n"
+            + "Content-Disposition: form-data; name=\"docxFile\"; filename=\"file.docx\"\r\n"
+            + "Content-Type: application/vnd.openxmlformats-officedocument.wordprocessingml.document\r\n\r\n"
+            + name + "\r\n"
+            + "--" + boundary + "--\r\n";
+        return HttpRequest.newBuilder(URI.create(docsUri + "?name=" + name))
+            .header("Authorization", BEARER_TOKEN_USER_1)
+            .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+            .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
+            .build();
+    }
+
+    private static int send(HttpClient httpClient, HttpRequest request) {
+        try {
+            return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (Exception ex) {
+            return -1;
+        }
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.ondra.knowledgebasebe.blob;
+
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.ondra.knowledgebasebe.config.GridFsConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.ByteArrayInputStream;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataMongoTest
+@Testcontainers
+@Import(GridFsConfig.class)
+public class BlobCollectorDataMongoTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:7.0");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private GridFSBucket gridFSBucket;
+
+    private static final Instant NOW = Instant.parse("2024-05-01T10:00:00Z");
+    private static final Duration GRACE_PERIOD = Duration.ofMinutes(10);
+
+    private BlobStore blobStoreAt(Instant instant) {
+        return new BlobStore(gridFSBucket, mongoTemplate, new BlobCompression(new SimpleMeterRegistry(), true, 0.9), Clock.fixed(instant, ZoneOffset.UTC));
+    }
+
+    private BlobCollector blobCollectorAt(Instant instant) {
+        return new BlobCollector(mongoTemplate, blobStoreAt(instant), Clock.fixed(instant, ZoneOffset.UTC), GRACE_PERIOD);
+    }
+
+    private ObjectId storeAndRelease(byte[] content) {
+        ObjectId id = blobStoreAt(NOW).store("document.pdf", "application/pdf", new ByteArrayInputStream(content)).id();
+        blobStoreAt(NOW).release(id);
+        return id;
+    }
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection("blobs.files");
+        mongoTemplate.dropCollection("blobs.chunks");
+        mongoTemplate.remove(new Query(), BlobRef.class);
+    }
+
+    @Test
+    public void shouldDeleteBlobAfterGracePeriod() {
+        ObjectId id = storeAndRelease(new byte[]{1});
+
+        blobCollectorAt(NOW.plus(GRACE_PERIOD).plusSeconds(1)).collect();
+
+        assertThat(blobStoreAt(NOW).find(id).isPresent()).isFalse();
+        assertThat(mongoTemplate.count(new Query(), BlobRef.class)).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldKeepBlobDuringGracePeriod() {
+        ObjectId id = storeAndRelease(new byte[]{1});
+
+        blobCollectorAt(NOW.plusSeconds(1)).collect();
+
+        assertThat(blobStoreAt(NOW).find(id).isPresent()).isTrue();
+    }
+
+    @Test
+    public void shouldKeepBlobThatWasAcquiredAgain() {
+        ObjectId id = storeAndRelease(new byte[]{1});
+        blobStoreAt(NOW).acquire(id);
+
+        blobCollectorAt(NOW.plus(GRACE_PERIOD).plusSeconds(1)).collect();
+
+        assertThat(blobStoreAt(NOW).find(id).isPresent()).isTrue();
+    }
+
+}
@@ -0,0 +1,240 @@
+package com.ondra.knowledgebasebe.blob;
+
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.ondra.knowledgebasebe.config.GridFsConfig;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.BlobStorageException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+
+@DataMongoTest
+@Testcontainers
+@Import({GridFsConfig.class, BlobStore.class, BlobCompression.class, SimpleMeterRegistry.class})
+public class BlobStoreDataMongoTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:7.0");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private GridFSBucket gridFSBucket;
+
+    @Autowired
+    private SimpleMeterRegistry meterRegistry;
+
+    private static final byte[] CONTENT = new byte[300 * 1024];
+    private static final byte[] COMPRESSIBLE_CONTENT = "%PDF-1.7 obj << /Type /Page >> endobj ".repeat(10_000).getBytes();
+
+    static {
+        new Random(42).nextBytes(CONTENT);
+    }
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection("blobs.files");
+        mongoTemplate.dropCollection("blobs.chunks");
+        mongoTemplate.remove(new Query(), BlobRef.class);
+    }
+
+    private long refCount(ObjectId id) {
+        return mongoTemplate.findOne(new Query(where("blobId").is(id)), BlobRef.class).getRefCount();
+    }
+
+    @Nested
+    class Store {
+
+        @Test
+        public void shouldStoreContentSpanningSeveralChunks() throws IOException {
+            ObjectId id = blobStore.store("document.pdf", "application/pdf", new ByteArrayInputStream(CONTENT)).id();
+
+            Optional<BlobResource> blobResource = blobStore.find(id);
+            assertThat(blobResource.isPresent()).isTrue();
+            assertThat(blobResource.get().contentLength()).isEqualTo(CONTENT.length);
+            assertThat(blobResource.get().getContentType()).isEqualTo("application/pdf");
+            assertThat(blobResource.get().getContentAsByteArray()).isEqualTo(CONTENT);
+        }
+
+        @Test
+        public void shouldReturnSha256HashOfContent() {
+            StoredBlob storedBlob = blobStore.store("document.txt", "text/plain", new ByteArrayInputStream("abc".getBytes()));
+
+            assertThat(storedBlob.sha256()).isEqualTo("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+        }
+
+        @Test
+        public void shouldStoreIdenticalContentOnlyOnce() {
+            StoredBlob first = blobStore.store("document.pdf", "application/pdf", new ByteArrayInputStream(CONTENT));
+            StoredBlob second = blobStore.store("handbook.pdf", "application/pdf", new ByteArrayInputStream(CONTENT));
+
+            assertThat(second.id()).isEqualTo(first.id());
+            assertThat(mongoTemplate.getCollection("blobs.files").countDocuments()).isEqualTo(1);
+            assertThat(refCount(first.id())).isEqualTo(2);
+        }
+
+        @Test
+        public void shouldNotKeepAnyChunksIfWriterFails() {
+            assertThatThrownBy(() -> blobStore.store("document.pdf", "application/pdf", outputStream -> {
+                outputStream.write(CONTENT);
+                throw new IOException("Connection reset");
+            })).isInstanceOf(BlobStorageException.class);
+
+            assertThat(mongoTemplate.getCollection("blobs.files").countDocuments()).isEqualTo(0);
+            assertThat(mongoTemplate.getCollection("blobs.chunks").countDocuments()).isEqualTo(0);
+        }
+
+    }
+
+    @Nested
+    class Compression {
+
+        @Test
+        public void shouldStoreCompressibleContentGzipped() throws IOException {
+            ObjectId id = blobStore.store("document.txt", "text/plain", new ByteArrayInputStream(COMPRESSIBLE_CONTENT)).id();
+
+            BlobResource blobResource = blobStore.find(id).orElseThrow();
+            assertThat(blobResource.getContentEncoding()).isEqualTo("gzip");
+            assertThat(blobResource.contentLength()).isEqualTo(COMPRESSIBLE_CONTENT.length);
+            assertThat(blobResource.storedLength()).isLessThan(COMPRESSIBLE_CONTENT.length / 10);
+            assertThat(blobResource.getContentAsByteArray()).isEqualTo(COMPRESSIBLE_CONTENT);
+            try (InputStream storedStream = new GZIPInputStream(blobResource.getStoredInputStream())) {
+                assertThat(storedStream.readAllBytes()).isEqualTo(COMPRESSIBLE_CONTENT);
+            }
+            assertThat(meterRegistry.summary("blob.compression.ratio").max()).isLessThan(0.1);
+            assertThat(meterRegistry.timer("blob.compression.time").count()).isGreaterThan(0);
+        }
+
+        @Test
+        public void shouldReadRangeOfGzippedPdfFromItsFrame() throws IOException {
+            ObjectId id = blobStore.store("document.pdf", "application/pdf", new ByteArrayInputStream(COMPRESSIBLE_CONTENT)).id();
+
+            BlobResource blobResource = blobStore.find(id).orElseThrow();
+            assertThat(blobResource.getContentEncoding()).isEqualTo("gzip");
+            int start = BlobCompression.FRAME_SIZE + 1000;
+            try (InputStream inputStream = blobResource.forRangeReads().getInputStream()) {
+                assertThat(inputStream.skip(start)).isEqualTo(start);
+                assertThat(inputStream.readNBytes(100)).isEqualTo(Arrays.copyOfRange(COMPRESSIBLE_CONTENT, start, start + 100));
+            }
+        }
+
+        @Test
+        public void shouldReadBytesAcrossFramesOfGzippedPdf() throws IOException {
+            ObjectId id = blobStore.store("document.pdf", "application/pdf", new ByteArrayInputStream(COMPRESSIBLE_CONTENT)).id();
+
+            BlobResource blobResource = blobStore.find(id).orElseThrow();
+            int start = BlobCompression.FRAME_SIZE - 50;
+            assertThat(blobResource.read(start, 100)).isEqualTo(Arrays.copyOfRange(COMPRESSIBLE_CONTENT, start, start + 100));
+        }
+
+        @Test
+        public void shouldReadBytesAcrossChunksOfUncompressedBlob() throws IOException {
+            ObjectId id = blobStore.store("document.docx", "application/zip", new ByteArrayInputStream(CONTENT)).id();
+
+            BlobResource blobResource = blobStore.find(id).orElseThrow();
+            int start = 255 * 1024 - 50;
+            assertThat(blobResource.read(start, 100)).isEqualTo(Arrays.copyOfRange(CONTENT, start, start + 100));
+        }
+
+        @Test
+        public void shouldStoreIncompressibleContentAsItIs() {
+            ObjectId id = blobStore.store("document.docx", "application/zip", new ByteArrayInputStream(CONTENT)).id();
+
+            BlobResource blobResource = blobStore.find(id).orElseThrow();
+            assertThat(blobResource.getContentEncoding()).isNull();
+            assertThat(blobResource.storedLength()).isEqualTo(CONTENT.length);
+        }
+
+        @Test
+        public void shouldHashContentBeforeItIsCompressed() {
+            StoredBlob storedBlob = blobStore.store("document.txt", "text/plain", new ByteArrayInputStream("abc".repeat(100_000).getBytes()));
+            StoredBlob sameBlob = blobStore.store("handbook.txt", "text/plain", outputStream -> {
+                for (int i = 0; i < 100_000; i++) outputStream.write("abc".getBytes());
+            });
+
+            assertThat(sameBlob).isEqualTo(storedBlob);
+        }
+
+    }
+
+    @Nested
+    class Find {
+
+        @Test
+        public void shouldReturnEmptyOptionalWhenBlobIsNotPresent() {
+            assertThat(blobStore.find(new ObjectId()).isPresent()).isFalse();
+        }
+
+    }
+
+    @Nested
+    class Acquire {
+
+        @Test
+        public void shouldTakeAnotherReference() {
+            ObjectId id = blobStore.store("document.pdf", "application/pdf", new ByteArrayInputStream(CONTENT)).id();
+
+            assertThat(blobStore.acquire(id)).isTrue();
+
+            assertThat(refCount(id)).isEqualTo(2);
+        }
+
+        @Test
+        public void shouldNotAcquireBlobThatIsNotReferenceCounted() {
+            assertThat(blobStore.acquire(new ObjectId())).isFalse();
+        }
+
+    }
+
+    @Nested
+    class Release {
+
+        @Test
+        public void shouldKeepBlobUntilItIsCollected() {
+            ObjectId id = blobStore.store("document.pdf", "application/pdf", new ByteArrayInputStream(CONTENT)).id();
+
+            blobStore.release(id);
+
+            assertThat(refCount(id)).isEqualTo(0);
+            assertThat(blobStore.find(id).isPresent()).isTrue();
+        }
+
+        @Test
+        public void shouldDeleteBlobThatIsNotReferenceCounted() {
+            ObjectId id = gridFSBucket.uploadFromStream("document.pdf", new ByteArrayInputStream(CONTENT));
+
+            blobStore.release(id);
+
+            assertThat(blobStore.find(id).isPresent()).isFalse();
+        }
+
+    }
+
+}
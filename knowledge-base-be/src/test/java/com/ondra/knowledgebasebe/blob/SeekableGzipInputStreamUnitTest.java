@@ -0,0 +1,87 @@
+package com.ondra.knowledgebasebe.blob;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static com.ondra.knowledgebasebe.blob.BlobCompression.FRAME_SIZE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SeekableGzipInputStreamUnitTest {
+
+    private static final byte[] CONTENT = content();
+
+    private final ByteArrayOutputStream stored = new ByteArrayOutputStream();
+    private final CompressingOutputStream compressingStream = new CompressingOutputStream(stored, 0.9);
+
+    private static byte[] content() {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; content.length() < 3 * FRAME_SIZE + 123; i++) content.append(i).append(" 0 obj << /Type /Page >> endobj\n");
+        return content.toString().getBytes();
+    }
+
+    private SeekableGzipInputStream seekableStream() throws IOException {
+        compressingStream.write(CONTENT);
+        compressingStream.finish();
+        return new SeekableGzipInputStream(new ByteArrayInputStream(stored.toByteArray()), FRAME_SIZE, compressingStream.frameOffsets(), CONTENT.length);
+    }
+
+    @Test
+    void shouldStoreOneFramePerFrameSizeOfContent() throws IOException {
+        seekableStream();
+
+        assertThat(compressingStream.isCompressed()).isTrue();
+        assertThat(compressingStream.frameOffsets()).hasSize(4);
+    }
+
+    @Test
+    void shouldStoreContentAsPlainGzip() throws IOException {
+        seekableStream();
+
+        try (InputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(stored.toByteArray()))) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(CONTENT);
+        }
+    }
+
+    @Test
+    void shouldReadWholeContent() throws IOException {
+        try (InputStream inputStream = seekableStream()) {
+            assertThat(inputStream.readAllBytes()).isEqualTo(CONTENT);
+        }
+    }
+
+    @Test
+    void shouldReadFromPositionInLaterFrame() throws IOException {
+        int start = 2 * FRAME_SIZE + 17;
+
+        try (InputStream inputStream = seekableStream()) {
+            assertThat(inputStream.skip(start)).isEqualTo(start);
+            assertThat(inputStream.readAllBytes()).isEqualTo(Arrays.copyOfRange(CONTENT, start, CONTENT.length));
+        }
+    }
+
+    @Test
+    void shouldSkipWithinAndAcrossFramesWhileReading() throws IOException {
+        try (InputStream inputStream = seekableStream()) {
+            assertThat(inputStream.readNBytes(10)).isEqualTo(Arrays.copyOfRange(CONTENT, 0, 10));
+            inputStream.skipNBytes(FRAME_SIZE - 20);
+            assertThat(inputStream.readNBytes(20)).isEqualTo(Arrays.copyOfRange(CONTENT, FRAME_SIZE - 10, FRAME_SIZE + 10));
+            inputStream.skipNBytes(FRAME_SIZE);
+            assertThat(inputStream.readNBytes(10)).isEqualTo(Arrays.copyOfRange(CONTENT, 2 * FRAME_SIZE + 10, 2 * FRAME_SIZE + 20));
+        }
+    }
+
+    @Test
+    void shouldNotSkipPastEndOfContent() throws IOException {
+        try (InputStream inputStream = seekableStream()) {
+            assertThat(inputStream.skip(CONTENT.length + 100L)).isEqualTo(CONTENT.length);
+            assertThat(inputStream.read()).isEqualTo(-1);
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.ondra.knowledgebasebe.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import java.time.Clock;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class CachingJwtDecoderUnitTest {
+
+    private static final Instant NOW = Instant.parse("2024-05-01T10:00:00Z");
+
+    @Mock
+    private JwtDecoder delegate;
+
+    private final Clock clock = mock(Clock.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private CachingJwtDecoder cachingJwtDecoder;
+
+    @BeforeEach
+    void setUp() {
+        when(clock.instant()).thenReturn(NOW);
+        cachingJwtDecoder = new CachingJwtDecoder(delegate, meterRegistry, clock, 2);
+    }
+
+    private static Jwt jwt(String token, Instant expiresAt) {
+        return Jwt.withTokenValue(token).header("alg", "RS256").subject("auth0|123").issuedAt(NOW.minusSeconds(60)).expiresAt(expiresAt).build();
+    }
+
+    @Nested
+    class Decode {
+
+        @Test
+        void shouldVerifyTokenOnlyOnce() {
+            Jwt jwt = jwt("token-1", NOW.plusSeconds(60));
+            when(delegate.decode("token-1")).thenReturn(jwt);
+
+            assertThat(cachingJwtDecoder.decode("token-1")).isSameAs(jwt);
+            assertThat(cachingJwtDecoder.decode("token-1")).isSameAs(jwt);
+
+            verify(delegate, times(1)).decode("token-1");
+            assertThat(meterRegistry.counter("security.jwt.cache.requests", "result", "hit").count()).isEqualTo(1);
+            assertThat(meterRegistry.counter("security.jwt.cache.requests", "result", "miss").count()).isEqualTo(1);
+        }
+
+        @Test
+        void shouldVerifyTokenAgainOnceItExpired() {
+            Jwt jwt = jwt("token-1", NOW.plusSeconds(60));
+            when(delegate.decode("token-1")).thenReturn(jwt).thenThrow(new BadJwtException("Jwt expired"));
+            cachingJwtDecoder.decode("token-1");
+            when(clock.instant()).thenReturn(NOW.plusSeconds(60));
+
+            assertThatThrownBy(() -> cachingJwtDecoder.decode("token-1")).isInstanceOf(BadJwtException.class);
+            verify(delegate, times(2)).decode("token-1");
+        }
+
+        @Test
+        void shouldNotCacheRejectedTokens() {
+            when(delegate.decode("forged")).thenThrow(new BadJwtException("Signed JWT rejected"));
+
+            assertThatThrownBy(() -> cachingJwtDecoder.decode("forged")).isInstanceOf(BadJwtException.class);
+            assertThatThrownBy(() -> cachingJwtDecoder.decode("forged")).isInstanceOf(BadJwtException.class);
+            verify(delegate, times(2)).decode("forged");
+        }
+
+        @Test
+        void shouldEvictLeastRecentlyUsedToken() {
+            for (String token : new String[]{"token-1", "token-2", "token-3"}) {
+                when(delegate.decode(token)).thenReturn(jwt(token, NOW.plusSeconds(60)));
+            }
+            cachingJwtDecoder.decode("token-1");
+            cachingJwtDecoder.decode("token-2");
+            cachingJwtDecoder.decode("token-1");
+            cachingJwtDecoder.decode("token-3");
+
+            cachingJwtDecoder.decode("token-1");
+            cachingJwtDecoder.decode("token-2");
+
+            verify(delegate, times(1)).decode("token-1");
+            verify(delegate, times(2)).decode("token-2");
+        }
+
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.ondra.knowledgebasebe.config;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.crypto.RSASSASigner;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.SignedJWT;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Date;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.exactly;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwtDecoderWireMockTest {
+
+    @RegisterExtension
+    static WireMockExtension issuer = WireMockExtension.newInstance().options(wireMockConfig().dynamicPort()).build();
+
+    private static final String ISSUER = "https://jan-ondra.eu.auth0.com/";
+    private static final String AUDIENCE = "https://knowledge-base-api/";
+    private static final String JWKS_PATH = "/.well-known/jwks.json";
+
+    private RSAKey key1;
+    private RSAKey key2;
+    private JwksKeySource jwksKeySource;
+    private JwtDecoder jwtDecoder;
+
+    @BeforeEach
+    void setUp() throws JOSEException {
+        key1 = new RSAKeyGenerator(2048).keyID("key-1").generate();
+        key2 = new RSAKeyGenerator(2048).keyID("key-2").generate();
+        serveKeys(key1);
+        jwksKeySource = new JwksKeySource(issuer.baseUrl() + JWKS_PATH, Duration.ZERO, Duration.ofSeconds(2), Clock.systemUTC());
+        jwtDecoder = new JwtDecoderConfig().jwtDecoder(jwksKeySource, new SimpleMeterRegistry(), ISSUER, AUDIENCE, 100);
+    }
+
+    private void serveKeys(RSAKey... keys) {
+        JWKSet publicKeys = new JWKSet(Arrays.stream(keys).<JWK>map(RSAKey::toPublicJWK).toList());
+        issuer.stubFor(get(JWKS_PATH).willReturn(aResponse().withStatus(200).withBody(publicKeys.toString())));
+    }
+
+    private static String token(RSAKey key, String audience) throws JOSEException {
+        JWTClaimsSet claims = new JWTClaimsSet.Builder()
+            .issuer(ISSUER)
+            .audience(audience)
+            .subject("auth0|123")
+            .issueTime(Date.from(Instant.now()))
+            .expirationTime(Date.from(Instant.now().plusSeconds(300)))
+            .build();
+        SignedJWT signedJwt = new SignedJWT(new JWSHeader.Builder(JWSAlgorithm.RS256).keyID(key.getKeyID()).build(), claims);
+        signedJwt.sign(new RSASSASigner(key));
+        return signedJwt.serialize();
+    }
+
+    @Nested
+    class Decode {
+
+        @Test
+        void shouldDecodeTokenSignedWithPublishedKey() throws JOSEException {
+            assertThat(jwtDecoder.decode(token(key1, AUDIENCE)).getSubject()).isEqualTo("auth0|123");
+        }
+
+        @Test
+        void shouldFetchKeysOnlyOnceForManyTokens() throws JOSEException {
+            jwtDecoder.decode(token(key1, AUDIENCE));
+            jwtDecoder.decode(token(key1, AUDIENCE));
+
+            issuer.verify(exactly(1), getRequestedFor(urlPathEqualTo(JWKS_PATH)));
+        }
+
+        @Test
+        void shouldRejectTokenForOtherAudience() throws JOSEException {
+            String token = token(key1, "https://other-api/");
+
+            assertThatThrownBy(() -> jwtDecoder.decode(token)).isInstanceOf(JwtException.class);
+        }
+
+        @Test
+        void shouldRejectTokenSignedWithUnknownKey() throws JOSEException {
+            RSAKey unpublishedKey = new RSAKeyGenerator(2048).keyID("key-1").generate();
+            String token = token(unpublishedKey, AUDIENCE);
+
+            assertThatThrownBy(() -> jwtDecoder.decode(token)).isInstanceOf(JwtException.class);
+        }
+
+        @Test
+        void shouldPickUpRotatedKey() throws JOSEException {
+            jwtDecoder.decode(token(key1, AUDIENCE));
+            serveKeys(key1, key2);
+
+            assertThat(jwtDecoder.decode(token(key2, AUDIENCE)).getSubject()).isEqualTo("auth0|123");
+        }
+
+    }
+
+    @Nested
+    class RefreshInBackground {
+
+        @Test
+        void shouldKeepStaleKeysWhenIssuerIsDown() throws JOSEException {
+            jwtDecoder.decode(token(key1, AUDIENCE));
+            issuer.stubFor(get(JWKS_PATH).willReturn(aResponse().withStatus(503)));
+
+            jwksKeySource.refreshInBackground();
+
+            assertThat(jwtDecoder.decode(token(key1, AUDIENCE)).getSubject()).isEqualTo("auth0|123");
+        }
+
+        @Test
+        void shouldReplaceKeysWithoutBlockingRequests() throws JOSEException {
+            jwtDecoder.decode(token(key1, AUDIENCE));
+            serveKeys(key2);
+
+            jwksKeySource.refreshInBackground();
+
+            assertThat(jwtDecoder.decode(token(key2, AUDIENCE)).getSubject()).isEqualTo("auth0|123");
+            issuer.verify(exactly(2), getRequestedFor(urlPathEqualTo(JWKS_PATH)));
+        }
+
+    }
+
+}
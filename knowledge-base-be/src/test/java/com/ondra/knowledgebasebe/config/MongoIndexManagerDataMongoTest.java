@@ -0,0 +1,105 @@
+package com.ondra.knowledgebasebe.config;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.data.domain.Sort.Direction.ASC;
+
+@DataMongoTest
+@Testcontainers
+@Import(MongoIndexManager.class)
+public class MongoIndexManagerDataMongoTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:7.0");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private MongoIndexManager mongoIndexManager;
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.dropCollection("docs");
+        mongoIndexManager.ensureIndexes();
+    }
+
+    @Nested
+    class EnsureIndexes {
+
+        @Test
+        void shouldCreateDeclaredIndexesThatWereDropped() {
+            mongoTemplate.indexOps("docs").dropIndex("userId_name");
+
+            assertThat(mongoIndexManager.findMissingIndexes()).extracting(MongoIndexManager.DeclaredIndex::collection).containsExactly("docs");
+            assertThat(mongoIndexManager.ensureIndexes()).isEmpty();
+            assertThat(mongoIndexManager.findMissingIndexes()).isEmpty();
+        }
+
+        @Test
+        void shouldRecognizeTextIndexByItsTextFields() {
+            mongoTemplate.dropCollection("docTexts");
+
+            assertThat(mongoIndexManager.findMissingIndexes()).extracting(MongoIndexManager.DeclaredIndex::keys).containsExactly("{userId:1, text:text}");
+            assertThat(mongoIndexManager.ensureIndexes()).isEmpty();
+            assertThat(mongoIndexManager.findUndeclaredIndexes()).isEmpty();
+        }
+
+        @Test
+        void shouldReportUniqueIndexThatCannotBeCreatedOverDuplicates() {
+            mongoTemplate.indexOps("docs").dropIndex("userId_name");
+            mongoTemplate.insert(new Document("userId", "1").append("name", "Java"), "docs");
+            mongoTemplate.insert(new Document("userId", "1").append("name", "Java"), "docs");
+
+            assertThat(mongoIndexManager.ensureIndexes())
+                .singleElement()
+                .satisfies(index -> {
+                    assertThat(index.collection()).isEqualTo("docs");
+                    assertThat(index.keys()).isEqualTo("{userId:1, name:1}");
+                    assertThat(index.unique()).isTrue();
+                });
+        }
+
+    }
+
+    @Nested
+    class FindUndeclaredIndexes {
+
+        @Test
+        void shouldReportIndexesThatAreNotDeclared() {
+            mongoTemplate.indexOps("docs").ensureIndex(new Index().on("conversionStatus", ASC).named("conversionStatus"));
+
+            assertThat(mongoIndexManager.findUndeclaredIndexes()).extracting(MongoIndexManager.ExistingIndex::name).containsExactly("conversionStatus");
+        }
+
+    }
+
+    @Nested
+    class FindUnusedIndexes {
+
+        @Test
+        void shouldNotReportIndexesAfterTheyWereUsed() {
+            mongoTemplate.getCollection("docs").find(new Document("userId", "1").append("name", "Java")).hint(new Document("userId", 1).append("name", 1)).first();
+
+            assertThat(mongoIndexManager.findUnusedIndexes()).extracting(MongoIndexManager.ExistingIndex::name)
+                .contains("userId_id")
+                .doesNotContain("userId_name", "_id_");
+        }
+
+    }
+
+}
@@ -0,0 +1,131 @@
+package com.ondra.knowledgebasebe.config;
+
+import com.ondra.knowledgebasebe.exceptionhandling.GlobalExceptionHandler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.MethodParameter;
+import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class UserIdArgumentResolverUnitTest {
+
+    private final UserIdArgumentResolver userIdArgumentResolver = new UserIdArgumentResolver();
+
+    @SuppressWarnings("unused")
+    private void handler(@UserId String userId, String name, @UserId Long notAUserId) {
+    }
+
+    private static MethodParameter parameter(int index) throws NoSuchMethodException {
+        return new MethodParameter(UserIdArgumentResolverUnitTest.class.getDeclaredMethod("handler", String.class, String.class, Long.class), index);
+    }
+
+    @RestController
+    static class UserIdController {
+
+        @GetMapping("/user-id")
+        String getUserId(@UserId String userId) {
+            return userId;
+        }
+
+    }
+
+    private static Jwt jwt(String subject) {
+        return Jwt.withTokenValue("token")
+            .header("alg", "RS256")
+            .subject(subject)
+            .issuedAt(Instant.now())
+            .expiresAt(Instant.now().plusSeconds(60))
+            .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Nested
+    class SupportsParameter {
+
+        @Test
+        void shouldSupportAnnotatedStringParameter() throws Exception {
+            assertThat(userIdArgumentResolver.supportsParameter(parameter(0))).isTrue();
+        }
+
+        @Test
+        void shouldNotSupportOtherParameters() throws Exception {
+            assertThat(userIdArgumentResolver.supportsParameter(parameter(1))).isFalse();
+            assertThat(userIdArgumentResolver.supportsParameter(parameter(2))).isFalse();
+        }
+
+    }
+
+    @Nested
+    class ResolveArgument {
+
+        @Test
+        void shouldReturnSubjectOfJwt() throws Exception {
+            SecurityContextHolder.getContext().setAuthentication(new JwtAuthenticationToken(jwt("auth0|123")));
+
+            assertThat(userIdArgumentResolver.resolveArgument(parameter(0), null, null, null)).isEqualTo("auth0|123");
+        }
+
+        @Test
+        void shouldFailWithoutJwt() {
+            SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("user", "password"));
+
+            assertThatThrownBy(() -> userIdArgumentResolver.resolveArgument(parameter(0), null, null, null))
+                .isInstanceOf(AuthenticationCredentialsNotFoundException.class);
+        }
+
+    }
+
+    @Nested
+    class HandlerMethod {
+
+        private final MockMvc mockMvc = MockMvcBuilders
+            .standaloneSetup(new UserIdController())
+            .setCustomArgumentResolvers(userIdArgumentResolver)
+            .setControllerAdvice(new GlobalExceptionHandler())
+            .build();
+
+        @Test
+        void shouldGetSubjectOfJwt() throws Exception {
+            SecurityContextHolder.getContext().setAuthentication(new JwtAuthenticationToken(jwt("auth0|123")));
+
+            mockMvc
+                .perform(get("/user-id"))
+                .andExpect(status().isOk())
+                .andExpect(content().string("auth0|123"));
+        }
+
+        @Test
+        void shouldReturnUnauthorizedWithoutJwt() throws Exception {
+            SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken("user", "password"));
+
+            mockMvc
+                .perform(get("/user-id"))
+                .andExpect(status().isUnauthorized())
+                .andExpect(header().string("WWW-Authenticate", "Bearer"))
+                .andExpect(content().string(""));
+        }
+
+    }
+
+}
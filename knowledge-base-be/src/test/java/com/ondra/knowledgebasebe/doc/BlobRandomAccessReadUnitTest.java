@@ -0,0 +1,93 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.BlobResource;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.ondra.knowledgebasebe.doc.BlobRandomAccessRead.BLOCK_SIZE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BlobRandomAccessReadUnitTest {
+
+    private static BlobResource blobResource(byte[] bytes) throws IOException {
+        BlobResource blobResource = mock(BlobResource.class);
+        when(blobResource.contentLength()).thenReturn((long) bytes.length);
+        when(blobResource.read(anyLong(), anyInt())).thenAnswer(invocation -> {
+            int position = (int) (long) invocation.getArgument(0);
+            return Arrays.copyOfRange(bytes, position, position + (int) invocation.getArgument(1));
+        });
+        return blobResource;
+    }
+
+    private static byte[] randomContent(int length) {
+        byte[] content = new byte[length];
+        new Random(42).nextBytes(content);
+        return content;
+    }
+
+    @Test
+    void shouldReadAcrossBlocksFromAnyPosition() throws IOException {
+        byte[] content = randomContent(3 * BLOCK_SIZE + 17);
+        int start = 2 * BLOCK_SIZE - 10;
+
+        try (BlobRandomAccessRead randomAccessRead = new BlobRandomAccessRead(blobResource(content))) {
+            randomAccessRead.seek(start);
+            byte[] read = new byte[20];
+            for (int total = 0; total < read.length; ) total += randomAccessRead.read(read, total, read.length - total);
+
+            assertThat(read).isEqualTo(Arrays.copyOfRange(content, start, start + 20));
+            assertThat(randomAccessRead.getPosition()).isEqualTo(start + 20);
+        }
+    }
+
+    @Test
+    void shouldOnlyFetchBlocksThatAreRead() throws IOException {
+        BlobResource blob = blobResource(randomContent(10 * BLOCK_SIZE));
+
+        try (BlobRandomAccessRead randomAccessRead = new BlobRandomAccessRead(blob)) {
+            randomAccessRead.seek(7 * BLOCK_SIZE + 3);
+            randomAccessRead.read();
+            randomAccessRead.seek(7 * BLOCK_SIZE + 500);
+            randomAccessRead.read();
+        }
+
+        verify(blob, times(1)).read(anyLong(), anyInt());
+    }
+
+    @Test
+    void shouldReportEndOfBlob() throws IOException {
+        try (BlobRandomAccessRead randomAccessRead = new BlobRandomAccessRead(blobResource(new byte[]{1, 2, 3}))) {
+            randomAccessRead.seek(2);
+            assertThat(randomAccessRead.read()).isEqualTo(3);
+            assertThat(randomAccessRead.isEOF()).isTrue();
+            assertThat(randomAccessRead.read()).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void shouldLetPdfBoxOpenStoredPdf() throws IOException {
+        byte[] pdfFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
+
+        try (
+            PDDocument fromBlob = Loader.loadPDF(new BlobRandomAccessRead(blobResource(pdfFileBytes)));
+            PDDocument fromBuffer = Loader.loadPDF(new RandomAccessReadBuffer(pdfFileBytes))
+        ) {
+            assertThat(fromBlob.getNumberOfPages()).isEqualTo(fromBuffer.getNumberOfPages());
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.BlobCompression;
+import com.ondra.knowledgebasebe.blob.BlobRef;
+import com.ondra.knowledgebasebe.blob.BlobStore;
+import com.ondra.knowledgebasebe.config.GridFsConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.ByteArrayInputStream;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+@DataMongoTest
+@Testcontainers
+@Import({GridFsConfig.class, BlobStore.class, BlobCompression.class, SimpleMeterRegistry.class})
+public class ConversionCacheDataMongoTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:7.0");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private static final Instant NOW = Instant.parse("2024-05-01T10:00:00Z");
+
+    private ConversionCache conversionCacheAt(Instant instant, long maxEntries) {
+        return new ConversionCache(mongoTemplate, blobStore, meterRegistry, Clock.fixed(instant, ZoneOffset.UTC), maxEntries);
+    }
+
+    private ObjectId storePdf(String content) {
+        return blobStore.store("document.pdf", "application/pdf", new ByteArrayInputStream(content.getBytes())).id();
+    }
+
+    private long refCount(ObjectId id) {
+        return mongoTemplate.findOne(query(where("blobId").is(id)), BlobRef.class).getRefCount();
+    }
+
+    private double requests(String result) {
+        return meterRegistry.counter("conversion.cache.requests", "result", result).count();
+    }
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.remove(new Query(), ConversionCacheEntry.class);
+        mongoTemplate.dropCollection("blobs.files");
+        mongoTemplate.dropCollection("blobs.chunks");
+        mongoTemplate.remove(new Query(), BlobRef.class);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Nested
+    class AcquireCachedPdf {
+
+        @Test
+        public void shouldReturnReferenceOnCachedPdf() {
+            ObjectId pdfFileId = storePdf("%PDF-1");
+            conversionCacheAt(NOW, 10).put("hash", pdfFileId);
+
+            Optional<ObjectId> result = conversionCacheAt(NOW, 10).acquireCachedPdf("hash");
+
+            assertThat(result).contains(pdfFileId);
+            assertThat(refCount(pdfFileId)).isEqualTo(3);
+            assertThat(requests("hit")).isEqualTo(1);
+        }
+
+        @Test
+        public void shouldReturnEmptyOptionalForUnknownHash() {
+            assertThat(conversionCacheAt(NOW, 10).acquireCachedPdf("hash").isPresent()).isFalse();
+            assertThat(requests("miss")).isEqualTo(1);
+        }
+
+    }
+
+    @Nested
+    class Put {
+
+        @Test
+        public void shouldKeepSingleEntryForSameHash() {
+            ObjectId pdfFileId = storePdf("%PDF-1");
+            conversionCacheAt(NOW, 10).put("hash", pdfFileId);
+            conversionCacheAt(NOW, 10).put("hash", pdfFileId);
+
+            assertThat(mongoTemplate.count(new Query(), ConversionCacheEntry.class)).isEqualTo(1);
+            assertThat(refCount(pdfFileId)).isEqualTo(2);
+        }
+
+    }
+
+    @Nested
+    class EvictLeastRecentlyUsed {
+
+        @Test
+        public void shouldEvictLeastRecentlyUsedEntry() {
+            ObjectId evictedPdfFileId = storePdf("%PDF-2");
+            conversionCacheAt(NOW, 2).put("hash-1", storePdf("%PDF-1"));
+            conversionCacheAt(NOW.plusSeconds(1), 2).put("hash-2", evictedPdfFileId);
+            conversionCacheAt(NOW.plusSeconds(2), 2).acquireCachedPdf("hash-1");
+            conversionCacheAt(NOW.plusSeconds(3), 2).put("hash-3", storePdf("%PDF-3"));
+
+            conversionCacheAt(NOW.plusSeconds(4), 2).evictLeastRecentlyUsed();
+
+            assertThat(mongoTemplate.findById("hash-1", ConversionCacheEntry.class)).isNotNull();
+            assertThat(mongoTemplate.findById("hash-2", ConversionCacheEntry.class)).isNull();
+            assertThat(mongoTemplate.findById("hash-3", ConversionCacheEntry.class)).isNotNull();
+            assertThat(refCount(evictedPdfFileId)).isEqualTo(1);
+        }
+
+        @Test
+        public void shouldKeepEntriesWithinLimit() {
+            conversionCacheAt(NOW, 2).put("hash-1", storePdf("%PDF-1"));
+            conversionCacheAt(NOW, 2).put("hash-2", storePdf("%PDF-2"));
+
+            conversionCacheAt(NOW, 2).evictLeastRecentlyUsed();
+
+            assertThat(mongoTemplate.count(new Query(), ConversionCacheEntry.class)).isEqualTo(2);
+        }
+
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.ConversionUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+import static com.ondra.knowledgebasebe.doc.ConversionCircuitBreaker.State.CLOSED;
+import static com.ondra.knowledgebasebe.doc.ConversionCircuitBreaker.State.HALF_OPEN;
+import static com.ondra.knowledgebasebe.doc.ConversionCircuitBreaker.State.OPEN;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ConversionCircuitBreakerUnitTest {
+
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final Duration OPEN_DURATION = Duration.ofSeconds(30);
+    private static final Instant NOW = Instant.parse("2024-05-01T10:00:00Z");
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Clock clock = mock(Clock.class);
+
+    private ConversionCircuitBreaker circuitBreaker;
+
+    @BeforeEach
+    void setUp() {
+        when(clock.instant()).thenReturn(NOW);
+        circuitBreaker = new ConversionCircuitBreaker(meterRegistry, clock, FAILURE_THRESHOLD, OPEN_DURATION, 1);
+    }
+
+    private void fail(int times) {
+        for (int i = 0; i < times; i++) {
+            circuitBreaker.acquirePermission();
+            circuitBreaker.onFailure();
+        }
+    }
+
+    @Nested
+    class Closed {
+
+        @Test
+        void shouldStayClosedBelowFailureThreshold() {
+            fail(FAILURE_THRESHOLD - 1);
+
+            assertThat(circuitBreaker.getState()).isEqualTo(CLOSED);
+        }
+
+        @Test
+        void shouldOnlyCountConsecutiveFailures() {
+            fail(FAILURE_THRESHOLD - 1);
+            circuitBreaker.acquirePermission();
+            circuitBreaker.onSuccess();
+            fail(FAILURE_THRESHOLD - 1);
+
+            assertThat(circuitBreaker.getState()).isEqualTo(CLOSED);
+        }
+
+        @Test
+        void shouldOpenAtFailureThreshold() {
+            fail(FAILURE_THRESHOLD);
+
+            assertThat(circuitBreaker.getState()).isEqualTo(OPEN);
+            assertThat(meterRegistry.counter("gotenberg.circuit-breaker.transitions", "from", "closed", "to", "open").count()).isEqualTo(1);
+            assertThat(meterRegistry.get("gotenberg.circuit-breaker.state").tag("state", "open").gauge().value()).isEqualTo(1);
+        }
+
+    }
+
+    @Nested
+    class Open {
+
+        @Test
+        void shouldFailFastUntilOpenDurationHasPassed() {
+            fail(FAILURE_THRESHOLD);
+            when(clock.instant()).thenReturn(NOW.plusSeconds(10));
+
+            assertThatThrownBy(circuitBreaker::acquirePermission)
+                .isInstanceOfSatisfying(ConversionUnavailableException.class, ex -> assertThat(ex.getRetryAfter()).isEqualTo(Duration.ofSeconds(20)));
+        }
+
+        @Test
+        void shouldLetTrialCallThroughAfterOpenDuration() {
+            fail(FAILURE_THRESHOLD);
+            when(clock.instant()).thenReturn(NOW.plus(OPEN_DURATION));
+
+            circuitBreaker.acquirePermission();
+
+            assertThat(circuitBreaker.getState()).isEqualTo(HALF_OPEN);
+            assertThatThrownBy(circuitBreaker::acquirePermission).isInstanceOf(ConversionUnavailableException.class);
+        }
+
+    }
+
+    @Nested
+    class HalfOpen {
+
+        @BeforeEach
+        void halfOpen() {
+            fail(FAILURE_THRESHOLD);
+            when(clock.instant()).thenReturn(NOW.plus(OPEN_DURATION));
+            circuitBreaker.acquirePermission();
+        }
+
+        @Test
+        void shouldCloseWhenTrialCallSucceeds() {
+            circuitBreaker.onSuccess();
+
+            assertThat(circuitBreaker.getState()).isEqualTo(CLOSED);
+        }
+
+        @Test
+        void shouldReopenWhenTrialCallFails() {
+            circuitBreaker.onFailure();
+
+            assertThat(circuitBreaker.getState()).isEqualTo(OPEN);
+            assertThatThrownBy(circuitBreaker::acquirePermission).isInstanceOf(ConversionUnavailableException.class);
+        }
+
+        @Test
+        void shouldHandTrialCallBackWhenItIsAbandoned() {
+            circuitBreaker.onAbandoned();
+
+            circuitBreaker.acquirePermission();
+
+            assertThat(circuitBreaker.getState()).isEqualTo(HALF_OPEN);
+        }
+
+    }
+
+}
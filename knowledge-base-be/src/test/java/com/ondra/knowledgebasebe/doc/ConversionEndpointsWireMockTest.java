@@ -0,0 +1,108 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockExtension;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.web.client.RestClient;
+
+import java.time.Duration;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConversionEndpointsWireMockTest {
+
+    @RegisterExtension
+    static WireMockExtension gotenberg1 = WireMockExtension.newInstance().options(wireMockConfig().dynamicPort()).build();
+
+    @RegisterExtension
+    static WireMockExtension gotenberg2 = WireMockExtension.newInstance().options(wireMockConfig().dynamicPort()).build();
+
+    private static final int FAILURE_THRESHOLD = 2;
+
+    private ConversionEndpoints conversionEndpoints;
+
+    @BeforeEach
+    void setUp() {
+        gotenberg1.stubFor(get("/health").willReturn(aResponse().withStatus(200)));
+        gotenberg2.stubFor(get("/health").willReturn(aResponse().withStatus(200)));
+        conversionEndpoints = new ConversionEndpoints(
+            RestClient.create(),
+            new SimpleMeterRegistry(),
+            List.of(gotenberg1.baseUrl(), gotenberg2.baseUrl()),
+            FAILURE_THRESHOLD,
+            Duration.ofSeconds(2)
+        );
+    }
+
+    @Nested
+    class Acquire {
+
+        @Test
+        void shouldRouteToEndpointWithFewestOutstandingConversions() {
+            ConversionEndpoints.Endpoint first = conversionEndpoints.acquire();
+            ConversionEndpoints.Endpoint second = conversionEndpoints.acquire();
+
+            assertThat(second.getBaseUrl()).isNotEqualTo(first.getBaseUrl());
+
+            conversionEndpoints.release(first, true);
+            assertThat(conversionEndpoints.acquire().getBaseUrl()).isEqualTo(first.getBaseUrl());
+        }
+
+        @Test
+        void shouldUseAllEndpointsIfAllAreEjected() {
+            gotenberg1.stubFor(get("/health").willReturn(aResponse().withStatus(503)));
+            gotenberg2.stubFor(get("/health").willReturn(aResponse().withStatus(503)));
+            for (int i = 0; i < FAILURE_THRESHOLD; i++) conversionEndpoints.probe();
+
+            ConversionEndpoints.Endpoint first = conversionEndpoints.acquire();
+            ConversionEndpoints.Endpoint second = conversionEndpoints.acquire();
+
+            assertThat(List.of(first.getBaseUrl(), second.getBaseUrl())).containsExactlyInAnyOrder(gotenberg1.baseUrl(), gotenberg2.baseUrl());
+        }
+
+    }
+
+    @Nested
+    class Ejection {
+
+        @Test
+        void shouldEjectEndpointThatFailsHealthProbes() {
+            gotenberg2.stubFor(get("/health").willReturn(aResponse().withStatus(503)));
+
+            for (int i = 0; i < FAILURE_THRESHOLD; i++) conversionEndpoints.probe();
+
+            for (int i = 0; i < 3; i++) assertThat(conversionEndpoints.acquire().getBaseUrl()).isEqualTo(gotenberg1.baseUrl());
+        }
+
+        @Test
+        void shouldEjectEndpointAfterConsecutiveFailedConversions() {
+            ConversionEndpoints.Endpoint failing = conversionEndpoints.acquire();
+
+            for (int i = 0; i < FAILURE_THRESHOLD; i++) conversionEndpoints.release(failing, false);
+
+            assertThat(failing.isEjected()).isTrue();
+        }
+
+        @Test
+        void shouldReadmitEndpointOnceItIsHealthyAgain() {
+            gotenberg2.stubFor(get("/health").willReturn(aResponse().withStatus(503)));
+            for (int i = 0; i < FAILURE_THRESHOLD; i++) conversionEndpoints.probe();
+            gotenberg2.stubFor(get("/health").willReturn(aResponse().withStatus(200)));
+
+            conversionEndpoints.probe();
+
+            ConversionEndpoints.Endpoint first = conversionEndpoints.acquire();
+            ConversionEndpoints.Endpoint second = conversionEndpoints.acquire();
+            assertThat(List.of(first.getBaseUrl(), second.getBaseUrl())).containsExactlyInAnyOrder(gotenberg1.baseUrl(), gotenberg2.baseUrl());
+        }
+
+    }
+
+}
@@ -0,0 +1,161 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.StoredBlob;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataMongoTest
+@Testcontainers
+public class ConversionJobQueueDataMongoTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:7.0");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private static final Instant NOW = Instant.parse("2024-05-01T10:00:00Z");
+    private static final Duration LEASE_DURATION = Duration.ofMinutes(5);
+    private static final ObjectId DOCX_FILE_ID = new ObjectId();
+    private static final String DOCX_HASH = "5c9a2e";
+
+    private ConversionJobQueue conversionJobQueueAt(Instant instant) {
+        return new ConversionJobQueue(mongoTemplate, Clock.fixed(instant, ZoneOffset.UTC), LEASE_DURATION);
+    }
+
+    @BeforeEach
+    void setUp() {
+        mongoTemplate.remove(new Query(), ConversionJob.class);
+        conversionJobQueueAt(NOW).enqueue("1", new StoredBlob(DOCX_FILE_ID, DOCX_HASH));
+    }
+
+    @Nested
+    class Claim {
+
+        @Test
+        public void shouldLeaseJobToWorker() {
+            Optional<ConversionJob> job = conversionJobQueueAt(NOW).claim("worker-1");
+
+            assertThat(job.isPresent()).isTrue();
+            assertThat(job.get().getDocId()).isEqualTo("1");
+            assertThat(job.get().getDocxFileId()).isEqualTo(DOCX_FILE_ID);
+            assertThat(job.get().getDocxHash()).isEqualTo(DOCX_HASH);
+            assertThat(job.get().getAttempts()).isEqualTo(1);
+            assertThat(job.get().getLeaseOwner()).isEqualTo("worker-1");
+            assertThat(job.get().getLeaseExpiresAt()).isEqualTo(NOW.plus(LEASE_DURATION));
+        }
+
+        @Test
+        public void shouldNotLeaseJobTwice() {
+            conversionJobQueueAt(NOW).claim("worker-1");
+
+            Optional<ConversionJob> job = conversionJobQueueAt(NOW.plusSeconds(60)).claim("worker-2");
+
+            assertThat(job.isPresent()).isFalse();
+        }
+
+        @Test
+        public void shouldLeaseJobAgainOnceLeaseHasExpired() {
+            conversionJobQueueAt(NOW).claim("worker-1");
+
+            Optional<ConversionJob> job = conversionJobQueueAt(NOW.plus(LEASE_DURATION).plusSeconds(1)).claim("worker-2");
+
+            assertThat(job.isPresent()).isTrue();
+            assertThat(job.get().getLeaseOwner()).isEqualTo("worker-2");
+            assertThat(job.get().getAttempts()).isEqualTo(2);
+        }
+
+    }
+
+    @Nested
+    class Complete {
+
+        @Test
+        public void shouldRemoveJob() {
+            ConversionJob job = conversionJobQueueAt(NOW).claim("worker-1").orElseThrow();
+
+            conversionJobQueueAt(NOW).complete(job);
+
+            assertThat(mongoTemplate.count(new Query(), ConversionJob.class)).isEqualTo(0);
+        }
+
+        @Test
+        public void shouldNotRemoveJobLeasedByAnotherWorker() {
+            ConversionJob expiredJob = conversionJobQueueAt(NOW).claim("worker-1").orElseThrow();
+            conversionJobQueueAt(NOW.plus(LEASE_DURATION).plusSeconds(1)).claim("worker-2");
+
+            conversionJobQueueAt(NOW).complete(expiredJob);
+
+            assertThat(mongoTemplate.count(new Query(), ConversionJob.class)).isEqualTo(1);
+        }
+
+    }
+
+    @Nested
+    class Cancel {
+
+        @Test
+        public void shouldRemoveJobEvenIfItIsLeased() {
+            String jobId = conversionJobQueueAt(NOW).enqueue("2", new StoredBlob(new ObjectId(), DOCX_HASH));
+            conversionJobQueueAt(NOW).claim("worker-1");
+            conversionJobQueueAt(NOW).claim("worker-1");
+
+            conversionJobQueueAt(NOW).cancel(jobId);
+
+            assertThat(mongoTemplate.count(new Query(), ConversionJob.class)).isEqualTo(1);
+            assertThat(mongoTemplate.findById(jobId, ConversionJob.class)).isNull();
+        }
+
+    }
+
+    @Nested
+    class RetryLater {
+
+        @Test
+        public void shouldMakeJobClaimableAfterDelay() {
+            ConversionJob job = conversionJobQueueAt(NOW).claim("worker-1").orElseThrow();
+
+            conversionJobQueueAt(NOW).retryLater(job, Duration.ofSeconds(30));
+
+            assertThat(conversionJobQueueAt(NOW.plusSeconds(29)).claim("worker-1").isPresent()).isFalse();
+            assertThat(conversionJobQueueAt(NOW.plusSeconds(30)).claim("worker-1").isPresent()).isTrue();
+        }
+
+    }
+
+    @Nested
+    class Postpone {
+
+        @Test
+        public void shouldNotCountClaimAsAttempt() {
+            ConversionJob job = conversionJobQueueAt(NOW).claim("worker-1").orElseThrow();
+
+            conversionJobQueueAt(NOW).postpone(job, Duration.ofSeconds(30));
+
+            assertThat(conversionJobQueueAt(NOW.plusSeconds(29)).claim("worker-1").isPresent()).isFalse();
+            ConversionJob claimedAgain = conversionJobQueueAt(NOW.plusSeconds(30)).claim("worker-1").orElseThrow();
+            assertThat(claimedAgain.getAttempts()).isEqualTo(1);
+        }
+
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.ConversionCapacityExceededException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.ondra.knowledgebasebe.doc.ConversionLimiter.Outcome.ABORTED;
+import static com.ondra.knowledgebasebe.doc.ConversionLimiter.Outcome.OVERLOADED;
+import static com.ondra.knowledgebasebe.doc.ConversionLimiter.Outcome.REJECTED;
+import static com.ondra.knowledgebasebe.doc.ConversionLimiter.Outcome.SUCCEEDED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ConversionLimiterUnitTest {
+
+    private static final Duration FAST = Duration.ofMillis(100);
+    private static final Duration SLOW = Duration.ofMillis(500);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private ConversionLimiter limiter(int initialLimit, int maxQueued, Duration maxWait) {
+        return new ConversionLimiter(meterRegistry, initialLimit, 1, 32, maxQueued, maxWait);
+    }
+
+    private static void convert(ConversionLimiter conversionLimiter, Duration latency, ConversionLimiter.Outcome outcome) {
+        conversionLimiter.acquire();
+        conversionLimiter.release(latency, outcome);
+    }
+
+    @Nested
+    class AdjustLimit {
+
+        @Test
+        void shouldGrowLimitWhileLatencyStaysLow() {
+            ConversionLimiter conversionLimiter = limiter(1, 0, Duration.ZERO);
+
+            for (int i = 0; i < 10; i++) convert(conversionLimiter, FAST, SUCCEEDED);
+
+            assertThat(conversionLimiter.getLimit()).isGreaterThan(2);
+        }
+
+        @Test
+        void shouldShrinkLimitWhenLatencyRises() {
+            ConversionLimiter conversionLimiter = limiter(10, 0, Duration.ZERO);
+            convert(conversionLimiter, FAST, SUCCEEDED);
+            double limitBefore = conversionLimiter.getLimit();
+
+            convert(conversionLimiter, SLOW, SUCCEEDED);
+
+            assertThat(conversionLimiter.getLimit()).isEqualTo(limitBefore * ConversionLimiter.BACKOFF_RATIO);
+        }
+
+        @Test
+        void shouldShrinkLimitWhenConversionFails() {
+            ConversionLimiter conversionLimiter = limiter(10, 0, Duration.ZERO);
+
+            convert(conversionLimiter, FAST, OVERLOADED);
+
+            assertThat(conversionLimiter.getLimit()).isEqualTo(10 * ConversionLimiter.BACKOFF_RATIO);
+        }
+
+        @Test
+        void shouldKeepLimitWhenDocxIsRejected() {
+            ConversionLimiter conversionLimiter = limiter(10, 0, Duration.ZERO);
+            convert(conversionLimiter, SLOW, SUCCEEDED);
+            double limitBefore = conversionLimiter.getLimit();
+
+            for (int i = 0; i < 10; i++) convert(conversionLimiter, FAST, REJECTED);
+            convert(conversionLimiter, SLOW, SUCCEEDED);
+
+            assertThat(conversionLimiter.getLimit()).isEqualTo(limitBefore);
+        }
+
+        @Test
+        void shouldKeepLimitWhenPdfCannotBeStored() {
+            ConversionLimiter conversionLimiter = limiter(10, 0, Duration.ZERO);
+            convert(conversionLimiter, SLOW, SUCCEEDED);
+            double limitBefore = conversionLimiter.getLimit();
+
+            for (int i = 0; i < 10; i++) convert(conversionLimiter, FAST, ABORTED);
+            convert(conversionLimiter, SLOW, SUCCEEDED);
+
+            assertThat(conversionLimiter.getLimit()).isEqualTo(limitBefore);
+        }
+
+        @Test
+        void shouldNotShrinkLimitBelowMinimum() {
+            ConversionLimiter conversionLimiter = limiter(1, 0, Duration.ZERO);
+
+            for (int i = 0; i < 10; i++) convert(conversionLimiter, FAST, OVERLOADED);
+
+            assertThat(conversionLimiter.getLimit()).isEqualTo(1);
+        }
+
+    }
+
+    @Nested
+    class Acquire {
+
+        @Test
+        void shouldRejectIfNoConversionMayWait() {
+            ConversionLimiter conversionLimiter = limiter(1, 0, Duration.ofSeconds(5));
+            conversionLimiter.acquire();
+
+            assertThatThrownBy(conversionLimiter::acquire).isInstanceOf(ConversionCapacityExceededException.class);
+            assertThat(meterRegistry.counter("conversion.limiter.rejections").count()).isEqualTo(1);
+        }
+
+        @Test
+        void shouldRejectAfterMaxWait() {
+            ConversionLimiter conversionLimiter = limiter(1, 1, Duration.ofMillis(50));
+            conversionLimiter.acquire();
+
+            assertThatThrownBy(conversionLimiter::acquire)
+                .isInstanceOfSatisfying(ConversionCapacityExceededException.class, ex -> assertThat(ex.getRetryAfter()).isPositive());
+        }
+
+        @Test
+        void shouldLetWaitingConversionRunWhenSlotIsReleased() throws Exception {
+            ConversionLimiter conversionLimiter = limiter(1, 1, Duration.ofSeconds(5));
+            conversionLimiter.acquire();
+
+            CompletableFuture<Void> waitingConversion = CompletableFuture.runAsync(conversionLimiter::acquire);
+            conversionLimiter.release(FAST, SUCCEEDED);
+
+            waitingConversion.get(5, TimeUnit.SECONDS);
+            assertThat(conversionLimiter.getInFlight()).isEqualTo(1);
+        }
+
+    }
+
+}
@@ -0,0 +1,194 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.BlobResource;
+import com.ondra.knowledgebasebe.blob.BlobStore;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.ConversionCapacityExceededException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.ConversionUnavailableException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.FileConversionException;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import static com.ondra.knowledgebasebe.doc.ConversionMode.ASYNC;
+import static com.ondra.knowledgebasebe.doc.ConversionMode.SYNC;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class ConversionWorkerUnitTest {
+
+    @Mock
+    private ConversionJobQueue conversionJobQueue;
+
+    @Mock
+    private DocRepository docRepository;
+
+    @Mock
+    private BlobStore blobStore;
+
+    @Mock
+    private PdfGenerator pdfGenerator;
+
+    private ConversionWorker conversionWorker;
+
+    private static final int MAX_ATTEMPTS = 3;
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(30);
+    private static final ObjectId DOCX_FILE_ID = new ObjectId();
+    private static final ObjectId PDF_FILE_ID = new ObjectId();
+    private static final String DOCX_HASH = "5c9a2e";
+
+    @BeforeEach
+    void setUp() {
+        conversionWorker = workerFor(ASYNC);
+    }
+
+    private ConversionWorker workerFor(ConversionMode conversionMode) {
+        return new ConversionWorker(
+            conversionJobQueue, docRepository, blobStore, pdfGenerator, new SyncTaskExecutor(), conversionMode, 1, MAX_ATTEMPTS, RETRY_DELAY
+        );
+    }
+
+    private static ConversionJob job(int attempts) {
+        return new ConversionJob("1", "2", DOCX_FILE_ID, DOCX_HASH, attempts, Instant.now(), "worker", Instant.now().plusSeconds(60));
+    }
+
+    @Nested
+    class DrainQueue {
+
+        @Test
+        void shouldProcessClaimedJobs() {
+            ConversionJob job = job(1);
+            BlobResource docxFile = mock(BlobResource.class);
+            when(conversionJobQueue.claim(any())).thenReturn(Optional.of(job), Optional.empty());
+            when(blobStore.find(DOCX_FILE_ID)).thenReturn(Optional.of(docxFile));
+            when(pdfGenerator.generatePdf(docxFile, DOCX_HASH)).thenReturn(PDF_FILE_ID);
+            when(docRepository.completeConversion("2", DOCX_FILE_ID, PDF_FILE_ID)).thenReturn(true);
+
+            conversionWorker.drainQueue();
+
+            verify(conversionJobQueue, times(2)).claim(any());
+            verify(conversionJobQueue, times(1)).complete(job);
+        }
+
+        @Test
+        void shouldPostponeJobIfExecutorRejectsIt() {
+            ConversionJob job = job(1);
+            when(conversionJobQueue.claim(any())).thenReturn(Optional.of(job));
+            ConversionWorker rejectingWorker = new ConversionWorker(
+                conversionJobQueue, docRepository, blobStore, pdfGenerator, task -> { throw new TaskRejectedException("Executor is full"); },
+                ASYNC, 1, MAX_ATTEMPTS, RETRY_DELAY
+            );
+
+            rejectingWorker.drainQueue();
+
+            verify(conversionJobQueue, times(1)).postpone(job, Duration.ZERO);
+            verify(conversionJobQueue, times(0)).retryLater(any(), any());
+        }
+
+        @Test
+        void shouldNotClaimJobsInSyncMode() {
+            workerFor(SYNC).drainQueue();
+
+            verify(conversionJobQueue, times(0)).claim(any());
+        }
+
+    }
+
+    @Nested
+    class Process {
+
+        @Test
+        void shouldDropPdfIfDocxWasReplacedMeanwhile() {
+            ConversionJob job = job(1);
+            BlobResource docxFile = mock(BlobResource.class);
+            when(blobStore.find(DOCX_FILE_ID)).thenReturn(Optional.of(docxFile));
+            when(pdfGenerator.generatePdf(docxFile, DOCX_HASH)).thenReturn(PDF_FILE_ID);
+            when(docRepository.completeConversion("2", DOCX_FILE_ID, PDF_FILE_ID)).thenReturn(false);
+
+            conversionWorker.process(job);
+
+            verify(blobStore, times(1)).release(PDF_FILE_ID);
+            verify(conversionJobQueue, times(1)).complete(job);
+        }
+
+        @Test
+        void shouldSkipConversionIfDocxNoLongerExists() {
+            ConversionJob job = job(1);
+            when(blobStore.find(DOCX_FILE_ID)).thenReturn(Optional.empty());
+
+            conversionWorker.process(job);
+
+            verify(pdfGenerator, times(0)).generatePdf(any(), any());
+            verify(conversionJobQueue, times(1)).complete(job);
+        }
+
+        @Test
+        void shouldRetryFailedConversionWithGrowingDelay() {
+            ConversionJob job = job(2);
+            BlobResource docxFile = mock(BlobResource.class);
+            when(blobStore.find(DOCX_FILE_ID)).thenReturn(Optional.of(docxFile));
+            when(pdfGenerator.generatePdf(docxFile, DOCX_HASH)).thenThrow(new FileConversionException("Converting DOCX to PDF not possible"));
+
+            conversionWorker.process(job);
+
+            verify(conversionJobQueue, times(1)).retryLater(job, RETRY_DELAY.multipliedBy(2));
+            verify(docRepository, times(0)).failConversion(any(), any());
+        }
+
+        @Test
+        void shouldMarkDocAsFailedAfterLastAttempt() {
+            ConversionJob job = job(MAX_ATTEMPTS);
+            BlobResource docxFile = mock(BlobResource.class);
+            when(blobStore.find(DOCX_FILE_ID)).thenReturn(Optional.of(docxFile));
+            when(pdfGenerator.generatePdf(docxFile, DOCX_HASH)).thenThrow(new FileConversionException("Converting DOCX to PDF not possible"));
+
+            conversionWorker.process(job);
+
+            verify(docRepository, times(1)).failConversion("2", DOCX_FILE_ID);
+            verify(conversionJobQueue, times(1)).complete(job);
+        }
+
+        @Test
+        void shouldNotFailDocWhenGotenbergIsBusy() {
+            ConversionJob job = job(MAX_ATTEMPTS);
+            BlobResource docxFile = mock(BlobResource.class);
+            when(blobStore.find(DOCX_FILE_ID)).thenReturn(Optional.of(docxFile));
+            when(pdfGenerator.generatePdf(docxFile, DOCX_HASH)).thenThrow(new ConversionCapacityExceededException(Duration.ofSeconds(3)));
+
+            conversionWorker.process(job);
+
+            verify(conversionJobQueue, times(1)).postpone(job, Duration.ofSeconds(3));
+            verify(conversionJobQueue, times(0)).retryLater(any(), any());
+            verify(docRepository, times(0)).failConversion(any(), any());
+        }
+
+        @Test
+        void shouldNotFailDocWhenGotenbergIsUnavailable() {
+            ConversionJob job = job(MAX_ATTEMPTS);
+            BlobResource docxFile = mock(BlobResource.class);
+            when(blobStore.find(DOCX_FILE_ID)).thenReturn(Optional.of(docxFile));
+            when(pdfGenerator.generatePdf(docxFile, DOCX_HASH)).thenThrow(new ConversionUnavailableException(Duration.ofSeconds(20)));
+
+            conversionWorker.process(job);
+
+            verify(conversionJobQueue, times(1)).postpone(job, Duration.ofSeconds(20));
+            verify(conversionJobQueue, times(0)).retryLater(any(), any());
+            verify(docRepository, times(0)).failConversion(any(), any());
+        }
+
+    }
+
+}
@@ -0,0 +1,260 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.ConversionCapacityExceededException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.DocNameAlreadyTakenException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.FileConversionException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.InvalidArgumentException;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.COMPLETED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class DocBatchServiceUnitTest {
+
+    @Mock
+    private DocService docService;
+
+    @Mock
+    private DocValidator docValidator;
+
+    @Mock
+    private DocRepository docRepository;
+
+    @Mock
+    private DocListCache docListCache;
+
+    @Mock
+    private DocSearchIndex docSearchIndex;
+
+    private DocBatchService docBatchService;
+
+    private static final String USER_ID = "1";
+    private static final MultipartFile DOCX_FILE_1 = new MockMultipartFile("docxFiles", new byte[]{1});
+    private static final MultipartFile DOCX_FILE_2 = new MockMultipartFile("docxFiles", new byte[]{2});
+
+    @BeforeEach
+    void setUp() {
+        docBatchService = new DocBatchService(docService, docValidator, docRepository, docListCache, docSearchIndex, new SyncTaskExecutor(), 2);
+    }
+
+    private Doc preparedDoc(String name) {
+        return new Doc(new ObjectId().toHexString(), USER_ID, name, new ObjectId(), new ObjectId(), COMPLETED);
+    }
+
+    private final Map<Doc, CompletableFuture<String>> texts = new HashMap<>();
+
+    private PreparedDoc withText(Doc doc) {
+        return new PreparedDoc(doc, textOf(doc), null);
+    }
+
+    private CompletableFuture<String> textOf(Doc doc) {
+        return texts.computeIfAbsent(doc, d -> CompletableFuture.completedFuture("All about " + d.getName()));
+    }
+
+    @Nested
+    class AddDocs {
+
+        @Test
+        void shouldAddAllDocsWithOneBulkWrite() {
+            Doc java = preparedDoc("Java");
+            Doc kotlin = preparedDoc("Kotlin");
+            when(docService.prepareDoc(any(), eq(USER_ID), eq("Java"), eq(DOCX_FILE_1))).thenReturn(withText(java));
+            when(docService.prepareDoc(any(), eq(USER_ID), eq("Kotlin"), eq(DOCX_FILE_2))).thenReturn(withText(kotlin));
+            when(docRepository.insertUnordered(anyList())).thenReturn(DocInsertResult.ALL_INSERTED);
+
+            List<DocBatchItemDto> results = docBatchService.addDocs(USER_ID, List.of("Java", "Kotlin"), List.of(DOCX_FILE_1, DOCX_FILE_2));
+
+            assertThat(results).containsExactly(DocBatchItemDto.added(java.toDto()), DocBatchItemDto.added(kotlin.toDto()));
+            verify(docRepository, times(1)).insertUnordered(List.of(java, kotlin));
+            verify(docListCache, times(1)).invalidate(USER_ID);
+            verify(docSearchIndex, times(1)).index(java, textOf(java));
+            verify(docSearchIndex, times(1)).index(kotlin, textOf(kotlin));
+        }
+
+        @Test
+        void shouldNotStoreInvalidOrTakenDocs() {
+            Doc java = preparedDoc("Java");
+            when(docRepository.findAllByUserIdAndNameInAndExcludeBinaryData(USER_ID, List.of("Java", "Kotlin", "Java")))
+                .thenReturn(List.of(new Doc("2", null, "Kotlin", null, null, null)));
+            when(docService.prepareDoc(any(), eq(USER_ID), eq("Java"), eq(DOCX_FILE_1))).thenReturn(withText(java));
+            when(docRepository.insertUnordered(anyList())).thenReturn(DocInsertResult.ALL_INSERTED);
+
+            List<DocBatchItemDto> results = docBatchService.addDocs(USER_ID, List.of("Java", "Kotlin", "Java"), List.of(DOCX_FILE_1, DOCX_FILE_2, DOCX_FILE_2));
+
+            assertThat(results.get(0)).isEqualTo(DocBatchItemDto.added(java.toDto()));
+            assertThat(results.get(1).doc()).isNull();
+            assertThat(results.get(1).error()).contains("Kotlin");
+            assertThat(results.get(2).doc()).isNull();
+            assertThat(results.get(2).error()).contains("Java");
+            verify(docService, times(1)).prepareDoc(any(), any(), any(), any());
+        }
+
+        @Test
+        void shouldReportValidationErrorsPerDoc() {
+            Doc java = preparedDoc("Java");
+            doThrow(new InvalidArgumentException("File has to be a DOCX-file")).when(docValidator).validateDocxFile(DOCX_FILE_2);
+            when(docService.prepareDoc(any(), eq(USER_ID), eq("Java"), eq(DOCX_FILE_1))).thenReturn(withText(java));
+            when(docRepository.insertUnordered(anyList())).thenReturn(DocInsertResult.ALL_INSERTED);
+
+            List<DocBatchItemDto> results = docBatchService.addDocs(USER_ID, List.of("Java", "Kotlin"), List.of(DOCX_FILE_1, DOCX_FILE_2));
+
+            assertThat(results).containsExactly(DocBatchItemDto.added(java.toDto()), DocBatchItemDto.failed("Kotlin", "File has to be a DOCX-file"));
+        }
+
+        @Test
+        void shouldReportFailedConversionWithoutFailingBatch() {
+            Doc kotlin = preparedDoc("Kotlin");
+            when(docService.prepareDoc(any(), eq(USER_ID), eq("Java"), eq(DOCX_FILE_1))).thenThrow(new FileConversionException("Converting DOCX to PDF not possible"));
+            when(docService.prepareDoc(any(), eq(USER_ID), eq("Kotlin"), eq(DOCX_FILE_2))).thenReturn(withText(kotlin));
+            when(docRepository.insertUnordered(anyList())).thenReturn(DocInsertResult.ALL_INSERTED);
+
+            List<DocBatchItemDto> results = docBatchService.addDocs(USER_ID, List.of("Java", "Kotlin"), List.of(DOCX_FILE_1, DOCX_FILE_2));
+
+            assertThat(results).containsExactly(DocBatchItemDto.failed("Java", "Converting DOCX to PDF not possible"), DocBatchItemDto.added(kotlin.toDto()));
+            verify(docRepository, times(1)).insertUnordered(List.of(kotlin));
+        }
+
+        @Test
+        void shouldDiscardDocsWhoseNameWasTakenMeanwhile() {
+            Doc java = preparedDoc("Java");
+            Doc kotlin = preparedDoc("Kotlin");
+            when(docService.prepareDoc(any(), eq(USER_ID), eq("Java"), eq(DOCX_FILE_1))).thenReturn(withText(java));
+            when(docService.prepareDoc(any(), eq(USER_ID), eq("Kotlin"), eq(DOCX_FILE_2))).thenReturn(withText(kotlin));
+            when(docRepository.insertUnordered(anyList())).thenReturn(new DocInsertResult(Set.of(1), Set.of()));
+
+            List<DocBatchItemDto> results = docBatchService.addDocs(USER_ID, List.of("Java", "Kotlin"), List.of(DOCX_FILE_1, DOCX_FILE_2));
+
+            assertThat(results.get(0)).isEqualTo(DocBatchItemDto.added(java.toDto()));
+            assertThat(results.get(1)).isEqualTo(DocBatchItemDto.failed("Kotlin", new DocNameAlreadyTakenException("Kotlin", USER_ID).getMessage()));
+            verify(docService, times(1)).discardPreparedDoc(withText(kotlin));
+            verify(docService, times(0)).discardPreparedDoc(withText(java));
+        }
+
+        @Test
+        void shouldOnlyDiscardDocsThatWereNotSaved() {
+            Doc java = preparedDoc("Java");
+            Doc kotlin = preparedDoc("Kotlin");
+            when(docService.prepareDoc(any(), eq(USER_ID), eq("Java"), eq(DOCX_FILE_1))).thenReturn(withText(java));
+            when(docService.prepareDoc(any(), eq(USER_ID), eq("Kotlin"), eq(DOCX_FILE_2))).thenReturn(withText(kotlin));
+            when(docRepository.insertUnordered(anyList())).thenReturn(new DocInsertResult(Set.of(), Set.of(1)));
+
+            List<DocBatchItemDto> results = docBatchService.addDocs(USER_ID, List.of("Java", "Kotlin"), List.of(DOCX_FILE_1, DOCX_FILE_2));
+
+            assertThat(results).containsExactly(DocBatchItemDto.added(java.toDto()), DocBatchItemDto.failed("Kotlin", "Adding the doc not possible"));
+            verify(docService, times(1)).discardPreparedDoc(withText(kotlin));
+            verify(docService, times(0)).discardPreparedDoc(withText(java));
+            verify(docListCache, times(1)).invalidate(USER_ID);
+        }
+
+        @Test
+        void shouldDiscardAllDocsIfWriteFailsAsWhole() {
+            Doc java = preparedDoc("Java");
+            when(docService.prepareDoc(any(), eq(USER_ID), eq("Java"), eq(DOCX_FILE_1))).thenReturn(withText(java));
+            when(docRepository.insertUnordered(anyList())).thenThrow(new DataAccessResourceFailureException("Connection reset"));
+
+            List<DocBatchItemDto> results = docBatchService.addDocs(USER_ID, List.of("Java"), List.of(DOCX_FILE_1));
+
+            assertThat(results).containsExactly(DocBatchItemDto.failed("Java", "Adding the doc not possible"));
+            verify(docService, times(1)).discardPreparedDoc(withText(java));
+            verify(docListCache, times(0)).invalidate(any());
+        }
+
+        @Test
+        void shouldReportErrorsPerDocIfDiscardingFails() {
+            Doc java = preparedDoc("Java");
+            when(docService.prepareDoc(any(), eq(USER_ID), eq("Java"), eq(DOCX_FILE_1))).thenReturn(withText(java));
+            when(docRepository.insertUnordered(anyList())).thenThrow(new DataAccessResourceFailureException("Connection reset"));
+            doThrow(new DataAccessResourceFailureException("Connection reset")).when(docService).discardPreparedDoc(any());
+
+            List<DocBatchItemDto> results = docBatchService.addDocs(USER_ID, List.of("Java"), List.of(DOCX_FILE_1));
+
+            assertThat(results).containsExactly(DocBatchItemDto.failed("Java", "Adding the doc not possible"));
+        }
+
+        @Test
+        void shouldOnlyStartTaskOnceSlotIsFree() throws Exception {
+            AtomicInteger startedTasks = new AtomicInteger();
+            TaskExecutor taskExecutor = runnable -> {
+                startedTasks.incrementAndGet();
+                Thread.ofVirtual().start(runnable);
+            };
+            DocBatchService parallelDocBatchService = new DocBatchService(docService, docValidator, docRepository, docListCache, docSearchIndex, taskExecutor, 2);
+            CountDownLatch preparing = new CountDownLatch(2);
+            CountDownLatch converted = new CountDownLatch(1);
+            when(docService.prepareDoc(any(), eq(USER_ID), any(), any())).thenAnswer(invocation -> {
+                preparing.countDown();
+                converted.await();
+                return new PreparedDoc(preparedDoc(invocation.getArgument(2)), CompletableFuture.completedFuture(null), null);
+            });
+            when(docRepository.insertUnordered(anyList())).thenReturn(DocInsertResult.ALL_INSERTED);
+
+            CompletableFuture<List<DocBatchItemDto>> results = CompletableFuture.supplyAsync(() -> parallelDocBatchService.addDocs(
+                USER_ID, List.of("Java", "Kotlin", "Scala"), List.of(DOCX_FILE_1, DOCX_FILE_2, DOCX_FILE_1)
+            ));
+            preparing.await();
+
+            // the third task waits for a slot before it is even handed to the executor
+            assertThat(startedTasks.get()).isEqualTo(2);
+            converted.countDown();
+            assertThat(results.get(10, TimeUnit.SECONDS)).extracting(DocBatchItemDto::doc).doesNotContainNull();
+            assertThat(startedTasks.get()).isEqualTo(3);
+        }
+
+        @Test
+        void shouldNotReportInternalErrorsToClient() {
+            Doc kotlin = preparedDoc("Kotlin");
+            when(docService.prepareDoc(any(), eq(USER_ID), eq("Java"), eq(DOCX_FILE_1))).thenThrow(new IllegalStateException("Connection pool shut down"));
+            when(docService.prepareDoc(any(), eq(USER_ID), eq("Kotlin"), eq(DOCX_FILE_2))).thenThrow(new FileConversionException("Reading Bytes from DOCX-MultipartFile not possible"));
+            when(docRepository.insertUnordered(anyList())).thenReturn(DocInsertResult.ALL_INSERTED);
+
+            List<DocBatchItemDto> results = docBatchService.addDocs(USER_ID, List.of("Java", "Kotlin"), List.of(DOCX_FILE_1, DOCX_FILE_2));
+
+            assertThat(results).containsExactly(
+                DocBatchItemDto.failed("Java", "Adding the doc not possible"),
+                DocBatchItemDto.failed("Kotlin", "Converting DOCX to PDF not possible")
+            );
+        }
+
+        @Test
+        void shouldReportConversionCapacityToClient() {
+            ConversionCapacityExceededException ex = new ConversionCapacityExceededException(Duration.ofSeconds(1));
+            when(docService.prepareDoc(any(), eq(USER_ID), eq("Java"), eq(DOCX_FILE_1))).thenThrow(ex);
+            when(docRepository.insertUnordered(anyList())).thenReturn(DocInsertResult.ALL_INSERTED);
+
+            List<DocBatchItemDto> results = docBatchService.addDocs(USER_ID, List.of("Java"), List.of(DOCX_FILE_1));
+
+            assertThat(results).containsExactly(DocBatchItemDto.failed("Java", ex.getMessage()));
+        }
+
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.ondra.knowledgebasebe.doc;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Update;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.COMPLETED;
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.DEFERRED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.data.mongodb.core.query.Criteria.where;
+import static org.springframework.data.mongodb.core.query.Query.query;
+
+/**
+ * The container runs MongoDB as a single node replica set, which supports change streams. The writes of
+ * another instance are simulated by writing to the collection directly, bypassing the {@link DocService}.
+ */
+@DataMongoTest
+@Testcontainers
+public class DocChangeListenerDataMongoTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:7.0");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private DocRepository docRepository;
+
+    private DocListCache docListCache;
+    private DocChangeListener docChangeListener;
+
+    private static final String USER_ID = "1";
+    private static final ObjectId DOCX_FILE_ID = new ObjectId();
+    private static final Doc JAVA = new Doc(new ObjectId().toHexString(), USER_ID, "Java", DOCX_FILE_ID, null, DEFERRED);
+
+    @BeforeEach
+    void setUp() {
+        docRepository.deleteAll();
+        docRepository.save(JAVA);
+        docListCache = new DocListCache(new SimpleMeterRegistry(), 100, Duration.ofMinutes(5));
+        docChangeListener = new DocChangeListener(mongoTemplate, docListCache, Duration.ofMillis(100));
+        Thread.ofVirtual().start(docChangeListener::listen);
+        await(() -> isCached(USER_ID) && isCached(USER_ID));
+    }
+
+    @AfterEach
+    void tearDown() {
+        docChangeListener.stop();
+    }
+
+    /**
+     * Caches the list if it was not cached yet, so the next call returns true unless the list is invalidated.
+     */
+    private boolean isCached(String userId) {
+        AtomicBoolean loaded = new AtomicBoolean();
+        docListCache.get(userId, () -> {
+            loaded.set(true);
+            return docRepository.findAllByUserIdAndExcludeBinaryData(userId).stream().map(Doc::toDto).toList();
+        });
+        return !loaded.get();
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition met within 10 seconds").isLessThan(deadline);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+
+    @Test
+    void shouldInvalidateListOfUserWhenDocIsInsertedElsewhere() {
+        docListCache.get("2", () -> List.of());
+        mongoTemplate.insert(new Doc(null, USER_ID, "Kotlin", DOCX_FILE_ID, null, DEFERRED));
+
+        await(() -> !isCached(USER_ID));
+        assertThat(docListCache.get("2", () -> List.of(new DocDto("2", "2", "Go", COMPLETED)))).isEmpty();
+    }
+
+    @Test
+    void shouldInvalidateListOfUserWhenDocIsUpdatedElsewhere() {
+        mongoTemplate.updateFirst(query(where("_id").is(new ObjectId(JAVA.getId()))), new Update().set("conversionStatus", COMPLETED), Doc.class);
+
+        await(() -> !isCached(USER_ID));
+        assertThat(docListCache.get(USER_ID, List::of)).containsExactly(new DocDto(JAVA.getId(), USER_ID, "Java", COMPLETED));
+    }
+
+    @Test
+    void shouldInvalidateListOfUserWhenDocIsDeletedElsewhere() {
+        docRepository.deleteById(JAVA.getId());
+
+        await(() -> !isCached(USER_ID));
+        assertThat(docListCache.get(USER_ID, List::of)).isEmpty();
+    }
+
+}
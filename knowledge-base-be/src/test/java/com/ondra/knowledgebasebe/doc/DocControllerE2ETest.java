@@ -1,7 +1,8 @@
 package com.ondra.knowledgebasebe.doc;
 
+import com.ondra.knowledgebasebe.blob.BlobStore;
 import io.restassured.RestAssured;
-import org.bson.types.Binary;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -16,11 +17,14 @@ import org.testcontainers.containers.MongoDBContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.List;
 
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.COMPLETED;
 import static com.ondra.knowledgebasebe.SecurityTestData.BEARER_TOKEN_USER_1;
 import static com.ondra.knowledgebasebe.SecurityTestData.BEARER_TOKEN_USER_2;
 import static com.ondra.knowledgebasebe.SecurityTestData.USER_ID_1;
@@ -60,6 +64,9 @@ class DocControllerE2ETest {
     @Autowired
     private DocRepository docRepository;
 
+    @Autowired
+    private BlobStore blobStore;
+
     @BeforeEach
     void setup(@LocalServerPort int port) {
         RestAssured.port = port;
@@ -95,7 +102,7 @@ class DocControllerE2ETest {
                 .body("$", hasKey("id"))
                 .body("userId", equalTo(USER_ID_1))
                 .body("name", equalTo("Java"))
-                .body("size()", equalTo(3))
+                .body("size()", equalTo(4))
                 .extract().body().jsonPath().getString("id");
 
             List<Doc> docs = docRepository.findAll();
@@ -103,15 +110,15 @@ class DocControllerE2ETest {
             assertEquals(id, docs.getFirst().getId());
             assertEquals(USER_ID_1, docs.getFirst().getUserId());
             assertEquals("Java", docs.getFirst().getName());
-            assertEquals(new Binary(docxFileBytes), docs.getFirst().getDocxFile());
-            assertNotEquals(null, docs.getFirst().getPdfFile());
+            assertArrayEquals(docxFileBytes, readBlob(docs.getFirst().getDocxFileId()));
+            assertNotEquals(null, docs.getFirst().getPdfFileId());
         }
 
         @Test
         void shouldNotCreateDocIfNameAlreadyExists() throws IOException {
             byte[] docxFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.docx"));
             byte[] pdfFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
-            docRepository.save(new Doc(null, USER_ID_1, "Java", new Binary(docxFileBytes), new Binary(pdfFileBytes)));
+            saveDoc(USER_ID_1, "Java", docxFileBytes, pdfFileBytes);
 
             given()
                 .header("Authorization", BEARER_TOKEN_USER_1)
@@ -137,13 +144,13 @@ class DocControllerE2ETest {
         void shouldOnlyReturnDocsOfRequestingUser() throws IOException {
             byte[] docxFileBytes1 = Files.readAllBytes(Paths.get("src/test/resources/test1.docx"));
             byte[] pdfFileBytes1 = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
-            docRepository.save(new Doc(null, USER_ID_1, "Java", new Binary(docxFileBytes1), new Binary(pdfFileBytes1)));
+            saveDoc(USER_ID_1, "Java", docxFileBytes1, pdfFileBytes1);
             byte[] docxFileBytes2 = Files.readAllBytes(Paths.get("src/test/resources/test2.docx"));
             byte[] pdfFileBytes2 = Files.readAllBytes(Paths.get("src/test/resources/test2.pdf"));
-            docRepository.save(new Doc(null, USER_ID_1, "Kotlin", new Binary(docxFileBytes2), new Binary(pdfFileBytes2)));
+            saveDoc(USER_ID_1, "Kotlin", docxFileBytes2, pdfFileBytes2);
             byte[] docxFileBytes3 = Files.readAllBytes(Paths.get("src/test/resources/test3.docx"));
             byte[] pdfFileBytes3 = Files.readAllBytes(Paths.get("src/test/resources/test3.pdf"));
-            docRepository.save(new Doc(null, USER_ID_2, "Python", new Binary(docxFileBytes3), new Binary(pdfFileBytes3)));
+            saveDoc(USER_ID_2, "Python", docxFileBytes3, pdfFileBytes3);
 
             given()
                 .header("Authorization", BEARER_TOKEN_USER_1)
@@ -168,7 +175,7 @@ class DocControllerE2ETest {
         void shouldReturnPdf() throws IOException {
             byte[] docxFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.docx"));
             byte[] pdfFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
-            String id = docRepository.save(new Doc(null, USER_ID_1, "Java", new Binary(docxFileBytes), new Binary(pdfFileBytes))).getId();
+            String id = saveDoc(USER_ID_1, "Java", docxFileBytes, pdfFileBytes).getId();
 
             byte[] pdf = given()
                 .header("Authorization", BEARER_TOKEN_USER_1)
@@ -183,6 +190,26 @@ class DocControllerE2ETest {
             assertArrayEquals(pdfFileBytes, pdf);
         }
 
+        @Test
+        void shouldReturnRequestedRangeOfPdf() throws IOException {
+            byte[] docxFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.docx"));
+            byte[] pdfFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
+            String id = saveDoc(USER_ID_1, "Java", docxFileBytes, pdfFileBytes).getId();
+
+            byte[] pdf = given()
+                .header("Authorization", BEARER_TOKEN_USER_1)
+                .header("Range", "bytes=100-")
+                .when()
+                .get("/api/v1/docs/" + id + "/pdf")
+                .then()
+                .assertThat()
+                .statusCode(206)
+                .header("Content-Range", equalTo("bytes 100-" + (pdfFileBytes.length - 1) + "/" + pdfFileBytes.length))
+                .extract().asByteArray();
+
+            assertArrayEquals(Arrays.copyOfRange(pdfFileBytes, 100, pdfFileBytes.length), pdf);
+        }
+
         @Test
         void shouldNotReturnPdfIfPdfDoesNotExist() {
             given()
@@ -199,7 +226,7 @@ class DocControllerE2ETest {
         void shouldNotReturnPdfIfPdfDoesNotBelongToRequestingUser() throws IOException {
             byte[] docxFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.docx"));
             byte[] pdfFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
-            String id = docRepository.save(new Doc(null, USER_ID_1, "Java", new Binary(docxFileBytes), new Binary(pdfFileBytes))).getId();
+            String id = saveDoc(USER_ID_1, "Java", docxFileBytes, pdfFileBytes).getId();
 
             given()
                 .header("Authorization", BEARER_TOKEN_USER_2)
@@ -220,7 +247,7 @@ class DocControllerE2ETest {
         void shouldReturnDocx() throws IOException {
             byte[] docxFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.docx"));
             byte[] pdfFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
-            String id = docRepository.save(new Doc(null, USER_ID_1, "Java", new Binary(docxFileBytes), new Binary(pdfFileBytes))).getId();
+            String id = saveDoc(USER_ID_1, "Java", docxFileBytes, pdfFileBytes).getId();
 
             byte[] docx = given()
                 .header("Authorization", BEARER_TOKEN_USER_1)
@@ -251,7 +278,7 @@ class DocControllerE2ETest {
         void shouldNotReturnDocxIfDocxDoesNotBelongToRequestingUser() throws IOException {
             byte[] docxFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.docx"));
             byte[] pdfFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
-            String id = docRepository.save(new Doc(null, USER_ID_1, "Java", new Binary(docxFileBytes), new Binary(pdfFileBytes))).getId();
+            String id = saveDoc(USER_ID_1, "Java", docxFileBytes, pdfFileBytes).getId();
 
             given()
                 .header("Authorization", BEARER_TOKEN_USER_2)
@@ -272,7 +299,7 @@ class DocControllerE2ETest {
         void shouldRenameDoc() throws IOException {
             byte[] docxFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.docx"));
             byte[] pdfFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
-            String id = docRepository.save(new Doc(null, USER_ID_1, "Java", new Binary(docxFileBytes), new Binary(pdfFileBytes))).getId();
+            String id = saveDoc(USER_ID_1, "Java", docxFileBytes, pdfFileBytes).getId();
 
             given()
                 .header("Authorization", BEARER_TOKEN_USER_1)
@@ -285,15 +312,15 @@ class DocControllerE2ETest {
                 .body("$", hasKey("id"))
                 .body("userId", equalTo(USER_ID_1))
                 .body("name", equalTo("Kotlin"))
-                .body("size()", equalTo(3));
+                .body("size()", equalTo(4));
 
             List<Doc> docs = docRepository.findAll();
             assertEquals(1, docs.size());
             assertEquals(id, docs.getFirst().getId());
             assertEquals(USER_ID_1, docs.getFirst().getUserId());
             assertEquals("Kotlin", docs.getFirst().getName());
-            assertEquals(new Binary(docxFileBytes), docs.getFirst().getDocxFile());
-            assertNotEquals(null, docs.getFirst().getPdfFile());
+            assertArrayEquals(docxFileBytes, readBlob(docs.getFirst().getDocxFileId()));
+            assertNotEquals(null, docs.getFirst().getPdfFileId());
         }
 
         @Test
@@ -313,11 +340,11 @@ class DocControllerE2ETest {
         void shouldNotRenameDocIfDocWithSameNameAlreadyExists() throws IOException {
             byte[] docxFileBytes1 = Files.readAllBytes(Paths.get("src/test/resources/test1.docx"));
             byte[] pdfFileBytes1 = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
-            String id = docRepository.save(new Doc(null, USER_ID_1, "Java", new Binary(docxFileBytes1), new Binary(pdfFileBytes1))).getId();
+            String id = saveDoc(USER_ID_1, "Java", docxFileBytes1, pdfFileBytes1).getId();
 
             byte[] docxFileBytes2 = Files.readAllBytes(Paths.get("src/test/resources/test2.docx"));
             byte[] pdfFileBytes2 = Files.readAllBytes(Paths.get("src/test/resources/test2.pdf"));
-            docRepository.save(new Doc(null, USER_ID_1, "Kotlin", new Binary(docxFileBytes2), new Binary(pdfFileBytes2)));
+            saveDoc(USER_ID_1, "Kotlin", docxFileBytes2, pdfFileBytes2);
 
             given()
                 .header("Authorization", BEARER_TOKEN_USER_1)
@@ -334,15 +361,15 @@ class DocControllerE2ETest {
             assertEquals(id, docs.getFirst().getId());
             assertEquals(USER_ID_1, docs.getFirst().getUserId());
             assertEquals("Java", docs.getFirst().getName());
-            assertEquals(new Binary(docxFileBytes1), docs.getFirst().getDocxFile());
-            assertNotEquals(null, docs.getFirst().getPdfFile());
+            assertArrayEquals(docxFileBytes1, readBlob(docs.getFirst().getDocxFileId()));
+            assertNotEquals(null, docs.getFirst().getPdfFileId());
         }
 
         @Test
         void shouldNotRenameDocIfDocDoesNotBelongToRequestingUser() throws IOException {
             byte[] docxFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.docx"));
             byte[] pdfFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
-            String id = docRepository.save(new Doc(null, USER_ID_1, "Java", new Binary(docxFileBytes), new Binary(pdfFileBytes))).getId();
+            String id = saveDoc(USER_ID_1, "Java", docxFileBytes, pdfFileBytes).getId();
 
             given()
                 .header("Authorization", BEARER_TOKEN_USER_2)
@@ -359,8 +386,8 @@ class DocControllerE2ETest {
             assertEquals(id, docs.getFirst().getId());
             assertEquals(USER_ID_1, docs.getFirst().getUserId());
             assertEquals("Java", docs.getFirst().getName());
-            assertEquals(new Binary(docxFileBytes), docs.getFirst().getDocxFile());
-            assertNotEquals(null, docs.getFirst().getPdfFile());
+            assertArrayEquals(docxFileBytes, readBlob(docs.getFirst().getDocxFileId()));
+            assertNotEquals(null, docs.getFirst().getPdfFileId());
         }
 
     }
@@ -372,7 +399,7 @@ class DocControllerE2ETest {
         void shouldReplaceFile() throws IOException {
             byte[] docxFileBytes1 = Files.readAllBytes(Paths.get("src/test/resources/test1.docx"));
             byte[] pdfFileBytes1 = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
-            String id = docRepository.save(new Doc(null, USER_ID_1, "Java", new Binary(docxFileBytes1), new Binary(pdfFileBytes1))).getId();
+            String id = saveDoc(USER_ID_1, "Java", docxFileBytes1, pdfFileBytes1).getId();
 
             byte[] docxFileBytes2 = Files.readAllBytes(Paths.get("src/test/resources/test2.docx"));
 
@@ -388,15 +415,15 @@ class DocControllerE2ETest {
                 .body("$", hasKey("id"))
                 .body("userId", equalTo(USER_ID_1))
                 .body("name", equalTo("Java"))
-                .body("size()", equalTo(3));
+                .body("size()", equalTo(4));
 
             List<Doc> docs = docRepository.findAll();
             assertEquals(1, docs.size());
             assertEquals(id, docs.getFirst().getId());
             assertEquals(USER_ID_1, docs.getFirst().getUserId());
             assertEquals("Java", docs.getFirst().getName());
-            assertEquals(new Binary(docxFileBytes2), docs.getFirst().getDocxFile());
-            assertNotEquals(null, docs.getFirst().getPdfFile());
+            assertArrayEquals(docxFileBytes2, readBlob(docs.getFirst().getDocxFileId()));
+            assertNotEquals(null, docs.getFirst().getPdfFileId());
         }
 
         @Test
@@ -422,7 +449,7 @@ class DocControllerE2ETest {
         void shouldNotReplaceFileIfDocDoesNotBelongToRequestingUser() throws IOException {
             byte[] docxFileBytes1 = Files.readAllBytes(Paths.get("src/test/resources/test1.docx"));
             byte[] pdfFileBytes1 = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
-            String id = docRepository.save(new Doc(null, USER_ID_1, "Java", new Binary(docxFileBytes1), new Binary(pdfFileBytes1))).getId();
+            String id = saveDoc(USER_ID_1, "Java", docxFileBytes1, pdfFileBytes1).getId();
 
             byte[] docxFileBytes2 = Files.readAllBytes(Paths.get("src/test/resources/test2.docx"));
 
@@ -442,8 +469,8 @@ class DocControllerE2ETest {
             assertEquals(id, docs.getFirst().getId());
             assertEquals(USER_ID_1, docs.getFirst().getUserId());
             assertEquals("Java", docs.getFirst().getName());
-            assertEquals(new Binary(docxFileBytes1), docs.getFirst().getDocxFile());
-            assertNotEquals(null, docs.getFirst().getPdfFile());
+            assertArrayEquals(docxFileBytes1, readBlob(docs.getFirst().getDocxFileId()));
+            assertNotEquals(null, docs.getFirst().getPdfFileId());
         }
 
     }
@@ -455,7 +482,7 @@ class DocControllerE2ETest {
         void shouldDeleteDoc() throws IOException {
             byte[] docxFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.docx"));
             byte[] pdfFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
-            String id = docRepository.save(new Doc(null, USER_ID_1, "Java", new Binary(docxFileBytes), new Binary(pdfFileBytes))).getId();
+            String id = saveDoc(USER_ID_1, "Java", docxFileBytes, pdfFileBytes).getId();
 
             given()
                 .header("Authorization", BEARER_TOKEN_USER_1)
@@ -486,7 +513,7 @@ class DocControllerE2ETest {
         void shouldNotDeleteDocIfDocDoesNotBelongToRequestingUser() throws IOException {
             byte[] docxFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.docx"));
             byte[] pdfFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
-            String id = docRepository.save(new Doc(null, USER_ID_1, "Java", new Binary(docxFileBytes), new Binary(pdfFileBytes))).getId();
+            String id = saveDoc(USER_ID_1, "Java", docxFileBytes, pdfFileBytes).getId();
 
             given()
                 .header("Authorization", BEARER_TOKEN_USER_2)
@@ -502,10 +529,20 @@ class DocControllerE2ETest {
             assertEquals(id, docs.getFirst().getId());
             assertEquals(USER_ID_1, docs.getFirst().getUserId());
             assertEquals("Java", docs.getFirst().getName());
-            assertEquals(new Binary(docxFileBytes), docs.getFirst().getDocxFile());
-            assertNotEquals(null, docs.getFirst().getPdfFile());
+            assertArrayEquals(docxFileBytes, readBlob(docs.getFirst().getDocxFileId()));
+            assertNotEquals(null, docs.getFirst().getPdfFileId());
         }
 
     }
 
-}
\ No newline at end of file
+    private Doc saveDoc(String userId, String name, byte[] docxFileBytes, byte[] pdfFileBytes) {
+        ObjectId docxFileId = blobStore.store("document.docx", "application/vnd.openxmlformats-officedocument.wordprocessingml.document", new ByteArrayInputStream(docxFileBytes)).id();
+        ObjectId pdfFileId = blobStore.store("document.pdf", "application/pdf", new ByteArrayInputStream(pdfFileBytes)).id();
+        return docRepository.save(new Doc(null, userId, name, docxFileId, pdfFileId, COMPLETED));
+    }
+
+    private byte[] readBlob(ObjectId id) throws IOException {
+        return blobStore.find(id).orElseThrow().getContentAsByteArray();
+    }
+
+}
@@ -1,31 +1,56 @@
 package com.ondra.knowledgebasebe.doc;
 
+import com.ondra.knowledgebasebe.blob.BlobResource;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.ConversionCapacityExceededException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.ConversionUnavailableException;
 import com.ondra.knowledgebasebe.exceptionhandling.exceptions.DocNameAlreadyTakenException;
 import com.ondra.knowledgebasebe.exceptionhandling.exceptions.DocNotFoundException;
 import com.ondra.knowledgebasebe.exceptionhandling.exceptions.InvalidArgumentException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.PageNotFoundException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.PdfNotAvailableException;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.Sort;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.COMPLETED;
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.PENDING;
 import static com.ondra.knowledgebasebe.SecurityTestData.BEARER_TOKEN_USER_1;
 import static com.ondra.knowledgebasebe.SecurityTestData.USER_ID_1;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.http.HttpMethod.PATCH;
 import static org.springframework.http.MediaType.APPLICATION_PDF_VALUE;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(DocController.class)
@@ -40,18 +65,30 @@ class DocControllerWebMvcTest {
     @MockBean
     private DocService docService;
 
+    @MockBean
+    private DocBatchService docBatchService;
+
+    @MockBean
+    private DocThumbnailService docThumbnailService;
+
+    @MockBean
+    private DocPageService docPageService;
+
     private static final String ID_1 = "1";
     private static final String ID_2 = "2";
     private static final String NAME_1 = "Java";
     private static final String NAME_2 = "Kotlin";
     private static final MockMultipartFile MULTIPART_FILE = new MockMultipartFile("docxFile", new byte[]{});
+    private static final MockMultipartFile MULTIPART_FILE_IN_BATCH = new MockMultipartFile("docxFiles", new byte[]{});
+    private static final ObjectId BLOB_ID = new ObjectId();
+    private static final long BLOB_LAST_MODIFIED = 1700000000000L;
 
     @Nested
     class AddDoc {
 
         @Test
         void shouldReturnAddedDoc() throws Exception {
-            when(docService.addDoc(USER_ID_1, NAME_1, MULTIPART_FILE)).thenReturn(new DocDto(ID_1, USER_ID_1, NAME_1));
+            when(docService.addDoc(USER_ID_1, NAME_1, MULTIPART_FILE)).thenReturn(new DocDto(ID_1, USER_ID_1, NAME_1, COMPLETED));
 
             MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
                 .multipart("/api/v1/docs")
@@ -64,7 +101,25 @@ class DocControllerWebMvcTest {
                 .andExpect(status().isCreated())
                 .andExpect(jsonPath("$.id").value(ID_1))
                 .andExpect(jsonPath("$.userId").value(USER_ID_1))
-                .andExpect(jsonPath("$.name").value(NAME_1));
+                .andExpect(jsonPath("$.name").value(NAME_1))
+                .andExpect(jsonPath("$.conversionStatus").value("COMPLETED"));
+        }
+
+        @Test
+        void shouldReturnAcceptedIfConversionIsPending() throws Exception {
+            when(docService.addDoc(USER_ID_1, NAME_1, MULTIPART_FILE)).thenReturn(new DocDto(ID_1, USER_ID_1, NAME_1, PENDING));
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .multipart("/api/v1/docs")
+                .file(MULTIPART_FILE)
+                .param("name", NAME_1)
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.id").value(ID_1))
+                .andExpect(jsonPath("$.conversionStatus").value("PENDING"));
         }
 
         @Test
@@ -99,6 +154,88 @@ class DocControllerWebMvcTest {
                 .andExpect(content().string(""));
         }
 
+        @Test
+        void shouldReturnTooManyRequestsIfConversionCapacityIsExceeded() throws Exception {
+            doThrow(new ConversionCapacityExceededException(Duration.ofSeconds(3))).when(docService).addDoc(USER_ID_1, NAME_1, MULTIPART_FILE);
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .multipart("/api/v1/docs")
+                .file(MULTIPART_FILE)
+                .param("name", NAME_1)
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string("Retry-After", "3"))
+                .andExpect(content().string(""));
+        }
+
+        @Test
+        void shouldReturnServiceUnavailableIfGotenbergIsUnavailable() throws Exception {
+            doThrow(new ConversionUnavailableException(Duration.ofSeconds(30))).when(docService).addDoc(USER_ID_1, NAME_1, MULTIPART_FILE);
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .multipart("/api/v1/docs")
+                .file(MULTIPART_FILE)
+                .param("name", NAME_1)
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "30"))
+                .andExpect(content().string(""));
+        }
+
+    }
+
+    @Nested
+    class AddDocs {
+
+        @Test
+        void shouldReturnResultForEveryDoc() throws Exception {
+            MockMultipartFile docxFile1 = new MockMultipartFile("docxFiles", new byte[]{1});
+            MockMultipartFile docxFile2 = new MockMultipartFile("docxFiles", new byte[]{2});
+            when(docBatchService.addDocs(USER_ID_1, List.of(NAME_1, NAME_2), List.of(docxFile1, docxFile2))).thenReturn(List.of(
+                DocBatchItemDto.added(new DocDto(ID_1, USER_ID_1, NAME_1, COMPLETED)),
+                DocBatchItemDto.failed(NAME_2, "File has to be a DOCX-file")
+            ));
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .multipart("/api/v1/docs/batch")
+                .file(docxFile1)
+                .file(docxFile2)
+                .param("names", NAME_1, NAME_2)
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name").value(NAME_1))
+                .andExpect(jsonPath("$[0].doc.id").value(ID_1))
+                .andExpect(jsonPath("$[0].error").doesNotExist())
+                .andExpect(jsonPath("$[1].name").value(NAME_2))
+                .andExpect(jsonPath("$[1].doc").doesNotExist())
+                .andExpect(jsonPath("$[1].error").value("File has to be a DOCX-file"));
+        }
+
+        @Test
+        void shouldReturnBadRequestIfBatchIsInvalid() throws Exception {
+            doThrow(new InvalidArgumentException("Batch needs exactly one name for every DOCX-file")).when(docValidator).validateBatch(List.of(NAME_1, NAME_2), List.of(MULTIPART_FILE_IN_BATCH));
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .multipart("/api/v1/docs/batch")
+                .file(MULTIPART_FILE_IN_BATCH)
+                .param("names", NAME_1, NAME_2)
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(""));
+        }
+
     }
 
     @Nested
@@ -107,8 +244,8 @@ class DocControllerWebMvcTest {
         @Test
         void shouldReturnAllDocs() throws Exception {
             List<DocDto> docs = new ArrayList<>();
-            docs.add(new DocDto(ID_1, USER_ID_1, NAME_1));
-            docs.add(new DocDto(ID_2, USER_ID_1, NAME_2));
+            docs.add(new DocDto(ID_1, USER_ID_1, NAME_1, COMPLETED));
+            docs.add(new DocDto(ID_2, USER_ID_1, NAME_2, COMPLETED));
 
             when(docService.getAllDocs(USER_ID_1)).thenReturn(docs);
 
@@ -129,6 +266,129 @@ class DocControllerWebMvcTest {
 
     }
 
+    @Nested
+    class GetDocPage {
+
+        @Test
+        void shouldReturnPageWithCursor() throws Exception {
+            when(docService.getDocPage(USER_ID_1, DocSort.CREATED, Sort.Direction.DESC, "abc", 1))
+                .thenReturn(new DocPageDto(List.of(new DocDto(ID_1, USER_ID_1, NAME_1, COMPLETED)), "def"));
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/page")
+                .param("sort", "created")
+                .param("direction", "desc")
+                .param("cursor", "abc")
+                .param("limit", "1")
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.docs[0].id").value(ID_1))
+                .andExpect(jsonPath("$.docs[0].name").value(NAME_1))
+                .andExpect(jsonPath("$.nextCursor").value("def"));
+        }
+
+        @Test
+        void shouldReturnBadRequestIfLimitIsTooHigh() throws Exception {
+            doThrow(new InvalidArgumentException("Limit cannot be greater than 200")).when(docValidator).validatePage("name", "asc", 1000);
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/page")
+                .param("limit", "1000")
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isBadRequest());
+        }
+
+    }
+
+    @Nested
+    class SearchDocs {
+
+        @Test
+        void shouldReturnHitsWithSnippets() throws Exception {
+            when(docService.searchDocs(USER_ID_1, "records", 20))
+                .thenReturn(List.of(new DocSearchHitDto(new DocDto(ID_1, USER_ID_1, NAME_1, COMPLETED), "Records are immutable")));
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/search")
+                .param("q", "records")
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].doc.id").value(ID_1))
+                .andExpect(jsonPath("$[0].doc.name").value(NAME_1))
+                .andExpect(jsonPath("$[0].snippet").value("Records are immutable"));
+        }
+
+        @Test
+        void shouldReturnBadRequestIfQueryIsBlank() throws Exception {
+            doThrow(new InvalidArgumentException("Search query cannot be empty")).when(docValidator).validateSearch(" ", 20);
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/search")
+                .param("q", " ")
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isBadRequest());
+        }
+
+    }
+
+    @Nested
+    class GetArchive {
+
+        @Test
+        void shouldStreamArchive() throws Exception {
+            doAnswer(invocation -> {
+                invocation.<OutputStream>getArgument(3).write(new byte[]{1, 2, 3});
+                return null;
+            }).when(docService).writeArchive(eq(USER_ID_1), eq(List.of(ID_1, ID_2)), eq(DocFileType.DOCX), any());
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/archive")
+                .param("fileType", "docx")
+                .param("ids", ID_1, ID_2)
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            MvcResult mvcResult = mockMvc
+                .perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+            assertThat(mvcResult.getRequest().getAsyncContext().getTimeout()).isEqualTo(Duration.ofMinutes(30).toMillis());
+            mockMvc
+                .perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/zip"))
+                .andExpect(header().string("Content-Disposition", "attachment; filename=\"docs.zip\""))
+                .andExpect(content().bytes(new byte[]{1, 2, 3}));
+        }
+
+        @Test
+        void shouldReturnBadRequestIfFileTypeIsInvalid() throws Exception {
+            doThrow(new InvalidArgumentException("File type has to be 'pdf' or 'docx'")).when(docValidator).validateFileType("odt");
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/archive")
+                .param("fileType", "odt")
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isBadRequest());
+        }
+
+    }
+
     @Nested
     class GetPdf {
 
@@ -136,7 +396,9 @@ class DocControllerWebMvcTest {
         void shouldReturnPdf() throws Exception {
             byte[] pdfFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
 
-            when(docService.getPdf(ID_1, USER_ID_1)).thenReturn(pdfFileBytes);
+            BlobResource pdf = blobResource(pdfFileBytes);
+            when(docService.getPdfFileId(ID_1, USER_ID_1)).thenReturn(BLOB_ID);
+            when(docService.getFile(ID_1, USER_ID_1, BLOB_ID)).thenReturn(pdf);
 
             MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
                 .get("/api/v1/docs/" + ID_1 + "/pdf")
@@ -146,12 +408,158 @@ class DocControllerWebMvcTest {
                 .perform(requestBuilder)
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(APPLICATION_PDF_VALUE))
+                .andExpect(header().string("Accept-Ranges", "bytes"))
+                .andExpect(header().string("ETag", "\"" + BLOB_ID.toHexString() + "\""))
+                .andExpect(header().string("Cache-Control", "no-cache, private"))
+                .andExpect(header().string("Content-Location", "http://localhost/api/v1/docs/" + ID_1 + "/pdf/" + BLOB_ID.toHexString()))
+                .andExpect(content().bytes(pdfFileBytes));
+        }
+
+        @Test
+        void shouldReturnNotModifiedWithoutReadingPdfIfETagMatches() throws Exception {
+            when(docService.getPdfFileId(ID_1, USER_ID_1)).thenReturn(BLOB_ID);
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/pdf")
+                .header("Authorization", BEARER_TOKEN_USER_1)
+                .header("If-None-Match", "\"" + BLOB_ID.toHexString() + "\"");
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"" + BLOB_ID.toHexString() + "\""))
+                .andExpect(content().bytes(new byte[0]));
+
+            verify(docService, times(0)).getFile(any(), any(), any());
+        }
+
+        @Test
+        void shouldReturnPdfIfETagDoesNotMatch() throws Exception {
+            byte[] pdfFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
+
+            BlobResource pdf = blobResource(pdfFileBytes);
+            when(docService.getPdfFileId(ID_1, USER_ID_1)).thenReturn(BLOB_ID);
+            when(docService.getFile(ID_1, USER_ID_1, BLOB_ID)).thenReturn(pdf);
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/pdf")
+                .header("Authorization", BEARER_TOKEN_USER_1)
+                .header("If-None-Match", "\"" + new ObjectId().toHexString() + "\"");
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(pdfFileBytes));
+        }
+
+        @Test
+        void shouldDecompressGzippedPdfEvenIfClientAcceptsGzip() throws Exception {
+            byte[] pdfFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
+
+            BlobResource pdf = blobResource(pdfFileBytes);
+            when(pdf.getContentEncoding()).thenReturn("gzip");
+            when(docService.getPdfFileId(ID_1, USER_ID_1)).thenReturn(BLOB_ID);
+            when(docService.getFile(ID_1, USER_ID_1, BLOB_ID)).thenReturn(pdf);
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/pdf")
+                .header("Authorization", BEARER_TOKEN_USER_1)
+                .header("Accept-Encoding", "gzip");
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Encoding"))
                 .andExpect(content().bytes(pdfFileBytes));
         }
 
+        @Test
+        void shouldReturnPartialContentIfRangeIsRequested() throws Exception {
+            byte[] pdfFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
+
+            BlobResource pdf = blobResource(pdfFileBytes);
+            when(docService.getPdfFileId(ID_1, USER_ID_1)).thenReturn(BLOB_ID);
+            when(docService.getFile(ID_1, USER_ID_1, BLOB_ID)).thenReturn(pdf);
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/pdf")
+                .header("Authorization", BEARER_TOKEN_USER_1)
+                .header("Range", "bytes=10-19");
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string("Content-Range", "bytes 10-19/" + pdfFileBytes.length))
+                .andExpect(header().string("Content-Length", "10"))
+                .andExpect(content().bytes(Arrays.copyOfRange(pdfFileBytes, 10, 20)));
+        }
+
+        @Test
+        void shouldReturnPartialContentOfPdfGzippedInFrames() throws Exception {
+            byte[] pdfFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
+
+            BlobResource pdf = blobResource(pdfFileBytes);
+            when(pdf.getContentEncoding()).thenReturn("gzip");
+            when(docService.getPdfFileId(ID_1, USER_ID_1)).thenReturn(BLOB_ID);
+            when(docService.getFile(ID_1, USER_ID_1, BLOB_ID)).thenReturn(pdf);
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/pdf")
+                .header("Authorization", BEARER_TOKEN_USER_1)
+                .header("Accept-Encoding", "gzip")
+                .header("Range", "bytes=10-19");
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isPartialContent())
+                .andExpect(header().doesNotExist("Content-Encoding"))
+                .andExpect(header().string("Content-Range", "bytes 10-19/" + pdfFileBytes.length))
+                .andExpect(content().bytes(Arrays.copyOfRange(pdfFileBytes, 10, 20)));
+        }
+
+        @Test
+        void shouldReturnWholePdfIfIfRangeDoesNotMatch() throws Exception {
+            byte[] pdfFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
+
+            BlobResource pdf = blobResource(pdfFileBytes);
+            when(docService.getPdfFileId(ID_1, USER_ID_1)).thenReturn(BLOB_ID);
+            when(docService.getFile(ID_1, USER_ID_1, BLOB_ID)).thenReturn(pdf);
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/pdf")
+                .header("Authorization", BEARER_TOKEN_USER_1)
+                .header("Range", "bytes=10-19")
+                .header("If-Range", "\"" + new ObjectId().toHexString() + "\"");
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Content-Range"))
+                .andExpect(content().bytes(pdfFileBytes));
+        }
+
+        @Test
+        void shouldReturnRangeNotSatisfiableIfRangeIsOutOfBounds() throws Exception {
+            byte[] pdfFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
+
+            BlobResource pdf = blobResource(pdfFileBytes);
+            when(docService.getPdfFileId(ID_1, USER_ID_1)).thenReturn(BLOB_ID);
+            when(docService.getFile(ID_1, USER_ID_1, BLOB_ID)).thenReturn(pdf);
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/pdf")
+                .header("Authorization", BEARER_TOKEN_USER_1)
+                .header("Range", "bytes=" + pdfFileBytes.length + "-");
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string("Content-Range", "bytes */" + pdfFileBytes.length));
+        }
+
         @Test
         void shouldReturnNotFoundIfIdDoesNotExistForUser() throws Exception {
-            doThrow(new DocNotFoundException(ID_1, USER_ID_1)).when(docService).getPdf(ID_1, USER_ID_1);
+            doThrow(new DocNotFoundException(ID_1, USER_ID_1)).when(docService).getPdfFileId(ID_1, USER_ID_1);
 
             MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
                 .get("/api/v1/docs/" + ID_1 + "/pdf")
@@ -165,6 +573,61 @@ class DocControllerWebMvcTest {
 
     }
 
+    @Nested
+    class GetPdfVersion {
+
+        @Test
+        void shouldReturnImmutablePdf() throws Exception {
+            byte[] pdfFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"));
+
+            BlobResource pdf = blobResource(pdfFileBytes);
+            when(docService.getFile(ID_1, USER_ID_1, BLOB_ID)).thenReturn(pdf);
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/pdf/" + BLOB_ID.toHexString())
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isOk())
+                .andExpect(header().string("Cache-Control", "max-age=31536000, private, immutable"))
+                .andExpect(header().doesNotExist("Content-Location"))
+                .andExpect(content().bytes(pdfFileBytes));
+
+            verify(docService, times(1)).validateFileVersion(ID_1, USER_ID_1, DocFileType.PDF, BLOB_ID);
+        }
+
+        @Test
+        void shouldReturnNotFoundIfPdfWasReplaced() throws Exception {
+            doThrow(new DocNotFoundException(ID_1, USER_ID_1)).when(docService).validateFileVersion(ID_1, USER_ID_1, DocFileType.PDF, BLOB_ID);
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/pdf/" + BLOB_ID.toHexString())
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isNotFound());
+
+            verify(docService, times(0)).getFile(any(), any(), any());
+        }
+
+        @Test
+        void shouldReturnBadRequestIfVersionIsNotFileId() throws Exception {
+            doThrow(new InvalidArgumentException("File version has to be a file ID")).when(docValidator).validateFileVersion("latest");
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/pdf/latest")
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(""));
+        }
+
+    }
+
     @Nested
     class GetDocx {
 
@@ -172,7 +635,9 @@ class DocControllerWebMvcTest {
         void shouldReturnDocx() throws Exception {
             byte[] docxFileBytes = Files.readAllBytes(Paths.get("src/test/resources/test1.docx"));
 
-            when(docService.getDocx(ID_1, USER_ID_1)).thenReturn(docxFileBytes);
+            BlobResource docx = blobResource(docxFileBytes);
+            when(docService.getDocxFileId(ID_1, USER_ID_1)).thenReturn(BLOB_ID);
+            when(docService.getFile(ID_1, USER_ID_1, BLOB_ID)).thenReturn(docx);
 
             MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
                 .get("/api/v1/docs/" + ID_1 + "/docx")
@@ -187,7 +652,7 @@ class DocControllerWebMvcTest {
 
         @Test
         void shouldReturnNotFoundIfIdDoesNotExistForUser() throws Exception {
-            doThrow(new DocNotFoundException(ID_1, USER_ID_1)).when(docService).getDocx(ID_1, USER_ID_1);
+            doThrow(new DocNotFoundException(ID_1, USER_ID_1)).when(docService).getDocxFileId(ID_1, USER_ID_1);
 
             MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
                 .get("/api/v1/docs/" + ID_1 + "/docx")
@@ -201,12 +666,231 @@ class DocControllerWebMvcTest {
 
     }
 
+    @Nested
+    class GetThumbnail {
+
+        private static final byte[] THUMBNAIL = {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF};
+
+        @Test
+        void shouldReturnThumbnailOfFirstPage() throws Exception {
+            when(docService.getPdfFileId(ID_1, USER_ID_1)).thenReturn(BLOB_ID);
+            when(docThumbnailService.getThumbnail(ID_1, USER_ID_1, BLOB_ID, 1, 240)).thenReturn(THUMBNAIL);
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/thumbnail")
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/jpeg"))
+                .andExpect(header().string("ETag", "\"" + BLOB_ID.toHexString() + "-1-240\""))
+                .andExpect(header().string("Cache-Control", "no-cache, private"))
+                .andExpect(content().bytes(THUMBNAIL));
+        }
+
+        @Test
+        void shouldReturnThumbnailOfRequestedPageAndWidth() throws Exception {
+            when(docService.getPdfFileId(ID_1, USER_ID_1)).thenReturn(BLOB_ID);
+            when(docThumbnailService.getThumbnail(ID_1, USER_ID_1, BLOB_ID, 3, 480)).thenReturn(THUMBNAIL);
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/thumbnail")
+                .param("page", "3")
+                .param("width", "480")
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"" + BLOB_ID.toHexString() + "-3-480\""))
+                .andExpect(content().bytes(THUMBNAIL));
+
+            verify(docValidator, times(1)).validateThumbnail(3, 480);
+        }
+
+        @Test
+        void shouldReturnNotModifiedWithoutRenderingIfETagMatches() throws Exception {
+            when(docService.getPdfFileId(ID_1, USER_ID_1)).thenReturn(BLOB_ID);
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/thumbnail")
+                .header("If-None-Match", "\"" + BLOB_ID.toHexString() + "-1-240\"")
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"" + BLOB_ID.toHexString() + "-1-240\""))
+                .andExpect(content().string(""));
+
+            verify(docThumbnailService, times(0)).getThumbnail(any(), any(), any(), anyInt(), anyInt());
+        }
+
+        @Test
+        void shouldReturnNotFoundIfPageDoesNotExist() throws Exception {
+            when(docService.getPdfFileId(ID_1, USER_ID_1)).thenReturn(BLOB_ID);
+            when(docThumbnailService.getThumbnail(ID_1, USER_ID_1, BLOB_ID, 9, 240)).thenThrow(new PageNotFoundException(ID_1, 9));
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/thumbnail")
+                .param("page", "9")
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isNotFound())
+                .andExpect(content().string(""));
+        }
+
+        @Test
+        void shouldReturnConflictIfPdfIsNotAvailable() throws Exception {
+            when(docService.getPdfFileId(ID_1, USER_ID_1)).thenThrow(new PdfNotAvailableException(ID_1, "PENDING"));
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/thumbnail")
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isConflict())
+                .andExpect(content().string(""));
+        }
+
+        @Test
+        void shouldReturnBadRequestIfWidthIsTooLarge() throws Exception {
+            doThrow(new InvalidArgumentException("Width cannot be greater than 1024")).when(docValidator).validateThumbnail(1, 4096);
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/thumbnail")
+                .param("width", "4096")
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(""));
+
+            verify(docService, times(0)).getPdfFileId(any(), any());
+        }
+
+    }
+
+    @Nested
+    class GetPages {
+
+        private static final byte[] PAGES = "%PDF-1.7".getBytes();
+
+        private PdfPages pdfPages() {
+            return outputStream -> outputStream.write(PAGES);
+        }
+
+        @Test
+        void shouldReturnPageRange() throws Exception {
+            when(docService.getPdfFileId(ID_1, USER_ID_1)).thenReturn(BLOB_ID);
+            when(docPageService.getPages(ID_1, USER_ID_1, BLOB_ID, 40, 42)).thenReturn(pdfPages());
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/pages")
+                .param("from", "40")
+                .param("to", "42")
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            MvcResult mvcResult = mockMvc
+                .perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+            mockMvc
+                .perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(APPLICATION_PDF_VALUE))
+                .andExpect(header().string("ETag", "\"" + BLOB_ID.toHexString() + "-pages-40-42\""))
+                .andExpect(content().bytes(PAGES));
+
+            verify(docValidator, times(1)).validatePageRange(40, 42);
+        }
+
+        @Test
+        void shouldReturnSinglePageIfNoLastPageIsGiven() throws Exception {
+            when(docService.getPdfFileId(ID_1, USER_ID_1)).thenReturn(BLOB_ID);
+            when(docPageService.getPages(ID_1, USER_ID_1, BLOB_ID, 40, 40)).thenReturn(pdfPages());
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/pages")
+                .param("from", "40")
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            MvcResult mvcResult = mockMvc
+                .perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+            mockMvc
+                .perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(PAGES));
+        }
+
+        @Test
+        void shouldReturnNotModifiedWithoutExtractingIfETagMatches() throws Exception {
+            when(docService.getPdfFileId(ID_1, USER_ID_1)).thenReturn(BLOB_ID);
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/pages")
+                .param("from", "40")
+                .header("If-None-Match", "\"" + BLOB_ID.toHexString() + "-pages-40-40\"")
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isNotModified());
+
+            verify(docPageService, times(0)).getPages(any(), any(), any(), anyInt(), anyInt());
+        }
+
+        @Test
+        void shouldReturnNotFoundIfPageDoesNotExist() throws Exception {
+            when(docService.getPdfFileId(ID_1, USER_ID_1)).thenReturn(BLOB_ID);
+            when(docPageService.getPages(ID_1, USER_ID_1, BLOB_ID, 40, 40)).thenThrow(new PageNotFoundException(ID_1, 40));
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/pages")
+                .param("from", "40")
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isNotFound())
+                .andExpect(content().string(""));
+        }
+
+        @Test
+        void shouldReturnBadRequestIfRangeIsInvalid() throws Exception {
+            doThrow(new InvalidArgumentException("Last page cannot be before the first page")).when(docValidator).validatePageRange(5, 2);
+
+            MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
+                .get("/api/v1/docs/" + ID_1 + "/pages")
+                .param("from", "5")
+                .param("to", "2")
+                .header("Authorization", BEARER_TOKEN_USER_1);
+
+            mockMvc
+                .perform(requestBuilder)
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string(""));
+
+            verify(docService, times(0)).getPdfFileId(any(), any());
+        }
+
+    }
+
     @Nested
     class RenameDoc {
 
         @Test
         void shouldReturnRenamedDoc() throws Exception {
-            when(docService.renameDoc(ID_1, USER_ID_1, NAME_1)).thenReturn(new DocDto(ID_1, USER_ID_1, NAME_1));
+            when(docService.renameDoc(ID_1, USER_ID_1, NAME_1)).thenReturn(new DocDto(ID_1, USER_ID_1, NAME_1, COMPLETED));
 
             MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
                 .patch("/api/v1/docs/" + ID_1 + "/rename")
@@ -243,7 +927,7 @@ class DocControllerWebMvcTest {
 
         @Test
         void shouldReturnDoc() throws Exception {
-            when(docService.replaceFile(ID_1, USER_ID_1, MULTIPART_FILE)).thenReturn(new DocDto(ID_1, USER_ID_1, NAME_1));
+            when(docService.replaceFile(ID_1, USER_ID_1, MULTIPART_FILE)).thenReturn(new DocDto(ID_1, USER_ID_1, NAME_1, COMPLETED));
 
             MockHttpServletRequestBuilder requestBuilder = MockMvcRequestBuilders
                 .multipart(PATCH ,"/api/v1/docs/" + ID_1 + "/replace-file")
@@ -306,4 +990,15 @@ class DocControllerWebMvcTest {
 
     }
 
-}
\ No newline at end of file
+    private static BlobResource blobResource(byte[] bytes) throws Exception {
+        BlobResource blobResource = mock(BlobResource.class);
+        when(blobResource.getId()).thenReturn(BLOB_ID);
+        when(blobResource.lastModified()).thenReturn(BLOB_LAST_MODIFIED);
+        when(blobResource.exists()).thenReturn(true);
+        when(blobResource.contentLength()).thenReturn((long) bytes.length);
+        when(blobResource.getInputStream()).thenAnswer(invocation -> new ByteArrayInputStream(bytes));
+        when(blobResource.forRangeReads()).thenReturn(blobResource);
+        return blobResource;
+    }
+
+}
@@ -0,0 +1,172 @@
+package com.ondra.knowledgebasebe.doc;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.COMPLETED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class DocListCacheUnitTest {
+
+    private static final Duration TTL = Duration.ofMinutes(5);
+    private static final Instant NOW = Instant.parse("2024-05-01T10:00:00Z");
+    private static final List<DocDto> DOCS = List.of(new DocDto("1", "1", "Java", COMPLETED));
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final Clock clock = mock(Clock.class);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private DocListCache docListCache;
+
+    @BeforeEach
+    void setUp() {
+        when(clock.instant()).thenReturn(NOW);
+        docListCache = new DocListCache(meterRegistry, clock, 2, TTL);
+        docListCache.setEnabled(true);
+    }
+
+    private List<DocDto> get(String userId) {
+        return docListCache.get(userId, () -> {
+            loads.incrementAndGet();
+            return DOCS;
+        });
+    }
+
+    @Nested
+    class Get {
+
+        @Test
+        void shouldLoadListOnlyOnce() {
+            get("1");
+            List<DocDto> docs = get("1");
+
+            assertThat(docs).isEqualTo(DOCS);
+            assertThat(loads).hasValue(1);
+            assertThat(meterRegistry.counter("doc.list-cache.requests", "result", "hit").count()).isEqualTo(1);
+        }
+
+        @Test
+        void shouldLoadListAgainAfterTtl() {
+            get("1");
+            when(clock.instant()).thenReturn(NOW.plus(TTL));
+            get("1");
+
+            assertThat(loads).hasValue(2);
+        }
+
+        @Test
+        void shouldEvictLeastRecentlyUsedList() {
+            get("1");
+            get("2");
+            get("1");
+            get("3");
+            get("1");
+            get("2");
+
+            assertThat(loads).hasValue(4);
+        }
+
+        @Test
+        void shouldNotCacheWhileDisabled() {
+            docListCache.setEnabled(false);
+
+            get("1");
+            get("1");
+
+            assertThat(loads).hasValue(2);
+            assertThat(meterRegistry.counter("doc.list-cache.requests", "result", "bypass").count()).isEqualTo(2);
+        }
+
+        @Test
+        void shouldNotCacheListThatWasInvalidatedWhileLoading() {
+            docListCache.get("1", () -> {
+                docListCache.invalidate("1");
+                return DOCS;
+            });
+            get("1");
+
+            assertThat(loads).hasValue(1);
+        }
+
+    }
+
+    @Nested
+    class Invalidate {
+
+        @Test
+        void shouldOnlyInvalidateListOfUser() {
+            get("1");
+            get("2");
+            docListCache.invalidate("1");
+            get("1");
+            get("2");
+
+            assertThat(loads).hasValue(3);
+        }
+
+        @Test
+        void shouldInvalidateListsContainingDoc() {
+            docListCache.get("2", () -> List.of(new DocDto("2", "2", "Kotlin", COMPLETED)));
+            get("1");
+            docListCache.invalidateDoc("1");
+            get("1");
+            docListCache.get("2", () -> {
+                loads.incrementAndGet();
+                return List.of();
+            });
+
+            assertThat(loads).hasValue(2);
+        }
+
+        @Test
+        void shouldInvalidateListsBeingLoadedOnDocChange() {
+            docListCache.get("2", () -> {
+                docListCache.invalidateDoc("3");
+                return List.of(new DocDto("3", "2", "Kotlin", COMPLETED));
+            });
+            docListCache.get("2", () -> {
+                loads.incrementAndGet();
+                return List.of();
+            });
+
+            assertThat(loads).hasValue(1);
+        }
+
+        @Test
+        void shouldFindDocInListThatWasLoadedAgain() {
+            get("1");
+            docListCache.invalidate("1");
+            get("1");
+            docListCache.invalidateDoc("1");
+            get("1");
+
+            assertThat(loads).hasValue(3);
+        }
+
+        @Test
+        void shouldNotInvalidateAnythingForDocOfEvictedList() {
+            get("1");
+            docListCache.get("2", () -> List.of(new DocDto("2", "2", "Kotlin", COMPLETED)));
+            docListCache.get("3", () -> List.of(new DocDto("3", "3", "Scala", COMPLETED)));
+            docListCache.invalidateDoc("1");
+            docListCache.get("2", () -> {
+                loads.incrementAndGet();
+                return List.of();
+            });
+
+            assertThat(loads).hasValue(1);
+        }
+
+    }
+
+}
@@ -0,0 +1,74 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.BlobResource;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.FileConversionException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.PageNotFoundException;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class DocPageServiceUnitTest {
+
+    @Mock
+    private DocService docService;
+
+    @Mock
+    private PdfPageExtractor pdfPageExtractor;
+
+    private DocPageService docPageService;
+
+    private static final String ID = "1";
+    private static final String USER_ID = "1";
+    private static final ObjectId PDF_FILE_ID = new ObjectId();
+
+    @BeforeEach
+    void setUp() {
+        docPageService = new DocPageService(docService, pdfPageExtractor);
+        when(docService.getFile(ID, USER_ID, PDF_FILE_ID)).thenReturn(mock(BlobResource.class));
+    }
+
+    @Test
+    void shouldReturnExtractedPages() throws IOException {
+        PdfPages extracted = outputStream -> outputStream.write(new byte[]{1, 2, 3});
+        when(pdfPageExtractor.extractPages(any(RandomAccessRead.class), eq(2), eq(3))).thenReturn(Optional.of(extracted));
+
+        PdfPages pages = docPageService.getPages(ID, USER_ID, PDF_FILE_ID, 2, 3);
+
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        pages.writeTo(written);
+        assertThat(written.toByteArray()).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    void shouldThrowIfPageDoesNotExist() throws IOException {
+        when(pdfPageExtractor.extractPages(any(RandomAccessRead.class), eq(2), eq(9))).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> docPageService.getPages(ID, USER_ID, PDF_FILE_ID, 2, 9))
+            .isInstanceOf(PageNotFoundException.class);
+    }
+
+    @Test
+    void shouldThrowIfPdfCannotBeRead() throws IOException {
+        when(pdfPageExtractor.extractPages(any(RandomAccessRead.class), eq(1), eq(1))).thenThrow(new IOException("Damaged"));
+
+        assertThatThrownBy(() -> docPageService.getPages(ID, USER_ID, PDF_FILE_ID, 1, 1))
+            .isInstanceOf(FileConversionException.class);
+    }
+
+}
@@ -1,11 +1,18 @@
 package com.ondra.knowledgebasebe.doc;
 
+import com.ondra.knowledgebasebe.config.MongoIndexManager;
+import org.bson.Document;
 import org.bson.types.Binary;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
 import org.testcontainers.containers.MongoDBContainer;
 import org.testcontainers.junit.jupiter.Container;
@@ -13,11 +20,18 @@ import org.testcontainers.junit.jupiter.Testcontainers;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
 
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.COMPLETED;
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.DEFERRED;
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.PENDING;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 @DataMongoTest
 @Testcontainers
+@Import(MongoIndexManager.class)
 public class DocRepositoryDataMongoTest {
 
     @Container
@@ -27,7 +41,13 @@ public class DocRepositoryDataMongoTest {
     @Autowired
     private DocRepository docRepository;
 
-    private final Doc testDoc = new Doc("1", "1", "Java", new Binary(new byte[]{1}), new Binary(new byte[]{2}));
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private static final ObjectId DOCX_FILE_ID = new ObjectId();
+    private static final ObjectId PDF_FILE_ID = new ObjectId();
+
+    private final Doc testDoc = new Doc("1", "1", "Java", DOCX_FILE_ID, PDF_FILE_ID, COMPLETED);
 
     @BeforeEach
     void setUp() {
@@ -59,24 +79,22 @@ public class DocRepositoryDataMongoTest {
     }
 
     @Nested
-    class ExistsByIdAndUserId {
+    class Save {
 
         @Test
-        public void shouldReturnTrueWhenIdAndUserIdIsPresent() {
-            boolean exists = docRepository.existsByIdAndUserId("1", "1");
-            assertThat(exists).isTrue();
-        }
+        public void shouldFailIfNameIsTakenByAnotherDocOfUser() {
+            Doc duplicateDoc = new Doc("2", "1", "Java", DOCX_FILE_ID, PDF_FILE_ID, COMPLETED);
 
-        @Test
-        public void shouldReturnFalseWhenIdIsNotPresent() {
-            boolean exists = docRepository.existsByIdAndUserId("2", "1");
-            assertThat(exists).isFalse();
+            assertThatThrownBy(() -> docRepository.save(duplicateDoc)).isInstanceOf(DuplicateKeyException.class);
         }
 
         @Test
-        public void shouldReturnFalseWhenUserIdIsNotPresent() {
-            boolean exists = docRepository.existsByIdAndUserId("1", "2");
-            assertThat(exists).isFalse();
+        public void shouldAllowSameNameForAnotherUser() {
+            Doc otherUsersDoc = new Doc("2", "2", "Java", DOCX_FILE_ID, PDF_FILE_ID, COMPLETED);
+
+            docRepository.save(otherUsersDoc);
+
+            assertThat(docRepository.findById("2")).get().usingRecursiveComparison().isEqualTo(otherUsersDoc);
         }
 
     }
@@ -105,6 +123,27 @@ public class DocRepositoryDataMongoTest {
 
     }
 
+    @Nested
+    class ExistsByIdAndUserIdAndFileId {
+
+        @Test
+        public void shouldReturnTrueForCurrentFiles() {
+            assertThat(docRepository.existsByIdAndUserIdAndPdfFileId("1", "1", PDF_FILE_ID)).isTrue();
+            assertThat(docRepository.existsByIdAndUserIdAndDocxFileId("1", "1", DOCX_FILE_ID)).isTrue();
+        }
+
+        @Test
+        public void shouldReturnFalseForFileOfAnotherType() {
+            assertThat(docRepository.existsByIdAndUserIdAndPdfFileId("1", "1", DOCX_FILE_ID)).isFalse();
+        }
+
+        @Test
+        public void shouldReturnFalseForAnotherUser() {
+            assertThat(docRepository.existsByIdAndUserIdAndPdfFileId("1", "2", PDF_FILE_ID)).isFalse();
+        }
+
+    }
+
     @Nested
     class FindAllByUserIdAndExcludeBinaryData {
 
@@ -113,7 +152,7 @@ public class DocRepositoryDataMongoTest {
             List<Doc> docList = docRepository.findAllByUserIdAndExcludeBinaryData("1");
             assertThat(docList.size()).isEqualTo(1);
             assertThat(docList.getFirst()).usingRecursiveComparison().isEqualTo(
-                new Doc("1", "1", "Java", null, null)
+                new Doc("1", "1", "Java", null, null, COMPLETED)
             );
         }
 
@@ -126,53 +165,208 @@ public class DocRepositoryDataMongoTest {
     }
 
     @Nested
-    class FindPdfFileByDocIdAndUserId {
+    class CompleteConversion {
 
         @Test
-        public void shouldReturnDocOptionalWhenIdAndUserIdIsPresent() {
-            Optional<Doc> docOptional = docRepository.findPdfFileByDocIdAndUserId("1", "1");
-            assertThat(docOptional.isPresent()).isTrue();
-            assertThat(docOptional.get()).usingRecursiveComparison().isEqualTo(
-                new Doc("1", null, null, null, new Binary(new byte[]{2}))
-            );
+        public void shouldAttachPdfToDeferredDoc() {
+            docRepository.save(new Doc("2", "1", "Spring", DOCX_FILE_ID, null, DEFERRED));
+
+            boolean completed = docRepository.completeConversion("2", DOCX_FILE_ID, PDF_FILE_ID);
+
+            assertThat(completed).isTrue();
+            assertThat(docRepository.findById("2")).get().usingRecursiveComparison()
+                .isEqualTo(new Doc("2", "1", "Spring", DOCX_FILE_ID, PDF_FILE_ID, COMPLETED));
         }
 
         @Test
-        public void shouldReturnEmptyOptionalWhenIdIsNotPresent() {
-            Optional<Doc> docOptional = docRepository.findPdfFileByDocIdAndUserId("2", "1");
-            assertThat(docOptional.isPresent()).isFalse();
+        public void shouldNotAttachPdfOfReplacedDocx() {
+            docRepository.save(new Doc("2", "1", "Spring", new ObjectId(), null, DEFERRED));
+
+            assertThat(docRepository.completeConversion("2", DOCX_FILE_ID, PDF_FILE_ID)).isFalse();
+        }
+
+    }
+
+    @Nested
+    class StreamAllByUserIdAndIdInAndExcludeBinaryData {
+
+        @Test
+        public void shouldStreamOnlySelectedDocsOfUser() {
+            docRepository.save(new Doc("2", "1", "Spring", DOCX_FILE_ID, null, DEFERRED));
+            docRepository.save(new Doc("3", "2", "Kotlin", DOCX_FILE_ID, null, DEFERRED));
+
+            try (Stream<Doc> docs = docRepository.streamAllByUserIdAndIdInAndExcludeBinaryData("1", List.of("2", "3"))) {
+                assertThat(docs.toList()).usingRecursiveFieldByFieldElementComparator().containsExactly(
+                    new Doc("2", null, "Spring", DOCX_FILE_ID, null, DEFERRED)
+                );
+            }
+        }
+
+    }
+
+    @Nested
+    class FindPageByUserIdAndExcludeBinaryData {
+
+        private List<String> names(List<Doc> docs) {
+            return docs.stream().map(Doc::getName).toList();
+        }
+
+        @BeforeEach
+        void setUp() {
+            docRepository.save(new Doc(new ObjectId().toHexString(), "1", "Kotlin", DOCX_FILE_ID, PDF_FILE_ID, COMPLETED));
+            docRepository.save(new Doc(new ObjectId().toHexString(), "1", "C", DOCX_FILE_ID, PDF_FILE_ID, COMPLETED));
+            docRepository.save(new Doc(new ObjectId().toHexString(), "1", "Scala", DOCX_FILE_ID, PDF_FILE_ID, COMPLETED));
+            docRepository.save(new Doc(new ObjectId().toHexString(), "2", "Go", DOCX_FILE_ID, PDF_FILE_ID, COMPLETED));
+        }
+
+        @Test
+        public void shouldContinueAfterCursorInNameOrder() {
+            List<Doc> firstPage = docRepository.findPageByUserIdAndExcludeBinaryData("1", DocSort.NAME, Sort.Direction.ASC, null, 2);
+            DocCursor cursor = DocCursor.after(firstPage.getLast(), DocSort.NAME, Sort.Direction.ASC);
+            List<Doc> secondPage = docRepository.findPageByUserIdAndExcludeBinaryData("1", DocSort.NAME, Sort.Direction.ASC, cursor, 2);
+
+            assertThat(names(firstPage)).containsExactly("C", "Java");
+            assertThat(names(secondPage)).containsExactly("Kotlin", "Scala");
+        }
+
+        @Test
+        public void shouldContinueAfterCursorInDescendingNameOrder() {
+            List<Doc> firstPage = docRepository.findPageByUserIdAndExcludeBinaryData("1", DocSort.NAME, Sort.Direction.DESC, null, 3);
+            DocCursor cursor = DocCursor.after(firstPage.getLast(), DocSort.NAME, Sort.Direction.DESC);
+            List<Doc> secondPage = docRepository.findPageByUserIdAndExcludeBinaryData("1", DocSort.NAME, Sort.Direction.DESC, cursor, 3);
+
+            assertThat(names(firstPage)).containsExactly("Scala", "Kotlin", "Java");
+            assertThat(names(secondPage)).containsExactly("C");
+        }
+
+        @Test
+        public void shouldContinueAfterCursorInCreationOrder() {
+            List<Doc> firstPage = docRepository.findPageByUserIdAndExcludeBinaryData("1", DocSort.CREATED, Sort.Direction.DESC, null, 2);
+            DocCursor cursor = DocCursor.after(firstPage.getLast(), DocSort.CREATED, Sort.Direction.DESC);
+            List<Doc> secondPage = docRepository.findPageByUserIdAndExcludeBinaryData("1", DocSort.CREATED, Sort.Direction.DESC, cursor, 2);
+
+            assertThat(names(firstPage)).containsExactly("Scala", "C");
+            assertThat(names(secondPage)).containsExactly("Kotlin");
+        }
+
+    }
+
+    @Nested
+    class FindAllByUserIdAndNameInAndExcludeBinaryData {
+
+        @Test
+        public void shouldReturnOnlyDocsWithGivenNames() {
+            docRepository.save(new Doc("2", "1", "Spring", DOCX_FILE_ID, PDF_FILE_ID, COMPLETED));
+
+            List<Doc> docList = docRepository.findAllByUserIdAndNameInAndExcludeBinaryData("1", List.of("Java", "Kotlin"));
+
+            assertThat(docList).usingRecursiveFieldByFieldElementComparator().containsExactly(new Doc("1", null, "Java", null, null, null));
+        }
+
+    }
+
+    @Nested
+    class InsertUnordered {
+
+        @Test
+        public void shouldInsertAllDocsThatCanBeInserted() {
+            Doc duplicateDoc = new Doc("1", "1", "Spring", DOCX_FILE_ID, PDF_FILE_ID, COMPLETED);
+            Doc newDoc = new Doc("2", "1", "Kotlin", DOCX_FILE_ID, PDF_FILE_ID, COMPLETED);
+
+            DocInsertResult insertResult = docRepository.insertUnordered(List.of(duplicateDoc, newDoc));
+
+            assertThat(insertResult).isEqualTo(new DocInsertResult(Set.of(0), Set.of()));
+            assertThat(docRepository.findById("1")).get().usingRecursiveComparison().isEqualTo(testDoc);
+            assertThat(docRepository.findById("2")).get().usingRecursiveComparison().isEqualTo(newDoc);
+        }
+
+        @Test
+        public void shouldNotInsertDocWithTakenName() {
+            Doc takenNameDoc = new Doc("2", "1", "Java", DOCX_FILE_ID, PDF_FILE_ID, COMPLETED);
+            Doc newDoc = new Doc("3", "1", "Kotlin", DOCX_FILE_ID, PDF_FILE_ID, COMPLETED);
+
+            DocInsertResult insertResult = docRepository.insertUnordered(List.of(takenNameDoc, newDoc));
+
+            assertThat(insertResult).isEqualTo(new DocInsertResult(Set.of(0), Set.of()));
+            assertThat(docRepository.findById("2")).isEmpty();
+            assertThat(docRepository.findById("3")).isPresent();
+        }
+
+    }
+
+    @Nested
+    class RenameByIdAndUserId {
+
+        @Test
+        public void shouldOnlyChangeName() {
+            Optional<Doc> renamedDoc = docRepository.renameByIdAndUserId("1", "1", "Kotlin");
+
+            assertThat(renamedDoc).get().usingRecursiveComparison().isEqualTo(new Doc("1", "1", "Kotlin", null, null, COMPLETED));
+            assertThat(docRepository.findById("1")).get().usingRecursiveComparison()
+                .isEqualTo(new Doc("1", "1", "Kotlin", DOCX_FILE_ID, PDF_FILE_ID, COMPLETED));
         }
 
         @Test
         public void shouldReturnEmptyOptionalWhenUserIdIsNotPresent() {
-            Optional<Doc> docOptional = docRepository.findPdfFileByDocIdAndUserId("1", "2");
-            assertThat(docOptional.isPresent()).isFalse();
+            assertThat(docRepository.renameByIdAndUserId("1", "2", "Kotlin")).isEmpty();
+            assertThat(docRepository.findById("1")).get().usingRecursiveComparison().isEqualTo(testDoc);
+        }
+
+        @Test
+        public void shouldFailIfNameIsTaken() {
+            docRepository.save(new Doc("2", "1", "Kotlin", DOCX_FILE_ID, PDF_FILE_ID, COMPLETED));
+
+            assertThatThrownBy(() -> docRepository.renameByIdAndUserId("1", "1", "Kotlin")).isInstanceOf(DuplicateKeyException.class);
         }
 
     }
 
     @Nested
-    class FindDocxFileByDocIdAndUserId {
+    class ReplaceFilesByIdAndUserId {
 
         @Test
-        public void shouldReturnDocOptionalWhenIdAndUserIdIsPresent() {
-            Optional<Doc> docOptional = docRepository.findDocxFileByDocIdAndUserId("1", "1");
-            assertThat(docOptional.isPresent()).isTrue();
-            assertThat(docOptional.get()).usingRecursiveComparison().isEqualTo(
-                new Doc("1", null, null, new Binary(new byte[]{1}), null)
-            );
+        public void shouldReturnReplacedFiles() {
+            ObjectId newDocxFileId = new ObjectId();
+
+            Optional<Doc> oldDoc = docRepository.replaceFilesByIdAndUserId("1", "1", newDocxFileId, null, PENDING);
+
+            assertThat(oldDoc).get().usingRecursiveComparison().isEqualTo(new Doc("1", "1", "Java", DOCX_FILE_ID, PDF_FILE_ID, null));
+            assertThat(docRepository.findById("1")).get().usingRecursiveComparison()
+                .isEqualTo(new Doc("1", "1", "Java", newDocxFileId, null, PENDING));
         }
 
         @Test
-        public void shouldReturnEmptyOptionalWhenIdIsNotPresent() {
-            Optional<Doc> docOptional = docRepository.findDocxFileByDocIdAndUserId("2", "1");
-            assertThat(docOptional.isPresent()).isFalse();
+        public void shouldDropEmbeddedBinaries() {
+            mongoTemplate.insert(new Document("_id", "2").append("userId", "1").append("name", "Kotlin").append("docxFile", new Binary(new byte[]{1})), "docs");
+
+            docRepository.replaceFilesByIdAndUserId("2", "1", DOCX_FILE_ID, PDF_FILE_ID, COMPLETED);
+
+            assertThat(mongoTemplate.findById("2", Document.class, "docs")).doesNotContainKey("docxFile");
         }
 
         @Test
         public void shouldReturnEmptyOptionalWhenUserIdIsNotPresent() {
-            Optional<Doc> docOptional = docRepository.findDocxFileByDocIdAndUserId("1", "2");
-            assertThat(docOptional.isPresent()).isFalse();
+            assertThat(docRepository.replaceFilesByIdAndUserId("1", "2", new ObjectId(), null, PENDING)).isEmpty();
+            assertThat(docRepository.findById("1")).get().usingRecursiveComparison().isEqualTo(testDoc);
+        }
+
+    }
+
+    @Nested
+    class FindAndDeleteByIdAndUserId {
+
+        @Test
+        public void shouldReturnFilesOfDeletedDoc() {
+            Optional<Doc> deletedDoc = docRepository.findAndDeleteByIdAndUserId("1", "1");
+
+            assertThat(deletedDoc).get().usingRecursiveComparison().isEqualTo(new Doc("1", null, null, DOCX_FILE_ID, PDF_FILE_ID, null));
+            assertThat(docRepository.findById("1")).isEmpty();
+        }
+
+        @Test
+        public void shouldReturnEmptyOptionalWhenUserIdIsNotPresent() {
+            assertThat(docRepository.findAndDeleteByIdAndUserId("1", "2")).isEmpty();
+            assertThat(docRepository.findById("1")).isPresent();
         }
 
     }
@@ -0,0 +1,184 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.BlobCompression;
+import com.ondra.knowledgebasebe.blob.BlobStore;
+import com.ondra.knowledgebasebe.config.GridFsConfig;
+import com.ondra.knowledgebasebe.config.MongoIndexManager;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.COMPLETED;
+import static com.ondra.knowledgebasebe.doc.DocxTestData.docx;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataMongoTest
+@Testcontainers
+@Import({GridFsConfig.class, BlobStore.class, BlobCompression.class, SimpleMeterRegistry.class, MongoIndexManager.class, DocxTextExtractor.class, DocSearchIndex.class})
+public class DocSearchIndexDataMongoTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:7.0");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private DocRepository docRepository;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private DocSearchIndex docSearchIndex;
+
+    @Autowired
+    private DocxTextExtractor docxTextExtractor;
+
+    private static final String USER_ID = "1";
+
+    @BeforeEach
+    void setUp() {
+        docRepository.deleteAll();
+        // the collection is emptied instead of dropped, so its text index stays
+        mongoTemplate.remove(new Query(), DocText.class);
+        mongoTemplate.dropCollection("migrations");
+    }
+
+    private Doc addDoc(String userId, String name, byte[] docx) {
+        Doc doc = docRepository.save(new Doc(null, userId, name, new ObjectId(), null, COMPLETED));
+        try {
+            docSearchIndex.index(doc, CompletableFuture.completedFuture(docxTextExtractor.extractText(new ByteArrayInputStream(docx)))).join();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return doc;
+    }
+
+    @Nested
+    class Search {
+
+        @Test
+        void shouldReturnMatchingDocsWithSnippets() {
+            Doc java = addDoc(USER_ID, "Java", docx("Java runs on the JVM.", "Records are immutable data carriers."));
+            addDoc(USER_ID, "Go", docx("Go compiles to native code."));
+
+            List<DocSearchHitDto> hits = docSearchIndex.search(USER_ID, "immutable", 10);
+
+            assertThat(hits).containsExactly(new DocSearchHitDto(java.toDto(), "Java runs on the JVM. Records are immutable data carriers."));
+        }
+
+        @Test
+        void shouldRankBetterMatchesFirst() {
+            Doc once = addDoc(USER_ID, "Once", docx("A stream is mentioned here.", "And nothing else."));
+            Doc often = addDoc(USER_ID, "Often", docx("Streams everywhere: stream, stream and stream."));
+
+            List<DocSearchHitDto> hits = docSearchIndex.search(USER_ID, "stream", 10);
+
+            assertThat(hits).extracting(DocSearchHitDto::doc).containsExactly(often.toDto(), once.toDto());
+        }
+
+        @Test
+        void shouldCutSnippetAroundFirstMatch() {
+            String filler = "lorem ipsum dolor sit amet ".repeat(20);
+            addDoc(USER_ID, "Long", docx(filler + "the needle is here " + filler));
+
+            DocSearchHitDto hit = docSearchIndex.search(USER_ID, "needle", 10).getFirst();
+
+            assertThat(hit.snippet()).startsWith("…").endsWith("…").contains("the needle is here");
+            assertThat(hit.snippet().length()).isLessThan(250);
+        }
+
+        @Test
+        void shouldOnlySearchDocsOfUser() {
+            addDoc("2", "Java", docx("Records are immutable data carriers."));
+
+            assertThat(docSearchIndex.search(USER_ID, "immutable", 10)).isEmpty();
+        }
+
+        @Test
+        void shouldLeaveOutRemovedDocs() {
+            Doc java = addDoc(USER_ID, "Java", docx("Records are immutable data carriers."));
+            docRepository.deleteById(java.getId());
+
+            assertThat(docSearchIndex.search(USER_ID, "immutable", 10)).isEmpty();
+
+            docSearchIndex.remove(java.getId());
+            assertThat(mongoTemplate.count(new Query(), DocText.class)).isEqualTo(0);
+        }
+
+    }
+
+    @Nested
+    class Index {
+
+        @Test
+        void shouldNotIndexTextOfDocxThatWasReplacedMeanwhile() {
+            Doc replaced = docRepository.save(new Doc(null, USER_ID, "Replaced", new ObjectId(), null, COMPLETED));
+            docRepository.save(new Doc(replaced.getId(), USER_ID, "Replaced", new ObjectId(), null, COMPLETED));
+
+            docSearchIndex.index(replaced, CompletableFuture.completedFuture("Outdated text.")).join();
+
+            assertThat(mongoTemplate.count(new Query(), DocText.class)).isEqualTo(0);
+        }
+
+        @Test
+        void shouldNotIndexDocWithoutText() {
+            Doc doc = docRepository.save(new Doc(null, USER_ID, "Empty", new ObjectId(), null, COMPLETED));
+
+            docSearchIndex.index(doc, CompletableFuture.completedFuture(null)).join();
+
+            assertThat(mongoTemplate.count(new Query(), DocText.class)).isEqualTo(0);
+        }
+
+    }
+
+    @Nested
+    class IndexAllDocs {
+
+        @Test
+        void shouldIndexDocsWithoutTextOrWithTextOfOlderDocx() {
+            ObjectId docxFileId = blobStore.store("document.docx", DocService.DOCX_CONTENT_TYPE, new ByteArrayInputStream(docx("Sealed classes restrict inheritance."))).id();
+            Doc unindexed = docRepository.save(new Doc(null, USER_ID, "Unindexed", docxFileId, null, COMPLETED));
+            Doc replaced = addDoc(USER_ID, "Replaced", docx("Outdated text."));
+            docRepository.save(new Doc(replaced.getId(), USER_ID, "Replaced", docxFileId, null, COMPLETED));
+
+            docSearchIndex.indexAllDocs();
+
+            assertThat(docSearchIndex.search(USER_ID, "sealed", 10)).extracting(hit -> hit.doc().id())
+                .containsExactlyInAnyOrder(unindexed.getId(), replaced.getId());
+            assertThat(docSearchIndex.search(USER_ID, "outdated", 10)).isEmpty();
+        }
+
+        @Test
+        void shouldOnlyRunOnce() {
+            docSearchIndex.indexAllDocs();
+            ObjectId docxFileId = blobStore.store("document.docx", DocService.DOCX_CONTENT_TYPE, new ByteArrayInputStream(docx("Sealed classes restrict inheritance."))).id();
+            docRepository.save(new Doc(null, USER_ID, "Unindexed", docxFileId, null, COMPLETED));
+
+            docSearchIndex.indexAllDocs();
+
+            assertThat(docSearchIndex.search(USER_ID, "sealed", 10)).isEmpty();
+        }
+
+    }
+
+}
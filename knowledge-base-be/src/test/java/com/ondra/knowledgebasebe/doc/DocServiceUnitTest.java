@@ -1,8 +1,14 @@
 package com.ondra.knowledgebasebe.doc;
 
+import com.ondra.knowledgebasebe.blob.BlobResource;
+import com.ondra.knowledgebasebe.blob.BlobStore;
+import com.ondra.knowledgebasebe.blob.StoredBlob;
 import com.ondra.knowledgebasebe.exceptionhandling.exceptions.DocNameAlreadyTakenException;
 import com.ondra.knowledgebasebe.exceptionhandling.exceptions.DocNotFoundException;
-import org.bson.types.Binary;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.FileConversionException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.InvalidArgumentException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.PdfNotAvailableException;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -11,17 +17,35 @@ import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static com.ondra.knowledgebasebe.doc.ConversionMode.ASYNC;
+import static com.ondra.knowledgebasebe.doc.ConversionMode.LAZY;
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.COMPLETED;
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.DEFERRED;
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.PENDING;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.doNothing;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -33,7 +57,28 @@ public class DocServiceUnitTest {
     private DocRepository docRepository;
 
     @Mock
-    private FileConversionService fileConversionService;
+    private BlobStore blobStore;
+
+    @Mock
+    private DocxIngestion docxIngestion;
+
+    @Mock
+    private PdfGenerator pdfGenerator;
+
+    @Mock
+    private EmbeddedBinaryMigration embeddedBinaryMigration;
+
+    @Mock
+    private ConversionJobQueue conversionJobQueue;
+
+    @Mock
+    private LazyConversion lazyConversion;
+
+    @Mock
+    private DocListCache docListCache;
+
+    @Mock
+    private DocSearchIndex docSearchIndex;
 
     @InjectMocks
     private DocService docService;
@@ -44,8 +89,11 @@ public class DocServiceUnitTest {
     private static final String ID = "1";
     private static final String USER_ID = "1";
     private static final String NAME = "Java";
-    private static final Binary BINARY_DOCX = new Binary(new byte[]{1});
-    private static final Binary BINARY_PDF = new Binary(new byte[]{2});
+    private static final ObjectId DOCX_FILE_ID = new ObjectId();
+    private static final ObjectId PDF_FILE_ID = new ObjectId();
+    private static final StoredBlob STORED_DOCX = new StoredBlob(DOCX_FILE_ID, "5c9a2e");
+    private static final IngestedDocx INGESTED_DOCX = new IngestedDocx(STORED_DOCX, CompletableFuture.completedFuture("Java runs on the JVM."));
+    private static final String CONVERSION_JOB_ID = "66f1c2";
     private static final MultipartFile MULTIPART_FILE = new MockMultipartFile("docxFile", new byte[]{});
 
     @Nested
@@ -54,18 +102,20 @@ public class DocServiceUnitTest {
         @Test
         void shouldReturnAddedDoc() {
             when(docRepository.existsByUserIdAndName(any(), any())).thenReturn(false);
-            when(fileConversionService.convertDocxMultipartFileToDocxBinary(any())).thenReturn(BINARY_DOCX);
-            when(fileConversionService.convertDocxMultipartFileToPdfBinary(any())).thenReturn(BINARY_PDF);
-            when(docRepository.save(any())).thenReturn(new Doc(ID, USER_ID, NAME, BINARY_DOCX, BINARY_PDF));
+            when(docxIngestion.ingest(MULTIPART_FILE)).thenReturn(INGESTED_DOCX);
+            when(pdfGenerator.generatePdf(any(), eq(STORED_DOCX.sha256()))).thenReturn(PDF_FILE_ID);
+            when(docRepository.save(any())).thenReturn(new Doc(ID, USER_ID, NAME, DOCX_FILE_ID, PDF_FILE_ID, COMPLETED));
 
             DocDto result = docService.addDoc(USER_ID, NAME, MULTIPART_FILE);
 
-            assertThat(result).isEqualTo(new DocDto(ID, USER_ID, NAME));
+            assertThat(result).isEqualTo(new DocDto(ID, USER_ID, NAME, COMPLETED));
             verify(docRepository, times(1)).existsByUserIdAndName(USER_ID, NAME);
-            verify(fileConversionService, times(1)).convertDocxMultipartFileToDocxBinary(MULTIPART_FILE);
-            verify(fileConversionService, times(1)).convertDocxMultipartFileToPdfBinary(MULTIPART_FILE);
+            verify(docxIngestion, times(1)).ingest(MULTIPART_FILE);
+            verify(pdfGenerator, times(1)).generatePdf(any(), eq(STORED_DOCX.sha256()));
             verify(docRepository, times(1)).save(docCaptor.capture());
-            assertThat(docCaptor.getValue()).usingRecursiveComparison().isEqualTo(new Doc(null, USER_ID, NAME, BINARY_DOCX, BINARY_PDF));
+            assertThat(docCaptor.getValue()).usingRecursiveComparison().isEqualTo(new Doc(null, USER_ID, NAME, DOCX_FILE_ID, PDF_FILE_ID, COMPLETED));
+            verify(docListCache, times(1)).invalidate(USER_ID);
+            verify(docSearchIndex, times(1)).index(any(), eq(INGESTED_DOCX.text()));
         }
 
         @Test
@@ -75,11 +125,91 @@ public class DocServiceUnitTest {
             assertThatThrownBy(() -> docService.addDoc(USER_ID, NAME, MULTIPART_FILE)).isInstanceOf(DocNameAlreadyTakenException.class);
 
             verify(docRepository, times(1)).existsByUserIdAndName(USER_ID, NAME);
-            verify(fileConversionService, times(0)).convertDocxMultipartFileToDocxBinary(any());
-            verify(fileConversionService, times(0)).convertDocxMultipartFileToPdfBinary(any());
+            verify(docxIngestion, times(0)).ingest(any());
+            verify(docRepository, times(0)).save(any());
+        }
+
+        @Test
+        void shouldDeleteDocxBlobIfConversionFails() {
+            when(docRepository.existsByUserIdAndName(any(), any())).thenReturn(false);
+            when(docxIngestion.ingest(MULTIPART_FILE)).thenReturn(INGESTED_DOCX);
+            when(pdfGenerator.generatePdf(any(), eq(STORED_DOCX.sha256()))).thenThrow(new FileConversionException("Converting DOCX to PDF not possible"));
+
+            assertThatThrownBy(() -> docService.addDoc(USER_ID, NAME, MULTIPART_FILE)).isInstanceOf(FileConversionException.class);
+
+            verify(blobStore, times(1)).release(DOCX_FILE_ID);
             verify(docRepository, times(0)).save(any());
         }
 
+        @Test
+        void shouldFailAndReleaseBlobsIfNameIsTakenConcurrently() {
+            when(docRepository.existsByUserIdAndName(any(), any())).thenReturn(false);
+            when(docxIngestion.ingest(MULTIPART_FILE)).thenReturn(INGESTED_DOCX);
+            when(pdfGenerator.generatePdf(any(), eq(STORED_DOCX.sha256()))).thenReturn(PDF_FILE_ID);
+            when(docRepository.save(any())).thenThrow(new DuplicateKeyException("E11000 duplicate key error"));
+
+            assertThatThrownBy(() -> docService.addDoc(USER_ID, NAME, MULTIPART_FILE)).isInstanceOf(DocNameAlreadyTakenException.class);
+
+            verify(blobStore, times(1)).release(DOCX_FILE_ID);
+            verify(blobStore, times(1)).release(PDF_FILE_ID);
+        }
+
+    }
+
+    @Nested
+    class AddDocAsynchronously {
+
+        @Test
+        void shouldReturnPendingDocWithoutConverting() {
+            DocService asyncDocService = new DocService(docRepository, blobStore, docxIngestion, pdfGenerator, embeddedBinaryMigration, conversionJobQueue, lazyConversion, docListCache, docSearchIndex, ASYNC);
+            when(docRepository.existsByUserIdAndName(any(), any())).thenReturn(false);
+            when(docxIngestion.ingest(MULTIPART_FILE)).thenReturn(INGESTED_DOCX);
+            when(docRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+            DocDto result = asyncDocService.addDoc(USER_ID, NAME, MULTIPART_FILE);
+
+            assertThat(result.conversionStatus()).isEqualTo(PENDING);
+            verify(conversionJobQueue, times(1)).enqueue(result.id(), STORED_DOCX);
+            verify(docRepository, times(1)).save(docCaptor.capture());
+            assertThat(docCaptor.getValue()).usingRecursiveComparison().isEqualTo(new Doc(result.id(), USER_ID, NAME, DOCX_FILE_ID, null, PENDING));
+            verify(pdfGenerator, times(0)).generatePdf(any(), any());
+        }
+
+        @Test
+        void shouldCancelConversionIfNameIsTakenConcurrently() {
+            DocService asyncDocService = new DocService(docRepository, blobStore, docxIngestion, pdfGenerator, embeddedBinaryMigration, conversionJobQueue, lazyConversion, docListCache, docSearchIndex, ASYNC);
+            when(docRepository.existsByUserIdAndName(any(), any())).thenReturn(false);
+            when(docxIngestion.ingest(MULTIPART_FILE)).thenReturn(INGESTED_DOCX);
+            when(conversionJobQueue.enqueue(any(), eq(STORED_DOCX))).thenReturn(CONVERSION_JOB_ID);
+            when(docRepository.save(any())).thenThrow(new DuplicateKeyException("E11000 duplicate key error"));
+
+            assertThatThrownBy(() -> asyncDocService.addDoc(USER_ID, NAME, MULTIPART_FILE)).isInstanceOf(DocNameAlreadyTakenException.class);
+
+            verify(conversionJobQueue, times(1)).cancel(CONVERSION_JOB_ID);
+            verify(blobStore, times(1)).release(DOCX_FILE_ID);
+        }
+
+    }
+
+    @Nested
+    class AddDocLazily {
+
+        @Test
+        void shouldReturnDeferredDocWithoutConverting() {
+            DocService lazyDocService = new DocService(docRepository, blobStore, docxIngestion, pdfGenerator, embeddedBinaryMigration, conversionJobQueue, lazyConversion, docListCache, docSearchIndex, LAZY);
+            when(docRepository.existsByUserIdAndName(any(), any())).thenReturn(false);
+            when(docxIngestion.ingest(MULTIPART_FILE)).thenReturn(INGESTED_DOCX);
+            when(docRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+            DocDto result = lazyDocService.addDoc(USER_ID, NAME, MULTIPART_FILE);
+
+            assertThat(result.conversionStatus()).isEqualTo(DEFERRED);
+            verify(docRepository, times(1)).save(docCaptor.capture());
+            assertThat(docCaptor.getValue()).usingRecursiveComparison().isEqualTo(new Doc(null, USER_ID, NAME, DOCX_FILE_ID, null, DEFERRED));
+            verify(pdfGenerator, times(0)).generatePdf(any(), any());
+            verify(conversionJobQueue, times(0)).enqueue(any(), any());
+        }
+
     }
 
     @Nested
@@ -87,8 +217,9 @@ public class DocServiceUnitTest {
 
         @Test
         void shouldReturnAllDocs() {
-            ArrayList<Doc> docs = new ArrayList<>() {{ add(new Doc(ID, USER_ID, NAME, BINARY_DOCX, BINARY_PDF)); }};
+            ArrayList<Doc> docs = new ArrayList<>() {{ add(new Doc(ID, USER_ID, NAME, DOCX_FILE_ID, PDF_FILE_ID, COMPLETED)); }};
             when(docRepository.findAllByUserIdAndExcludeBinaryData(any())).thenReturn(docs);
+            when(docListCache.get(eq(USER_ID), any())).thenAnswer(invocation -> invocation.<Supplier<List<DocDto>>>getArgument(1).get());
 
             List<DocDto> result = docService.getAllDocs(USER_ID);
 
@@ -99,97 +230,261 @@ public class DocServiceUnitTest {
     }
 
     @Nested
-    class GetPdf {
+    class GetDocPage {
 
         @Test
-        void shouldReturnPdf() {
-            Doc doc = new Doc(ID, null, null, null, BINARY_PDF);
-            when(docRepository.findPdfFileByDocIdAndUserId(any(), any())).thenReturn(Optional.of(doc));
+        void shouldReturnCursorIfThereAreMoreDocs() {
+            Doc java = new Doc(ID, USER_ID, NAME, null, null, COMPLETED);
+            Doc kotlin = new Doc("2", USER_ID, "Kotlin", null, null, COMPLETED);
+            when(docRepository.findPageByUserIdAndExcludeBinaryData(USER_ID, DocSort.NAME, Sort.Direction.ASC, null, 2)).thenReturn(List.of(java, kotlin));
 
-            byte[] result = docService.getPdf(ID, USER_ID);
+            DocPageDto result = docService.getDocPage(USER_ID, DocSort.NAME, Sort.Direction.ASC, null, 1);
 
-            assertThat(result).isEqualTo(doc.getPdfFile().getData());
-            verify(docRepository, times(1)).findPdfFileByDocIdAndUserId(ID, USER_ID);
+            assertThat(result.docs()).containsExactly(java.toDto());
+            assertThat(DocCursor.decode(result.nextCursor())).isEqualTo(new DocCursor(DocSort.NAME, Sort.Direction.ASC, ID, NAME));
         }
 
         @Test
-        void shouldFailIfDocDoesNotExist() {
-            when(docRepository.findPdfFileByDocIdAndUserId(any(), any())).thenReturn(Optional.empty());
+        void shouldNotReturnCursorOnLastPage() {
+            Doc kotlin = new Doc("2", USER_ID, "Kotlin", null, null, COMPLETED);
+            DocCursor cursor = new DocCursor(DocSort.NAME, Sort.Direction.ASC, ID, NAME);
+            when(docRepository.findPageByUserIdAndExcludeBinaryData(USER_ID, DocSort.NAME, Sort.Direction.ASC, cursor, 2)).thenReturn(List.of(kotlin));
+
+            DocPageDto result = docService.getDocPage(USER_ID, DocSort.NAME, Sort.Direction.ASC, cursor.encode(), 1);
 
-            assertThatThrownBy(() -> docService.getPdf(ID, USER_ID)).isInstanceOf(DocNotFoundException.class);
+            assertThat(result.docs()).containsExactly(kotlin.toDto());
+            assertThat(result.nextCursor()).isNull();
+        }
 
-            verify(docRepository, times(1)).findPdfFileByDocIdAndUserId(ID, USER_ID);
+        @Test
+        void shouldFailIfCursorBelongsToAnotherOrder() {
+            String cursor = new DocCursor(DocSort.NAME, Sort.Direction.ASC, ID, NAME).encode();
+
+            assertThatThrownBy(() -> docService.getDocPage(USER_ID, DocSort.CREATED, Sort.Direction.ASC, cursor, 1)).isInstanceOf(InvalidArgumentException.class);
+        }
+
+        @Test
+        void shouldFailIfCursorIsMalformed() {
+            assertThatThrownBy(() -> docService.getDocPage(USER_ID, DocSort.NAME, Sort.Direction.ASC, "not a cursor", 1)).isInstanceOf(InvalidArgumentException.class);
         }
 
     }
 
     @Nested
-    class GetDocx {
+    class GetPdfFileId {
 
         @Test
-        void shouldReturnDocx() {
-            Doc doc = new Doc(ID, null, null, BINARY_DOCX, null);
-            when(docRepository.findDocxFileByDocIdAndUserId(any(), any())).thenReturn(Optional.of(doc));
+        void shouldReturnPdfFileId() {
+            when(docRepository.findByIdAndUserId(any(), any())).thenReturn(Optional.of(new Doc(ID, USER_ID, NAME, DOCX_FILE_ID, PDF_FILE_ID, COMPLETED)));
 
-            byte[] result = docService.getDocx(ID, USER_ID);
+            ObjectId result = docService.getPdfFileId(ID, USER_ID);
 
-            assertThat(result).isEqualTo(doc.getDocxFile().getData());
-            verify(docRepository, times(1)).findDocxFileByDocIdAndUserId(ID, USER_ID);
+            assertThat(result).isEqualTo(PDF_FILE_ID);
+            verify(docRepository, times(1)).findByIdAndUserId(ID, USER_ID);
+            verify(blobStore, times(0)).find(any());
+        }
+
+        @Test
+        void shouldMigrateDocWithEmbeddedBinaries() {
+            when(docRepository.findByIdAndUserId(any(), any())).thenReturn(
+                Optional.of(new Doc(ID, USER_ID, NAME, null, null, null)),
+                Optional.of(new Doc(ID, USER_ID, NAME, DOCX_FILE_ID, PDF_FILE_ID, COMPLETED))
+            );
+
+            ObjectId result = docService.getPdfFileId(ID, USER_ID);
+
+            assertThat(result).isEqualTo(PDF_FILE_ID);
+            verify(embeddedBinaryMigration, times(1)).migrateDoc(ID);
+        }
+
+        @Test
+        void shouldConvertDeferredPdfOnFirstRequest() {
+            Doc deferredDoc = new Doc(ID, USER_ID, NAME, DOCX_FILE_ID, null, DEFERRED);
+            when(docRepository.findByIdAndUserId(any(), any())).thenReturn(
+                Optional.of(deferredDoc),
+                Optional.of(new Doc(ID, USER_ID, NAME, DOCX_FILE_ID, PDF_FILE_ID, COMPLETED))
+            );
+
+            ObjectId result = docService.getPdfFileId(ID, USER_ID);
+
+            assertThat(result).isEqualTo(PDF_FILE_ID);
+            verify(lazyConversion, times(1)).convert(deferredDoc);
+        }
+
+        @Test
+        void shouldFailIfPdfIsNotConvertedYet() {
+            when(docRepository.findByIdAndUserId(any(), any())).thenReturn(Optional.of(new Doc(ID, USER_ID, NAME, DOCX_FILE_ID, null, PENDING)));
+
+            assertThatThrownBy(() -> docService.getPdfFileId(ID, USER_ID)).isInstanceOf(PdfNotAvailableException.class);
         }
 
         @Test
         void shouldFailIfDocDoesNotExist() {
-            when(docRepository.findDocxFileByDocIdAndUserId(any(), any())).thenReturn(Optional.empty());
+            when(docRepository.findByIdAndUserId(any(), any())).thenReturn(Optional.empty());
 
-            assertThatThrownBy(() -> docService.getDocx(ID, USER_ID)).isInstanceOf(DocNotFoundException.class);
+            assertThatThrownBy(() -> docService.getPdfFileId(ID, USER_ID)).isInstanceOf(DocNotFoundException.class);
 
-            verify(docRepository, times(1)).findDocxFileByDocIdAndUserId(ID, USER_ID);
+            verify(docRepository, times(1)).findByIdAndUserId(ID, USER_ID);
         }
 
     }
 
     @Nested
-    class RenameDoc {
+    class GetDocxFileId {
 
         @Test
-        void shouldReturnRenamedDoc() {
-            Doc oldDoc = new Doc(ID, USER_ID, "Kotlin", BINARY_DOCX, BINARY_PDF);
-            Doc newDoc = new Doc(ID, USER_ID, NAME, BINARY_DOCX, BINARY_PDF);
-            when(docRepository.findByIdAndUserId(any(), any())).thenReturn(Optional.of(oldDoc));
-            when(docRepository.existsByUserIdAndName(any(), any())).thenReturn(false);
-            when(docRepository.save(any())).thenReturn(newDoc);
+        void shouldReturnDocxFileId() {
+            when(docRepository.findByIdAndUserId(any(), any())).thenReturn(Optional.of(new Doc(ID, USER_ID, NAME, DOCX_FILE_ID, PDF_FILE_ID, COMPLETED)));
 
-            DocDto result = docService.renameDoc(ID, USER_ID, NAME);
+            ObjectId result = docService.getDocxFileId(ID, USER_ID);
 
-            assertThat(result).isEqualTo(new DocDto(ID, USER_ID, NAME));
+            assertThat(result).isEqualTo(DOCX_FILE_ID);
             verify(docRepository, times(1)).findByIdAndUserId(ID, USER_ID);
-            verify(docRepository, times(1)).existsByUserIdAndName(USER_ID, NAME);
-            verify(docRepository, times(1)).save(docCaptor.capture());
-            assertThat(docCaptor.getValue()).usingRecursiveComparison().isEqualTo(newDoc);
         }
 
         @Test
         void shouldFailIfDocDoesNotExist() {
             when(docRepository.findByIdAndUserId(any(), any())).thenReturn(Optional.empty());
 
-            assertThatThrownBy(() -> docService.renameDoc(ID, USER_ID, NAME)).isInstanceOf(DocNotFoundException.class);
+            assertThatThrownBy(() -> docService.getDocxFileId(ID, USER_ID)).isInstanceOf(DocNotFoundException.class);
 
             verify(docRepository, times(1)).findByIdAndUserId(ID, USER_ID);
-            verify(docRepository, times(0)).existsByUserIdAndName(any(), any());
+        }
+
+    }
+
+    @Nested
+    class ValidateFileVersion {
+
+        @Test
+        void shouldAcceptCurrentPdf() {
+            when(docRepository.existsByIdAndUserIdAndPdfFileId(any(), any(), any())).thenReturn(true);
+
+            docService.validateFileVersion(ID, USER_ID, DocFileType.PDF, PDF_FILE_ID);
+
+            verify(docRepository, times(1)).existsByIdAndUserIdAndPdfFileId(ID, USER_ID, PDF_FILE_ID);
+        }
+
+        @Test
+        void shouldFailIfDocxWasReplaced() {
+            when(docRepository.existsByIdAndUserIdAndDocxFileId(any(), any(), any())).thenReturn(false);
+
+            assertThatThrownBy(() -> docService.validateFileVersion(ID, USER_ID, DocFileType.DOCX, DOCX_FILE_ID)).isInstanceOf(DocNotFoundException.class);
+
+            verify(docRepository, times(1)).existsByIdAndUserIdAndDocxFileId(ID, USER_ID, DOCX_FILE_ID);
+        }
+
+    }
+
+    @Nested
+    class GetFile {
+
+        @Test
+        void shouldReturnFile() {
+            BlobResource pdf = mock(BlobResource.class);
+            when(blobStore.find(any())).thenReturn(Optional.of(pdf));
+
+            BlobResource result = docService.getFile(ID, USER_ID, PDF_FILE_ID);
+
+            assertThat(result).isSameAs(pdf);
+            verify(blobStore, times(1)).find(PDF_FILE_ID);
+        }
+
+        @Test
+        void shouldFailIfFileDoesNotExist() {
+            when(blobStore.find(any())).thenReturn(Optional.empty());
+
+            assertThatThrownBy(() -> docService.getFile(ID, USER_ID, PDF_FILE_ID)).isInstanceOf(DocNotFoundException.class);
+        }
+
+    }
+
+    @Nested
+    class WriteArchive {
+
+        private Map<String, byte[]> unzip(byte[] archive) throws IOException {
+            Map<String, byte[]> entries = new LinkedHashMap<>();
+            try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(archive))) {
+                for (ZipEntry entry = zipInputStream.getNextEntry(); entry != null; entry = zipInputStream.getNextEntry()) {
+                    entries.put(entry.getName(), zipInputStream.readAllBytes());
+                }
+            }
+            return entries;
+        }
+
+        private BlobResource blobWithContent(byte[] content) {
+            BlobResource blob = mock(BlobResource.class);
+            when(blob.getInputStream()).thenReturn(new ByteArrayInputStream(content));
+            return blob;
+        }
+
+        @Test
+        void shouldWritePdfsOfAllConvertedDocs() throws IOException {
+            ObjectId otherPdfFileId = new ObjectId();
+            when(docRepository.streamAllByUserIdAndExcludeBinaryData(USER_ID)).thenReturn(Stream.of(
+                new Doc(ID, USER_ID, NAME, DOCX_FILE_ID, PDF_FILE_ID, COMPLETED),
+                new Doc("2", USER_ID, "Kotlin", new ObjectId(), null, PENDING),
+                new Doc("3", USER_ID, "C/C++", new ObjectId(), otherPdfFileId, COMPLETED)
+            ));
+            BlobResource pdf1 = blobWithContent(new byte[]{1, 2});
+            BlobResource pdf2 = blobWithContent(new byte[]{3, 4});
+            when(blobStore.find(PDF_FILE_ID)).thenReturn(Optional.of(pdf1));
+            when(blobStore.find(otherPdfFileId)).thenReturn(Optional.of(pdf2));
+
+            ByteArrayOutputStream archive = new ByteArrayOutputStream();
+            docService.writeArchive(USER_ID, null, DocFileType.PDF, archive);
+
+            Map<String, byte[]> entries = unzip(archive.toByteArray());
+            assertThat(entries).containsOnlyKeys("Java.pdf", "C_C++.pdf");
+            assertThat(entries.get("Java.pdf")).isEqualTo(new byte[]{1, 2});
+            assertThat(entries.get("C_C++.pdf")).isEqualTo(new byte[]{3, 4});
+        }
+
+        @Test
+        void shouldWriteDocxFilesOfSelectedDocs() throws IOException {
+            when(docRepository.streamAllByUserIdAndIdInAndExcludeBinaryData(USER_ID, List.of(ID))).thenReturn(Stream.of(
+                new Doc(ID, USER_ID, NAME, DOCX_FILE_ID, null, DEFERRED)
+            ));
+            BlobResource docx = blobWithContent(new byte[]{5, 6});
+            when(blobStore.find(DOCX_FILE_ID)).thenReturn(Optional.of(docx));
+
+            ByteArrayOutputStream archive = new ByteArrayOutputStream();
+            docService.writeArchive(USER_ID, List.of(ID), DocFileType.DOCX, archive);
+
+            Map<String, byte[]> entries = unzip(archive.toByteArray());
+            assertThat(entries).containsOnlyKeys("Java.docx");
+            assertThat(entries.get("Java.docx")).isEqualTo(new byte[]{5, 6});
+        }
+
+    }
+
+    @Nested
+    class RenameDoc {
+
+        @Test
+        void shouldReturnRenamedDoc() {
+            when(docRepository.renameByIdAndUserId(any(), any(), any())).thenReturn(Optional.of(new Doc(ID, USER_ID, NAME, null, null, COMPLETED)));
+
+            DocDto result = docService.renameDoc(ID, USER_ID, NAME);
+
+            assertThat(result).isEqualTo(new DocDto(ID, USER_ID, NAME, COMPLETED));
+            verify(docRepository, times(1)).renameByIdAndUserId(ID, USER_ID, NAME);
             verify(docRepository, times(0)).save(any());
+            verify(docListCache, times(1)).invalidate(USER_ID);
+        }
+
+        @Test
+        void shouldFailIfDocDoesNotExist() {
+            when(docRepository.renameByIdAndUserId(any(), any(), any())).thenReturn(Optional.empty());
+
+            assertThatThrownBy(() -> docService.renameDoc(ID, USER_ID, NAME)).isInstanceOf(DocNotFoundException.class);
         }
 
         @Test
         void shouldFailIfDocNameIsAlreadyTaken() {
-            Doc oldDoc = new Doc(ID, USER_ID, "Kotlin", BINARY_DOCX, BINARY_PDF);
-            when(docRepository.findByIdAndUserId(any(), any())).thenReturn(Optional.of(oldDoc));
-            when(docRepository.existsByUserIdAndName(any(), any())).thenReturn(true);
+            when(docRepository.renameByIdAndUserId(any(), any(), any())).thenThrow(new DuplicateKeyException("E11000 duplicate key error"));
 
             assertThatThrownBy(() -> docService.renameDoc(ID, USER_ID, NAME)).isInstanceOf(DocNameAlreadyTakenException.class);
-
-            verify(docRepository, times(1)).findByIdAndUserId(ID, USER_ID);
-            verify(docRepository, times(1)).existsByUserIdAndName(USER_ID, NAME);
-            verify(docRepository, times(0)).save(any());
         }
 
     }
@@ -199,33 +494,63 @@ public class DocServiceUnitTest {
 
         @Test
         void shouldReturnDoc() {
-            Doc oldDoc = new Doc(ID, USER_ID, NAME, new Binary(new byte[]{3}), new Binary(new byte[]{4}));
-            Doc newDoc = new Doc(ID, USER_ID, NAME, BINARY_DOCX, BINARY_PDF);
-            when(docRepository.findByIdAndUserId(any(), any())).thenReturn(Optional.of(oldDoc));
-            when(fileConversionService.convertDocxMultipartFileToDocxBinary(any())).thenReturn(BINARY_DOCX);
-            when(fileConversionService.convertDocxMultipartFileToPdfBinary(any())).thenReturn(BINARY_PDF);
-            when(docRepository.save(any())).thenReturn(newDoc);
+            ObjectId oldDocxFileId = new ObjectId();
+            ObjectId oldPdfFileId = new ObjectId();
+            when(docxIngestion.ingest(MULTIPART_FILE)).thenReturn(INGESTED_DOCX);
+            when(pdfGenerator.generatePdf(any(), eq(STORED_DOCX.sha256()))).thenReturn(PDF_FILE_ID);
+            when(docRepository.replaceFilesByIdAndUserId(any(), any(), any(), any(), any()))
+                .thenReturn(Optional.of(new Doc(ID, USER_ID, NAME, oldDocxFileId, oldPdfFileId, null)));
 
             DocDto result = docService.replaceFile(ID, USER_ID, MULTIPART_FILE);
 
-            assertThat(result).isEqualTo(new DocDto(ID, USER_ID, NAME));
-            verify(docRepository, times(1)).findByIdAndUserId(ID, USER_ID);
-            verify(fileConversionService, times(1)).convertDocxMultipartFileToDocxBinary(MULTIPART_FILE);
-            verify(fileConversionService, times(1)).convertDocxMultipartFileToPdfBinary(MULTIPART_FILE);
-            verify(docRepository, times(1)).save(docCaptor.capture());
-            assertThat(docCaptor.getValue()).usingRecursiveComparison().isEqualTo(newDoc);
+            assertThat(result).isEqualTo(new DocDto(ID, USER_ID, NAME, COMPLETED));
+            verify(docRepository, times(1)).replaceFilesByIdAndUserId(ID, USER_ID, DOCX_FILE_ID, PDF_FILE_ID, COMPLETED);
+            verify(docRepository, times(0)).findByIdAndUserId(any(), any());
+            verify(blobStore, times(1)).release(oldDocxFileId);
+            verify(blobStore, times(1)).release(oldPdfFileId);
+            verify(docSearchIndex, times(1)).index(any(), eq(INGESTED_DOCX.text()));
         }
 
         @Test
-        void shouldFailIfDocDoesNotExist() {
-            when(docRepository.findByIdAndUserId(any(), any())).thenReturn(Optional.empty());
+        void shouldReleaseNewFilesIfDocDoesNotExist() {
+            when(docxIngestion.ingest(MULTIPART_FILE)).thenReturn(INGESTED_DOCX);
+            when(pdfGenerator.generatePdf(any(), eq(STORED_DOCX.sha256()))).thenReturn(PDF_FILE_ID);
+            when(docRepository.replaceFilesByIdAndUserId(any(), any(), any(), any(), any())).thenReturn(Optional.empty());
 
             assertThatThrownBy(() -> docService.replaceFile(ID, USER_ID, MULTIPART_FILE)).isInstanceOf(DocNotFoundException.class);
 
-            verify(docRepository, times(1)).findByIdAndUserId(ID, USER_ID);
-            verify(fileConversionService, times(0)).convertDocxMultipartFileToDocxBinary(any());
-            verify(fileConversionService, times(0)).convertDocxMultipartFileToPdfBinary(any());
-            verify(docRepository, times(0)).save(any());
+            verify(blobStore, times(1)).release(DOCX_FILE_ID);
+            verify(blobStore, times(1)).release(PDF_FILE_ID);
+        }
+
+        @Test
+        void shouldCancelConversionIfDocDoesNotExist() {
+            DocService asyncDocService = new DocService(docRepository, blobStore, docxIngestion, pdfGenerator, embeddedBinaryMigration, conversionJobQueue, lazyConversion, docListCache, docSearchIndex, ASYNC);
+            when(docxIngestion.ingest(MULTIPART_FILE)).thenReturn(INGESTED_DOCX);
+            when(conversionJobQueue.enqueue(ID, STORED_DOCX)).thenReturn(CONVERSION_JOB_ID);
+            when(docRepository.replaceFilesByIdAndUserId(any(), any(), any(), any(), any())).thenReturn(Optional.empty());
+
+            assertThatThrownBy(() -> asyncDocService.replaceFile(ID, USER_ID, MULTIPART_FILE)).isInstanceOf(DocNotFoundException.class);
+
+            verify(conversionJobQueue, times(1)).cancel(CONVERSION_JOB_ID);
+            verify(blobStore, times(1)).release(DOCX_FILE_ID);
+            verify(pdfGenerator, times(0)).generatePdf(any(), any());
+        }
+
+    }
+
+    @Nested
+    class DiscardPreparedDoc {
+
+        @Test
+        void shouldCancelConversionAndReleaseBlobs() {
+            Doc doc = new Doc(ID, USER_ID, NAME, DOCX_FILE_ID, null, PENDING);
+
+            docService.discardPreparedDoc(new PreparedDoc(doc, INGESTED_DOCX.text(), CONVERSION_JOB_ID));
+
+            verify(conversionJobQueue, times(1)).cancel(CONVERSION_JOB_ID);
+            verify(blobStore, times(1)).release(DOCX_FILE_ID);
+            verify(blobStore, times(1)).release(null);
         }
 
     }
@@ -235,23 +560,25 @@ public class DocServiceUnitTest {
 
         @Test
         void shouldReturnVoid() {
-            when(docRepository.existsByIdAndUserId(any(), any())).thenReturn(true);
-            doNothing().when(docRepository).deleteByIdAndUserId(any(), any());
+            when(docRepository.findAndDeleteByIdAndUserId(any(), any())).thenReturn(Optional.of(new Doc(ID, null, null, DOCX_FILE_ID, PDF_FILE_ID, null)));
 
             docService.deleteDoc(ID, USER_ID);
 
-            verify(docRepository, times(1)).existsByIdAndUserId(ID, USER_ID);
-            verify(docRepository, times(1)).deleteByIdAndUserId(ID, USER_ID);
+            verify(docRepository, times(1)).findAndDeleteByIdAndUserId(ID, USER_ID);
+            verify(docSearchIndex, times(1)).remove(ID);
+            verify(blobStore, times(1)).release(DOCX_FILE_ID);
+            verify(blobStore, times(1)).release(PDF_FILE_ID);
         }
 
         @Test
         void shouldFailIfDocDoesNotExist() {
-            when(docRepository.existsByIdAndUserId(any(), any())).thenReturn(false);
+            when(docRepository.findAndDeleteByIdAndUserId(any(), any())).thenReturn(Optional.empty());
 
             assertThatThrownBy(() -> docService.deleteDoc(ID, USER_ID)).isInstanceOf(DocNotFoundException.class);
 
-            verify(docRepository, times(1)).existsByIdAndUserId(ID, USER_ID);
-            verify(docRepository, times(0)).deleteByIdAndUserId(any(), any());
+            verify(blobStore, times(0)).release(any());
+            verify(docListCache, times(0)).invalidate(any());
+            verify(docSearchIndex, times(0)).remove(any());
         }
 
     }
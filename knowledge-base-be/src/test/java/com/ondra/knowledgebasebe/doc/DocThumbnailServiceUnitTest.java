@@ -0,0 +1,91 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.BlobResource;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.DocNotFoundException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.FileConversionException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.PageNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.io.RandomAccessRead;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class DocThumbnailServiceUnitTest {
+
+    @Mock
+    private DocService docService;
+
+    @Mock
+    private PdfThumbnailRenderer pdfThumbnailRenderer;
+
+    private DocThumbnailService docThumbnailService;
+
+    private static final String ID = "1";
+    private static final String USER_ID = "1";
+    private static final ObjectId PDF_FILE_ID = new ObjectId();
+    private static final byte[] THUMBNAIL = {1, 2, 3};
+
+    @BeforeEach
+    void setUp() {
+        docThumbnailService = new DocThumbnailService(docService, pdfThumbnailRenderer, new ThumbnailCache(new SimpleMeterRegistry(), 1024));
+    }
+
+    private void givenStoredPdf() {
+        when(docService.getFile(ID, USER_ID, PDF_FILE_ID)).thenReturn(mock(BlobResource.class));
+    }
+
+    @Test
+    void shouldRenderThumbnailOnceAndThenServeItFromCache() throws IOException {
+        givenStoredPdf();
+        when(pdfThumbnailRenderer.render(any(RandomAccessRead.class), eq(1), eq(240))).thenReturn(Optional.of(THUMBNAIL));
+
+        docThumbnailService.getThumbnail(ID, USER_ID, PDF_FILE_ID, 1, 240);
+        byte[] thumbnail = docThumbnailService.getThumbnail(ID, USER_ID, PDF_FILE_ID, 1, 240);
+
+        assertThat(thumbnail).isEqualTo(THUMBNAIL);
+        verify(pdfThumbnailRenderer, times(1)).render(any(RandomAccessRead.class), eq(1), eq(240));
+    }
+
+    @Test
+    void shouldThrowIfPageDoesNotExist() throws IOException {
+        givenStoredPdf();
+        when(pdfThumbnailRenderer.render(any(RandomAccessRead.class), eq(5), eq(240))).thenReturn(Optional.empty());
+
+        assertThatThrownBy(() -> docThumbnailService.getThumbnail(ID, USER_ID, PDF_FILE_ID, 5, 240))
+            .isInstanceOf(PageNotFoundException.class);
+    }
+
+    @Test
+    void shouldThrowIfPdfCannotBeRendered() throws IOException {
+        givenStoredPdf();
+        when(pdfThumbnailRenderer.render(any(RandomAccessRead.class), eq(1), eq(240))).thenThrow(new IOException("Damaged"));
+
+        assertThatThrownBy(() -> docThumbnailService.getThumbnail(ID, USER_ID, PDF_FILE_ID, 1, 240))
+            .isInstanceOf(FileConversionException.class);
+    }
+
+    @Test
+    void shouldThrowIfPdfIsGone() {
+        when(docService.getFile(ID, USER_ID, PDF_FILE_ID)).thenThrow(new DocNotFoundException(ID, USER_ID));
+
+        assertThatThrownBy(() -> docThumbnailService.getThumbnail(ID, USER_ID, PDF_FILE_ID, 1, 240))
+            .isInstanceOf(DocNotFoundException.class);
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.InvalidArgumentException;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.ondra.knowledgebasebe.doc.DocValidator.MAX_BATCH_SIZE;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DocValidatorUnitTest {
+
+    private final DocValidator docValidator = new DocValidator();
+
+    private static final MultipartFile DOCX_FILE = new MockMultipartFile("docxFiles", new byte[]{});
+
+    @Nested
+    class ValidateBatch {
+
+        @Test
+        void shouldAcceptBatchOfMaxSize() {
+            assertThatCode(() -> docValidator.validateBatch(Collections.nCopies(MAX_BATCH_SIZE, "Java"), Collections.nCopies(MAX_BATCH_SIZE, DOCX_FILE)))
+                .doesNotThrowAnyException();
+        }
+
+        @Test
+        void shouldRejectBatchOfMoreThanMaxSize() {
+            assertThatThrownBy(() -> docValidator.validateBatch(Collections.nCopies(MAX_BATCH_SIZE + 1, "Java"), Collections.nCopies(MAX_BATCH_SIZE + 1, DOCX_FILE)))
+                .isInstanceOf(InvalidArgumentException.class)
+                .hasMessage("Batch cannot contain more than " + MAX_BATCH_SIZE + " docs");
+        }
+
+        @Test
+        void shouldRejectTooManyFilesEvenIfNamesAreMissing() {
+            assertThatThrownBy(() -> docValidator.validateBatch(List.of("Java"), Collections.nCopies(MAX_BATCH_SIZE + 1, DOCX_FILE)))
+                .isInstanceOf(InvalidArgumentException.class)
+                .hasMessage("Batch cannot contain more than " + MAX_BATCH_SIZE + " docs");
+        }
+
+        @Test
+        void shouldRejectFilesWithoutName() {
+            assertThatThrownBy(() -> docValidator.validateBatch(List.of("Java"), List.of(DOCX_FILE, DOCX_FILE)))
+                .isInstanceOf(InvalidArgumentException.class)
+                .hasMessage("Batch needs exactly one name for every DOCX-file");
+        }
+
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.BlobStore;
+import com.ondra.knowledgebasebe.blob.StoredBlob;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.BlobStorageException;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.FileConversionException;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.ondra.knowledgebasebe.doc.DocxTestData.docx;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class DocxIngestionUnitTest {
+
+    @Mock
+    private BlobStore blobStore;
+
+    private DocxIngestion docxIngestion;
+
+    private static final StoredBlob STORED_DOCX = new StoredBlob(new ObjectId(), "5c9a2e");
+
+    @BeforeEach
+    void setUp() {
+        docxIngestion = new DocxIngestion(blobStore, new DocxTextExtractor(1000, 1_000_000), runnable -> Thread.ofVirtual().start(runnable), 256);
+    }
+
+    @Test
+    void shouldStoreDocxAndExtractTextInOnePass() {
+        byte[] content = docx("Java runs on the JVM.", "x".repeat(10_000));
+        AtomicReference<byte[]> storedContent = new AtomicReference<>();
+        when(blobStore.store(eq("document.docx"), eq(DocService.DOCX_CONTENT_TYPE), any(InputStream.class))).thenAnswer(invocation -> {
+            storedContent.set(invocation.getArgument(2, InputStream.class).readAllBytes());
+            return STORED_DOCX;
+        });
+
+        IngestedDocx ingestedDocx = docxIngestion.ingest(new MockMultipartFile("docxFile", content));
+
+        assertThat(ingestedDocx.storedBlob()).isEqualTo(STORED_DOCX);
+        assertThat(ingestedDocx.text().join()).startsWith("Java runs on the JVM.");
+        assertThat(storedContent.get()).isEqualTo(content);
+    }
+
+    @Test
+    void shouldStoreUploadWithoutDocumentText() {
+        when(blobStore.store(eq("document.docx"), any(), any(InputStream.class))).thenAnswer(invocation -> {
+            invocation.getArgument(2, InputStream.class).readAllBytes();
+            return STORED_DOCX;
+        });
+
+        IngestedDocx ingestedDocx = docxIngestion.ingest(new MockMultipartFile("docxFile", "no zip".getBytes()));
+
+        assertThat(ingestedDocx.storedBlob()).isEqualTo(STORED_DOCX);
+        assertThat(ingestedDocx.text().join()).isEmpty();
+    }
+
+    @Test
+    void shouldFailIfDocxCannotBeStored() {
+        when(blobStore.store(eq("document.docx"), any(), any(InputStream.class))).thenThrow(new BlobStorageException("Writing blob 'document.docx' not possible", new IOException()));
+
+        assertThatThrownBy(() -> docxIngestion.ingest(new MockMultipartFile("docxFile", docx("Java"))))
+            .isInstanceOf(BlobStorageException.class);
+    }
+
+    @Test
+    void shouldFailIfUploadCannotBeRead() {
+        MockMultipartFile unreadableFile = new MockMultipartFile("docxFile", new byte[0]) {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                throw new IOException("Upload is gone");
+            }
+        };
+
+        assertThatThrownBy(() -> docxIngestion.ingest(unreadableFile)).isInstanceOf(FileConversionException.class);
+    }
+
+}
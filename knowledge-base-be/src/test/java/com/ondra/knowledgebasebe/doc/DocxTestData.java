@@ -0,0 +1,39 @@
+package com.ondra.knowledgebasebe.doc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class DocxTestData {
+
+    /**
+     * Builds a minimal DOCX-file with one paragraph per given text.
+     */
+    public static byte[] docx(String... paragraphs) {
+        StringBuilder body = new StringBuilder();
+        for (String paragraph : paragraphs) body.append("<w:p><w:r><w:t xml:space=\"preserve\">").append(paragraph).append("</w:t></w:r></w:p>");
+        return docxOf("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+            + "<w:document xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\"><w:body>"
+            + body
+            + "</w:body></w:document>");
+    }
+
+    public static byte[] docxOf(String document) {
+        ByteArrayOutputStream docx = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(docx)) {
+            zipOutputStream.putNextEntry(new ZipEntry("[Content_Types].xml"));
+            zipOutputStream.write("<Types/>".getBytes(StandardCharsets.UTF_8));
+            zipOutputStream.closeEntry();
+            zipOutputStream.putNextEntry(new ZipEntry("word/document.xml"));
+            zipOutputStream.write(document.getBytes(StandardCharsets.UTF_8));
+            zipOutputStream.closeEntry();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return docx.toByteArray();
+    }
+
+}
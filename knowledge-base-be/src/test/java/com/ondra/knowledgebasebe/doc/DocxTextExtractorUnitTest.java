@@ -0,0 +1,75 @@
+package com.ondra.knowledgebasebe.doc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static com.ondra.knowledgebasebe.doc.DocxTestData.docx;
+import static com.ondra.knowledgebasebe.doc.DocxTestData.docxOf;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class DocxTextExtractorUnitTest {
+
+    private final DocxTextExtractor docxTextExtractor = new DocxTextExtractor(50, 10_000);
+
+    @Test
+    void shouldExtractTextOfWordDocument() throws IOException {
+        try (InputStream inputStream = Files.newInputStream(Paths.get("src/test/resources/test2.docx"))) {
+            assertThat(docxTextExtractor.extractText(inputStream)).isEqualTo("test2");
+        }
+    }
+
+    @Test
+    void shouldSeparateParagraphsAndTabs() throws IOException {
+        byte[] docx = docx("Java", "Kotlin<w:tab/>Scala");
+
+        assertThat(docxTextExtractor.extractText(new ByteArrayInputStream(docx))).isEqualTo("Java\nKotlin Scala");
+    }
+
+    @Test
+    void shouldIgnoreTabStopsOfParagraph() throws IOException {
+        byte[] docx = docxOf("<w:document xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\"><w:body>"
+            + "<w:p><w:pPr><w:tabs><w:tab w:val=\"left\" w:pos=\"720\"/></w:tabs></w:pPr><w:r><w:t>Java</w:t></w:r></w:p>"
+            + "</w:body></w:document>");
+
+        assertThat(docxTextExtractor.extractText(new ByteArrayInputStream(docx))).isEqualTo("Java");
+    }
+
+    @Test
+    void shouldStopAtMaxTextLength() throws IOException {
+        byte[] docx = docx("a".repeat(40), "b".repeat(40));
+
+        assertThat(docxTextExtractor.extractText(new ByteArrayInputStream(docx))).hasSize(50);
+    }
+
+    @Test
+    void shouldFailIfDocumentInflatesBeyondMaxBytes() {
+        // the text is never longer than the limit, but the markup around it is
+        byte[] docx = docxOf("<w:document xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\"><w:body>"
+            + "<w:proofErr/>".repeat(2_000)
+            + "</w:body></w:document>");
+
+        assertThatThrownBy(() -> docxTextExtractor.extractText(new ByteArrayInputStream(docx)))
+            .isInstanceOf(IOException.class)
+            .hasStackTraceContaining("larger than 10000 bytes");
+    }
+
+    @Test
+    void shouldNotResolveExternalEntities() {
+        byte[] docx = docxOf("<?xml version=\"1.0\"?><!DOCTYPE w:document [<!ENTITY secret SYSTEM \"file:///etc/passwd\">]>"
+            + "<w:document xmlns:w=\"http://schemas.openxmlformats.org/wordprocessingml/2006/main\"><w:body><w:p><w:r><w:t>&secret;</w:t></w:r></w:p></w:body></w:document>");
+
+        assertThatThrownBy(() -> docxTextExtractor.extractText(new ByteArrayInputStream(docx))).isInstanceOf(IOException.class);
+    }
+
+    @Test
+    void shouldReturnEmptyTextIfArchiveHasNoDocument() throws IOException {
+        assertThat(docxTextExtractor.extractText(new ByteArrayInputStream(new byte[0]))).isEmpty();
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.BlobCompression;
+import com.ondra.knowledgebasebe.blob.BlobStore;
+import com.ondra.knowledgebasebe.config.GridFsConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.data.mongo.DataMongoTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataMongoTest
+@Testcontainers
+@Import({GridFsConfig.class, BlobStore.class, BlobCompression.class, SimpleMeterRegistry.class, EmbeddedBinaryMigration.class})
+public class EmbeddedBinaryMigrationDataMongoTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:7.0");
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private DocRepository docRepository;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private EmbeddedBinaryMigration embeddedBinaryMigration;
+
+    private static final ObjectId ID = new ObjectId();
+
+    @BeforeEach
+    void setUp() {
+        docRepository.deleteAll();
+        mongoTemplate.insert(
+            new Document("_id", ID)
+                .append("userId", "1")
+                .append("name", "Java")
+                .append("docxFile", new Binary(new byte[]{1}))
+                .append("pdfFile", new Binary(new byte[]{2})),
+            "docs"
+        );
+    }
+
+    @Test
+    void shouldMoveEmbeddedBinariesToBlobStore() throws IOException {
+        embeddedBinaryMigration.migrateAllDocs();
+
+        Doc doc = docRepository.findById(ID.toHexString()).orElseThrow();
+        assertThat(doc.getName()).isEqualTo("Java");
+        assertThat(blobStore.find(doc.getDocxFileId()).orElseThrow().getContentAsByteArray()).isEqualTo(new byte[]{1});
+        assertThat(blobStore.find(doc.getPdfFileId()).orElseThrow().getContentAsByteArray()).isEqualTo(new byte[]{2});
+        Document rawDoc = mongoTemplate.findById(ID, Document.class, "docs");
+        assertThat(rawDoc).doesNotContainKeys("docxFile", "pdfFile");
+    }
+
+    @Test
+    void shouldMigrateDocOnlyOnce() {
+        assertThat(embeddedBinaryMigration.migrateDoc(ID.toHexString())).isTrue();
+        assertThat(embeddedBinaryMigration.migrateDoc(ID.toHexString())).isFalse();
+    }
+
+}
@@ -1,27 +1,37 @@
 package com.ondra.knowledgebasebe.doc;
 
 import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.BlobStorageException;
 import com.ondra.knowledgebasebe.exceptionhandling.exceptions.FileConversionException;
-import org.bson.types.Binary;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
-import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.test.context.DynamicPropertyRegistry;
 import org.springframework.test.context.DynamicPropertySource;
-import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 
 import static com.github.tomakehurst.wiremock.client.WireMock.aMultipart;
 import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
 import static com.github.tomakehurst.wiremock.client.WireMock.binaryEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.exactly;
 import static com.github.tomakehurst.wiremock.client.WireMock.post;
 import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
 import static com.github.tomakehurst.wiremock.client.WireMock.verify;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 
 @SpringBootTest
 @WireMockTest(httpPort = 3001)
@@ -30,13 +40,29 @@ class FileConversionServiceWireMockTest {
     @DynamicPropertySource
     static void dynamicProperties(DynamicPropertyRegistry registry) {
         registry.add("gotenberg.port", () -> "3001");
+        registry.add("gotenberg.client.response-timeout", () -> "PT1S");
+        registry.add("gotenberg.client.response-timeout-per-megabyte", () -> "PT1S");
+        registry.add("gotenberg.retry.initial-backoff", () -> "PT0.01S");
+        registry.add("gotenberg.circuit-breaker.failure-threshold", () -> "100");
     }
 
     @Autowired
     private FileConversionService fileConversionService;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @SpyBean
+    private ConversionEndpoints conversionEndpoints;
+
+    @SpyBean
+    private ConversionCircuitBreaker conversionCircuitBreaker;
+
+    @SpyBean
+    private ConversionLimiter conversionLimiter;
+
     @Nested
-    class ConvertDocxMultipartFileToPdfBinary {
+    class ConvertDocxToPdf {
 
         @Test
         void successfulConversion() {
@@ -51,10 +77,10 @@ class FileConversionServiceWireMockTest {
                 )
             );
 
-            MultipartFile multipartFile = new MockMultipartFile("docxFile", docxFile);
-            Binary result = fileConversionService.convertDocxMultipartFileToPdfBinary(multipartFile);
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            fileConversionService.convertDocxToPdf(new ByteArrayResource(docxFile), result);
 
-            assertThat(result.getData()).isEqualTo(pdfFile);
+            assertThat(result.toByteArray()).isEqualTo(pdfFile);
             verify(
                 postRequestedFor(urlPathEqualTo("/forms/libreoffice/convert"))
                     .withRequestBodyPart(aMultipart().withBody(binaryEqualTo(docxFile)).build())
@@ -70,9 +96,10 @@ class FileConversionServiceWireMockTest {
                 )
             );
 
-            MultipartFile multipartFile = new MockMultipartFile("docxFile", docxFile);
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
 
-            assertThatThrownBy(() -> fileConversionService.convertDocxMultipartFileToPdfBinary(multipartFile)).isInstanceOf(FileConversionException.class);
+            assertThatThrownBy(() -> fileConversionService.convertDocxToPdf(new ByteArrayResource(docxFile), result)).isInstanceOf(FileConversionException.class);
+            assertThat(result.size()).isEqualTo(0);
             verify(
                 postRequestedFor(urlPathEqualTo("/forms/libreoffice/convert"))
                     .withRequestBodyPart(aMultipart().withBody(binaryEqualTo(docxFile)).build())
@@ -80,6 +107,122 @@ class FileConversionServiceWireMockTest {
 
         }
 
+        @Test
+        void retriedTransientFailure() {
+            byte[] pdfFile = new byte[]{3, 4, 5};
+            stubFor(post("/forms/libreoffice/convert")
+                .inScenario("restart").whenScenarioStateIs(STARTED)
+                .willReturn(
+                    aResponse().withStatus(503)
+                )
+                .willSetStateTo("restarted")
+            );
+            stubFor(post("/forms/libreoffice/convert")
+                .inScenario("restart").whenScenarioStateIs("restarted")
+                .willReturn(
+                    aResponse().withStatus(200).withBody(pdfFile)
+                )
+            );
+
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            fileConversionService.convertDocxToPdf(new ByteArrayResource(new byte[]{0, 1, 2}), result);
+
+            assertThat(result.toByteArray()).isEqualTo(pdfFile);
+            verify(exactly(2), postRequestedFor(urlPathEqualTo("/forms/libreoffice/convert")));
+        }
+
+        @Test
+        void notRetriedRejectedDocx() {
+            stubFor(post("/forms/libreoffice/convert")
+                .willReturn(
+                    aResponse().withStatus(400)
+                )
+            );
+
+            assertThatThrownBy(() -> fileConversionService.convertDocxToPdf(new ByteArrayResource(new byte[]{0, 1, 2}), new ByteArrayOutputStream()))
+                .isInstanceOf(FileConversionException.class);
+            verify(exactly(1), postRequestedFor(urlPathEqualTo("/forms/libreoffice/convert")));
+        }
+
+        @Test
+        void rejectedDocxDoesNotCountAgainstEndpoint() {
+            stubFor(post("/forms/libreoffice/convert")
+                .willReturn(
+                    aResponse().withStatus(400)
+                )
+            );
+
+            assertThatThrownBy(() -> fileConversionService.convertDocxToPdf(new ByteArrayResource(new byte[]{0, 1, 2}), new ByteArrayOutputStream()))
+                .isInstanceOf(FileConversionException.class);
+            Mockito.verify(conversionEndpoints).release(any(), eq(true));
+        }
+
+        @Test
+        void serverErrorCountsAgainstEndpoint() {
+            stubFor(post("/forms/libreoffice/convert")
+                .willReturn(
+                    aResponse().withStatus(500)
+                )
+            );
+
+            assertThatThrownBy(() -> fileConversionService.convertDocxToPdf(new ByteArrayResource(new byte[]{0, 1, 2}), new ByteArrayOutputStream()))
+                .isInstanceOf(FileConversionException.class);
+            Mockito.verify(conversionEndpoints).release(any(), eq(false));
+        }
+
+        @Test
+        void failedPdfWriteDoesNotCountAgainstGotenberg() {
+            stubFor(post("/forms/libreoffice/convert")
+                .willReturn(
+                    aResponse().withStatus(200).withBody(new byte[]{3, 4, 5})
+                )
+            );
+            OutputStream failingOutputStream = new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    throw new IOException("GridFS not reachable");
+                }
+            };
+
+            assertThatThrownBy(() -> fileConversionService.convertDocxToPdf(new ByteArrayResource(new byte[]{0, 1, 2}), failingOutputStream))
+                .isInstanceOf(BlobStorageException.class);
+            verify(exactly(1), postRequestedFor(urlPathEqualTo("/forms/libreoffice/convert")));
+            Mockito.verify(conversionCircuitBreaker).onSuccess();
+            Mockito.verify(conversionCircuitBreaker, Mockito.never()).onFailure();
+            Mockito.verify(conversionEndpoints).release(any(), eq(true));
+            Mockito.verify(conversionLimiter).release(any(), eq(ConversionLimiter.Outcome.ABORTED));
+        }
+
+        @Test
+        void timedOutConversion() {
+            byte[] docxFile = new byte[]{0, 1, 2};
+            stubFor(post("/forms/libreoffice/convert")
+                .willReturn(
+                    aResponse().withStatus(200).withBody(new byte[]{3, 4, 5}).withFixedDelay(4000)
+                )
+            );
+
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+
+            assertThatThrownBy(() -> fileConversionService.convertDocxToPdf(new ByteArrayResource(docxFile), result)).isInstanceOf(FileConversionException.class);
+            assertThat(result.size()).isEqualTo(0);
+        }
+
+        @Test
+        void connectionPoolUsageIsRecorded() {
+            stubFor(post("/forms/libreoffice/convert")
+                .willReturn(
+                    aResponse().withStatus(200).withBody(new byte[]{3, 4, 5})
+                )
+            );
+            long leasesBefore = meterRegistry.timer("gotenberg.client.pool.wait").count();
+
+            fileConversionService.convertDocxToPdf(new ByteArrayResource(new byte[]{0, 1, 2}), new ByteArrayOutputStream());
+
+            assertThat(meterRegistry.timer("gotenberg.client.pool.wait").count()).isEqualTo(leasesBefore + 1);
+            assertThat(meterRegistry.find("httpcomponents.httpclient.pool.total.max").tag("httpclient", "gotenberg").gauge()).isNotNull();
+        }
+
     }
 
 }
\ No newline at end of file
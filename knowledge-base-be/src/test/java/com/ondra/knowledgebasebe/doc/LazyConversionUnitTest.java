@@ -0,0 +1,130 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.ondra.knowledgebasebe.blob.BlobResource;
+import com.ondra.knowledgebasebe.blob.BlobStore;
+import com.ondra.knowledgebasebe.exceptionhandling.exceptions.FileConversionException;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.DEFERRED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class LazyConversionUnitTest {
+
+    @Mock
+    private DocRepository docRepository;
+
+    @Mock
+    private BlobStore blobStore;
+
+    @Mock
+    private PdfGenerator pdfGenerator;
+
+    @InjectMocks
+    private LazyConversion lazyConversion;
+
+    private static final ObjectId DOCX_FILE_ID = new ObjectId();
+    private static final ObjectId PDF_FILE_ID = new ObjectId();
+    private static final String DOCX_HASH = "5c9a2e";
+    private static final Doc DOC = new Doc("1", "1", "Java", DOCX_FILE_ID, null, DEFERRED);
+
+    private BlobResource docxFile;
+
+    @BeforeEach
+    void setUp() {
+        docxFile = mock(BlobResource.class);
+        when(blobStore.find(DOCX_FILE_ID)).thenReturn(Optional.of(docxFile));
+        when(blobStore.findSha256(DOCX_FILE_ID)).thenReturn(Optional.of(DOCX_HASH));
+    }
+
+    /**
+     * Starts a request for the same doc and returns once it is blocked waiting for the running conversion.
+     */
+    private FutureTask<Void> startWaitingRequest() throws InterruptedException {
+        FutureTask<Void> request = new FutureTask<>(() -> lazyConversion.convert(DOC), null);
+        Thread thread = new Thread(request);
+        thread.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (thread.getState() != Thread.State.WAITING && System.nanoTime() < deadline) Thread.sleep(1);
+        return request;
+    }
+
+    @Test
+    void shouldStorePdfWithDoc() {
+        when(pdfGenerator.generatePdf(docxFile, DOCX_HASH)).thenReturn(PDF_FILE_ID);
+        when(docRepository.completeConversion("1", DOCX_FILE_ID, PDF_FILE_ID)).thenReturn(true);
+
+        lazyConversion.convert(DOC);
+
+        verify(docRepository, times(1)).completeConversion("1", DOCX_FILE_ID, PDF_FILE_ID);
+        verify(blobStore, times(0)).release(PDF_FILE_ID);
+    }
+
+    @Test
+    void shouldReleasePdfIfDocChangedInTheMeantime() {
+        when(pdfGenerator.generatePdf(docxFile, DOCX_HASH)).thenReturn(PDF_FILE_ID);
+        when(docRepository.completeConversion("1", DOCX_FILE_ID, PDF_FILE_ID)).thenReturn(false);
+
+        lazyConversion.convert(DOC);
+
+        verify(blobStore, times(1)).release(PDF_FILE_ID);
+    }
+
+    @Test
+    void shouldConvertOnlyOnceForConcurrentRequests() throws Exception {
+        CountDownLatch conversionStarted = new CountDownLatch(1);
+        CountDownLatch conversionMayFinish = new CountDownLatch(1);
+        when(pdfGenerator.generatePdf(docxFile, DOCX_HASH)).thenAnswer(invocation -> {
+            conversionStarted.countDown();
+            conversionMayFinish.await();
+            return PDF_FILE_ID;
+        });
+        when(docRepository.completeConversion("1", DOCX_FILE_ID, PDF_FILE_ID)).thenReturn(true);
+
+        CompletableFuture<Void> firstRequest = CompletableFuture.runAsync(() -> lazyConversion.convert(DOC));
+        assertThat(conversionStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        FutureTask<Void> secondRequest = startWaitingRequest();
+        conversionMayFinish.countDown();
+        firstRequest.get(5, TimeUnit.SECONDS);
+        secondRequest.get(5, TimeUnit.SECONDS);
+
+        verify(pdfGenerator, times(1)).generatePdf(docxFile, DOCX_HASH);
+    }
+
+    @Test
+    void shouldPassFailureToWaitingRequests() throws Exception {
+        CountDownLatch conversionStarted = new CountDownLatch(1);
+        CountDownLatch conversionMayFinish = new CountDownLatch(1);
+        when(pdfGenerator.generatePdf(docxFile, DOCX_HASH)).thenAnswer(invocation -> {
+            conversionStarted.countDown();
+            conversionMayFinish.await();
+            throw new FileConversionException("Converting DOCX to PDF not possible");
+        });
+
+        CompletableFuture<Void> firstRequest = CompletableFuture.runAsync(() -> lazyConversion.convert(DOC));
+        assertThat(conversionStarted.await(5, TimeUnit.SECONDS)).isTrue();
+        FutureTask<Void> secondRequest = startWaitingRequest();
+        conversionMayFinish.countDown();
+
+        assertThatThrownBy(() -> firstRequest.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(FileConversionException.class);
+        assertThatThrownBy(() -> secondRequest.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(FileConversionException.class);
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.ondra.knowledgebasebe.doc;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class PdfPageExtractorUnitTest {
+
+    private final PdfPageExtractor pdfPageExtractor = new PdfPageExtractor(new SimpleMeterRegistry());
+
+    /**
+     * Every page is a little wider than the one before, so that the extracted pages can be told apart.
+     */
+    private static byte[] pdfWithPages(int pageCount) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            for (int page = 1; page <= pageCount; page++) document.addPage(new PDPage(new PDRectangle(100 + page, 200)));
+            ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+            document.save(pdf);
+            return pdf.toByteArray();
+        }
+    }
+
+    private static List<Float> pageWidthsOf(PdfPages pages) throws IOException {
+        ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+        pages.writeTo(pdf);
+        try (PDDocument document = Loader.loadPDF(pdf.toByteArray())) {
+            return document.getPages().stream().map(page -> page.getMediaBox().getWidth()).toList();
+        }
+    }
+
+    @Test
+    void shouldExtractPageRange() throws IOException {
+        PdfPages pages = pdfPageExtractor.extractPages(new RandomAccessReadBuffer(pdfWithPages(5)), 2, 4).orElseThrow();
+
+        assertThat(pageWidthsOf(pages)).containsExactly(102f, 103f, 104f);
+    }
+
+    @Test
+    void shouldExtractSinglePage() throws IOException {
+        PdfPages pages = pdfPageExtractor.extractPages(new RandomAccessReadBuffer(pdfWithPages(5)), 5, 5).orElseThrow();
+
+        assertThat(pageWidthsOf(pages)).containsExactly(105f);
+    }
+
+    @Test
+    void shouldLeaveOutputStreamOpen() throws IOException {
+        PdfPages pages = pdfPageExtractor.extractPages(new RandomAccessReadBuffer(pdfWithPages(2)), 1, 1).orElseThrow();
+        OutputStream outputStream = mock(OutputStream.class);
+
+        pages.writeTo(outputStream);
+
+        verify(outputStream, never()).close();
+    }
+
+    @Test
+    void shouldReturnNothingIfRangeExceedsPages() throws IOException {
+        Optional<PdfPages> pages = pdfPageExtractor.extractPages(new RandomAccessReadBuffer(pdfWithPages(3)), 2, 4);
+
+        assertThat(pages).isEmpty();
+    }
+
+    @Test
+    void shouldFailForInvalidPdf() {
+        assertThatThrownBy(() -> pdfPageExtractor.extractPages(new RandomAccessReadBuffer("no pdf".getBytes()), 1, 1))
+            .isInstanceOf(IOException.class);
+    }
+
+}
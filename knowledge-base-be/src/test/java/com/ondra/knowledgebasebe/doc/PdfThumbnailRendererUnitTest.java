@@ -0,0 +1,73 @@
+package com.ondra.knowledgebasebe.doc;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PdfThumbnailRendererUnitTest {
+
+    private final PdfThumbnailRenderer pdfThumbnailRenderer = new PdfThumbnailRenderer(new SimpleMeterRegistry(), 1);
+
+    private static BufferedImage decode(byte[] jpeg) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(jpeg));
+    }
+
+    private static byte[] pdfWithPage(PDRectangle mediaBox) throws IOException {
+        try (PDDocument document = new PDDocument()) {
+            document.addPage(new PDPage(mediaBox));
+            ByteArrayOutputStream pdf = new ByteArrayOutputStream();
+            document.save(pdf);
+            return pdf.toByteArray();
+        }
+    }
+
+    @Test
+    void shouldRenderPageAsSmallJpegOfGivenWidth() throws IOException {
+        Optional<byte[]> thumbnail = pdfThumbnailRenderer.render(new RandomAccessReadBuffer(Files.readAllBytes(Paths.get("src/test/resources/test1.pdf"))), 1, 200);
+
+        assertThat(thumbnail).isPresent();
+        assertThat(thumbnail.get().length).isLessThan(50 * 1024);
+        BufferedImage image = decode(thumbnail.get());
+        assertThat(image.getWidth()).isEqualTo(200);
+        assertThat(image.getHeight()).isBetween(250, 300);
+    }
+
+    @Test
+    void shouldLimitHeightOfLongPages() throws IOException {
+        byte[] pdf = pdfWithPage(new PDRectangle(100, 1000));
+
+        BufferedImage image = decode(pdfThumbnailRenderer.render(new RandomAccessReadBuffer(pdf), 1, 200).orElseThrow());
+
+        assertThat(image.getHeight()).isEqualTo(PdfThumbnailRenderer.MAX_ASPECT_RATIO * 200);
+        assertThat(image.getWidth()).isEqualTo(40);
+    }
+
+    @Test
+    void shouldReturnNothingIfPageDoesNotExist() throws IOException {
+        byte[] pdf = pdfWithPage(PDRectangle.A4);
+
+        assertThat(pdfThumbnailRenderer.render(new RandomAccessReadBuffer(pdf), 2, 200)).isEmpty();
+    }
+
+    @Test
+    void shouldFailForInvalidPdf() {
+        assertThatThrownBy(() -> pdfThumbnailRenderer.render(new RandomAccessReadBuffer("no pdf".getBytes()), 1, 200))
+            .isInstanceOf(IOException.class);
+    }
+
+}
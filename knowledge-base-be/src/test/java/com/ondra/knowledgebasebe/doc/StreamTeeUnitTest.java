@@ -0,0 +1,84 @@
+package com.ondra.knowledgebasebe.doc;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class StreamTeeUnitTest {
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private final Executor executor = runnable -> Thread.ofVirtual().start(runnable);
+    private final StreamTee streamTee = new StreamTee(BUFFER_SIZE);
+
+    private static byte[] randomContent(int length) {
+        byte[] content = new byte[length];
+        new Random(42).nextBytes(content);
+        return content;
+    }
+
+    @Test
+    void shouldPassWholeContentToEveryBranch() throws IOException {
+        byte[] content = randomContent(100 * BUFFER_SIZE + 17);
+        CompletableFuture<byte[]> first = streamTee.branch(InputStream::readAllBytes, executor);
+        CompletableFuture<byte[]> second = streamTee.branch(InputStream::readAllBytes, executor);
+
+        streamTee.pump(new ByteArrayInputStream(content));
+
+        assertThat(first.join()).isEqualTo(content);
+        assertThat(second.join()).isEqualTo(content);
+    }
+
+    @Test
+    void shouldNotBeHeldBackByBranchThatStopsReading() throws IOException {
+        byte[] content = randomContent(100 * BUFFER_SIZE);
+        CompletableFuture<byte[]> prefix = streamTee.branch(inputStream -> inputStream.readNBytes(10), executor);
+        CompletableFuture<byte[]> all = streamTee.branch(InputStream::readAllBytes, executor);
+
+        streamTee.pump(new ByteArrayInputStream(content));
+
+        assertThat(prefix.join()).hasSize(10);
+        assertThat(all.join()).isEqualTo(content);
+    }
+
+    @Test
+    void shouldNotBeHeldBackByFailingBranch() throws IOException {
+        byte[] content = randomContent(100 * BUFFER_SIZE);
+        CompletableFuture<byte[]> failing = streamTee.branch(inputStream -> {
+            throw new IllegalStateException("Broken");
+        }, executor);
+        CompletableFuture<byte[]> all = streamTee.branch(InputStream::readAllBytes, executor);
+
+        streamTee.pump(new ByteArrayInputStream(content));
+
+        assertThatThrownBy(failing::join).isInstanceOf(CompletionException.class).hasCauseInstanceOf(IllegalStateException.class);
+        assertThat(all.join()).isEqualTo(content);
+    }
+
+    @Test
+    void shouldFailBranchesIfSourceFails() {
+        CompletableFuture<byte[]> branch = streamTee.branch(InputStream::readAllBytes, executor);
+        InputStream failingSource = new InputStream() {
+            private int read;
+
+            @Override
+            public int read() throws IOException {
+                if (read++ >= 5 * BUFFER_SIZE) throw new IOException("Connection reset");
+                return 1;
+            }
+        };
+
+        assertThatThrownBy(() -> streamTee.pump(failingSource)).isInstanceOf(IOException.class);
+        assertThatThrownBy(branch::join).isInstanceOf(CompletionException.class).hasRootCauseMessage("Connection reset");
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.ondra.knowledgebasebe.doc;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ThumbnailCacheUnitTest {
+
+    private static final ObjectId PDF_FILE_ID_1 = new ObjectId();
+    private static final ObjectId PDF_FILE_ID_2 = new ObjectId();
+    private static final ObjectId PDF_FILE_ID_3 = new ObjectId();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ThumbnailCache thumbnailCache = new ThumbnailCache(meterRegistry, 20);
+    private final AtomicInteger renders = new AtomicInteger();
+
+    private byte[] get(ObjectId pdfFileId, int page, int size) {
+        return thumbnailCache.get(pdfFileId, page, 240, () -> {
+            renders.incrementAndGet();
+            return new byte[size];
+        });
+    }
+
+    @Test
+    void shouldRenderThumbnailOnlyOnce() {
+        get(PDF_FILE_ID_1, 1, 10);
+        byte[] thumbnail = get(PDF_FILE_ID_1, 1, 10);
+
+        assertThat(thumbnail).hasSize(10);
+        assertThat(renders).hasValue(1);
+        assertThat(meterRegistry.counter("thumbnail.cache.requests", "result", "hit").count()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRenderEveryPageAndPdf() {
+        get(PDF_FILE_ID_1, 1, 5);
+        get(PDF_FILE_ID_1, 2, 5);
+        get(PDF_FILE_ID_2, 1, 5);
+
+        assertThat(renders).hasValue(3);
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedThumbnailsBeyondMaxBytes() {
+        get(PDF_FILE_ID_1, 1, 10);
+        get(PDF_FILE_ID_2, 1, 10);
+        get(PDF_FILE_ID_1, 1, 10);
+        get(PDF_FILE_ID_3, 1, 10);
+        get(PDF_FILE_ID_1, 1, 10);
+        get(PDF_FILE_ID_2, 1, 10);
+
+        assertThat(renders).hasValue(4);
+        assertThat(thumbnailCache.getBytes()).isEqualTo(20);
+    }
+
+    @Test
+    void shouldNotCacheThumbnailLargerThanMaxBytes() {
+        get(PDF_FILE_ID_1, 1, 10);
+        get(PDF_FILE_ID_2, 1, 30);
+        get(PDF_FILE_ID_1, 1, 10);
+
+        assertThat(renders).hasValue(2);
+        assertThat(thumbnailCache.getBytes()).isEqualTo(10);
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.ondra.knowledgebasebe.doc;
+
+import com.github.tomakehurst.wiremock.junit5.WireMockTest;
+import com.ondra.knowledgebasebe.blob.BlobStore;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
+import static com.ondra.knowledgebasebe.doc.ConversionStatus.COMPLETED;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs the blocking Mongo and Gotenberg calls of the request path on virtual threads and fails if any of
+ * them pins its carrier thread while it waits. The Gotenberg client gets fewer pooled connections than
+ * there are requests, so the requests also wait for the pool.
+ */
+@SpringBootTest
+@Testcontainers
+@WireMockTest(httpPort = 3002)
+class VirtualThreadPinningWireMockTest {
+
+    @Container
+    @ServiceConnection
+    static MongoDBContainer mongoDBContainer = new MongoDBContainer("mongo:7.0");
+
+    @DynamicPropertySource
+    static void dynamicProperties(DynamicPropertyRegistry registry) {
+        registry.add("gotenberg.port", () -> "3002");
+        registry.add("spring.threads.virtual.enabled", () -> "true");
+        registry.add("gotenberg.client.max-connections", () -> POOLED_CONNECTIONS);
+        registry.add("conversion.limiter.initial-limit", () -> CONCURRENT_REQUESTS);
+        registry.add("conversion.limiter.max-limit", () -> CONCURRENT_REQUESTS);
+    }
+
+    @Autowired
+    private DocRepository docRepository;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Autowired
+    private FileConversionService fileConversionService;
+
+    private static final int CONCURRENT_REQUESTS = 50;
+    private static final int POOLED_CONNECTIONS = 4;
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    @Test
+    void shouldNotPinCarrierThreadsWhileWaitingForMongoAndGotenberg() throws Exception {
+        stubFor(post("/forms/libreoffice/convert").willReturn(aResponse().withStatus(200).withBody(new byte[]{3, 4, 5}).withFixedDelay(100)));
+        docRepository.deleteAll();
+
+        Path recordingFile = Files.createTempFile("pinning", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+            runOnVirtualThreads();
+            recording.stop();
+            recording.dump(recordingFile);
+        }
+
+        List<String> pinnedStacks = RecordingFile.readAllEvents(recordingFile).stream()
+            .filter(event -> event.getEventType().getName().equals(PINNED_EVENT))
+            .map(VirtualThreadPinningWireMockTest::describe)
+            .toList();
+        Files.delete(recordingFile);
+        assertThat(pinnedStacks).isEmpty();
+    }
+
+    private void runOnVirtualThreads() throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> requests = IntStream.range(0, CONCURRENT_REQUESTS).<Future<?>>mapToObj(i -> executor.submit(() -> {
+                byte[] docxFile = new byte[]{0, 1, (byte) i};
+                blobStore.store("document.docx", "application/octet-stream", new ByteArrayInputStream(docxFile));
+                docRepository.save(new Doc(null, "1", "Doc " + i, null, null, COMPLETED));
+                docRepository.findAllByUserIdAndExcludeBinaryData("1");
+                fileConversionService.convertDocxToPdf(new ByteArrayResource(docxFile), OutputStream.nullOutputStream());
+            })).toList();
+            for (Future<?> request : requests) request.get(30, TimeUnit.SECONDS);
+        }
+    }
+
+    private static String describe(RecordedEvent event) {
+        if (event.getStackTrace() == null) return "<no stack trace>";
+        return event.getStackTrace().getFrames().stream()
+            .limit(15)
+            .map(RecordedFrame::getMethod)
+            .map(method -> method.getType().getName() + "." + method.getName())
+            .collect(Collectors.joining("\n    at ", "pinned in\n    at ", ""));
+    }
+
+}